@@ -2,8 +2,20 @@ package hk.edu.polyu.comp.comp2021.cvfs;
 
 import hk.edu.polyu.comp.comp2021.cvfs.cli.Console;
 import hk.edu.polyu.comp.comp2021.cvfs.controller.Controller;
+import hk.edu.polyu.comp.comp2021.cvfs.controller.Server;
 import hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.FileSystem;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+
 /**
  * <h2>The {@code Application} Class</h2>
  * This is the main class (including the entry point) of the CVFS application.
@@ -46,12 +58,51 @@ public final class Application {
         controller.boot();
     }
 
+    /**
+     * Run the commands of a script file, for {@code --batch <file> [--fail-fast]}.
+     * @param fs the file system.
+     * @param path the path of the script, which is read as UTF-8.
+     * @param failFast whether the script stops at the first command which fails.
+     * @param out the output stream, which is flushed at the end.
+     * @return the exit status, which is {@code 0} if all commands succeeded, or {@code 1} if any of them failed or the script cannot be read.
+     */
+    public static int runBatch(FileSystem fs, String path, boolean failFast, PrintStream out) {
+        int failed;
+        try (BufferedReader script = Files.newBufferedReader(Paths.get(path), StandardCharsets.UTF_8)) {
+            failed = new Controller(fs, new Console(System.in, out)).runBatch(script, failFast);
+        } catch (IOException | InvalidPathException e) {
+            out.println("Cannot read the script: " + e.getMessage());
+            failed = 1;
+        }
+        out.flush();
+        return (failed == 0) ? 0 : 1;
+    }
+
     /**
      * The entry of the CVFS Application.
-     * @param args the arguments for the main entry. Should not use this.
+     * <p>
+     * With {@code --server [port]}, the application serves many command sessions on a local socket instead of the console, see {@code Server}.
+     * <p>
+     * With {@code --batch <file> [--fail-fast]}, the application runs the commands of a script file without the prompts, and exits with {@code 1} if any of them failed, see {@code Controller.runBatch()}.
+     * @param args the arguments for the main entry, which are empty for the console.
      */
     public static void main(String[] args) {
         FileSystem fs = new FileSystem();
+        if (args.length >= 1 && args[0].equals("--server")) {
+            try (Server server = new Server(fs, (args.length >= 2) ? Integer.parseInt(args[1]) : Server.DEFAULT_PORT)) {
+                System.out.println("CVFS is serving on port " + server.getPort() + ".");
+                server.serve();
+            } catch (IOException | NumberFormatException e) {
+                System.out.println("Cannot serve: " + e.getMessage());
+            }
+            return;
+        }
+        if (args.length >= 2 && args[0].equals("--batch")) {
+            boolean failFast = args.length >= 3 && args[2].equals("--fail-fast");
+            PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16), false);
+            System.exit(runBatch(fs, args[1], failFast, out));
+        }
+
         Console console = new Console();
         Controller controller = new Controller(fs, console);
 
@@ -2,6 +2,8 @@ package hk.edu.polyu.comp.comp2021.cvfs.cli;
 
 import hk.edu.polyu.comp.comp2021.cvfs.globalexceptions.CVFS_Exception;
 
+import java.io.InputStream;
+import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Scanner;
@@ -13,11 +15,21 @@ import java.util.regex.Pattern;
  * <b>Console</b> is the frontend part, and it is the mixed component between the View and Controller.
  */
 public final class Console {
+    /**
+     * The segments of a command, see {@code parse()}.
+     */
+    private static final Pattern SEGMENT = Pattern.compile("\"[^\"]*\"|`[^`]*`|[^\"`]+");
+
     /**
      * The input stream of the console. Generally, it should be {@code System.in}.
      */
     private final Scanner scanner;
 
+    /**
+     * The output stream of the console. Generally, it should be {@code System.out}.
+     */
+    private final PrintStream out;
+
     /**
      * The constructor of the console.
      * <p>
@@ -25,6 +37,17 @@ public final class Console {
      */
     public Console() {
         scanner = new Scanner(System.in);
+        out = System.out;
+    }
+
+    /**
+     * The constructor of a console on other streams, e.g., of a session of the {@code Server}.
+     * @param in the input stream, read as UTF-8.
+     * @param out the output stream, which is flushed whenever the console waits for the next command.
+     */
+    public Console(InputStream in, PrintStream out) {
+        scanner = new Scanner(in, "UTF-8");
+        this.out = out;
     }
 
     /**
@@ -40,16 +63,20 @@ public final class Console {
      * <p>
      * This method is controlled by the controller after the console boots.
      * @param workingDirectoryPath the current working directory address provided by the Controller.
-     * @return the parsed user command.
+     * @return the parsed user command, or {@code null} if the input stream has ended.
      */
     public String[] getNextCommand(String workingDirectoryPath) {
-        System.out.println();
+        out.println();
         if (!workingDirectoryPath.isEmpty()) {
-            System.out.print("admin@CVFS" + " " + workingDirectoryPath + " " + ">>" + " ");
+            out.print("admin@CVFS" + " " + workingDirectoryPath + " " + ">>" + " ");
         } else {
-            System.out.print("admin@CVFS" + " " + ">>" + " ");
+            out.print("admin@CVFS" + " " + ">>" + " ");
         }
+        out.flush();
 
+        if (!scanner.hasNextLine()) {
+            return null;
+        }
         String rawCommand = scanner.nextLine();
         return parse(rawCommand);
     }
@@ -59,7 +86,15 @@ public final class Console {
      * @param result the result of the operation's execution.
      */
     public void printInformation(String result) {
-        System.out.println(result);
+        out.println(result);
+    }
+
+    /**
+     * Print a line of the information while an operation is executed, so a long result is shown as it is produced.
+     * @param line the line.
+     */
+    public void printLine(CharSequence line) {
+        out.println(line);
     }
 
     /**
@@ -67,16 +102,23 @@ public final class Console {
      * @param e the exception
      */
     public void printErrorStream(CVFS_Exception e) {
-        System.out.println(e.getMessage());
+        out.println(e.getMessage());
     }
 
     /**
-     * Print the first message using the {@code System.out} stream.
+     * Flush the output stream, e.g., at the end of a batch, whose output is buffered.
+     */
+    public void flush() {
+        out.flush();
+    }
+
+    /**
+     * Print the first message using the output stream.
      * <p>
      * The content should be edited well.
      */
     private void printFirstMessage() {
-        System.out.println("Welcome to CVFS - COMP Virtual File System, Project Peregrine Falcon\n" +
+        out.println("Welcome to CVFS - COMP Virtual File System, Project Peregrine Falcon\n" +
                         "Group members:\n" +
                         "\tYang Xikun Frank (Overall Design, Coding and Report)\n" +
                         "\tYang Jinkun Jim (Model Validating and Improving)\n" +
@@ -118,17 +160,21 @@ public final class Console {
      *
      * @param rawCommand the raw command from the input stream.
      * @return the processed command, split into an array.
-     * @implNote A very complicated regex system is used.
+     * @implNote A very complicated regex system is used. It is compiled once, and skipped for the commands without quotes and backticks, which are only split by the whitespace characters.
      *
      */
-    private String[] parse(String rawCommand) {
+    public static String[] parse(String rawCommand) {
         assert rawCommand != null;
         rawCommand = rawCommand.trim();
 
         List<String> result = new ArrayList<>();
 
-        Pattern pattern = Pattern.compile("\"[^\"]*\"|`[^`]*`|[^\"`]+");
-        Matcher matcher = pattern.matcher(rawCommand);
+        if (rawCommand.indexOf('"') < 0 && rawCommand.indexOf('`') < 0) {
+            split(rawCommand, result);
+            return result.toArray(new String[0]);
+        }
+
+        Matcher matcher = SEGMENT.matcher(rawCommand);
 
         while (matcher.find()) {
             String segment = matcher.group();
@@ -137,15 +183,30 @@ public final class Console {
             } else if (segment.startsWith("\"") && segment.endsWith("\"")) {
                 result.add(segment);
             } else {
-                String[] splits = segment.split("\\s+");
-                for (String split: splits) {
-                    if (!split.isEmpty()) {
-                        result.add(split);
-                    }
-                }
+                split(segment, result);
             }
         }
 
         return result.toArray(new String[0]);
     }
+
+    /**
+     * Split a segment by the whitespace characters of {@code \s}, without a regex.
+     */
+    private static void split(String segment, List<String> result) {
+        int start = -1;
+        for (int i = 0; i < segment.length(); i++) {
+            char c = segment.charAt(i);
+            boolean whitespace = (c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r');
+            if (whitespace && start >= 0) {
+                result.add(segment.substring(start, i));
+                start = -1;
+            } else if (!whitespace && start < 0) {
+                start = i;
+            }
+        }
+        if (start >= 0) {
+            result.add(segment.substring(start));
+        }
+    }
 }
@@ -16,6 +16,12 @@ import hk.edu.polyu.comp.comp2021.cvfs.globalexceptions.CVFS_Exception;
 
 import hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.FileSystem;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
 /**
  * <h2>The {@code Controller} Class</h2>
  * {@code Controller} is the Controller part this application.
@@ -25,6 +31,16 @@ import hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.FileSystem;
  * @see FileSystem
  */
 public final class Controller {
+    /**
+     * The number of the parsed lines of a script handed over to the commands at once, see {@code runBatch()}.
+     */
+    private static final int BATCH_CHUNK = 128;
+
+    /**
+     * The number of the chunks of a script parsed ahead of the commands.
+     */
+    private static final int BATCH_QUEUE_CAPACITY = 64;
+
     /**
      * The state of the application, created by the {@code Application} object.
      */
@@ -45,6 +61,11 @@ public final class Controller {
      */
     private final OperationRecord operationRecord;
 
+    /**
+     * Whether the Controller runs a session of the {@code Server}, where {@code quit} ends the session instead of the application.
+     */
+    private final boolean session;
+
 
     /**
      * Constructs a new Controller with a {@code State} object and a {@code Console} object, representing the state of the application and the CLI console.
@@ -52,10 +73,25 @@ public final class Controller {
      * @param console the {@code Console} object of the CLI console.
      */
     public Controller(FileSystem fs, Console console) {
+        this(fs, console, new OperationFactory(), false);
+    }
+
+    /**
+     * Constructs the Controller of a session of the {@code Server}, which shares the file system and the operation factory with the other sessions, but has its own operation record, so {@code undo} and {@code redo} only see the operations of the session.
+     * @param fs the file system shared by the sessions.
+     * @param console the console of the session.
+     * @param operationFactory the operation factory shared by the sessions.
+     */
+    public Controller(FileSystem fs, Console console, OperationFactory operationFactory) {
+        this(fs, console, operationFactory, true);
+    }
+
+    private Controller(FileSystem fs, Console console, OperationFactory operationFactory, boolean session) {
         this.fs = fs;
         this.console = console;
-        operationFactory = new OperationFactory();
-        operationRecord = new OperationRecord();
+        this.operationFactory = operationFactory;
+        this.operationRecord = new OperationRecord();
+        this.session = session;
     }
 
     /**
@@ -67,20 +103,36 @@ public final class Controller {
         work();
     }
 
+    /**
+     * Run a session of the {@code Server} on the current thread, with its own working directory, until the client quits or disconnects.
+     * @see FileSystem#openSession()
+     */
+    public void serveSession() {
+        fs.openSession();
+        try {
+            console.boot();
+            work();
+        } finally {
+            fs.closeSession();
+        }
+    }
+
     /**
      * Let the Controller start working.
-     * @implNote This method involves an infinite loop to keep it continuously receiving and executing user commands.
+     * @implNote This method involves an infinite loop to keep it continuously receiving and executing user commands, until the input ends, or {@code quit} ends a session.
      */
     private void work() {
         while (true) {
             try {
                 String[] command = console.getNextCommand(fs.getWorkingDirectoryPathSafely());
+                if (command == null || (session && command.length == 1 && command[0].equals("quit"))) {
+                    return;
+                }
                 
                 Operation operation = operationFactory.createOperation(fs, operationRecord, command);
 
                 assert operation != null;
-                String result = operation.exec();
-                console.printInformation(result);
+                operation.exec(console::printLine);
 
 
                 // if (operation instanceof Quit) {
@@ -96,5 +148,129 @@ public final class Controller {
             } // end try-catch
         } // end while
     }
+
+    /**
+     * Run a script of commands, one per line, as typed into the console, but without the prompts, e.g., to provision a virtual disk with many commands.
+     * <p>
+     * The lines are read and parsed on another thread while the commands run on this one, in chunks through a bounded queue, and the output goes to the console, which should be buffered. The empty lines and the lines starting with {@code #} are skipped. A failed command is reported with its line number. {@code quit} releases the resources like in the console, but ends the script instead of the application. A summary is printed at the end.
+     * @param script the script.
+     * @param failFast whether the script stops at the first command which fails.
+     * @return the number of the commands which failed, including a failure to read the script.
+     */
+    public int runBatch(BufferedReader script, boolean failFast) {
+        BlockingQueue<ArrayList<ScriptLine>> chunks = new ArrayBlockingQueue<>(BATCH_QUEUE_CAPACITY);
+        Thread parser = new Thread(() -> parseScript(script, chunks), "cvfs-batch-parser");
+        parser.setDaemon(true);
+        parser.start();
+
+        long start = System.nanoTime();
+        int succeeded = 0;
+        int failed = 0;
+        String ending = null;
+        try {
+            batch:
+            while (true) {
+                for (ScriptLine line : chunks.take()) {
+                    if (line.command == null) {
+                        if (line.error != null) {
+                            failed++;
+                            ending = "Cannot read the script after line " + line.number + ": " + line.error;
+                        }
+                        break batch;
+                    }
+                    if (line.command.length == 1 && line.command[0].equals("quit")) {
+                        operationRecord.clearAll();
+                        fs.releaseResource();
+                        ending = "Quit at line " + line.number + ".";
+                        break batch;
+                    }
+                    try {
+                        Operation operation = operationFactory.createOperation(fs, operationRecord, line.command);
+                        operation.exec(console::printLine);
+                        if (operation instanceof UndoableOperation) {
+                            operationRecord.record((UndoableOperation) operation);
+                        }
+                        succeeded++;
+                    } catch (CVFS_Exception e) {
+                        failed++;
+                        console.printLine("Line " + line.number + ": " + e.getMessage());
+                        if (failFast) {
+                            ending = "Stopped at line " + line.number + " by --fail-fast.";
+                            break batch;
+                        }
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            ending = "Interrupted.";
+        } finally {
+            parser.interrupt();
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        console.printLine(String.format("Batch finished: %d commands, %d succeeded, %d failed, in %.3f s (%.0f commands/s).",
+                succeeded + failed, succeeded, failed, seconds, (succeeded + failed) / seconds));
+        if (ending != null) {
+            console.printLine(ending);
+        }
+        console.flush();
+        return failed;
+    }
+
+    /**
+     * Read and parse the lines of a script into chunks, which end with a line without a command.
+     */
+    private static void parseScript(BufferedReader script, BlockingQueue<ArrayList<ScriptLine>> chunks) {
+        ArrayList<ScriptLine> chunk = new ArrayList<>(BATCH_CHUNK);
+        int number = 0;
+        String error = null;
+        try {
+            try {
+                String line;
+                while ((line = script.readLine()) != null) {
+                    number++;
+                    String trimmed = line.trim();
+                    if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                        continue;
+                    }
+                    chunk.add(new ScriptLine(number, Console.parse(trimmed), null));
+                    if (chunk.size() == BATCH_CHUNK) {
+                        chunks.put(chunk);
+                        chunk = new ArrayList<>(BATCH_CHUNK);
+                    }
+                }
+            } catch (IOException e) {
+                error = e.getMessage();
+            }
+            chunk.add(new ScriptLine(number, null, error));
+            chunks.put(chunk);
+        } catch (InterruptedException ignored) {
+            // The script has stopped early, so the rest of it is not needed.
+        }
+    }
+
+    /**
+     * A parsed line of a script.
+     */
+    private static final class ScriptLine {
+        private final int number;
+
+        /**
+         * The parsed command, or {@code null} at the end of the script.
+         */
+        private final String[] command;
+
+        /**
+         * The error which ended the script early, or {@code null}.
+         */
+        private final String error;
+
+        ScriptLine(int number, String[] command, String error) {
+            this.number = number;
+            this.command = command;
+            this.error = error;
+        }
+    }
 }
 
@@ -0,0 +1,117 @@
+package hk.edu.polyu.comp.comp2021.cvfs.controller;
+
+import hk.edu.polyu.comp.comp2021.cvfs.cli.Console;
+import hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.FileSystem;
+import hk.edu.polyu.comp.comp2021.cvfs.service.operationservice.OperationFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <h2>The {@code Server} Class</h2>
+ * The server mode of the application, which accepts many command sessions on a local socket, and runs every session like the console, on a thread of its own.
+ * <p>
+ * Every session has its own {@code Controller}, console, working directory and operation record, and all sessions share one file system, which is put into the concurrent mode, and one operation factory. A client sends one command per line, as typed into the console, and the session answers with the output of the command, followed by the prompt, which is not ended by a line separator, e.g., {@code admin@CVFS $ >> }. {@code quit} ends the session, not the application.
+ * <p>
+ * The server only listens on the loopback address, since the sessions are not authenticated.
+ * @see Controller#serveSession()
+ */
+public final class Server implements Closeable {
+    /**
+     * The port of {@code --server} without a port.
+     */
+    public static final int DEFAULT_PORT = 2021;
+
+    private final FileSystem fs;
+
+    private final ServerSocket serverSocket;
+
+    /**
+     * The operation factory shared by the sessions, so they share the cache of the searches.
+     */
+    private final OperationFactory operationFactory = new OperationFactory();
+
+    /**
+     * The threads of the sessions, one per session, which are created as the sessions come and reused after they end.
+     */
+    private final ExecutorService sessions;
+
+    private final AtomicInteger sessionCount = new AtomicInteger();
+
+
+    /**
+     * Constructs a server listening on a port of the loopback address, and puts the file system into the concurrent mode.
+     * @param fs the file system shared by the sessions.
+     * @param port the port, or {@code 0} for any free port, see {@code getPort()}.
+     * @throws IOException if the port cannot be listened on.
+     */
+    public Server(FileSystem fs, int port) throws IOException {
+        this.fs = fs;
+        fs.setConcurrent(true);
+        serverSocket = new ServerSocket(port, 512, InetAddress.getLoopbackAddress());
+        sessions = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "cvfs-session-" + sessionCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Get the port the server listens on.
+     * @return the port.
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Accept the sessions until the server is closed.
+     * @throws IOException if accepting a session fails for another reason than closing the server.
+     */
+    public void serve() throws IOException {
+        while (!serverSocket.isClosed()) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (SocketException e) {
+                if (serverSocket.isClosed()) {
+                    return;
+                }
+                throw e;
+            }
+            socket.setTcpNoDelay(true);
+            sessions.execute(() -> serveSession(socket));
+        }
+    }
+
+    /**
+     * Run a session until the client quits or disconnects.
+     */
+    private void serveSession(Socket socket) {
+        try (Socket session = socket;
+             PrintStream out = new PrintStream(new BufferedOutputStream(session.getOutputStream()), false, "UTF-8")) {
+            Console console = new Console(session.getInputStream(), out);
+            new Controller(fs, console, operationFactory).serveSession();
+        } catch (IOException ignored) {
+            // The client has gone, and so has the session.
+        }
+    }
+
+    /**
+     * Stop accepting sessions. The running sessions go on until their clients quit or disconnect.
+     */
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        sessions.shutdown();
+    }
+}
@@ -0,0 +1,491 @@
+package hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion;
+
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.compositecriterion.ExpressionCriterion;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.compositecriterion.LogicAndCriterion;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.compositecriterion.LogicOrCriterion;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.compositecriterion.NegationCriterion;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.simplecriterion.IsDocument;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.simplecriterion.NameCriterion;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.simplecriterion.SizeCriterion;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.simplecriterion.TypeCriterion;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Document;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.File;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.function.Predicate;
+
+/**
+ * <h3>The {@code CriterionCompiler} Class</h3>
+ * Compiles a {@code Criterion} tree into a specialized predicate, which gives the same results as {@code Criterion.check()} but is cheaper to evaluate over many files, e.g., in {@code rSearch}.
+ * <p>
+ * {@code Criterion.check()} interprets the tree on every file: a size criterion switches on its operator string, and every composite criterion makes virtual calls to its operands. The compiler does these once instead:
+ * <ul>
+ *     <li>The operators are resolved into lambdas, each of which does a single comparison.</li>
+ *     <li>Constants are folded, e.g., {@code size < 0} or a type that no document can have is always false, {@code !!c} is {@code c}, and a constant operand decides or disappears from a binary criterion.</li>
+ *     <li>Nested conjunctions and disjunctions are flattened, and their operands are reordered from the cheapest to the most expensive, e.g., the simple criteria before the composite ones, so short-circuiting skips the expensive ones as often as possible. Operands of the same cost keep their order. Since the criteria have no side effects, the order does not change the results.</li>
+ * </ul>
+ * A criterion used several times in a tree is compiled only once.
+ *
+ * <h4>Adaptive Reordering</h4>
+ * The static order cannot tell which operand rejects (or, in a disjunction, accepts) a file sooner, since that depends on the files. An adaptive predicate, for a long search like {@code rSearch}, measures it instead. Every conjunction or disjunction profiles its operands for {@code ADAPT_PERIOD} evaluations: it counts how often each operand is evaluated and decides the result, and samples how long it takes. Then it reorders its operands by the expected cost per decision, i.e., {@code cost / P(decides)}, which is the optimal order for independent operands, and evaluates them in that order with no profiling for {@code RUN_PERIOD} evaluations, before it profiles again. The counts decay at every reordering, so the order follows the files as the search moves through the tree. The results are the same in any order.
+ */
+public final class CriterionCompiler {
+    /**
+     * The estimated cost of a simple criterion. All of them are {@code O(1)}, since the names are at most 10 characters long, and which of them rejects a file sooner depends on the files rather than the criteria, so they are not told apart here.
+     */
+    private static final int SIMPLE_COST = 1;
+
+    /**
+     * The estimated cost of a criterion the compiler does not know, which is interpreted.
+     */
+    private static final int UNKNOWN_COST = 4;
+
+    private static final Predicate<File> ALWAYS = file -> true;
+
+    private static final Predicate<File> NEVER = file -> false;
+
+    /**
+     * The number of evaluations an adaptive conjunction or disjunction profiles its operands for.
+     */
+    static final int ADAPT_PERIOD = 1024;
+
+    /**
+     * The number of evaluations an adaptive conjunction or disjunction runs without profiling between two profiling periods.
+     */
+    static final int RUN_PERIOD = ADAPT_PERIOD * 16;
+
+    /**
+     * An operand is timed once in this many evaluations while it is profiled.
+     */
+    private static final int SAMPLE_MASK = 7;
+
+    /**
+     * The time it takes to read the clock, which is taken from the timed evaluations.
+     */
+    private static final long CLOCK_OVERHEAD = measureClockOverhead();
+
+    private CriterionCompiler() {}
+
+    /**
+     * Compile a criterion, with the operands of the conjunctions and disjunctions in a static order.
+     * @param criterion the criterion.
+     * @return the predicate, which is {@code true} for exactly the files satisfying the criterion.
+     */
+    public static Predicate<File> compile(Criterion criterion) {
+        return translate(criterion, new IdentityHashMap<>()).emit(false);
+    }
+
+    /**
+     * Compile a criterion, with the operands of the conjunctions and disjunctions reordered by their costs and selectivities measured during the evaluations, see the class notes.
+     * <p>
+     * The predicate can be shared by several threads. They race on the statistics, which only makes them less precise, but never on the results.
+     * @param criterion the criterion.
+     * @return the predicate, which is {@code true} for exactly the files satisfying the criterion.
+     */
+    public static Predicate<File> compileAdaptive(Criterion criterion) {
+        return translate(criterion, new IdentityHashMap<>()).emit(true);
+    }
+
+    /**
+     * Translate a criterion into a simplified node, reusing the nodes of the criteria already translated.
+     */
+    private static Node translate(Criterion criterion, IdentityHashMap<Criterion, Node> translated) {
+        Node node = translated.get(criterion);
+        if (node == null) {
+            node = translateNew(criterion, translated);
+            translated.put(criterion, node);
+        }
+        return node;
+    }
+
+    private static Node translateNew(Criterion criterion, IdentityHashMap<Criterion, Node> translated) {
+        if (criterion instanceof IsDocument) {
+            return new Leaf(file -> file instanceof Document, SIMPLE_COST);
+        }
+        if (criterion instanceof TypeCriterion) {
+            String typename = ((TypeCriterion) criterion).getTypename();
+            if (!Document.isValidType(typename)) {
+                return Constant.FALSE;
+            }
+            return new Leaf(file -> (file instanceof Document) && typename.equals(((Document) file).getType()), SIMPLE_COST);
+        }
+        if (criterion instanceof NameCriterion) {
+            String target = ((NameCriterion) criterion).getTarget();
+            if (target.isEmpty()) {
+                return Constant.TRUE;
+            }
+            return new Leaf(file -> file.getName().contains(target), SIMPLE_COST);
+        }
+        if (criterion instanceof SizeCriterion) {
+            return translateSize((SizeCriterion) criterion);
+        }
+
+        if (criterion instanceof ExpressionCriterion) {
+            return translate(((ExpressionCriterion) criterion).getRoot(), translated);
+        }
+
+        Criterion[] operands = criterion.getDependencies();
+        if (criterion instanceof NegationCriterion) {
+            return negate(translate(operands[0], translated));
+        }
+        if (criterion instanceof LogicAndCriterion || criterion instanceof LogicOrCriterion) {
+            boolean and = criterion instanceof LogicAndCriterion;
+            return junction(and, translate(operands[0], translated), translate(operands[1], translated));
+        }
+        return new Leaf(criterion::check, UNKNOWN_COST); // A criterion the compiler does not know is interpreted.
+    }
+
+    /**
+     * Translate the range a size criterion is resolved into. The sizes are never negative, so the part of the range below zero is dropped, an empty or full range is a constant, and a range open at one end is a single comparison.
+     */
+    private static Node translateSize(SizeCriterion criterion) {
+        long min = Math.max(criterion.getMinSize(), 0);
+        long max = criterion.getMaxSize();
+        boolean negated = criterion.isNegated();
+        if (min > max) {
+            return negated ? Constant.TRUE : Constant.FALSE;
+        }
+        if (min == 0 && max == Long.MAX_VALUE) {
+            return negated ? Constant.FALSE : Constant.TRUE;
+        }
+
+        Predicate<File> predicate;
+        if (min == max) {
+            predicate = negated ? file -> file.getSize() != min : file -> file.getSize() == min;
+        } else if (max == Long.MAX_VALUE) {
+            predicate = negated ? file -> file.getSize() < min : file -> file.getSize() >= min;
+        } else if (min == 0) {
+            predicate = negated ? file -> file.getSize() > max : file -> file.getSize() <= max;
+        } else if (negated) {
+            predicate = file -> {
+                long size = file.getSize();
+                return size < min || size > max;
+            };
+        } else {
+            predicate = file -> {
+                long size = file.getSize();
+                return size >= min && size <= max;
+            };
+        }
+        return new Leaf(predicate, SIMPLE_COST);
+    }
+
+    private static Node negate(Node node) {
+        if (node instanceof Constant) {
+            return (node == Constant.TRUE) ? Constant.FALSE : Constant.TRUE;
+        }
+        if (node instanceof Not) {
+            return ((Not) node).operand;
+        }
+        return new Not(node);
+    }
+
+    /**
+     * Build a conjunction or a disjunction, flattening the nested ones of the same kind and folding the constants.
+     */
+    private static Node junction(boolean and, Node first, Node second) {
+        Constant identity = and ? Constant.TRUE : Constant.FALSE;
+        ArrayList<Node> operands = new ArrayList<>();
+        for (Node node : new Node[]{first, second}) {
+            if (node == identity) {
+                continue;
+            }
+            if (node instanceof Constant) {
+                return node; // The other constant decides the result.
+            }
+            if (node instanceof Junction && ((Junction) node).and == and) {
+                operands.addAll(((Junction) node).operands);
+            } else {
+                operands.add(node);
+            }
+        }
+        if (operands.isEmpty()) {
+            return identity;
+        }
+        if (operands.size() == 1) {
+            return operands.get(0);
+        }
+        return new Junction(and, operands);
+    }
+
+
+    /* The nodes of a compiled criterion */
+
+    private abstract static class Node {
+        /**
+         * Estimate the cost of evaluating the node.
+         */
+        abstract int cost();
+
+        /**
+         * Build the predicate of the node.
+         * @param adaptive whether the conjunctions and disjunctions reorder their operands adaptively.
+         */
+        abstract Predicate<File> emit(boolean adaptive);
+    }
+
+    private static final class Constant extends Node {
+        static final Constant TRUE = new Constant(true), FALSE = new Constant(false);
+
+        private final boolean value;
+
+        private Constant(boolean value) {
+            this.value = value;
+        }
+
+        @Override
+        int cost() {
+            return 0;
+        }
+
+        @Override
+        Predicate<File> emit(boolean adaptive) {
+            return value ? ALWAYS : NEVER;
+        }
+    }
+
+    private static final class Leaf extends Node {
+        private final Predicate<File> predicate;
+
+        private final int cost;
+
+        Leaf(Predicate<File> predicate, int cost) {
+            this.predicate = predicate;
+            this.cost = cost;
+        }
+
+        @Override
+        int cost() {
+            return cost;
+        }
+
+        @Override
+        Predicate<File> emit(boolean adaptive) {
+            return predicate;
+        }
+    }
+
+    private static final class Not extends Node {
+        private final Node operand;
+
+        Not(Node operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        int cost() {
+            return operand.cost();
+        }
+
+        @Override
+        Predicate<File> emit(boolean adaptive) {
+            Predicate<File> predicate = operand.emit(adaptive);
+            return file -> !predicate.test(file);
+        }
+    }
+
+    private static final class Junction extends Node {
+        private final boolean and;
+
+        private final ArrayList<Node> operands;
+
+        private final int cost;
+
+        Junction(boolean and, ArrayList<Node> operands) {
+            this.and = and;
+            this.operands = operands;
+            int cost = 0;
+            for (Node operand : operands) {
+                cost += operand.cost();
+            }
+            this.cost = cost;
+        }
+
+        @Override
+        int cost() {
+            return cost;
+        }
+
+        @Override
+        Predicate<File> emit(boolean adaptive) {
+            ArrayList<Node> sorted = new ArrayList<>(operands);
+            sorted.sort(Comparator.comparingInt(Node::cost)); // Stable, so operands of the same cost keep their order.
+            Predicate<File>[] predicates = toArray(sorted, adaptive);
+            if (adaptive) {
+                return new AdaptiveJunction(and, predicates);
+            }
+
+            // The common small cases get their own lambdas, with no loop to run.
+            if (predicates.length == 2) {
+                Predicate<File> p0 = predicates[0], p1 = predicates[1];
+                return and ? file -> p0.test(file) && p1.test(file) : file -> p0.test(file) || p1.test(file);
+            }
+            if (predicates.length == 3) {
+                Predicate<File> p0 = predicates[0], p1 = predicates[1], p2 = predicates[2];
+                return and ? file -> p0.test(file) && p1.test(file) && p2.test(file) : file -> p0.test(file) || p1.test(file) || p2.test(file);
+            }
+            if (and) {
+                return file -> {
+                    for (Predicate<File> predicate : predicates) {
+                        if (!predicate.test(file)) {
+                            return false;
+                        }
+                    }
+                    return true;
+                };
+            }
+            return file -> {
+                for (Predicate<File> predicate : predicates) {
+                    if (predicate.test(file)) {
+                        return true;
+                    }
+                }
+                return false;
+            };
+        }
+
+        private static Predicate<File>[] toArray(ArrayList<Node> nodes, boolean adaptive) {
+            Predicate<File>[] predicates = newPredicates(nodes.size());
+            for (int i = 0; i < predicates.length; i++) {
+                predicates[i] = nodes.get(i).emit(adaptive);
+            }
+            return predicates;
+        }
+    }
+
+    /**
+     * A conjunction or disjunction which reorders its operands by their measured costs and selectivities, see the class notes.
+     */
+    private static final class AdaptiveJunction implements Predicate<File> {
+        private final boolean and;
+
+        private final Predicate<File>[] operands;
+
+        /**
+         * The operands in the order to evaluate them in, and their indexes. New arrays are published at every reordering, so a thread evaluating the old order is not disturbed.
+         */
+        private volatile Predicate<File>[] ordered;
+
+        private volatile int[] order;
+
+        /**
+         * The statistics of every operand: how often it was evaluated, how often it decided the result, how often it was timed, and the total time of the timed evaluations.
+         */
+        private final long[] evaluated, decided, timed, nanos;
+
+        private boolean profiling = true;
+
+        private int countdown = ADAPT_PERIOD;
+
+        AdaptiveJunction(boolean and, Predicate<File>[] operands) {
+            this.and = and;
+            this.operands = operands;
+            int[] order = new int[operands.length];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            this.order = order;
+            this.ordered = operands.clone();
+            evaluated = new long[operands.length];
+            decided = new long[operands.length];
+            timed = new long[operands.length];
+            nanos = new long[operands.length];
+        }
+
+        @Override
+        public boolean test(File file) {
+            if (--countdown <= 0) {
+                if (profiling) {
+                    reorder();
+                }
+                profiling = !profiling;
+                countdown = profiling ? ADAPT_PERIOD : RUN_PERIOD;
+            }
+            if (!profiling) {
+                for (Predicate<File> operand : ordered) {
+                    if (operand.test(file) != and) { // false decides a conjunction, and true decides a disjunction.
+                        return !and;
+                    }
+                }
+                return and;
+            }
+
+            for (int i : order) {
+                boolean value;
+                if ((evaluated[i]++ & SAMPLE_MASK) == 0) {
+                    long start = System.nanoTime();
+                    value = operands[i].test(file);
+                    nanos[i] += System.nanoTime() - start;
+                    timed[i]++;
+                } else {
+                    value = operands[i].test(file);
+                }
+                if (value != and) {
+                    decided[i]++;
+                    return value;
+                }
+            }
+            return and;
+        }
+
+        /**
+         * Sort the operands by their expected costs per decision. The operands never evaluated have no statistics yet, and keep their places after the others.
+         */
+        private void reorder() {
+            int n = operands.length;
+            int[] current = order;
+            double[] rank = new double[n];
+            Integer[] sorted = new Integer[n];
+            for (int i = 0; i < n; i++) {
+                int operand = current[i];
+                sorted[i] = operand;
+                if (timed[operand] == 0) {
+                    rank[operand] = Double.POSITIVE_INFINITY;
+                } else {
+                    double cost = Math.max(1.0, (double) nanos[operand] / timed[operand] - CLOCK_OVERHEAD);
+                    double probability = (decided[operand] + 1.0) / (evaluated[operand] + 2.0); // Never 0, so an operand that never decides is only ranked last.
+                    rank[operand] = cost / probability;
+                }
+                // Decay, so the statistics follow the recent files. The average cost is kept, while the selectivity of an operand no longer evaluated drifts back towards the prior, so it is tried again if the others turn out to be expensive.
+                evaluated[operand] = (evaluated[operand] + 1) / 2;
+                decided[operand] /= 2;
+                if (timed[operand] > 1) {
+                    nanos[operand] = nanos[operand] / timed[operand] * ((timed[operand] + 1) / 2);
+                    timed[operand] = (timed[operand] + 1) / 2;
+                }
+            }
+            Arrays.sort(sorted, Comparator.comparingDouble(operand -> rank[operand]));
+            int[] order = new int[n];
+            Predicate<File>[] ordered = newPredicates(n);
+            for (int i = 0; i < n; i++) {
+                order[i] = sorted[i];
+                ordered[i] = operands[sorted[i]];
+            }
+            this.order = order;
+            this.ordered = ordered;
+        }
+    }
+
+    /**
+     * Create an array of predicates, since an array of a generic type cannot be created directly.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Predicate<File>[] newPredicates(int length) {
+        return new Predicate[length];
+    }
+
+    /**
+     * Measure the least time between two readings of the clock.
+     */
+    private static long measureClockOverhead() {
+        long least = Long.MAX_VALUE;
+        for (int i = 0; i < 1000; i++) {
+            long start = System.nanoTime();
+            least = Math.min(least, System.nanoTime() - start);
+        }
+        return least;
+    }
+}
@@ -6,8 +6,11 @@ import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.compositecriteri
 import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.simplecriterion.NameCriterion;
 import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.simplecriterion.SizeCriterion;
 import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.simplecriterion.TypeCriterion;
+import hk.edu.polyu.comp.comp2021.cvfs.model.internalexceptions.CriterionNotExistsException;
 import hk.edu.polyu.comp.comp2021.cvfs.model.internalexceptions.InvalidCriterionParameterException;
 
+import java.util.Map;
+
 /**
  * <h3>The {@code CriterionFactory} Class</h3>
  * Similar to the {@code OperationFactory} class, The {@code CriterionFactory} class is designed to create {@code Criterion} objects of the correspond criteria specified by user commands.
@@ -25,13 +28,18 @@ public final class CriterionFactory {
      * @param criName the name of the new criterion.
      * @param attrType the type of the attribute.
      * @param op the operator.
-     * @param val the value.
+     * @param values the value, or the two values of {@code size between}.
      * @return a new simple criterion.
      * @throws InvalidCriterionParameterException if any given parameter(s) are invalid.
      */
-    public Criterion createSimpleCriterion(String criName, String attrType, String op, String val) throws InvalidCriterionParameterException {
+    public Criterion createSimpleCriterion(String criName, String attrType, String op, String... values) throws InvalidCriterionParameterException {
         try {
             checkCriName(criName);
+            int arity = (attrType.equals("size") && op.equals("between")) ? 2 : 1;
+            if (values.length != arity) {
+                throw new InvalidCriterionParameterException("Expected " + arity + " value(s), but got " + values.length);
+            }
+            String val = values[0];
 
             switch (attrType) {
                 case "name": {
@@ -53,6 +61,9 @@ public final class CriterionFactory {
                     return new TypeCriterion(criName, val.substring(1, val.length() - 1));
                 }
                 case "size":
+                    if (arity == 2) {
+                        return new SizeCriterion(criName, Long.parseLong(val), Long.parseLong(values[1]));
+                    }
                     return new SizeCriterion(criName, op, Long.parseLong(val)); // The validity of op will be judged in the SizeCriterion constructor.
                 default:
                     throw new InvalidCriterionParameterException("Unknown attribute type: " + attrType);
@@ -101,6 +112,23 @@ public final class CriterionFactory {
         }
     }
 
+    /**
+     * Generate a new criterion from a boolean expression over the names, types and sizes of the files and the existing criteria, e.g., {@code name contains "a" && !(type equals "txt" || size between 10 100) || IsDocument}.
+     * <p>
+     * {@code !} binds tighter than {@code &&}, which binds tighter than {@code ||}. The expression is parsed into a DAG where equal subexpressions are shared, see {@code CriterionParser}, and only the new criterion has to be added to the list.
+     *
+     * @param criName the name of the new criterion.
+     * @param expression the expression.
+     * @param criteria the existing criteria by their names.
+     * @return a new expression criterion.
+     * @throws InvalidCriterionParameterException if any given parameter(s) are invalid.
+     * @throws CriterionNotExistsException if the expression refers to a criterion which does not exist.
+     */
+    public Criterion createExpressionCriterion(String criName, String expression, Map<String, Criterion> criteria) throws InvalidCriterionParameterException, CriterionNotExistsException {
+        checkCriName(criName);
+        return new CriterionParser(criName, criteria).parse(expression);
+    }
+
     /**
      * Check if the name of a criterion is valid.
      * @param criName the name of the criterion.
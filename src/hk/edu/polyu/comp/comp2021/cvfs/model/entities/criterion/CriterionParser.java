@@ -0,0 +1,315 @@
+package hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion;
+
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.compositecriterion.ExpressionCriterion;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.compositecriterion.LogicAndCriterion;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.compositecriterion.LogicOrCriterion;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.compositecriterion.NegationCriterion;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.simplecriterion.NameCriterion;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.simplecriterion.SizeComparator;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.simplecriterion.SizeCriterion;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.simplecriterion.TypeCriterion;
+import hk.edu.polyu.comp.comp2021.cvfs.model.internalexceptions.CriterionNotExistsException;
+import hk.edu.polyu.comp.comp2021.cvfs.model.internalexceptions.InvalidCriterionParameterException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * <h3>The {@code CriterionParser} Class</h3>
+ * The recursive descent parser of the criterion expressions, see {@code CriterionFactory.createExpressionCriterion()}. The grammar is:
+ * <pre>
+ * or    := and ('||' and)*
+ * and   := unary ('&amp;&amp;' unary)*
+ * unary := '!' unary | '(' or ')' | atom
+ * atom  := 'name' 'contains' "..." | 'type' 'equals' "..." | 'size' op value | 'size' 'between' value value | criName
+ * </pre>
+ * Every criterion is built once per parse and shared by all its occurrences, i.e., hash-consed: a criterion is looked up by its operator and the identities of its operands, so equal subexpressions end up as the same object, and the expression is a DAG. {@code !!a}, {@code a && a} and {@code a || a} are reduced to {@code a} on the way.
+ */
+final class CriterionParser {
+    private final String name;
+
+    private final Map<String, Criterion> criteria;
+
+    private final ArrayList<String> tokens = new ArrayList<>();
+
+    private int position;
+
+    /**
+     * The criteria built so far, by their keys.
+     */
+    private final HashMap<String, Criterion> built = new HashMap<>();
+
+    /**
+     * The identities of the criteria in the DAG, numbered in the order they are first seen.
+     */
+    private final IdentityHashMap<Criterion, Integer> ids = new IdentityHashMap<>();
+
+    /**
+     * The existing criteria the expression refers to, in the order they are first seen.
+     */
+    private final ArrayList<Criterion> dependencies = new ArrayList<>();
+
+    /**
+     * @param name the name of the new criterion, which is also given to every criterion in the DAG.
+     * @param criteria the existing criteria by their names.
+     */
+    CriterionParser(String name, Map<String, Criterion> criteria) {
+        this.name = name;
+        this.criteria = criteria;
+    }
+
+    /**
+     * Parse an expression.
+     * @param expression the expression.
+     * @return the new expression criterion.
+     * @throws InvalidCriterionParameterException if the expression is invalid.
+     * @throws CriterionNotExistsException if the expression refers to a criterion which does not exist.
+     */
+    ExpressionCriterion parse(String expression) throws InvalidCriterionParameterException, CriterionNotExistsException {
+        tokenize(expression);
+        if (tokens.isEmpty()) {
+            throw new InvalidCriterionParameterException("Empty expression");
+        }
+        Criterion root = parseOr();
+        if (position < tokens.size()) {
+            throw new InvalidCriterionParameterException("Unexpected " + tokens.get(position));
+        }
+        return new ExpressionCriterion(name, render(root, 0), root, dependencies.toArray(new Criterion[0]), count(root, new IdentityHashMap<>()));
+    }
+
+    private void tokenize(String expression) throws InvalidCriterionParameterException {
+        int i = 0;
+        int length = expression.length();
+        while (i < length) {
+            char c = expression.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '"') {
+                int end = expression.indexOf('"', i + 1);
+                if (end < 0) {
+                    throw new InvalidCriterionParameterException("Unclosed quote");
+                }
+                tokens.add(expression.substring(i, end + 1));
+                i = end + 1;
+            } else if (c == '(' || c == ')') {
+                tokens.add(String.valueOf(c));
+                i++;
+            } else if (expression.startsWith("&&", i) || expression.startsWith("||", i)
+                    || expression.startsWith(">=", i) || expression.startsWith("<=", i)
+                    || expression.startsWith("==", i) || expression.startsWith("!=", i)) {
+                tokens.add(expression.substring(i, i + 2));
+                i += 2;
+            } else if (c == '!' || c == '>' || c == '<') {
+                tokens.add(String.valueOf(c));
+                i++;
+            } else if (Character.isLetterOrDigit(c) || c == '-' || c == '_' || c == '.') {
+                int start = i;
+                while (i < length && (Character.isLetterOrDigit(expression.charAt(i)) || "-_.".indexOf(expression.charAt(i)) >= 0)) {
+                    i++;
+                }
+                tokens.add(expression.substring(start, i));
+            } else {
+                throw new InvalidCriterionParameterException("Unexpected " + c);
+            }
+        }
+    }
+
+    private Criterion parseOr() throws InvalidCriterionParameterException, CriterionNotExistsException {
+        Criterion left = parseAnd();
+        while (accept("||")) {
+            left = or(left, parseAnd());
+        }
+        return left;
+    }
+
+    private Criterion parseAnd() throws InvalidCriterionParameterException, CriterionNotExistsException {
+        Criterion left = parseUnary();
+        while (accept("&&")) {
+            left = and(left, parseUnary());
+        }
+        return left;
+    }
+
+    private Criterion parseUnary() throws InvalidCriterionParameterException, CriterionNotExistsException {
+        if (accept("!")) {
+            return not(parseUnary());
+        }
+        if (accept("(")) {
+            Criterion inner = parseOr();
+            expect(")");
+            return inner;
+        }
+        return parseAtom();
+    }
+
+    private Criterion parseAtom() throws InvalidCriterionParameterException, CriterionNotExistsException {
+        String word = next();
+        switch (word) {
+            case "name": {
+                expect("contains");
+                String target = unquote(next());
+                return intern("n" + target, new NameCriterion(name, target));
+            }
+            case "type": {
+                expect("equals");
+                String typename = unquote(next());
+                return intern("t" + typename, new TypeCriterion(name, typename));
+            }
+            case "size": {
+                String op = next();
+                SizeComparator comparator = SizeComparator.of(op);
+                if (comparator == null || comparator == SizeComparator.NEVER) {
+                    throw new InvalidCriterionParameterException(op);
+                }
+                if (comparator == SizeComparator.BETWEEN) {
+                    long minSize = number(next());
+                    long maxSize = number(next());
+                    return intern("s" + op + " " + minSize + " " + maxSize, new SizeCriterion(name, minSize, maxSize));
+                }
+                long size = number(next());
+                return intern("s" + op + " " + size, new SizeCriterion(name, op, size));
+            }
+            default: {
+                if (!Character.isLetter(word.charAt(0))) {
+                    throw new InvalidCriterionParameterException("Unexpected " + word);
+                }
+                Criterion criterion = criteria.get(word);
+                if (criterion == null) {
+                    throw new CriterionNotExistsException(word);
+                }
+                if (!ids.containsKey(criterion)) {
+                    dependencies.add(criterion);
+                }
+                return intern("@" + word, criterion);
+            }
+        }
+    }
+
+    private Criterion not(Criterion operand) {
+        if (operand instanceof NegationCriterion && !dependencies.contains(operand)) {
+            return operand.getDependencies()[0];
+        }
+        return intern("!" + ids.get(operand), new NegationCriterion(name, operand));
+    }
+
+    private Criterion and(Criterion left, Criterion right) {
+        if (left == right) {
+            return left;
+        }
+        return intern("&" + pair(left, right), new LogicAndCriterion(name, left, right));
+    }
+
+    private Criterion or(Criterion left, Criterion right) {
+        if (left == right) {
+            return left;
+        }
+        return intern("|" + pair(left, right), new LogicOrCriterion(name, left, right));
+    }
+
+    /**
+     * The key of two operands, in either order, since {@code &&} and {@code ||} are commutative.
+     */
+    private String pair(Criterion left, Criterion right) {
+        int leftId = ids.get(left);
+        int rightId = ids.get(right);
+        return Math.min(leftId, rightId) + " " + Math.max(leftId, rightId);
+    }
+
+    /**
+     * Get the criterion built before with the same key, or take the new one.
+     */
+    private Criterion intern(String key, Criterion criterion) {
+        Criterion existing = built.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        built.put(key, criterion);
+        ids.put(criterion, ids.size());
+        return criterion;
+    }
+
+    /**
+     * Count the distinct criteria reachable from a criterion of the DAG, which leaves out those dropped by the reductions.
+     */
+    private int count(Criterion criterion, IdentityHashMap<Criterion, Boolean> seen) {
+        if (seen.put(criterion, Boolean.TRUE) != null) {
+            return 0;
+        }
+        int count = 1;
+        if (!dependencies.contains(criterion)) {
+            for (Criterion operand : criterion.getDependencies()) {
+                count += count(operand, seen);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Render a criterion of the DAG back into an expression, with the parentheses the precedence needs.
+     * @param precedence {@code 0} in an {@code ||}, {@code 1} in an {@code &&}, or {@code 2} under a {@code !}.
+     */
+    private String render(Criterion criterion, int precedence) {
+        if (dependencies.contains(criterion)) {
+            return criterion.getName();
+        }
+        if (criterion instanceof NameCriterion) {
+            return "name contains \"" + ((NameCriterion) criterion).getTarget() + "\"";
+        }
+        if (criterion instanceof TypeCriterion) {
+            return "type equals \"" + ((TypeCriterion) criterion).getTypename() + "\"";
+        }
+        if (criterion instanceof SizeCriterion) {
+            SizeCriterion size = (SizeCriterion) criterion;
+            if (size.getComparator() == SizeComparator.BETWEEN) {
+                return "size between " + size.getMinSize() + " " + size.getMaxSize();
+            }
+            return "size " + size.getOperator() + " " + size.getSize();
+        }
+        Criterion[] operands = criterion.getDependencies();
+        if (criterion instanceof NegationCriterion) {
+            return "!" + render(operands[0], 2);
+        }
+        boolean isAnd = criterion instanceof LogicAndCriterion;
+        int own = isAnd ? 1 : 0;
+        String text = render(operands[0], own) + (isAnd ? " && " : " || ") + render(operands[1], own);
+        return (precedence > own) ? "(" + text + ")" : text;
+    }
+
+    private boolean accept(String token) {
+        if (position < tokens.size() && tokens.get(position).equals(token)) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(String token) throws InvalidCriterionParameterException {
+        if (!accept(token)) {
+            throw new InvalidCriterionParameterException("Expected " + token);
+        }
+    }
+
+    private String next() throws InvalidCriterionParameterException {
+        if (position >= tokens.size()) {
+            throw new InvalidCriterionParameterException("Unexpected end of expression");
+        }
+        return tokens.get(position++);
+    }
+
+    private static String unquote(String token) throws InvalidCriterionParameterException {
+        if (token.length() <= 2 || !token.startsWith("\"") || !token.endsWith("\"")) {
+            throw new InvalidCriterionParameterException(token);
+        }
+        return token.substring(1, token.length() - 1);
+    }
+
+    private static long number(String token) throws InvalidCriterionParameterException {
+        try {
+            return Long.parseLong(token);
+        } catch (NumberFormatException e) {
+            throw new InvalidCriterionParameterException("An integer expected.");
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.compositecriterion;
+
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.ModelInternalUse;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.Criterion;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.File;
+
+// import java.io.Serial;
+
+/**
+ * <h3>The {@code ExpressionCriterion} Criterion Class</h3>
+ * This class represents the criterion of the {@code newExprCri} command, i.e., a boolean expression over the names, types and sizes of the files and the existing criteria, e.g., {@code name contains "a" && !(type equals "txt" || size > 100)}.
+ * <p>
+ * The expression is parsed into a DAG of the other criteria, which are not in the criterion list and have no names of their own, where equal subexpressions are one shared criterion, see {@code CriterionFactory.createExpressionCriterion()}. Only the existing criteria the expression refers to are its dependencies.
+ */
+public final class ExpressionCriterion implements Criterion {
+    // @Serial
+    private static final long serialVersionUID = 1L;
+
+    private final String name;
+
+    /**
+     * The expression, normalized from the parsed DAG.
+     */
+    private final String expression;
+
+    private final Criterion root;
+
+    /**
+     * The existing criteria the expression refers to.
+     */
+    private final Criterion[] dependencies;
+
+    /**
+     * The number of distinct criteria in the DAG, including the existing ones.
+     */
+    private final int size;
+
+    private int referenceCount;
+
+
+    /**
+     * Construct a new expression criterion.
+     * @param name the name of the criterion.
+     * @param expression the normalized expression.
+     * @param root the root of the parsed DAG.
+     * @param dependencies the existing criteria the expression refers to.
+     * @param size the number of distinct criteria in the DAG.
+     */
+    public ExpressionCriterion(String name, String expression, Criterion root, Criterion[] dependencies, int size) {
+        this.name = name;
+        this.expression = expression;
+        this.root = root;
+        this.dependencies = dependencies;
+        this.size = size;
+        this.referenceCount = 0;
+    }
+
+    @Override
+    public boolean check(File file) {
+        return root.check(file);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get the root of the parsed DAG, which the compiler and the planner look into.
+     * @return the root criterion.
+     */
+    public Criterion getRoot() {
+        return root;
+    }
+
+    /**
+     * Get the number of distinct criteria in the DAG, including the existing ones it refers to.
+     * @return the number of criteria.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public int getReferenceCount() {
+        return referenceCount;
+    }
+
+    @Override
+    @ModelInternalUse
+    public void __INTERNAL__increaseReferenceCount() {
+        referenceCount++;
+    }
+
+    @Override
+    @ModelInternalUse
+    public void __INTERNAL__decreaseReferenceCount() {
+        referenceCount--;
+    }
+
+    @Override
+    public Criterion[] getDependencies() {
+        return dependencies.clone();
+    }
+
+    @Override
+    public String toString() {
+        return name + ": " + expression;
+    }
+}
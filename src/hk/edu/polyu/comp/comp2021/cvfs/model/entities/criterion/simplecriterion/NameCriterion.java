@@ -41,6 +41,14 @@ public final class NameCriterion implements Criterion {
         return name;
     }
 
+    /**
+     * Get the substring to match.
+     * @return the substring to match.
+     */
+    public String getTarget() {
+        return target;
+    }
+
     @Override
     public int getReferenceCount() {
         return referenceCount;
@@ -0,0 +1,58 @@
+package hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.simplecriterion;
+
+/**
+ * <h3>The {@code SizeComparator} Enum</h3>
+ * The comparisons of {@code size} criteria. A {@code SizeCriterion} resolves its comparison into a range of sizes once, when it is constructed, see {@code SizeCriterion.getMinSize()}, so checking a file never looks at the comparison again.
+ */
+public enum SizeComparator {
+    GREATER(">"),
+    LESS("<"),
+    GREATER_OR_EQUAL(">="),
+    LESS_OR_EQUAL("<="),
+    EQUAL("=="),
+    NOT_EQUAL("!="),
+    /**
+     * The sizes from the first value to the second value, both inclusive.
+     */
+    BETWEEN("between"),
+    /**
+     * Never satisfied. This is only for test.
+     */
+    NEVER("?t?");
+
+    private final String symbol;
+
+    SizeComparator(String symbol) {
+        this.symbol = symbol;
+    }
+
+    /**
+     * Get the symbol of the comparison in the user commands.
+     * @return the symbol, e.g., {@code >=}.
+     */
+    public String getSymbol() {
+        return symbol;
+    }
+
+    /**
+     * Get the number of sizes the comparison takes.
+     * @return {@code 2} for {@code BETWEEN}, or {@code 1} for the others.
+     */
+    public int getArity() {
+        return (this == BETWEEN) ? 2 : 1;
+    }
+
+    /**
+     * Find the comparison of a symbol.
+     * @param symbol the symbol, e.g., {@code >=}.
+     * @return the comparison, or {@code null} if the symbol is unknown.
+     */
+    public static SizeComparator of(String symbol) {
+        for (SizeComparator comparator : values()) {
+            if (comparator.symbol.equals(symbol)) {
+                return comparator;
+            }
+        }
+        return null;
+    }
+}
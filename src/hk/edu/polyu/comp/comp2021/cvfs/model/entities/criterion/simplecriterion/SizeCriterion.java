@@ -6,74 +6,202 @@ import hk.edu.polyu.comp.comp2021.cvfs.model.internalexceptions.InvalidCriterion
 import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.File;
 
 // import java.io.Serial;
-import java.util.Arrays;
-import java.util.List;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 
 /**
  * <h3>The {@code SizeCriterion} Criterion Class</h3>
- * This class represents the simple criterion with {@code attrName == size}, see {@code [REQ9]}.
+ * This class represents the simple criterion with {@code attrName == size}, see {@code [REQ9]}, including the ranges of sizes, e.g., {@code size between 100 200}.
+ * <p>
+ * The comparison is resolved once, when the criterion is constructed, into an inclusive range of sizes, which the sizes of the satisfying files are in, or, for {@code !=}, out of. So checking a file costs a pair of primitive comparisons, whatever the comparison is.
  */
 public final class SizeCriterion implements Criterion {
     // @Serial
     private static final long serialVersionUID = 1L;
 
-    private static final List<String> validOperators = Arrays.asList(">", "<", ">=", "<=", "==", "!=", "?t?"); // ?t? is only for test
-
     private final String name;
 
     private final String op;
 
     private final long size;
 
+    /**
+     * The second size of {@code between}, which is {@code 0} for the other comparisons, and in the criteria saved by the earlier versions.
+     */
+    private final long upperSize;
+
     private int referenceCount;
 
+    private transient SizeComparator comparator;
+
+    private transient long minSize;
+
+    private transient long maxSize;
+
+    private transient boolean negated;
+
     /**
-     * Construct a new simple criterion with {@code attrName == name}.
+     * Construct a new simple criterion with {@code attrName == size}.
      * @param name the name of the criterion.
-     * @param op the operator.
+     * @param op the operator, which is not {@code between}.
      * @param size the size to match.
      * @throws InvalidCriterionParameterException if the parameter(s) are invalid.
      */
     public SizeCriterion(String name, String op, long size) throws InvalidCriterionParameterException {
-        if (!isValidFiletype(op)) {
+        SizeComparator comparator = SizeComparator.of(op);
+        if (comparator == null || comparator.getArity() != 1) {
             throw new InvalidCriterionParameterException(op);
         }
 
         this.name = name;
         this.op = op;
         this.size = size;
+        this.upperSize = 0;
         this.referenceCount = 0;
+        resolve();
     }
 
-    private boolean isValidFiletype(String type) {
-        return validOperators.contains(type);
+    /**
+     * Construct a new simple criterion with {@code attrName == size} and {@code op == between}.
+     * @param name the name of the criterion.
+     * @param minSize the least size to match, inclusive.
+     * @param maxSize the greatest size to match, inclusive.
+     * @throws InvalidCriterionParameterException if the least size is greater than the greatest size.
+     */
+    public SizeCriterion(String name, long minSize, long maxSize) throws InvalidCriterionParameterException {
+        if (minSize > maxSize) {
+            throw new InvalidCriterionParameterException(minSize + " > " + maxSize);
+        }
+
+        this.name = name;
+        this.op = SizeComparator.BETWEEN.getSymbol();
+        this.size = minSize;
+        this.upperSize = maxSize;
+        this.referenceCount = 0;
+        resolve();
     }
 
-    @Override
-    public boolean check(File file) {
-        switch (op) {
-            case ">":
-                return file.getSize() > size;
-            case "<":
-                return file.getSize() < size;
-            case ">=":
-                return file.getSize() >= size;
-            case "<=":
-                return file.getSize() <= size;
-            case "==":
-                return file.getSize() == size;
-            case "!=":
-                return file.getSize() != size;
+    /**
+     * Resolve the comparison into the range of sizes. An empty range is {@code [1, 0]}.
+     */
+    private void resolve() {
+        comparator = SizeComparator.of(op);
+        minSize = Long.MIN_VALUE;
+        maxSize = Long.MAX_VALUE;
+        negated = false;
+        switch (comparator) {
+            case GREATER:
+                if (size == Long.MAX_VALUE) {
+                    setEmpty();
+                } else {
+                    minSize = size + 1;
+                }
+                break;
+            case LESS:
+                if (size == Long.MIN_VALUE) {
+                    setEmpty();
+                } else {
+                    maxSize = size - 1;
+                }
+                break;
+            case GREATER_OR_EQUAL:
+                minSize = size;
+                break;
+            case LESS_OR_EQUAL:
+                maxSize = size;
+                break;
+            case NOT_EQUAL:
+                negated = true;
+                minSize = size;
+                maxSize = size;
+                break;
+            case EQUAL:
+                minSize = size;
+                maxSize = size;
+                break;
+            case BETWEEN:
+                minSize = size;
+                maxSize = upperSize;
+                break;
             default:
-                return false;
+                setEmpty();
+                break;
         }
     }
 
+    private void setEmpty() {
+        minSize = 1;
+        maxSize = 0;
+    }
+
+    // @Serial
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (SizeComparator.of(op) == null) {
+            throw new IOException("Unknown size comparison: " + op);
+        }
+        resolve();
+    }
+
+    @Override
+    public boolean check(File file) {
+        long fileSize = file.getSize();
+        return (fileSize >= minSize && fileSize <= maxSize) != negated;
+    }
+
     @Override
     public String getName() {
         return name;
     }
 
+    /**
+     * Get the operator.
+     * @return the operator, e.g., {@code >=}.
+     */
+    public String getOperator() {
+        return op;
+    }
+
+    /**
+     * Get the comparison.
+     * @return the comparison.
+     */
+    public SizeComparator getComparator() {
+        return comparator;
+    }
+
+    /**
+     * Get the size to compare with.
+     * @return the size to compare with, which is the least size for {@code between}.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Get the least size of the range the comparison is resolved into.
+     * @return the least size, inclusive, which is greater than the greatest size if the range is empty.
+     */
+    public long getMinSize() {
+        return minSize;
+    }
+
+    /**
+     * Get the greatest size of the range the comparison is resolved into.
+     * @return the greatest size, inclusive.
+     */
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Check if the criterion is satisfied by the sizes out of the range, rather than in it, which is only the case for {@code !=}.
+     * @return whether the range is negated.
+     */
+    public boolean isNegated() {
+        return negated;
+    }
+
     @Override
     public int getReferenceCount() {
         return referenceCount;
@@ -98,6 +226,9 @@ public final class SizeCriterion implements Criterion {
 
     @Override
     public String toString() {
+        if (comparator == SizeComparator.BETWEEN) {
+            return name + ": " + "size" + " " + op + " " + size + " " + upperSize;
+        }
         return name + ": " + "size" + " " + op + " " + size;
     }
 }
@@ -43,6 +43,14 @@ public final class TypeCriterion implements Criterion {
         return name;
     }
 
+    /**
+     * Get the type to match.
+     * @return the type to match.
+     */
+    public String getTypename() {
+        return typename;
+    }
+
     @Override
     public int getReferenceCount() {
         return referenceCount;
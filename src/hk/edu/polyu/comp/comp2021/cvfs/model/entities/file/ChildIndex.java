@@ -0,0 +1,507 @@
+package hk.edu.polyu.comp.comp2021.cvfs.model.entities.file;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * <h3>The {@code ChildIndex} Class</h3>
+ * The index of the files in a directory, keyed by their names. The files are always iterated in the order of their names, which is the order of the {@code list} command.
+ * <p>
+ * A {@code TreeMap} costs an entry object of about 40 bytes per file, and a lookup compares strings along a path of scattered nodes. This index uses two compact layouts instead:
+ * <ul>
+ *     <li>A small directory keeps its names and files in two sorted arrays. A lookup is a binary search over adjacent references, and an insertion or a deletion moves a few of them.</li>
+ *     <li>A large directory keeps them in an open-addressing hash table with linear probing, so a lookup is {@code O(1)}. The sorted order is built lazily by the first iteration after a change, and kept until the next change.</li>
+ * </ul>
+ * The index turns into a hash table when it grows over {@code HASH_THRESHOLD} files, and back into arrays when it shrinks below a quarter of that.
+ * <p>
+ * Like a {@code TreeMap}, the index is not thread-safe, and its iterators fail fast if it is changed during the iteration, but it may be read by several threads together as long as none of them changes it. Keys and values must not be {@code null}.
+ */
+public final class ChildIndex extends AbstractMap<String, File> {
+    /**
+     * The size over which the sorted arrays turn into a hash table.
+     */
+    static final int HASH_THRESHOLD = 64;
+
+    private static final int INITIAL_CAPACITY = 4;
+
+    /**
+     * The names, which are sorted in the array layout, or the slots of the hash table, where {@code null} is an empty slot.
+     */
+    private String[] names = new String[INITIAL_CAPACITY];
+
+    /**
+     * The files, in the same positions as their names.
+     */
+    private File[] files = new File[INITIAL_CAPACITY];
+
+    private int size;
+
+    /**
+     * Whether the hash table layout is used.
+     */
+    private boolean hashed;
+
+    /**
+     * The sorted order of a hash table, or {@code null} if it has been changed since the last iteration.
+     */
+    private Order sorted;
+
+    /**
+     * The number of changes, so the iterators can detect a concurrent change.
+     */
+    private int modCount;
+
+
+    /* Lookups */
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public File get(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        int index = indexOf((String) key);
+        return (index < 0) ? null : files[index];
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return (key instanceof String) && indexOf((String) key) >= 0;
+    }
+
+    /**
+     * Find the position of a name.
+     * <p>
+     * An optimistic reader may run this while the index changes its layout, and see {@code hashed} together with the arrays of the other layout, e.g., a full array of names without an empty slot. So the table is read once, and the probe gives up after visiting every slot, and the reader only gets a wrong position, which it throws away.
+     * @return the position, or a negative number if the name is absent.
+     */
+    private int indexOf(String name) {
+        String[] table = names;
+        if (!hashed) {
+            return Arrays.binarySearch(table, 0, size, name);
+        }
+        int mask = table.length - 1;
+        for (int i = hash(name) & mask, probes = 0; probes < table.length && table[i] != null; i = (i + 1) & mask, probes++) {
+            if (table[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Spread the bits of the hash code, since the table only uses the low bits.
+     */
+    private static int hash(String name) {
+        int h = name.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+
+    /* Changes */
+
+    @Override
+    public File put(String name, File file) {
+        if (name == null || file == null) {
+            throw new NullPointerException();
+        }
+        return hashed ? hashPut(name, file) : arrayPut(name, file);
+    }
+
+    @Override
+    public File remove(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        int index = indexOf((String) key);
+        if (index < 0) {
+            return null;
+        }
+        File removed = files[index];
+        if (hashed) {
+            hashRemoveAt(index);
+            if (size < HASH_THRESHOLD / 4) {
+                toArrays();
+            }
+        } else {
+            System.arraycopy(names, index + 1, names, index, size - index - 1);
+            System.arraycopy(files, index + 1, files, index, size - index - 1);
+            size--;
+            names[size] = null;
+            files[size] = null;
+        }
+        modCount++;
+        return removed;
+    }
+
+    @Override
+    public void clear() {
+        names = new String[INITIAL_CAPACITY];
+        files = new File[INITIAL_CAPACITY];
+        size = 0;
+        hashed = false;
+        sorted = null;
+        modCount++;
+    }
+
+    private File arrayPut(String name, File file) {
+        int index = Arrays.binarySearch(names, 0, size, name);
+        if (index >= 0) {
+            File old = files[index];
+            files[index] = file;
+            return old;
+        }
+        if (size >= HASH_THRESHOLD) {
+            toHashTable();
+            return hashPut(name, file);
+        }
+
+        index = -(index + 1);
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+            files = Arrays.copyOf(files, size * 2);
+        }
+        System.arraycopy(names, index, names, index + 1, size - index);
+        System.arraycopy(files, index, files, index + 1, size - index);
+        names[index] = name;
+        files[index] = file;
+        size++;
+        modCount++;
+        return null;
+    }
+
+    private File hashPut(String name, File file) {
+        int mask = names.length - 1;
+        int i = hash(name) & mask;
+        for (; names[i] != null; i = (i + 1) & mask) {
+            if (names[i].equals(name)) {
+                File old = files[i];
+                files[i] = file;
+                if (sorted != null) {
+                    sorted.files[Arrays.binarySearch(sorted.names, name)] = file;
+                }
+                return old;
+            }
+        }
+        names[i] = name;
+        files[i] = file;
+        size++;
+        sorted = null;
+        modCount++;
+        if (size * 2 > names.length) {
+            rehash(names.length * 2);
+        }
+        return null;
+    }
+
+    /**
+     * Remove the slot of a hash table, and shift the later slots of the same cluster back, so no tombstones are needed.
+     */
+    private void hashRemoveAt(int index) {
+        int mask = names.length - 1;
+        int hole = index;
+        for (int i = (index + 1) & mask; names[i] != null; i = (i + 1) & mask) {
+            int home = hash(names[i]) & mask;
+            // The entry may move into the hole only if its home is not in (hole, i].
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                names[hole] = names[i];
+                files[hole] = files[i];
+                hole = i;
+            }
+        }
+        names[hole] = null;
+        files[hole] = null;
+        size--;
+        sorted = null;
+    }
+
+    /**
+     * Turn the sorted arrays into a hash table, which is built aside and only then swapped in, before {@code hashed} is set.
+     */
+    private void toHashTable() {
+        String[] newNames = new String[tableCapacity(size + 1)];
+        File[] newFiles = new File[newNames.length];
+        int mask = newNames.length - 1;
+        for (int j = 0; j < size; j++) {
+            int i = hash(names[j]) & mask;
+            while (newNames[i] != null) {
+                i = (i + 1) & mask;
+            }
+            newNames[i] = names[j];
+            newFiles[i] = files[j];
+        }
+        // The arrays were sorted already.
+        sorted = new Order(Arrays.copyOf(names, size), Arrays.copyOf(files, size));
+        names = newNames;
+        files = newFiles;
+        hashed = true;
+    }
+
+    private void toArrays() {
+        Order order = sort();
+        int capacity = INITIAL_CAPACITY;
+        while (capacity < size) {
+            capacity *= 2;
+        }
+        names = Arrays.copyOf(order.names, capacity);
+        files = Arrays.copyOf(order.files, capacity);
+        hashed = false;
+        sorted = null;
+    }
+
+    private void rehash(int capacity) {
+        String[] oldNames = names;
+        File[] oldFiles = files;
+        names = new String[capacity];
+        files = new File[capacity];
+        int mask = capacity - 1;
+        for (int j = 0; j < oldNames.length; j++) {
+            if (oldNames[j] != null) {
+                int i = hash(oldNames[j]) & mask;
+                while (names[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                names[i] = oldNames[j];
+                files[i] = oldFiles[j];
+            }
+        }
+    }
+
+    /**
+     * The capacity of a hash table holding {@code n} files, which keeps the load factor at most a half.
+     */
+    private static int tableCapacity(int n) {
+        int capacity = INITIAL_CAPACITY;
+        while (capacity < n * 2) {
+            capacity *= 2;
+        }
+        return capacity;
+    }
+
+    /**
+     * Build the sorted order of a hash table, if it has been changed since the last time.
+     * <p>
+     * This is a change made by the lookups, so it is published as one object with final fields: several threads iterating the index together may each build the order, but none of them sees a half-built one.
+     */
+    private Order sort() {
+        Order sorted = this.sorted;
+        if (sorted != null) {
+            return sorted;
+        }
+        return this.sorted = order();
+    }
+
+    /**
+     * Compute the sorted order of the hash table, without keeping it.
+     */
+    private Order order() {
+        Integer[] order = new Integer[size];
+        int n = 0;
+        for (int i = 0; i < names.length; i++) {
+            if (names[i] != null) {
+                order[n++] = i;
+            }
+        }
+        final String[] table = names;
+        Arrays.sort(order, (a, b) -> table[a].compareTo(table[b]));
+        String[] sortedNames = new String[size];
+        File[] sortedFiles = new File[size];
+        for (int i = 0; i < size; i++) {
+            sortedNames[i] = names[order[i]];
+            sortedFiles[i] = files[order[i]];
+        }
+        return new Order(sortedNames, sortedFiles);
+    }
+
+    /**
+     * Copy the index, e.g., so the files of a directory can be read after it is unlocked, which costs {@code O(n)} without an object per file. The copy uses the array layout, whatever its size, until it is changed.
+     * @return the copy, which is independent of this index.
+     */
+    public ChildIndex copy() {
+        return copy(false);
+    }
+
+    /**
+     * Copy the index, which may be changed by another thread meanwhile, e.g., by an optimistic read of a directory. The copy is then garbage, or an exception is thrown, and the reader throws it away, so the sorted order of a hash table is computed here without being kept, and this index is only read.
+     * @param optimistic whether the index may be changed during the copy.
+     * @return the copy, which is independent of this index.
+     */
+    public ChildIndex copy(boolean optimistic) {
+        ChildIndex copy = new ChildIndex();
+        Order sorted = null;
+        if (hashed) {
+            sorted = this.sorted;
+            if (sorted == null) {
+                sorted = optimistic ? order() : sort();
+            }
+        }
+        int capacity = Math.max(INITIAL_CAPACITY, size);
+        copy.names = Arrays.copyOf(hashed ? sorted.names : names, capacity);
+        copy.files = Arrays.copyOf(hashed ? sorted.files : files, capacity);
+        copy.size = size;
+        return copy;
+    }
+
+    /**
+     * The sorted order of a hash table.
+     */
+    private static final class Order {
+        final String[] names;
+
+        final File[] files;
+
+        Order(String[] names, File[] files) {
+            this.names = names;
+            this.files = files;
+        }
+    }
+
+
+    /* Sorted views */
+
+    /**
+     * Get the files in the reverse order of their names.
+     * @return the files, as a view which cannot be changed.
+     */
+    public Iterable<File> descendingValues() {
+        return () -> new Cursor<File>(true) {
+            @Override
+            File at(String[] names, File[] files, int index) {
+                return files[index];
+            }
+        };
+    }
+
+    @Override
+    public Collection<File> values() {
+        return new AbstractCollection<File>() {
+            @Override
+            public Iterator<File> iterator() {
+                return new Cursor<File>(false) {
+                    @Override
+                    File at(String[] names, File[] files, int index) {
+                        return files[index];
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    @Override
+    public Set<String> keySet() {
+        return new AbstractSet<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                return new Cursor<String>(false) {
+                    @Override
+                    String at(String[] names, File[] files, int index) {
+                        return names[index];
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return containsKey(o);
+            }
+        };
+    }
+
+    @Override
+    public Set<Map.Entry<String, File>> entrySet() {
+        return new AbstractSet<Map.Entry<String, File>>() {
+            @Override
+            public Iterator<Map.Entry<String, File>> iterator() {
+                return new Cursor<Map.Entry<String, File>>(false) {
+                    @Override
+                    Map.Entry<String, File> at(String[] names, File[] files, int index) {
+                        return new SimpleImmutableEntry<>(names[index], files[index]);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * An iterator over the sorted order, which is the arrays themselves in the array layout, or the sorted copies of a hash table.
+     */
+    private abstract class Cursor<T> implements Iterator<T> {
+        private final String[] names;
+
+        private final File[] files;
+
+        private final boolean descending;
+
+        private final int expectedModCount = modCount;
+
+        private int remaining = size;
+
+        private int next;
+
+        Cursor(boolean descending) {
+            if (hashed) {
+                Order sorted = sort();
+                names = sorted.names;
+                files = sorted.files;
+            } else {
+                names = ChildIndex.this.names;
+                files = ChildIndex.this.files;
+            }
+            this.descending = descending;
+            next = descending ? size - 1 : 0;
+        }
+
+        abstract T at(String[] names, File[] files, int index);
+
+        @Override
+        public boolean hasNext() {
+            return remaining > 0;
+        }
+
+        @Override
+        public T next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (remaining == 0) {
+                throw new NoSuchElementException();
+            }
+            remaining--;
+            T result = at(names, files, next);
+            next += descending ? -1 : 1;
+            return result;
+        }
+    }
+}
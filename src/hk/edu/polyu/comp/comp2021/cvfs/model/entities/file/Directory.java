@@ -3,36 +3,92 @@ package hk.edu.polyu.comp.comp2021.cvfs.model.entities.file;
 import hk.edu.polyu.comp.comp2021.cvfs.model.entities.ModelInternalUse;
 import hk.edu.polyu.comp.comp2021.cvfs.model.internalexceptions.CannotInitializeFileException;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 // import java.io.Serial;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * <h3>The {@code Directory} Class</h3>
  * This class represents the directories.
+ *
+ * <h4>Size Accounting</h4>
+ * The size of the root directory, which decides the free space of the virtual disk, is always exact and is updated in {@code O(1)} by every change below it. The sizes of the other directories are aggregated lazily: a change only marks the directories above it as stale, stopping at the first one already stale, and a stale size is recomputed from the children when it is read. So a change costs {@code O(1)} amortized, and reading the size of a directory costs {@code O(1)} unless something below it has changed since the last read.
+ *
+ * <h4>Threads</h4>
+ * Reading the size or the generation of a directory may change the directories below it, so the changes of the sizes and the generations are made under the monitor of the root directory, like the changes of the files by a {@code FileSystem} in the concurrent mode. A fresh size or generation is read without the monitor.
  */
 public final class Directory implements File {
     // @Serial
     private static final long serialVersionUID = 1L;
 
+    /**
+     * The serialized form is kept as it was when the files were kept in a {@code TreeMap} and the paths were stored, so the virtual disks saved by the earlier versions can still be read, and vice versa.
+     */
+    // @Serial
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("id", long.class),
+            new ObjectStreamField("name", String.class),
+            new ObjectStreamField("size", long.class),
+            new ObjectStreamField("files", TreeMap.class),
+            new ObjectStreamField("parent", File.class),
+            new ObjectStreamField("path", String.class)
+    };
+
     /**
      * The size of an empty non-root directory. According to the instruction document, this is 40.
      */
     public static final long EMPTY_NON_ROOT_DIRECTORY_SIZE = 40;
 
+    /**
+     * The identifier of the directory, see {@code File.__INTERNAL__getId()}.
+     */
+    private long id;
+
     /**
      * The name of the directory.
      */
     private String name;
 
     /**
-     * The size of the directory.
+     * The size of the directory, which is exact for the root directory, and is only valid for the others when {@code stale} is {@code false}.
+     */
+    private volatile long size;
+
+    /**
+     * Whether something below this directory has changed since its size was last computed. If a directory is stale, so are all directories above it except the root; equivalently, all directories below a fresh one are fresh.
+     */
+    private transient volatile boolean stale;
+
+    /**
+     * The generation of the directory, see {@code __INTERNAL__getGeneration()}, which is only valid when {@code dirty} is {@code false}.
+     */
+    private transient long generation;
+
+    /**
+     * Whether something at or below this directory has changed since its generation was last read. Like {@code stale}, if a directory is dirty, so are all directories above it.
+     */
+    private transient volatile boolean dirty;
+
+    /**
+     * The last generation given to a directory, shared by all trees, so a generation is never given twice.
+     */
+    private static final AtomicLong lastGeneration = new AtomicLong();
+
+    /**
+     * The root directory of the tree this directory belongs to, which is found lazily for the directories read by the Java serialization. A file never moves to another tree, so this is also the identity of the address space of the directory, see {@code File.__INTERNAL__getRoot()}.
      */
-    private long size;
+    private transient Directory root;
 
     /**
      * The files containing in this directory (subdirectories and documents).
      */
-    private final TreeMap<String, File> files = new TreeMap<>();
+    private ChildIndex files = new ChildIndex();
 
     /**
      * The reference to the parent of the document. Noted this should always be a directory, but the actual type is {@code File} here to reduce dependencies.
@@ -40,9 +96,9 @@ public final class Directory implements File {
     private File parent;
 
     /**
-     * The full path to the directory. For example, {@code $:main:thisDirectory}.
+     * The cache of the paths of the directories in the tree, which is only kept by the root directory and created when it is first needed.
      */
-    private String path;
+    private transient volatile PathCache pathCache;
 
 
     /**
@@ -55,7 +111,7 @@ public final class Directory implements File {
             name = "$";
             size = 0;
             // parent = null;
-            path = name;
+            root = this;
         }
     }
 
@@ -73,7 +129,7 @@ public final class Directory implements File {
         this.name = name;
         this.size = EMPTY_NON_ROOT_DIRECTORY_SIZE;
         this.parent = parent;
-        this.path = (parent.getPath() + ":" + getFullname()); // root folder doesn't have a parent.
+        this.root = parent.root();
     }
 
     /**
@@ -116,13 +172,99 @@ public final class Directory implements File {
 
     /**
      * Update the size with a known change {@code delta}, so there's no more need to count the size of the whole directory again.
+     * <p>
+     * The root directory takes the change at once, and the directories in between are only marked as stale, see the class notes.
      * @param delta the size change.
      */
     @ModelInternalUse
     public void __INTERNAL__updateSize(long delta) {
-        size += delta;
-        if (parent != null) {
-            ((Directory) parent).__INTERNAL__updateSize(delta);
+        Directory root = root();
+        synchronized (root) {
+            root.size += delta;
+            for (Directory directory = this; directory != root && !directory.stale; directory = (Directory) directory.parent) {
+                directory.stale = true;
+            }
+        }
+    }
+
+    /**
+     * Mark that the files in this directory have changed, i.e., a file has been stored into or removed from it, or renamed or modified in it, so this directory and all directories above it get new generations.
+     * <p>
+     * The directories are only marked as dirty, stopping at the first one already dirty, so this costs {@code O(1)} amortized, like {@code __INTERNAL__updateSize()}.
+     */
+    @ModelInternalUse
+    public void __INTERNAL__touch() {
+        synchronized (root()) {
+            for (Directory directory = this; directory != null && !directory.dirty; directory = (Directory) directory.parent) {
+                directory.dirty = true;
+            }
+        }
+    }
+
+    /**
+     * Get the generation of the directory, which changes whenever a file at or below it is stored, removed, renamed or modified, and only then, so a result computed from the files below the directory is still valid as long as its generation is the same.
+     * <p>
+     * Reading the generation of a dirty directory gives a new generation to it and all dirty directories below it, children first with an explicit stack, like the recomputation of the sizes.
+     * @return the generation.
+     */
+    @ModelInternalUse
+    public long __INTERNAL__getGeneration() {
+        if (dirty) {
+            synchronized (root()) {
+                if (dirty) {
+                    long newGeneration = lastGeneration.incrementAndGet();
+                    Deque<Directory> stack = new ArrayDeque<>();
+                    stack.push(this);
+                    while (!stack.isEmpty()) {
+                        Directory directory = stack.pop();
+                        directory.generation = newGeneration;
+                        directory.dirty = false;
+                        for (File file : directory.files.values()) {
+                            if (file instanceof Directory && ((Directory) file).dirty) {
+                                stack.push((Directory) file);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return generation;
+    }
+
+    /**
+     * Get the root directory of the tree, walking up only once for a directory read by the Java serialization.
+     */
+    Directory root() {
+        if (root == null) {
+            root = (parent == null) ? this : ((Directory) parent).root();
+        }
+        return root;
+    }
+
+    /**
+     * Recompute the sizes of this stale directory and all stale directories below it, children first, with an explicit stack so a deep tree does not overflow the call stack.
+     */
+    private void recomputeSize() {
+        Deque<Directory> stack = new ArrayDeque<>();
+        stack.push(this);
+        while (!stack.isEmpty()) {
+            Directory directory = stack.peek();
+            boolean childrenFresh = true;
+            for (File file : directory.files.values()) {
+                if (file instanceof Directory && ((Directory) file).stale) {
+                    stack.push((Directory) file);
+                    childrenFresh = false;
+                }
+            }
+            if (childrenFresh) {
+                long total = (directory.parent == null) ? 0 : EMPTY_NON_ROOT_DIRECTORY_SIZE;
+                for (File file : directory.files.values()) {
+                    total += file.getSize();
+                }
+                directory.size = total;
+                directory.stale = false;
+                stack.pop();
+            }
         }
     }
 
@@ -151,23 +293,74 @@ public final class Directory implements File {
 
     @Override
     public long getSize() {
+        if (stale) {
+            synchronized (root()) {
+                if (stale) {
+                    recomputeSize();
+                }
+            }
+        }
         return size;
     }
 
     /**
      * Get all files.
-     * @return all files in this directory.
+     * @return all files in this directory, in the order of their names.
      */
     @ModelInternalUse
-    public TreeMap<String, File> __MODEL_INTERNAL__getFiles() {
+    public ChildIndex __MODEL_INTERNAL__getFiles() {
         return files;
     }
 
+    /**
+     * The path is not stored, but built from the names of the ancestors, so it is always up to date after they are renamed. The path of the directory is cached by the root directory, and a path is built from the nearest ancestor whose path is cached.
+     */
     @Override
     public String getPath() {
+        if (parent == null) {
+            return name;
+        }
+        PathCache cache = root().pathCache();
+        long generation = cache.generation();
+        String path = cache.get(this);
+        if (path != null) {
+            return path;
+        }
+
+        Deque<Directory> ancestors = new ArrayDeque<>();
+        Directory directory = this;
+        String prefix = null;
+        while (prefix == null) {
+            ancestors.push(directory);
+            directory = (Directory) directory.parent;
+            prefix = (directory.parent == null) ? directory.name : cache.get(directory);
+        }
+        StringBuilder builder = new StringBuilder(prefix);
+        for (Directory ancestor : ancestors) {
+            builder.append(':').append(ancestor.name);
+        }
+        path = builder.toString();
+        cache.put(this, path, generation);
         return path;
     }
 
+    /**
+     * Get the cache of the paths of the tree, which should only be invoked on the root directory.
+     */
+    private PathCache pathCache() {
+        PathCache cache = pathCache;
+        if (cache == null) {
+            synchronized (this) {
+                cache = pathCache;
+                if (cache == null) {
+                    cache = new PathCache();
+                    pathCache = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
     @Override
     @ModelInternalUse
     public File __INTERNAL__getParent() {
@@ -180,16 +373,54 @@ public final class Directory implements File {
     @Override
     @ModelInternalUse
     public File __INTERNAL__getRoot() {
-        Directory toRoot = this;
-        while (toRoot.__INTERNAL__getParent() != null) {
-            toRoot = (Directory)toRoot.__INTERNAL__getParent();
-        }
-        return toRoot;
+        return root();
+    }
+
+    @Override
+    @ModelInternalUse
+    public long __INTERNAL__getId() {
+        return id;
+    }
+
+    @Override
+    @ModelInternalUse
+    public void __INTERNAL__setId(long id) {
+        this.id = id;
     }
 
     @Override
     @ModelInternalUse
     public void __INTERNAL__setName(String newName) {
         name = newName;
+        if (parent != null) {
+            root().pathCache().invalidate();
+        }
+    }
+
+    // @Serial
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("id", id);
+        fields.put("name", name);
+        fields.put("size", getSize());
+        fields.put("files", new TreeMap<>(files));
+        fields.put("parent", parent);
+        fields.put("path", getPath());
+        out.writeFields();
+    }
+
+    // @Serial
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        id = fields.get("id", 0L);
+        name = (String) fields.get("name", null);
+        size = fields.get("size", 0L);
+        parent = (File) fields.get("parent", null);
+        files = new ChildIndex();
+        TreeMap<String, File> saved = (TreeMap<String, File>) fields.get("files", null);
+        if (saved != null) {
+            files.putAll(saved);
+        }
     }
 }
@@ -3,6 +3,10 @@ package hk.edu.polyu.comp.comp2021.cvfs.model.entities.file;
 import hk.edu.polyu.comp.comp2021.cvfs.model.entities.ModelInternalUse;
 import hk.edu.polyu.comp.comp2021.cvfs.model.internalexceptions.CannotInitializeFileException;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 // import java.io.Serial;
 import java.util.Arrays;
 import java.util.List;
@@ -15,6 +19,20 @@ public final class Document implements File {
     // @Serial
     private static final long serialVersionUID = 1L;
 
+    /**
+     * The serialized form is kept as it was when the paths were stored, so the virtual disks saved by the earlier versions can still be read, and vice versa.
+     */
+    // @Serial
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("id", long.class),
+            new ObjectStreamField("name", String.class),
+            new ObjectStreamField("size", long.class),
+            new ObjectStreamField("type", String.class),
+            new ObjectStreamField("content", String.class),
+            new ObjectStreamField("parent", File.class),
+            new ObjectStreamField("path", String.class)
+    };
+
     /**
      * The size of an empty document. According to the instruction document, this is 40.
      */
@@ -25,6 +43,11 @@ public final class Document implements File {
      */
     private static final List<String> validTypes = Arrays.asList("txt", "java", "html", "css");
 
+    /**
+     * The identifier of the document, see {@code File.__INTERNAL__getId()}.
+     */
+    private long id;
+
     /**
      * The name of the doucment.
      */
@@ -38,22 +61,28 @@ public final class Document implements File {
     /**
      * The type of the document, in a string form.
      */
-    private final String type;
+    private String type;
 
     /**
-     * The content of the document.
+     * The content of the document. This is {@code null} until a lazily loaded content is read for the first time.
      */
     private String content;
 
+    /**
+     * The content that is not read yet, or {@code null} if the content is given directly.
+     */
+    private transient LazyContent lazyContent;
+
     /**
      * The reference to the parent of the document. Noted this should always be a directory, but the actual type is {@code File} here to reduce dependencies.
      */
     private File parent;
 
     /**
-     * The full path to the document. For example, {@code $:main:thisTxtDocument.txt}.
+     * The root directory of the tree the document belongs to, which is found lazily for the documents read by the Java serialization.
      */
-    private String path;
+    private transient Directory root;
+
 
 
     /**
@@ -65,16 +94,43 @@ public final class Document implements File {
      * @throws CannotInitializeFileException if any errors are met.
      */
     public Document(String name, String type, String content, Directory parent) throws CannotInitializeFileException {
-        if ((name == null) || !name.matches("[a-zA-Z0-9]+") || !validTypes.contains(type) || (parent == null)) {
+        this(name, type, content, null, parent);
+    }
+
+    /**
+     * Constructs a new document whose content is read only when it is needed. This constructor is used when a virtual disk is loaded lazily.
+     * @param name the name of the new document
+     * @param type the type of the new document.
+     * @param content the content of the new document, which is not read yet.
+     * @param parent the parent of the document.
+     * @throws CannotInitializeFileException if any errors are met.
+     */
+    @ModelInternalUse
+    public Document(String name, String type, LazyContent content, Directory parent) throws CannotInitializeFileException {
+        this(name, type, null, content, parent);
+    }
+
+    private Document(String name, String type, String content, LazyContent lazyContent, Directory parent) throws CannotInitializeFileException {
+        if ((name == null) || !name.matches("[a-zA-Z0-9]+") || !validTypes.contains(type) || (parent == null) || (content == null && lazyContent == null)) {
             throw new CannotInitializeFileException("Invalid parameter(s) for initializing the document.");
         }
-        
+
         this.name = name;
         this.type = type;
         this.content = content;
-        this.size = EMPTY_DOCUMENT_SIZE + content.length() * 2L;
+        this.lazyContent = lazyContent;
+        this.size = EMPTY_DOCUMENT_SIZE + (content != null ? content.length() : lazyContent.length()) * 2L;
         this.parent = parent;
-        this.path = parent.getPath() + ":" + getFullname();
+        this.root = parent.root();
+    }
+
+    /**
+     * Check if a type is valid for the documents.
+     * @param type the type.
+     * @return whether the type is {@code txt}, {@code java}, {@code html} or {@code css}.
+     */
+    public static boolean isValidType(String type) {
+        return validTypes.contains(type);
     }
 
     @Override
@@ -103,14 +159,46 @@ public final class Document implements File {
     /**
      * Get the content of the document.
      * @return the content of the document.
+     * @implNote A lazily loaded content is decoded at the first invocation and kept afterward. If several threads read it for the first time together, each of them may decode it once, which is harmless since the strings are equal.
      */
     public String getContent() {
+        String content = this.content;
+        if (content == null) {
+            content = lazyContent.load();
+            this.content = content;
+        }
         return content;
     }
 
+    /**
+     * Get the content that is not read yet.
+     * @return the lazily loaded content, or {@code null} if the content has been read or was given directly.
+     */
+    @ModelInternalUse
+    public LazyContent __INTERNAL__getLazyContent() {
+        return content == null ? lazyContent : null;
+    }
+
+    /**
+     * Read a lazily loaded content into the memory, if it is not read yet, and forget where it was loaded from, e.g., so that a memory-mapped image is no longer referenced.
+     * @return whether the content was lazily loaded.
+     */
+    @ModelInternalUse
+    public boolean __INTERNAL__loadContent() {
+        if (lazyContent == null) {
+            return false;
+        }
+        content = getContent();
+        lazyContent = null;
+        return true;
+    }
+
+    /**
+     * The path is not stored, but built from the path of the parent, so it is always up to date after the document or its ancestors are renamed.
+     */
     @Override
     public String getPath() {
-        return path;
+        return parent.getPath() + ":" + getFullname();
     }
 
     @Override
@@ -122,7 +210,22 @@ public final class Document implements File {
     @Override
     @ModelInternalUse
     public File __INTERNAL__getRoot() {
-        return parent.__INTERNAL__getRoot();
+        if (root == null) {
+            root = ((Directory) parent).root();
+        }
+        return root;
+    }
+
+    @Override
+    @ModelInternalUse
+    public long __INTERNAL__getId() {
+        return id;
+    }
+
+    @Override
+    @ModelInternalUse
+    public void __INTERNAL__setId(long id) {
+        this.id = id;
     }
 
     @Override
@@ -138,8 +241,36 @@ public final class Document implements File {
     @ModelInternalUse
     public void __INTERNAL__setContent(String newContent) {
         content = newContent;
+        lazyContent = null;
         long oldSize = size;
         size = EMPTY_DOCUMENT_SIZE + content.length() * 2L;
         ((Directory)parent).__INTERNAL__updateSize(size - oldSize);
     }
+
+    /**
+     * A lazily loaded content is read before the document is serialized, since it is not serializable.
+     */
+    // @Serial
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("id", id);
+        fields.put("name", name);
+        fields.put("size", size);
+        fields.put("type", type);
+        fields.put("content", getContent());
+        fields.put("parent", parent);
+        fields.put("path", getPath());
+        out.writeFields();
+    }
+
+    // @Serial
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        id = fields.get("id", 0L);
+        name = (String) fields.get("name", null);
+        size = fields.get("size", 0L);
+        type = (String) fields.get("type", null);
+        content = (String) fields.get("content", null);
+        parent = (File) fields.get("parent", null);
+    }
 }
@@ -51,11 +51,26 @@ public interface File extends Serializable {
     /**
      * Get the root of a {@code File} object.
      * @return the root {@code File} object of this {@code File} object. Noted this method should always return a {@code Directory} object, but it's not ideal to declare here.
-     * @implNote The parent information is usually not maintained by the file directly, but for convenience, we still include the getter of this information.
+     * @implNote The parent information is usually not maintained by the file directly, but for convenience, we still include the getter of this information. Since a file never moves to another tree, the root is kept by every file when it is constructed, so this costs {@code O(1)} whatever the depth of the file is, and the root can serve as the identity of the address space (i.e., the virtual disk) of the file.
      */
     @ModelInternalUse
     public File __INTERNAL__getRoot();
 
+    /**
+     * Get the identifier of the {@code File} object, which is unique in its virtual disk and never changes, even if the file is renamed.
+     * @return the identifier, or {@code 0} if the file has not been stored in a virtual disk yet.
+     * @implNote The identifier is usually the inode number, which is how the saved virtual disk images refer to the files.
+     */
+    @ModelInternalUse
+    public long __INTERNAL__getId();
+
+    /**
+     * Set the identifier of the {@code File} object. This should only be done by the virtual disk.
+     * @param id the identifier.
+     */
+    @ModelInternalUse
+    public void __INTERNAL__setId(long id);
+
     /**
      * Set the name of the {@code File} object. This is useful for renaming. Noted that even if this method sets the name, a {@code File} object should have a default name, and a {@code String} object should also be used to initialize the name.
      * @param newName the new name of the file.
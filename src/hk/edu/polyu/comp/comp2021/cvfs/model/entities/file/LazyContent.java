@@ -0,0 +1,25 @@
+package hk.edu.polyu.comp.comp2021.cvfs.model.entities.file;
+
+/**
+ * <h3>The {@code LazyContent} Interface</h3>
+ * This interface specifies the content of a document that is not yet read into the memory, for example, the content still lying in a memory-mapped image of a virtual disk. The content is only decoded when the document is actually read.
+ *
+ * <h4>Simulation Notes</h4>
+ * A real file system reads only the inodes when a disk is mounted, and the data blocks of a file are read when the file is opened. This interface simulates the data blocks that are not read yet.
+ *
+ * @see Document
+ */
+public interface LazyContent {
+    /**
+     * Get the length of the content, in characters, without decoding it. This is needed to calculate the size of the document.
+     * @return the length of the content.
+     */
+    public int length();
+
+    /**
+     * Decode the content.
+     * @return the content.
+     * @implNote This method may be invoked by several threads at the same time, and every invocation shall return an equal string.
+     */
+    public String load();
+}
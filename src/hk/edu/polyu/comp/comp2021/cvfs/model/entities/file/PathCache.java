@@ -0,0 +1,64 @@
+package hk.edu.polyu.comp.comp2021.cvfs.model.entities.file;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <h3>The {@code PathCache} Class</h3>
+ * A bounded cache of the paths of the directories in a tree, kept by the root directory, so the paths do not have to be stored by every file.
+ * <p>
+ * Renaming a directory changes the paths of everything below it, so it advances the generation of the cache, which drops all the cached paths. A path is only cached if no directory has been renamed since it began to be computed. The least recently used paths are dropped when the cache is full.
+ */
+final class PathCache {
+    /**
+     * The maximum number of cached paths.
+     */
+    static final int CAPACITY = 256;
+
+    private final LinkedHashMap<Directory, String> paths = new LinkedHashMap<Directory, String>(16, 0.75f, true) {
+        // @Serial
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Directory, String> eldest) {
+            return size() > CAPACITY;
+        }
+    };
+
+    /**
+     * The number of directories renamed in the tree.
+     */
+    private long generation;
+
+    /**
+     * Get the current generation, which should be read before a path is computed.
+     */
+    synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * Get the cached path of a directory.
+     * @return the path, or {@code null} if it is not cached.
+     */
+    synchronized String get(Directory directory) {
+        return paths.get(directory);
+    }
+
+    /**
+     * Cache the path of a directory, unless a directory has been renamed since {@code generation}.
+     */
+    synchronized void put(Directory directory, String path, long generation) {
+        if (generation == this.generation) {
+            paths.put(directory, path);
+        }
+    }
+
+    /**
+     * Drop all the cached paths, since a directory is renamed.
+     */
+    synchronized void invalidate() {
+        generation++;
+        paths.clear();
+    }
+}
@@ -0,0 +1,64 @@
+package hk.edu.polyu.comp.comp2021.cvfs.model.entities.vdisk;
+
+/**
+ * <h3>The {@code BackingImage} Class</h3>
+ * This class records the image on the local file system that a virtual disk was last loaded from or saved to, so that the later saves to the same image only append the changes.
+ * <p>
+ * An image consists of a base, which is a full copy of the virtual disk, followed by a number of delta segments, each of which records the changes of one save.
+ */
+public final class BackingImage {
+    private final String path;
+
+    private final long baseLength;
+
+    private final long length;
+
+    private final int deltaSegments;
+
+    private final long lastModified;
+
+
+    /**
+     * Constructs a new record of an image.
+     * @param path the absolute path of the image.
+     * @param baseLength the length of the base, in bytes.
+     * @param length the length of the base and all committed delta segments, in bytes.
+     * @param deltaSegments the number of committed delta segments.
+     * @param lastModified the last modified time of the image after it was read or written, in milliseconds.
+     */
+    public BackingImage(String path, long baseLength, long length, int deltaSegments, long lastModified) {
+        this.path = path;
+        this.baseLength = baseLength;
+        this.length = length;
+        this.deltaSegments = deltaSegments;
+        this.lastModified = lastModified;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public long getBaseLength() {
+        return baseLength;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * Get the total length of the delta segments.
+     * @return the length of the delta segments, in bytes.
+     */
+    public long getDeltaLength() {
+        return length - baseLength;
+    }
+
+    public int getDeltaSegments() {
+        return deltaSegments;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+}
@@ -0,0 +1,159 @@
+package hk.edu.polyu.comp.comp2021.cvfs.model.entities.vdisk;
+
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.File;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NavigableSet;
+
+/**
+ * <h3>The {@code FileHistory} Class</h3>
+ * The old states of a file kept for the snapshots of a virtual disk, which makes the file a "fat node" of a persistent tree.
+ * <p>
+ * Every entry is the state of the file right before its first change in an epoch, and is valid until the end of the previous epoch, i.e., {@code until}. A snapshot taken in epoch {@code e} sees the first entry with {@code until >= e}, or the live state if there is none.
+ * <p>
+ * Two kinds of states are kept separately: the name and the content of the file itself, and, for a directory, which file each name of its children refers to. Both are kept in {@code O(1)} per change.
+ */
+final class FileHistory {
+    /**
+     * The old names and contents, in the order they were replaced.
+     */
+    private final ArrayList<State> states = new ArrayList<>();
+
+    /**
+     * The old children of a directory, in the order they were replaced.
+     */
+    private final ArrayList<Child> children = new ArrayList<>();
+
+    /**
+     * The epoch in which the last state was kept, so a file changed many times in an epoch is only kept once.
+     */
+    private long stateEpoch = -1;
+
+    /**
+     * The epoch in which {@code childNames} were kept.
+     */
+    private long childEpoch = -1;
+
+    private final HashSet<String> childNames = new HashSet<>();
+
+    /**
+     * Keep the state of the file before it is changed in {@code epoch}.
+     * @param content the content of a document, as a {@code String} or a {@code LazyContent}, or {@code null} for a directory.
+     */
+    void keepState(long epoch, String name, Object content) {
+        if (stateEpoch != epoch) {
+            stateEpoch = epoch;
+            states.add(new State(epoch - 1, name, content));
+        }
+    }
+
+    /**
+     * Keep which file the name refers to in the directory before it is changed in {@code epoch}.
+     * @param previous the file, or {@code null} if the name was free.
+     */
+    void keepChild(long epoch, String name, File previous) {
+        if (childEpoch != epoch) {
+            childEpoch = epoch;
+            childNames.clear();
+        }
+        if (childNames.add(name)) {
+            children.add(new Child(epoch - 1, name, previous));
+        }
+    }
+
+    /**
+     * Find the state seen by a snapshot.
+     * @return the state, or {@code null} if the snapshot sees the live state.
+     */
+    State stateAt(long epoch) {
+        for (State state : states) {
+            if (state.until >= epoch) {
+                return state;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Find the children changed since a snapshot, and which files they referred to in the snapshot. The first change of every name after the snapshot tells the file of the name in the snapshot.
+     * @return the changed children, at most one for every name.
+     */
+    ArrayList<Child> childrenAt(long epoch) {
+        ArrayList<Child> result = new ArrayList<>();
+        HashSet<String> seen = new HashSet<>();
+        for (Child child : children) {
+            if (child.until >= epoch && seen.add(child.name)) {
+                result.add(child);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Drop the entries no snapshot sees any longer.
+     * @param epochs the epochs of the remaining snapshots.
+     * @return whether the history has become empty.
+     */
+    boolean prune(NavigableSet<Long> epochs) {
+        long previous = -1;
+        for (Iterator<State> iterator = states.iterator(); iterator.hasNext(); ) {
+            State state = iterator.next();
+            if (!isSeen(epochs, previous, state.until)) {
+                iterator.remove();
+            }
+            previous = state.until;
+        }
+
+        // The children are pruned name by name, since each name has its own sequence of entries.
+        HashMap<String, Long> previousOfName = new HashMap<>();
+        for (Iterator<Child> iterator = children.iterator(); iterator.hasNext(); ) {
+            Child child = iterator.next();
+            Long previousUntil = previousOfName.put(child.name, child.until);
+            if (!isSeen(epochs, (previousUntil == null) ? -1 : previousUntil, child.until)) {
+                iterator.remove();
+            }
+        }
+        return states.isEmpty() && children.isEmpty();
+    }
+
+    /**
+     * Check if any snapshot is taken in the epochs {@code (after, until]}, which see an entry valid in them.
+     */
+    private static boolean isSeen(NavigableSet<Long> epochs, long after, long until) {
+        Long epoch = epochs.higher(after);
+        return epoch != null && epoch <= until;
+    }
+
+    /**
+     * An old name and content of a file.
+     */
+    static final class State {
+        final long until;
+        final String name;
+        final Object content;
+
+        State(long until, String name, Object content) {
+            this.until = until;
+            this.name = name;
+            this.content = content;
+        }
+    }
+
+    /**
+     * An old child of a directory.
+     */
+    static final class Child {
+        final long until;
+        final String name;
+        final File file;
+
+        Child(long until, String name, File file) {
+            this.until = until;
+            this.name = name;
+            this.file = file;
+        }
+    }
+}
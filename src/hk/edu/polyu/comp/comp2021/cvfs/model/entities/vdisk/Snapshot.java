@@ -0,0 +1,54 @@
+package hk.edu.polyu.comp.comp2021.cvfs.model.entities.vdisk;
+
+/**
+ * <h3>The {@code Snapshot} Class</h3>
+ * This class represents a point-in-time snapshot of a virtual disk.
+ * <p>
+ * A snapshot does not copy any files when it is taken. Instead, the virtual disk keeps the old state of a file the first time it is changed after a snapshot, see {@code VDisk.__INTERNAL__takeSnapshot()}. The snapshots only live in the memory, and are not saved with the virtual disk.
+ */
+public final class Snapshot {
+    private final String name;
+
+    /**
+     * The epoch of the virtual disk when the snapshot was taken. The changes in later epochs are not visible in the snapshot.
+     */
+    private final long epoch;
+
+    private final long createdAt;
+
+    /**
+     * The size of the root directory when the snapshot was taken.
+     */
+    private final long size;
+
+    Snapshot(String name, long epoch, long createdAt, long size) {
+        this.name = name;
+        this.epoch = epoch;
+        this.createdAt = createdAt;
+        this.size = size;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Get the time the snapshot was taken.
+     * @return the time in milliseconds since the epoch.
+     */
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    /**
+     * Get the size of the root directory when the snapshot was taken.
+     * @return the size.
+     */
+    public long getSize() {
+        return size;
+    }
+}
@@ -2,10 +2,25 @@ package hk.edu.polyu.comp.comp2021.cvfs.model.entities.vdisk;
 
 import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Directory;
 import hk.edu.polyu.comp.comp2021.cvfs.model.entities.ModelInternalUse;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Document;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.File;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.LazyContent;
+import hk.edu.polyu.comp.comp2021.cvfs.model.internalexceptions.CannotInitializeFileException;
 import hk.edu.polyu.comp.comp2021.cvfs.model.internalexceptions.CannotInitializeVDiskException;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 // import java.io.Serial;
 import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 /**
  * <h3>The {@code VDisk} Class</h3>
@@ -19,6 +34,47 @@ public final class VDisk implements Serializable {
 
     private final Directory rootDirectory;
 
+    /**
+     * The identifier of the root directory. Identifiers of the other files are allocated from {@code ROOT_ID + 1} in order.
+     */
+    public static final long ROOT_ID = 1;
+
+    /**
+     * The next identifier to allocate.
+     */
+    private long nextFileId;
+
+    /**
+     * The image this virtual disk was last loaded from or saved to, or {@code null} if there is none.
+     */
+    private transient BackingImage backingImage;
+
+    /**
+     * The files changed since the virtual disk was last loaded or saved, keyed by their identifiers in the order of their first changes. A {@code null} value means the file has been removed.
+     * <p>
+     * This is only recorded when there is a backing image, since otherwise the next save writes the whole disk anyway.
+     */
+    private transient LinkedHashMap<Long, File> changes = new LinkedHashMap<>();
+
+    /**
+     * The snapshots of the virtual disk, keyed by their names.
+     */
+    private transient TreeMap<String, Snapshot> snapshots = new TreeMap<>();
+
+    /**
+     * The current epoch. Every snapshot ends an epoch, so the changes after it are in a later epoch.
+     */
+    private transient long epoch;
+
+    /**
+     * The old states of the files changed since the snapshots were taken.
+     */
+    private transient IdentityHashMap<File, FileHistory> histories = new IdentityHashMap<>();
+
+    /**
+     * Whether the virtual disk is a mounted snapshot, which cannot be changed.
+     */
+    private transient boolean readOnly;
 
     /**
      * <h4>Simulation Notes</h4>
@@ -35,6 +91,26 @@ public final class VDisk implements Serializable {
 
         this.diskSize = diskSize;
         this.rootDirectory = new Directory(true);
+        this.rootDirectory.__INTERNAL__setId(ROOT_ID);
+        this.nextFileId = ROOT_ID + 1;
+    }
+
+    /**
+     * The virtual disks saved by the earlier versions do not have the identifiers, which are allocated here.
+     */
+    // @Serial
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        changes = new LinkedHashMap<>();
+        snapshots = new TreeMap<>();
+        histories = new IdentityHashMap<>();
+        if (rootDirectory.__INTERNAL__getId() == 0) {
+            rootDirectory.__INTERNAL__setId(ROOT_ID);
+            nextFileId = ROOT_ID + 1;
+            for (File file : rootDirectory.__MODEL_INTERNAL__getFiles().values()) {
+                __INTERNAL__markStored(file);
+            }
+        }
     }
 
     
@@ -49,6 +125,15 @@ public final class VDisk implements Serializable {
         return diskSize - rootDirectory.getSize();
     }
 
+    /**
+     * Get the size of the virtual disk.
+     * @return the size of the virtual disk.
+     */
+    @ModelInternalUse
+    public long __INTERNAL__getDiskSize() {
+        return diskSize;
+    }
+
     /**
      * Get the root directory of the virtual disk.
      * @return the root directory of the virtual disk.
@@ -57,5 +142,263 @@ public final class VDisk implements Serializable {
     public Directory __INTERNAL__getRootDirectory() {
         return rootDirectory;
     }
-}
 
+
+    /* Part of the simulation: the inode table and the journal of changes */
+
+    /**
+     * Allocate a new identifier for a file.
+     * @return the new identifier.
+     */
+    @ModelInternalUse
+    public long __INTERNAL__allocateId() {
+        return nextFileId++;
+    }
+
+    /**
+     * Make sure the identifier will never be allocated again. This is used when a virtual disk is loaded with its identifiers.
+     * @param id the identifier in use.
+     */
+    @ModelInternalUse
+    public void __INTERNAL__registerId(long id) {
+        nextFileId = Math.max(nextFileId, id + 1);
+    }
+
+    /**
+     * Record that a file, together with all files below it, has been stored into the virtual disk. Identifiers are allocated to the files which do not have one.
+     * @param file the file stored.
+     */
+    @ModelInternalUse
+    public void __INTERNAL__markStored(File file) {
+        Deque<File> stack = new ArrayDeque<>();
+        stack.push(file);
+        while (!stack.isEmpty()) {
+            File current = stack.pop();
+            if (current.__INTERNAL__getId() == 0) {
+                current.__INTERNAL__setId(__INTERNAL__allocateId());
+            }
+            __INTERNAL__markChanged(current);
+            if (current instanceof Directory) {
+                // Pushed in reverse, so the children are recorded in order and always after their parent.
+                Directory directory = (Directory) current;
+                for (File child : directory.__MODEL_INTERNAL__getFiles().descendingValues()) {
+                    stack.push(child);
+                }
+            }
+        }
+    }
+
+    /**
+     * Record that a file has been changed, such as renamed or modified.
+     * @param file the file changed.
+     */
+    @ModelInternalUse
+    public void __INTERNAL__markChanged(File file) {
+        if (backingImage != null) {
+            changes.put(file.__INTERNAL__getId(), file);
+        }
+    }
+
+    /**
+     * Record that a file, together with all files below it, has been removed from the virtual disk.
+     * @param file the file removed.
+     */
+    @ModelInternalUse
+    public void __INTERNAL__markRemoved(File file) {
+        if (backingImage != null) {
+            changes.put(file.__INTERNAL__getId(), null);
+        }
+    }
+
+    /**
+     * Get the files changed since the virtual disk was last loaded or saved.
+     * @return the changed files keyed by their identifiers, where a {@code null} value means the file has been removed.
+     */
+    @ModelInternalUse
+    public Map<Long, File> __INTERNAL__getChanges() {
+        return Collections.unmodifiableMap(changes);
+    }
+
+    /**
+     * Get the image this virtual disk was last loaded from or saved to.
+     * @return the backing image, or {@code null} if there is none.
+     */
+    @ModelInternalUse
+    public BackingImage __INTERNAL__getBackingImage() {
+        return backingImage;
+    }
+
+    /**
+     * Set the image this virtual disk has just been loaded from or saved to. All recorded changes are cleared, since they are in the image now.
+     * @param backingImage the backing image, or {@code null} to stop recording the changes.
+     */
+    @ModelInternalUse
+    public void __INTERNAL__setBackingImage(BackingImage backingImage) {
+        this.backingImage = backingImage;
+        changes.clear();
+    }
+
+
+    /* Part of the simulation: the snapshots */
+
+    /**
+     * Take a snapshot of the virtual disk, which costs {@code O(1)}.
+     * <p>
+     * Nothing is copied here. Instead, before a file is changed for the first time after the snapshot, its old state is kept by {@code __INTERNAL__keepState()} and {@code __INTERNAL__keepChild()}, so the snapshot shares all unchanged files with the live tree.
+     * @param name the name of the snapshot, which must not be taken by another snapshot.
+     * @return the snapshot.
+     */
+    @ModelInternalUse
+    public Snapshot __INTERNAL__takeSnapshot(String name) {
+        Snapshot snapshot = new Snapshot(name, epoch++, System.currentTimeMillis(), rootDirectory.getSize());
+        snapshots.put(name, snapshot);
+        return snapshot;
+    }
+
+    /**
+     * Get all snapshots.
+     * @return the snapshots keyed by their names.
+     */
+    @ModelInternalUse
+    public Map<String, Snapshot> __INTERNAL__getSnapshots() {
+        return Collections.unmodifiableMap(snapshots);
+    }
+
+    /**
+     * Drop a snapshot, together with the old states only it sees.
+     * @param snapshot the snapshot to drop.
+     */
+    @ModelInternalUse
+    public void __INTERNAL__dropSnapshot(Snapshot snapshot) {
+        snapshots.remove(snapshot.getName());
+        if (snapshots.isEmpty()) {
+            histories.clear();
+            return;
+        }
+
+        TreeSet<Long> epochs = new TreeSet<>();
+        for (Snapshot remaining : snapshots.values()) {
+            epochs.add(remaining.getEpoch());
+        }
+        for (Iterator<FileHistory> iterator = histories.values().iterator(); iterator.hasNext(); ) {
+            if (iterator.next().prune(epochs)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Keep the name and the content of a file before it is renamed or modified, if any snapshot still sees them. This costs {@code O(1)}.
+     * @param file the file to change.
+     */
+    @ModelInternalUse
+    public void __INTERNAL__keepState(File file) {
+        if (snapshots.isEmpty()) {
+            return;
+        }
+        Object content = null;
+        if (file instanceof Document) {
+            LazyContent lazyContent = ((Document) file).__INTERNAL__getLazyContent();
+            content = (lazyContent != null) ? lazyContent : ((Document) file).getContent();
+        }
+        history(file).keepState(epoch, file.getName(), content);
+    }
+
+    /**
+     * Keep which file a name refers to in a directory before a file is stored, removed or renamed with that name, if any snapshot still sees it. This costs {@code O(1)}.
+     * @param directory the directory to change.
+     * @param name the name of the child to change.
+     */
+    @ModelInternalUse
+    public void __INTERNAL__keepChild(Directory directory, String name) {
+        if (snapshots.isEmpty()) {
+            return;
+        }
+        history(directory).keepChild(epoch, name, directory.__INTERNAL__findFile(name));
+    }
+
+    private FileHistory history(File file) {
+        FileHistory history = histories.get(file);
+        if (history == null) {
+            history = new FileHistory();
+            histories.put(file, history);
+        }
+        return history;
+    }
+
+    /**
+     * Build the tree seen by a snapshot as a new, read-only virtual disk. The contents are shared with the live tree, and the contents not read yet stay unread.
+     * @param snapshot the snapshot.
+     * @return the read-only virtual disk.
+     * @throws CannotInitializeVDiskException if the virtual disk cannot be built.
+     */
+    @ModelInternalUse
+    public VDisk __INTERNAL__materialize(Snapshot snapshot) throws CannotInitializeVDiskException {
+        VDisk view = new VDisk(diskSize);
+        view.nextFileId = nextFileId;
+        view.readOnly = true;
+        long at = snapshot.getEpoch();
+
+        // Pairs of a live directory and its copy in the view.
+        Deque<Directory[]> stack = new ArrayDeque<>();
+        stack.push(new Directory[]{rootDirectory, view.rootDirectory});
+        try {
+            while (!stack.isEmpty()) {
+                Directory[] pair = stack.pop();
+                for (File child : childrenAt(pair[0], at).values()) {
+                    FileHistory history = histories.get(child);
+                    FileHistory.State state = (history == null) ? null : history.stateAt(at);
+                    String name = (state == null) ? child.getName() : state.name;
+
+                    File copy;
+                    if (child instanceof Directory) {
+                        copy = new Directory(name, pair[1]);
+                        stack.push(new Directory[]{(Directory) child, (Directory) copy});
+                    } else {
+                        Document document = (Document) child;
+                        Object content = (state != null) ? state.content : document.__INTERNAL__getLazyContent();
+                        if (content == null) {
+                            content = document.getContent();
+                        }
+                        copy = (content instanceof String)
+                                ? new Document(name, document.getType(), (String) content, pair[1])
+                                : new Document(name, document.getType(), (LazyContent) content, pair[1]);
+                    }
+                    copy.__INTERNAL__setId(child.__INTERNAL__getId());
+                    pair[1].__INTERNAL__add(copy);
+                }
+            }
+        } catch (CannotInitializeFileException e) {
+            throw new CannotInitializeVDiskException(e.getMessage());
+        }
+        return view;
+    }
+
+    /**
+     * Get the children of a directory seen by a snapshot, keyed by their names then.
+     */
+    private Map<String, File> childrenAt(Directory directory, long at) {
+        FileHistory history = histories.get(directory);
+        if (history == null) {
+            return directory.__MODEL_INTERNAL__getFiles();
+        }
+        TreeMap<String, File> children = new TreeMap<>(directory.__MODEL_INTERNAL__getFiles());
+        for (FileHistory.Child child : history.childrenAt(at)) {
+            if (child.file == null) {
+                children.remove(child.name);
+            } else {
+                children.put(child.name, child.file);
+            }
+        }
+        return children;
+    }
+
+    /**
+     * Check if the virtual disk is a mounted snapshot, which cannot be changed.
+     * @return whether the virtual disk is read-only.
+     */
+    @ModelInternalUse
+    public boolean __INTERNAL__isReadOnly() {
+        return readOnly;
+    }
+}
@@ -0,0 +1,228 @@
+package hk.edu.polyu.comp.comp2021.cvfs.model.filesystem;
+
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Directory;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.File;
+import hk.edu.polyu.comp.comp2021.cvfs.model.internalexceptions.FileNotExistsException;
+
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * <h3>The {@code DirectoryLocks} Class</h3>
+ * The locks of a {@code FileSystem} in the concurrent mode, see {@code FileSystem.setConcurrent()}.
+ *
+ * <h4>Locks</h4>
+ * <ul>
+ *     <li>The mount lock is held shared by every operation on the files, and exclusively by the operations which change what is mounted, e.g., mounting a virtual disk or a snapshot, or turning an index on. It is striped by the threads, so the operations on the files do not contend on one lock word, and taking it exclusively takes all stripes.</li>
+ *     <li>The directory locks are read-write locks striped by the identities of the directories, {@code STRIPES} of them. Reading the files of a directory holds its stripe shared. Changing the files of a directory holds its stripe exclusively, and the stripes of the directories above it shared, except the root directory, which is never changed itself, so a directory cannot be removed or renamed while something below it changes.</li>
+ *     <li>The sequences are {@code StampedLock}s striped like the directory locks, which are only held exclusively: by a change, on the stripe of its directory, and by the mount lock, on all stripes. A read of a directory takes no lock at first, but validates the stamps of its stripes afterwards, see {@code read()}, so the reads do not write to the shared lock words, and scale with the cores while the changes go on elsewhere.</li>
+ * </ul>
+ * The stripes of an operation are taken together, once each and in the order of their indexes, where an exclusive hold wins over a shared one of the same stripe, so two operations never wait for each other in a cycle. The sequences are taken after the directory locks, and the shared state of a tree, i.e., the sizes, the generations, the history of the virtual disk and the mutation listeners, is changed under the monitor of its root directory, which is always taken last.
+ */
+final class DirectoryLocks {
+    /**
+     * The number of the stripes of the directory locks, which is the number of bits of a {@code long}, so a set of stripes is a bit mask.
+     */
+    static final int STRIPES = Long.SIZE;
+
+    /**
+     * The number of the stripes of the mount lock.
+     */
+    static final int MOUNT_STRIPES = 16;
+
+    /**
+     * A guard which holds nothing, for the file systems which are not in the concurrent mode.
+     */
+    static final Guard NONE = new Guard(null, -1, 0, 0);
+
+    private final ReentrantReadWriteLock[] mountStripes = new ReentrantReadWriteLock[MOUNT_STRIPES];
+
+    private final ReentrantReadWriteLock[] stripes = new ReentrantReadWriteLock[STRIPES];
+
+    private final StampedLock[] sequences = new StampedLock[STRIPES];
+
+    DirectoryLocks() {
+        for (int i = 0; i < MOUNT_STRIPES; i++) {
+            mountStripes[i] = new ReentrantReadWriteLock();
+        }
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantReadWriteLock();
+            sequences[i] = new StampedLock();
+        }
+    }
+
+    /**
+     * A read of a file, which may run optimistically, i.e., while the files it reads are being changed.
+     */
+    @FunctionalInterface
+    interface Read<T> {
+        /**
+         * Run the read.
+         * @param optimistic whether the read runs without the locks, so it may see the files half-changed, and must not change anything, e.g., a lazily built order, or leave anything it has read behind.
+         * @return the result.
+         * @throws FileNotExistsException if the file does not exist.
+         */
+        T run(boolean optimistic) throws FileNotExistsException;
+    }
+
+    /**
+     * Read a file, and its files if it is a directory, optimistically: the read runs without any lock, and its result is taken if no change or mount has held the stripes of the file and its parent meanwhile. Otherwise, including when the read fails on what it has seen half-changed, it runs again holding the locks of {@code lockForRead()}.
+     * @param file the file.
+     * @param read the read.
+     * @return the result of the read.
+     * @throws FileNotExistsException if the file does not exist.
+     */
+    @SuppressWarnings("try")
+    <T> T read(File file, Read<T> read) throws FileNotExistsException {
+        StampedLock own = (file instanceof Directory) ? sequences[index(file)] : null;
+        StampedLock parent = (file.__INTERNAL__getParent() != null) ? sequences[index(file.__INTERNAL__getParent())] : null;
+        long ownStamp = (own == null) ? 0 : own.tryOptimisticRead();
+        long parentStamp = (parent == null) ? 0 : parent.tryOptimisticRead();
+        if ((own == null || ownStamp != 0) && (parent == null || parentStamp != 0)) {
+            try {
+                T result = read.run(true);
+                if (validate(own, ownStamp) && validate(parent, parentStamp)) {
+                    return result;
+                }
+            } catch (FileNotExistsException | RuntimeException e) {
+                if (validate(own, ownStamp) && validate(parent, parentStamp)) {
+                    throw e;
+                }
+            }
+        }
+        try (Guard guard = lockForRead(file)) {
+            return read.run(false);
+        }
+    }
+
+    private static boolean validate(StampedLock sequence, long stamp) {
+        return sequence == null || sequence.validate(stamp);
+    }
+
+    /**
+     * Hold the mount lock exclusively, and all sequences.
+     * @return the guard, which releases the lock when it is closed.
+     */
+    Guard lockExclusively() {
+        for (ReentrantReadWriteLock stripe : mountStripes) {
+            stripe.writeLock().lock();
+        }
+        for (StampedLock sequence : sequences) {
+            sequence.asWriteLock().lock();
+        }
+        return new Guard(this, MOUNT_STRIPES, 0, 0);
+    }
+
+    /**
+     * Hold the mount lock shared, for an operation which reads what is mounted but no files.
+     * @return the guard, which releases the lock when it is closed.
+     */
+    Guard lockShared() {
+        return acquire(0, 0);
+    }
+
+    /**
+     * Hold the locks to read a file, and its files if it is a directory: the stripes of the file and its parent, shared.
+     * @param file the file.
+     * @return the guard, which releases the locks when it is closed.
+     */
+    Guard lockForRead(File file) {
+        long read = (file instanceof Directory) ? bit(file) : 0;
+        if (file.__INTERNAL__getParent() != null) {
+            read |= bit(file.__INTERNAL__getParent());
+        }
+        return acquire(read, 0);
+    }
+
+    /**
+     * Hold the locks to change the files of a directory: its stripe exclusively, together with its sequence, and the stripes of the directories above it, except the root directory, shared.
+     * @param directory the directory.
+     * @return the guard, which releases the locks when it is closed.
+     */
+    Guard lockForChange(Directory directory) {
+        long read = 0;
+        for (File ancestor = directory.__INTERNAL__getParent(); ancestor != null && ancestor.__INTERNAL__getParent() != null; ancestor = ancestor.__INTERNAL__getParent()) {
+            read |= bit(ancestor);
+        }
+        long write = bit(directory);
+        Guard guard = acquire(read & ~write, write);
+        sequences[Long.numberOfTrailingZeros(write)].asWriteLock().lock();
+        return guard;
+    }
+
+    private Guard acquire(long read, long write) {
+        int mountStripe = (int) Thread.currentThread().getId() & (MOUNT_STRIPES - 1);
+        mountStripes[mountStripe].readLock().lock();
+        for (long remaining = read | write; remaining != 0; remaining &= remaining - 1) {
+            int stripe = Long.numberOfTrailingZeros(remaining);
+            if ((write & (1L << stripe)) != 0) {
+                stripes[stripe].writeLock().lock();
+            } else {
+                stripes[stripe].readLock().lock();
+            }
+        }
+        return new Guard(this, mountStripe, read, write);
+    }
+
+    private static long bit(File directory) {
+        return 1L << index(directory);
+    }
+
+    private static int index(File directory) {
+        int h = System.identityHashCode(directory);
+        return (h ^ (h >>> 16)) & (STRIPES - 1);
+    }
+
+    /**
+     * The locks held by an operation, which are released when it is closed, so an operation holds them in a {@code try}-with-resources statement. The guard is usually not referenced in the body, so the methods holding guards suppress the {@code try} lint warning.
+     */
+    static final class Guard implements AutoCloseable {
+        private final DirectoryLocks locks;
+
+        /**
+         * The stripe of the mount lock held shared, or {@code MOUNT_STRIPES} if all of them are held exclusively.
+         */
+        private final int mountStripe;
+
+        private final long read;
+
+        private final long write;
+
+        private Guard(DirectoryLocks locks, int mountStripe, long read, long write) {
+            this.locks = locks;
+            this.mountStripe = mountStripe;
+            this.read = read;
+            this.write = write;
+        }
+
+        @Override
+        public void close() {
+            if (locks == null) {
+                return;
+            }
+            if (write != 0) {
+                locks.sequences[Long.numberOfTrailingZeros(write)].asWriteLock().unlock();
+            }
+            if (mountStripe == MOUNT_STRIPES) {
+                for (StampedLock sequence : locks.sequences) {
+                    sequence.asWriteLock().unlock();
+                }
+            }
+            for (long remaining = read | write; remaining != 0; remaining &= remaining - 1) {
+                int stripe = Long.numberOfTrailingZeros(remaining);
+                if ((write & (1L << stripe)) != 0) {
+                    locks.stripes[stripe].writeLock().unlock();
+                } else {
+                    locks.stripes[stripe].readLock().unlock();
+                }
+            }
+            if (mountStripe == MOUNT_STRIPES) {
+                for (ReentrantReadWriteLock stripe : locks.mountStripes) {
+                    stripe.writeLock().unlock();
+                }
+            } else {
+                locks.mountStripes[mountStripe].readLock().unlock();
+            }
+        }
+    }
+}
@@ -5,12 +5,35 @@ import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.Criterion;
 import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.simplecriterion.IsDocument;
 import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Document;
 import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.File;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.vdisk.BackingImage;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.vdisk.Snapshot;
 import hk.edu.polyu.comp.comp2021.cvfs.model.entities.vdisk.VDisk;
 import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Directory;
+import hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.image.HostTree;
+import hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.image.VDiskImageReader;
+import hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.image.VDiskImageWriter;
+import hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.image.WriteAheadLog;
+import hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.index.AttributeIndex;
+import hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.index.CriterionView;
+import hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.index.NameIndex;
+import hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.index.PathIndex;
+import hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.index.SearchPlanner;
+import hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.index.SizeIndex;
+import hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.index.TypeIndex;
 import hk.edu.polyu.comp.comp2021.cvfs.model.internalexceptions.*;
 
 import java.io.*;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * <h3>The {@code FileSystem} Class of the Model Part</h3>
@@ -29,6 +52,16 @@ import java.util.TreeMap;
  * Logically speaking, it provides all interfaces for managing virtual disks, directories, and documents. The Service and other upper parts only know the existence of them, but cannot perform operations on them directly. We created this for simulation. In real file systems, concepts like directories and documents are abstractions created by the file system.
  * <p>
  * This is the important part of the Model, which handles the business logic and interacts with the Controller.
+ *
+ * <h4>Concurrent Mode</h4>
+ * By default, a file system is used by one thread. In the concurrent mode, see {@code setConcurrent()}, many threads may use it together:
+ * <ul>
+ *     <li>The operations on the files hold the striped read-write locks of the directories they read or change, see {@code DirectoryLocks}, so the operations on different directories run in parallel. The reads of a directory, e.g., {@code getAllFiles()} and {@code findFile()}, run optimistically without a lock first, and only take the shared lock if a change of the same stripe got in the way, see {@code DirectoryLocks.read()}.</li>
+ *     <li>A change is committed under the monitor of the root directory, which also covers the sizes, the generations, the history of the virtual disk and the mutation listeners. The free space is checked and taken in the same commit, so two changes cannot both take the last free space.</li>
+ *     <li>{@code getAllFiles()} returns a copy of the files of a directory, which can be read after the lock is released.</li>
+ *     <li>The criteria and the views are copied on write, so they are read without a lock, and the reference counts are only changed under the lock of the criteria.</li>
+ *     <li>The searches do not use the secondary indexes, which are changed by every commit, but scan the directories.</li>
+ * </ul>
  */
 public final class FileSystem {
     /* Current resources of the file system, as well as the application */
@@ -38,23 +71,103 @@ public final class FileSystem {
      * <p>
      * Initially, this should be {@code null}. Any command shall be invalid if this is {@code null}.
      */
-    private VDisk currentVDisk;
+    private volatile VDisk currentVDisk;
 
     /**
      * The current working directory. It's guaranteed that this directory always exists.
      * <p>
      * Initially, this should be {@code null}. When a VDisk is mounted (i.e., {@code currentVDisk != null}), this should be directed to the root directory of that VDisk.
      */
-    private Directory workingDirectory;
+    private volatile Directory workingDirectory;
+
+    /**
+     * The working directories of the sessions, by the threads running them, see {@code openSession()}. A thread without a session uses {@code workingDirectory}.
+     */
+    private final ThreadLocal<Directory[]> sessionWorkingDirectories = new ThreadLocal<>();
+
+    /**
+     * The live virtual disk while a snapshot of it is mounted, or {@code null} if the live one is mounted.
+     */
+    private VDisk liveVDisk;
+
+    /**
+     * The working directory of the live virtual disk while a snapshot of it is mounted.
+     */
+    private Directory liveWorkingDirectory;
+
+    /**
+     * The mounted snapshot, or {@code null} if the live virtual disk is mounted.
+     */
+    private Snapshot mountedSnapshot;
 
     /**
      * The loaded criteria.
      * <p>
      * Initially, this should be empty (instead of {@code null}). This will be, and will only be cleared when the {@code Controller} object is quit.
      *
-     * @implNote A {@code HashMap<String, Criterion>} is used to store the criteria, where the {@code String} objects represent the names of the criteria, and the {@code Criterion} objects are the criteria.
+     * @implNote A {@code HashMap<String, Criterion>} is used to store the criteria, where the {@code String} objects represent the names of the criteria, and the {@code Criterion} objects are the criteria. In the concurrent mode, the map is replaced by a changed copy instead of being changed.
+     */
+    private volatile TreeMap<String, Criterion> criteria;
+
+    /**
+     * The lock of the changes of the criteria and the views.
+     */
+    private final Object criteriaLock = new Object();
+
+    /**
+     * The observers of the mutations, in the order they are registered, which are copied on write, since they are changed far less often than they are notified.
+     */
+    private final List<MutationListener> mutationListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * The write-ahead log of the current virtual disk, or {@code null} if it has no backing image or the log is turned off.
+     */
+    private WriteAheadLog writeAheadLog;
+
+    /**
+     * The sync policy of the write-ahead logs, or {@code null} if the logs are turned off.
+     */
+    private WriteAheadLog.SyncPolicy syncPolicy = WriteAheadLog.SyncPolicy.BATCH;
+
+    /**
+     * The {@code n} of the {@code BATCH} and {@code TIME} policies.
+     */
+    private int syncParameter = 32;
+
+    /**
+     * The error met when the write-ahead log was last opened or reset, or {@code null}.
+     */
+    private IOException writeAheadLogFailure;
+
+    /**
+     * The index of the files of the current virtual disk by their absolute paths, or {@code null} if it is turned off.
+     */
+    private PathIndex pathIndex;
+
+    /**
+     * The index of the documents of the current virtual disk by their types, or {@code null} if it is turned off.
+     */
+    private TypeIndex typeIndex;
+
+    /**
+     * The index of the documents of the current virtual disk by their sizes, or {@code null} if it is turned off.
+     */
+    private SizeIndex sizeIndex;
+
+    /**
+     * The trigram index of the names of the files of the current virtual disk, or {@code null} if it is turned off.
      */
-    private TreeMap<String, Criterion> criteria;
+    private NameIndex nameIndex;
+
+    /**
+     * The materialized views of the watched criteria, by the names of the criteria.
+     */
+    private volatile TreeMap<String, CriterionView> views = new TreeMap<>();
+
+    /**
+     * The locks of the concurrent mode, or {@code null} if the file system is used by one thread.
+     */
+    private DirectoryLocks locks;
 
 
     /**
@@ -82,10 +195,141 @@ public final class FileSystem {
      * Mounting a new virtual disk.
      * @param vDisk the new virtual disk.
      */
+    @SuppressWarnings("try")
     public void mountVDisk(VDisk vDisk) {
+        try (DirectoryLocks.Guard guard = lockExclusively()) {
+            mount(vDisk);
+        }
+    }
+
+    /**
+     * Mount a new virtual disk, where the caller holds the mount lock exclusively. The sequences of {@code DirectoryLocks} are not reentrant, so the locked methods call this instead of {@code mountVDisk()}.
+     */
+    private void mount(VDisk vDisk) {
         // ejectVDisk();
+        discardWriteAheadLog();
         currentVDisk = vDisk;
         workingDirectory = vDisk.__INTERNAL__getRootDirectory();
+        liveVDisk = null;
+        liveWorkingDirectory = null;
+        mountedSnapshot = null;
+        openWriteAheadLog();
+        resetIndexes();
+    }
+
+
+    /* Methods involving the snapshots */
+
+    /**
+     * Take a snapshot of the live virtual disk, which costs {@code O(1)}. The later changes cost {@code O(1)} more each to keep the old states for the snapshot.
+     * @param name the name of the snapshot.
+     * @return the snapshot.
+     * @throws NoMountedDiskOrWorkingDirectoryException if no virtual disk is mounted.
+     * @throws DuplicatedSnapshotNameException if another snapshot has the same name.
+     */
+    @SuppressWarnings("try")
+    public Snapshot takeSnapshot(String name) throws NoMountedDiskOrWorkingDirectoryException, DuplicatedSnapshotNameException {
+        try (DirectoryLocks.Guard guard = lockExclusively()) {
+            VDisk vDisk = getLiveVDisk();
+            if (vDisk.__INTERNAL__getSnapshots().containsKey(name)) {
+                throw new DuplicatedSnapshotNameException(name);
+            }
+            return vDisk.__INTERNAL__takeSnapshot(name);
+        }
+    }
+
+    /**
+     * Get all snapshots of the live virtual disk.
+     * @return the snapshots, in the order of their names.
+     * @throws NoMountedDiskOrWorkingDirectoryException if no virtual disk is mounted.
+     */
+    @SuppressWarnings("try")
+    public Collection<Snapshot> getAllSnapshots() throws NoMountedDiskOrWorkingDirectoryException {
+        try (DirectoryLocks.Guard guard = lockShared()) {
+            return getLiveVDisk().__INTERNAL__getSnapshots().values();
+        }
+    }
+
+    /**
+     * Mount a snapshot of the live virtual disk read-only. The live virtual disk is kept, and mounted again by {@code unmountSnapshot()}.
+     * <p>
+     * The tree seen by the snapshot is built when it is mounted, which costs {@code O(files)} but shares all contents with the live tree.
+     * @param name the name of the snapshot.
+     * @throws NoMountedDiskOrWorkingDirectoryException if no virtual disk is mounted.
+     * @throws SnapshotNotExistsException if there is no snapshot with that name.
+     * @throws CannotInitializeVDiskException if the snapshot cannot be built.
+     */
+    @SuppressWarnings("try")
+    public void mountSnapshot(String name) throws NoMountedDiskOrWorkingDirectoryException, SnapshotNotExistsException, CannotInitializeVDiskException {
+        try (DirectoryLocks.Guard guard = lockExclusively()) {
+            VDisk vDisk = getLiveVDisk();
+            Snapshot snapshot = vDisk.__INTERNAL__getSnapshots().get(name);
+            if (snapshot == null) {
+                throw new SnapshotNotExistsException(name);
+            }
+            VDisk view = vDisk.__INTERNAL__materialize(snapshot);
+            if (liveVDisk == null) {
+                liveVDisk = currentVDisk;
+                liveWorkingDirectory = workingDirectory;
+            }
+            currentVDisk = view;
+            workingDirectory = view.__INTERNAL__getRootDirectory();
+            mountedSnapshot = snapshot;
+            resetIndexes();
+        }
+    }
+
+    /**
+     * Mount the live virtual disk again, with the working directory before the snapshot was mounted.
+     * @throws NoMountedSnapshotException if no snapshot is mounted.
+     */
+    @SuppressWarnings("try")
+    public void unmountSnapshot() throws NoMountedSnapshotException {
+        try (DirectoryLocks.Guard guard = lockExclusively()) {
+            if (liveVDisk == null) {
+                throw new NoMountedSnapshotException();
+            }
+            currentVDisk = liveVDisk;
+            workingDirectory = liveWorkingDirectory;
+            liveVDisk = null;
+            liveWorkingDirectory = null;
+            mountedSnapshot = null;
+            resetIndexes();
+        }
+    }
+
+    /**
+     * Drop a snapshot of the live virtual disk, and the old states only it sees. A mounted snapshot stays mounted until it is unmounted.
+     * @param name the name of the snapshot.
+     * @throws NoMountedDiskOrWorkingDirectoryException if no virtual disk is mounted.
+     * @throws SnapshotNotExistsException if there is no snapshot with that name.
+     */
+    @SuppressWarnings("try")
+    public void dropSnapshot(String name) throws NoMountedDiskOrWorkingDirectoryException, SnapshotNotExistsException {
+        try (DirectoryLocks.Guard guard = lockExclusively()) {
+            VDisk vDisk = getLiveVDisk();
+            Snapshot snapshot = vDisk.__INTERNAL__getSnapshots().get(name);
+            if (snapshot == null) {
+                throw new SnapshotNotExistsException(name);
+            }
+            vDisk.__INTERNAL__dropSnapshot(snapshot);
+        }
+    }
+
+    /**
+     * Get the mounted snapshot.
+     * @return the snapshot, or {@code null} if the live virtual disk is mounted.
+     */
+    public Snapshot getMountedSnapshot() {
+        return mountedSnapshot;
+    }
+
+    private VDisk getLiveVDisk() throws NoMountedDiskOrWorkingDirectoryException {
+        VDisk vDisk = (liveVDisk != null) ? liveVDisk : currentVDisk;
+        if (vDisk == null) {
+            throw new NoMountedDiskOrWorkingDirectoryException();
+        }
+        return vDisk;
     }
 
 
@@ -94,9 +338,328 @@ public final class FileSystem {
     /**
      * Release the resources.
      */
+    @SuppressWarnings("try")
     public void releaseResource() {
-        // ejectVDisk();
-        criteria.clear();
+        try (DirectoryLocks.Guard guard = lockExclusively()) {
+            // ejectVDisk();
+            discardWriteAheadLog();
+            synchronized (criteriaLock) {
+                unwatchAllCriteria();
+                criteria = new TreeMap<>();
+            }
+        }
+    }
+
+
+    /* Methods involving the concurrent mode */
+
+    /**
+     * Turn the concurrent mode on or off, see the class description. This should be done before the file system is shared by the threads.
+     * @param concurrent whether the file system is shared by several threads.
+     */
+    public void setConcurrent(boolean concurrent) {
+        locks = concurrent ? new DirectoryLocks() : null;
+    }
+
+    /**
+     * Check if the file system is in the concurrent mode.
+     * @return whether the file system is in the concurrent mode.
+     */
+    public boolean isConcurrent() {
+        return locks != null;
+    }
+
+    private DirectoryLocks.Guard lockExclusively() {
+        return (locks == null) ? DirectoryLocks.NONE : locks.lockExclusively();
+    }
+
+    private DirectoryLocks.Guard lockShared() {
+        return (locks == null) ? DirectoryLocks.NONE : locks.lockShared();
+    }
+
+    private DirectoryLocks.Guard lockForRead(File file) {
+        return (locks == null) ? DirectoryLocks.NONE : locks.lockForRead(file);
+    }
+
+    private DirectoryLocks.Guard lockForChange(Directory directory) {
+        return (locks == null) ? DirectoryLocks.NONE : locks.lockForChange(directory);
+    }
+
+
+    /* Methods involving the sessions */
+
+    /**
+     * Open a session on the current thread, which has its own working directory, starting from the working directory of the file system. The other threads keep using the working directory of the file system. A session follows the file system to the root directory when another virtual disk or snapshot is mounted.
+     * <p>
+     * The sessions share everything else, so the file system should be in the concurrent mode when they run on several threads.
+     */
+    public void openSession() {
+        sessionWorkingDirectories.set(new Directory[]{workingDirectory});
+    }
+
+    /**
+     * Close the session of the current thread, if any.
+     */
+    public void closeSession() {
+        sessionWorkingDirectories.remove();
+    }
+
+
+    /* Methods involving the mutation listeners and the write-ahead log */
+
+    /**
+     * Register an observer of the mutations of the mounted virtual disk.
+     * @param listener the listener.
+     */
+    public void addMutationListener(MutationListener listener) {
+        mutationListeners.add(listener);
+    }
+
+    /**
+     * Unregister an observer of the mutations.
+     * @param listener the listener.
+     */
+    public void removeMutationListener(MutationListener listener) {
+        mutationListeners.remove(listener);
+    }
+
+    /**
+     * Set how the write-ahead log of the virtual disks is synced, which takes effect immediately.
+     * @param policy the sync policy, or {@code null} to turn the log off.
+     * @param parameter the {@code n} of the {@code BATCH} and {@code TIME} policies, which must be positive for them.
+     */
+    @SuppressWarnings("try")
+    public void setWriteAheadLogPolicy(WriteAheadLog.SyncPolicy policy, int parameter) {
+        try (DirectoryLocks.Guard guard = lockExclusively()) {
+            syncPolicy = policy;
+            syncParameter = parameter;
+            if (policy == null) {
+                discardWriteAheadLog();
+            } else if (writeAheadLog != null) {
+                writeAheadLog.setPolicy(policy, parameter);
+            } else {
+                openWriteAheadLog();
+            }
+        }
+    }
+
+    /**
+     * Get the sync policy of the write-ahead log.
+     * @return the sync policy, or {@code null} if the log is turned off.
+     */
+    public WriteAheadLog.SyncPolicy getWriteAheadLogPolicy() {
+        return syncPolicy;
+    }
+
+    /**
+     * Get the {@code n} of the {@code BATCH} and {@code TIME} policies.
+     * @return the parameter of the sync policy.
+     */
+    public int getWriteAheadLogParameter() {
+        return syncParameter;
+    }
+
+    /**
+     * Get the write-ahead log of the current virtual disk.
+     * @return the log, or {@code null} if the virtual disk has no backing image or the log is turned off.
+     */
+    public WriteAheadLog getWriteAheadLog() {
+        return writeAheadLog;
+    }
+
+    /**
+     * Get the error that stopped the write-ahead log.
+     * @return the error, or {@code null} if the log is working or turned off.
+     */
+    public IOException getWriteAheadLogFailure() {
+        if (writeAheadLogFailure != null) {
+            return writeAheadLogFailure;
+        }
+        return (writeAheadLog == null) ? null : writeAheadLog.getFailure();
+    }
+
+    /**
+     * Open the write-ahead log of the current virtual disk, if it has a backing image. A failure does not stop the file system, but is reported by {@code getWriteAheadLogFailure()}.
+     */
+    private void openWriteAheadLog() {
+        writeAheadLogFailure = null;
+        BackingImage image = (currentVDisk == null) ? null : currentVDisk.__INTERNAL__getBackingImage();
+        if (syncPolicy == null || image == null) {
+            return;
+        }
+        try {
+            writeAheadLog = WriteAheadLog.open(image, syncPolicy, syncParameter);
+            mutationListeners.add(writeAheadLog);
+        } catch (IOException | InvalidPathException e) {
+            writeAheadLogFailure = (e instanceof IOException) ? (IOException) e : new IOException(e.getMessage());
+        }
+    }
+
+    /**
+     * Close and delete the write-ahead log of the current virtual disk, since its mutations are abandoned. The log is only left behind when the application stops without quitting.
+     */
+    private void discardWriteAheadLog() {
+        if (writeAheadLog != null) {
+            mutationListeners.remove(writeAheadLog);
+            writeAheadLog.discard();
+            writeAheadLog = null;
+        }
+    }
+
+    /**
+     * Start a new write-ahead log after the current virtual disk is saved, since all logged mutations are in the image now.
+     */
+    private void resetWriteAheadLog() {
+        BackingImage image = currentVDisk.__INTERNAL__getBackingImage();
+        if (writeAheadLog != null && image != null && writeAheadLog.getPath().equals(WriteAheadLog.pathOf(image.getPath())) && writeAheadLog.getFailure() == null) {
+            try {
+                writeAheadLog.reset(image);
+                return;
+            } catch (IOException e) {
+                // Reopened below.
+            }
+        }
+        discardWriteAheadLog();
+        openWriteAheadLog();
+    }
+
+
+    /* Methods involving the indexes */
+
+    /**
+     * Turn the index of the files by their absolute paths on or off. The index is built when it is first used.
+     * @param enabled whether the index is turned on.
+     */
+    @SuppressWarnings("try")
+    public void setPathIndexEnabled(boolean enabled) {
+        try (DirectoryLocks.Guard guard = lockExclusively()) {
+            if (enabled && pathIndex == null) {
+                pathIndex = new PathIndex(mountedRoot());
+                mutationListeners.add(pathIndex);
+            } else if (!enabled && pathIndex != null) {
+                mutationListeners.remove(pathIndex);
+                pathIndex = null;
+            }
+        }
+    }
+
+    /**
+     * Get the index of the files by their absolute paths.
+     * @return the index, or {@code null} if it is turned off.
+     */
+    public PathIndex getPathIndex() {
+        return pathIndex;
+    }
+
+    /**
+     * Turn the index of the documents by their types on or off. The index is built when it is first used.
+     * @param enabled whether the index is turned on.
+     */
+    @SuppressWarnings("try")
+    public void setTypeIndexEnabled(boolean enabled) {
+        try (DirectoryLocks.Guard guard = lockExclusively()) {
+            if (enabled && typeIndex == null) {
+                typeIndex = new TypeIndex(mountedRoot());
+                mutationListeners.add(typeIndex);
+            } else if (!enabled && typeIndex != null) {
+                mutationListeners.remove(typeIndex);
+                typeIndex = null;
+            }
+        }
+    }
+
+    /**
+     * Get the index of the documents by their types.
+     * @return the index, or {@code null} if it is turned off.
+     */
+    public TypeIndex getTypeIndex() {
+        return typeIndex;
+    }
+
+    /**
+     * Turn the index of the documents by their sizes on or off. The index is built when it is first used.
+     * @param enabled whether the index is turned on.
+     */
+    @SuppressWarnings("try")
+    public void setSizeIndexEnabled(boolean enabled) {
+        try (DirectoryLocks.Guard guard = lockExclusively()) {
+            if (enabled && sizeIndex == null) {
+                sizeIndex = new SizeIndex(mountedRoot());
+                mutationListeners.add(sizeIndex);
+            } else if (!enabled && sizeIndex != null) {
+                mutationListeners.remove(sizeIndex);
+                sizeIndex = null;
+            }
+        }
+    }
+
+    /**
+     * Get the index of the documents by their sizes.
+     * @return the index, or {@code null} if it is turned off.
+     */
+    public SizeIndex getSizeIndex() {
+        return sizeIndex;
+    }
+
+    /**
+     * Turn the trigram index of the names of the files on or off. The index is built when it is first used.
+     * @param enabled whether the index is turned on.
+     */
+    @SuppressWarnings("try")
+    public void setNameIndexEnabled(boolean enabled) {
+        try (DirectoryLocks.Guard guard = lockExclusively()) {
+            if (enabled && nameIndex == null) {
+                nameIndex = new NameIndex(mountedRoot());
+                mutationListeners.add(nameIndex);
+            } else if (!enabled && nameIndex != null) {
+                mutationListeners.remove(nameIndex);
+                nameIndex = null;
+            }
+        }
+    }
+
+    /**
+     * Get the trigram index of the names of the files.
+     * @return the index, or {@code null} if it is turned off.
+     */
+    public NameIndex getNameIndex() {
+        return nameIndex;
+    }
+
+    /**
+     * Get a planner which searches by the secondary indexes.
+     * @return the planner, or {@code null} if none of the type, size and name indexes is turned on, or in the concurrent mode, where the indexes are changed by the commits of all threads.
+     */
+    public SearchPlanner getSearchPlanner() {
+        if (locks != null) {
+            return null;
+        }
+        return (typeIndex == null && sizeIndex == null && nameIndex == null) ? null : new SearchPlanner(typeIndex, sizeIndex, nameIndex);
+    }
+
+    /**
+     * Let the indexes index the current virtual disk, since another one is mounted.
+     */
+    private void resetIndexes() {
+        if (pathIndex != null) {
+            pathIndex.reset(mountedRoot());
+        }
+        for (AttributeIndex index : new AttributeIndex[]{typeIndex, sizeIndex, nameIndex}) {
+            if (index != null) {
+                index.reset(mountedRoot());
+            }
+        }
+        for (CriterionView view : views.values()) {
+            view.reset(mountedRoot());
+        }
+    }
+
+    /**
+     * Get the root directory of the current virtual disk for the indexes.
+     * @return the root directory, or {@code null} if no virtual disk is mounted.
+     */
+    private Directory mountedRoot() {
+        return (currentVDisk == null) ? null : currentVDisk.__INTERNAL__getRootDirectory();
     }
 
 
@@ -114,6 +677,21 @@ public final class FileSystem {
         return currentVDisk.__INTERNAL__getRootDirectory();
     }
 
+    /**
+     * Get the free space of the current virtual disk.
+     * @return the free space.
+     * @throws NoMountedDiskOrWorkingDirectoryException if no virtual disk is mounted.
+     */
+    @SuppressWarnings("try")
+    public long getFreeSpace() throws NoMountedDiskOrWorkingDirectoryException {
+        try (DirectoryLocks.Guard guard = lockShared()) {
+            Directory root = getRootDirectory();
+            synchronized (root) {
+                return currentVDisk.__INTERNAL__getFreeSpace();
+            }
+        }
+    }
+
     /**
      * Get the working directory of the current virtual disk.
      * @return the {@code Directory} object of the current working directory.
@@ -121,10 +699,26 @@ public final class FileSystem {
      * @throws FileNotExistsException if the working directory has been deleted.
      */
     public Directory getWorkingDirectory() throws NoMountedDiskOrWorkingDirectoryException, FileNotExistsException {
+        Directory[] session = sessionWorkingDirectories.get();
+        Directory workingDirectory = this.workingDirectory;
         if (workingDirectory == null) {
             throw new NoMountedDiskOrWorkingDirectoryException();
         }
-        checkExistence(workingDirectory);
+        if (session != null) {
+            // The session follows the file system to another virtual disk or snapshot.
+            if (session[0] == null || session[0].__INTERNAL__getRoot() != workingDirectory.__INTERNAL__getRoot()) {
+                session[0] = workingDirectory;
+            }
+            workingDirectory = session[0];
+        }
+        try {
+            checkExistenceOptimistically(workingDirectory);
+        } catch (FileNotExistsException e) {
+            if (session != null) {
+                session[0] = (Directory) workingDirectory.__INTERNAL__getRoot(); // Removed by another session, so the next command starts over from the root directory.
+            }
+            throw e;
+        }
         return workingDirectory;
     }
 
@@ -150,9 +744,14 @@ public final class FileSystem {
      * @throws WrongAddressSpaceException if the file is not associated with the currently mounted virtual disk.
      */
     public void setNewWorkingDirectory(Directory newWorkingDirectory) throws FileNotExistsException, WrongAddressSpaceException {
-        checkExistence(newWorkingDirectory);
+        checkExistenceOptimistically(newWorkingDirectory);
         checkAddressSpace(newWorkingDirectory);
-        this.workingDirectory = newWorkingDirectory;
+        Directory[] session = sessionWorkingDirectories.get();
+        if (session != null) {
+            session[0] = newWorkingDirectory;
+        } else {
+            this.workingDirectory = newWorkingDirectory;
+        }
     }
 
 
@@ -162,12 +761,18 @@ public final class FileSystem {
     /**
      * Get all files of a directory.
      * @param directory the directory.
-     * @return all files of that directory, in a {@code TreeMap} form.
+     * @return all files of that directory keyed by their names, in the order of their names, which is a copy in the concurrent mode.
      * @throws FileNotExistsException if the directory has been deleted.
      */
-    public TreeMap<String, File> getAllFiles(Directory directory) throws FileNotExistsException {
-        checkExistence(directory);
-        return directory.__MODEL_INTERNAL__getFiles();
+    public Map<String, File> getAllFiles(Directory directory) throws FileNotExistsException {
+        if (locks == null) {
+            checkExistence(directory);
+            return directory.__MODEL_INTERNAL__getFiles();
+        }
+        return locks.read(directory, (optimistic) -> {
+            checkExistence(directory);
+            return directory.__MODEL_INTERNAL__getFiles().copy(optimistic);
+        });
     }
 
     /**
@@ -178,11 +783,76 @@ public final class FileSystem {
      * @throws FileNotExistsException if the directory has been deleted or there is no such file in the directory with the given name.
      */
     public File findFile(Directory directory, String name) throws FileNotExistsException {
+        if (locks == null) {
+            return findFileIn(directory, name);
+        }
+        return locks.read(directory, (optimistic) -> findFileIn(directory, name));
+    }
+
+    private File findFileIn(Directory directory, String name) throws FileNotExistsException {
         checkExistence(directory);
-        if (!directory.__INTERNAL__existsName(name)) {
+        File file = directory.__INTERNAL__findFile(name);
+        if (file == null) {
             throw new FileNotExistsException(name);
         }
-        return directory.__INTERNAL__findFile(name);
+        return file;
+    }
+
+    /**
+     * Get the generation of a directory, which changes whenever a file at or below it is stored, removed, renamed or modified, and only then.
+     * @param directory the directory.
+     * @return the generation.
+     * @throws FileNotExistsException if the directory has been deleted.
+     */
+    @SuppressWarnings("try")
+    public long getGeneration(Directory directory) throws FileNotExistsException {
+        try (DirectoryLocks.Guard guard = lockForRead(directory)) {
+            checkExistence(directory);
+            return directory.__INTERNAL__getGeneration();
+        }
+    }
+
+    /**
+     * Find a file by its absolute path, e.g., {@code $:a:b:c.txt}, where a document is named with its type.
+     * <p>
+     * This is a single hash lookup if the path index is turned on, or one lookup per component otherwise.
+     * @param path the absolute path.
+     * @return the reference to the file.
+     * @throws NoMountedDiskOrWorkingDirectoryException if no virtual disk is mounted.
+     * @throws FileNotExistsException if there is no file with that path.
+     */
+    @SuppressWarnings("try")
+    public File findFileByPath(String path) throws NoMountedDiskOrWorkingDirectoryException, FileNotExistsException {
+        try (DirectoryLocks.Guard guard = lockShared()) {
+            Directory root = getRootDirectory();
+            if (pathIndex != null) {
+                File file;
+                synchronized (root) {
+                    file = pathIndex.get(path);
+                }
+                if (file == null) {
+                    throw new FileNotExistsException(path);
+                }
+                return file;
+            }
+
+            String[] components = path.split(":", -1);
+            if (!components[0].equals(root.getName())) {
+                throw new FileNotExistsException(path);
+            }
+            File file = root;
+            for (int i = 1; i < components.length; i++) {
+                if (!(file instanceof Directory)) {
+                    throw new FileNotExistsException(path);
+                }
+                int dot = components[i].indexOf('.');
+                file = findFile((Directory) file, (dot < 0) ? components[i] : components[i].substring(0, dot));
+                if (!file.getFullname().equals(components[i])) {
+                    throw new FileNotExistsException(path);
+                }
+            }
+            return file;
+        }
     }
 
     /**
@@ -192,8 +862,14 @@ public final class FileSystem {
      * @throws FileNotExistsException if this file has been deleted.
      */
     public File getParent(File file) throws FileNotExistsException {
-        checkExistence(file);
-        return file.__INTERNAL__getParent();
+        if (locks == null) {
+            checkExistence(file);
+            return file.__INTERNAL__getParent();
+        }
+        return locks.read(file, (optimistic) -> {
+            checkExistence(file);
+            return file.__INTERNAL__getParent();
+        });
     }
 
 
@@ -214,18 +890,30 @@ public final class FileSystem {
      * @throws VDiskOutOfSpaceException if the virtual disk is out of space.
      * @throws DuplicatedFilenameException if another file has the same name as this one.
      */
+    @SuppressWarnings("try")
     public void storeFile(File file) throws WrongAddressSpaceException, VDiskOutOfSpaceException, DuplicatedFilenameException {
-        checkAddressSpace(file);
+        Directory parent = (Directory)file.__INTERNAL__getParent();
+        try (DirectoryLocks.Guard guard = lockForChange(parent)) {
+            checkWritable();
+            checkAddressSpace(file);
 
-        if (file.getSize() > currentVDisk.__INTERNAL__getFreeSpace()) {
-            throw new VDiskOutOfSpaceException(file.getSize(), currentVDisk.__INTERNAL__getFreeSpace());
-        }
+            synchronized (parent.__INTERNAL__getRoot()) {
+                if (file.getSize() > currentVDisk.__INTERNAL__getFreeSpace()) {
+                    throw new VDiskOutOfSpaceException(file.getSize(), currentVDisk.__INTERNAL__getFreeSpace());
+                }
 
-        Directory parent = (Directory)file.__INTERNAL__getParent();
-        if (parent.__INTERNAL__existsName(file.getName())) {
-            throw new DuplicatedFilenameException(file.getName());
+                if (parent.__INTERNAL__existsName(file.getName())) {
+                    throw new DuplicatedFilenameException(file.getName());
+                }
+                currentVDisk.__INTERNAL__keepChild(parent, file.getName());
+                parent.__INTERNAL__add(file);
+                parent.__INTERNAL__touch();
+                currentVDisk.__INTERNAL__markStored(file);
+                for (MutationListener listener : mutationListeners) {
+                    listener.onStore(file);
+                }
+            }
         }
-        parent.__INTERNAL__add(file);
     }
 
 
@@ -240,13 +928,28 @@ public final class FileSystem {
      * @throws FileNotExistsException if the file has been deleted.
      * @throws CannotEditRootDirectoryException if the Service part is attempting to remove the root directory.
      */
+    @SuppressWarnings("try")
     public void removeFile(File file) throws WrongAddressSpaceException, FileNotExistsException, CannotEditRootDirectoryException {
-        checkAddressSpace(file);
-        checkExistence(file);
-        if ((file instanceof Directory) && ((Directory)file).isRootDirectory()) {
+        if (file.__INTERNAL__getParent() == null) {
             throw new CannotEditRootDirectoryException();
         }
-        ((Directory)file.__INTERNAL__getParent()).__INTERNAL__delete(file);
+        try (DirectoryLocks.Guard guard = lockForChange((Directory) file.__INTERNAL__getParent())) {
+            checkWritable();
+            checkAddressSpace(file);
+            checkExistence(file);
+            if ((file instanceof Directory) && ((Directory)file).isRootDirectory()) {
+                throw new CannotEditRootDirectoryException();
+            }
+            synchronized (file.__INTERNAL__getRoot()) {
+                currentVDisk.__INTERNAL__keepChild((Directory)file.__INTERNAL__getParent(), file.getName());
+                ((Directory)file.__INTERNAL__getParent()).__INTERNAL__delete(file);
+                ((Directory)file.__INTERNAL__getParent()).__INTERNAL__touch();
+                currentVDisk.__INTERNAL__markRemoved(file);
+                for (MutationListener listener : mutationListeners) {
+                    listener.onRemove(file);
+                }
+            }
+        }
     }
 
     /**
@@ -258,22 +961,40 @@ public final class FileSystem {
      * @throws DuplicatedFilenameException if another file has the same name as the expected new name.
      * @throws CannotEditRootDirectoryException if the Service part is attempting to remove the root directory.
      */
+    @SuppressWarnings("try")
     public void renameFile(File file, String newName) throws WrongAddressSpaceException, FileNotExistsException, DuplicatedFilenameException, CannotEditRootDirectoryException {
-        checkAddressSpace(file);
-        checkExistence(file);
-
-        if ((file instanceof Directory) && ((Directory)file).isRootDirectory()) {
+        Directory parent = (Directory)file.__INTERNAL__getParent();
+        if (parent == null) {
             throw new CannotEditRootDirectoryException();
         }
+        try (DirectoryLocks.Guard guard = lockForChange(parent)) {
+            checkWritable();
+            checkAddressSpace(file);
+            checkExistence(file);
 
-        Directory parent = (Directory)file.__INTERNAL__getParent();
-        if (parent.__INTERNAL__existsName(newName)) {
-            throw new DuplicatedFilenameException(newName);
-        }
+            if ((file instanceof Directory) && ((Directory)file).isRootDirectory()) {
+                throw new CannotEditRootDirectoryException();
+            }
 
-        parent.__INTERNAL__delete(file);
-        file.__INTERNAL__setName(newName);
-        parent.__INTERNAL__add(file);
+            if (parent.__INTERNAL__existsName(newName)) {
+                throw new DuplicatedFilenameException(newName);
+            }
+
+            synchronized (parent.__INTERNAL__getRoot()) {
+                String oldName = file.getName();
+                currentVDisk.__INTERNAL__keepState(file);
+                currentVDisk.__INTERNAL__keepChild(parent, oldName);
+                currentVDisk.__INTERNAL__keepChild(parent, newName);
+                parent.__INTERNAL__delete(file);
+                file.__INTERNAL__setName(newName);
+                parent.__INTERNAL__add(file);
+                parent.__INTERNAL__touch();
+                currentVDisk.__INTERNAL__markChanged(file);
+                for (MutationListener listener : mutationListeners) {
+                    listener.onRename(file, oldName);
+                }
+            }
+        }
     }
 
     /**
@@ -284,24 +1005,125 @@ public final class FileSystem {
      * @throws FileNotExistsException if the file has been deleted.
      * @throws VDiskOutOfSpaceException if the virtual disk is out of space.
      */
+    @SuppressWarnings("try")
     public void modifyDocument(File file, String newContent) throws WrongAddressSpaceException, FileNotExistsException, VDiskOutOfSpaceException {
-        checkAddressSpace(file);
-        checkExistence(file);
-
-        if (!(file instanceof Document)) {
+        Directory parent = (Directory)file.__INTERNAL__getParent();
+        if (parent == null) {
             throw new FileNotExistsException(file.getFullname() + " as a document");
         }
+        try (DirectoryLocks.Guard guard = lockForChange(parent)) {
+            checkWritable();
+            checkAddressSpace(file);
+            checkExistence(file);
+
+            if (!(file instanceof Document)) {
+                throw new FileNotExistsException(file.getFullname() + " as a document");
+            }
+
+            synchronized (parent.__INTERNAL__getRoot()) {
+                // Pre-calculate the required space.
+                if ((Document.EMPTY_DOCUMENT_SIZE + newContent.length() * 2L) > currentVDisk.__INTERNAL__getFreeSpace()) {
+                    throw new VDiskOutOfSpaceException((Document.EMPTY_DOCUMENT_SIZE + newContent.length() * 2L), currentVDisk.__INTERNAL__getFreeSpace());
+                }
+
+                currentVDisk.__INTERNAL__keepState(file);
+                ((Document)file).__INTERNAL__setContent(newContent);
+                parent.__INTERNAL__touch();
+                currentVDisk.__INTERNAL__markChanged(file);
+                for (MutationListener listener : mutationListeners) {
+                    listener.onModify((Document)file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Import a directory read from the local file system, with all files below it, into a directory of the virtual disk, as one change.
+     * <p>
+     * The files are built first, and the free space and the duplicated filenames, both in the directory and in the tree, are checked for all of them before anything is stored, so the import either stores the whole tree or nothing. Then the tree is stored like {@code storeFile()} stores a directory with files below it, i.e., the history of the virtual disk and the mutation listeners see one stored directory, and removing it undoes the import.
+     * @param tree the directory read from the local file system.
+     * @param parent the directory to import into.
+     * @return the directory imported.
+     * @throws WrongAddressSpaceException if the directory to import into is not associated with the currently mounted virtual disk.
+     * @throws VDiskOutOfSpaceException if the virtual disk is out of space for the whole tree.
+     * @throws DuplicatedFilenameException if the directory to import into, or a directory of the tree, would have two files of the same name.
+     * @throws CannotInitializeFileException if a file of the tree cannot be built.
+     */
+    @SuppressWarnings("try")
+    public Directory importTree(HostTree tree, Directory parent) throws WrongAddressSpaceException, VDiskOutOfSpaceException, DuplicatedFilenameException, CannotInitializeFileException {
+        try (DirectoryLocks.Guard guard = lockForChange(parent)) {
+            checkWritable();
+            checkAddressSpace(parent);
+
+            synchronized (parent.__INTERNAL__getRoot()) {
+                // The files are built parents first, and are only added to their parents below, so a parent is always stored before its files.
+                ArrayList<File> files = new ArrayList<>();
+                Deque<HostTree.Node> nodes = new ArrayDeque<>();
+                Deque<Directory> parents = new ArrayDeque<>();
+                nodes.push(tree.getRoot());
+                parents.push(parent);
+                long size = 0;
+                while (!nodes.isEmpty()) {
+                    HostTree.Node node = nodes.pop();
+                    Directory directory = parents.pop();
+                    if (!node.isDirectory()) {
+                        File document = new Document(node.getName(), node.getType(), node.getContent(), directory);
+                        files.add(document);
+                        size += document.getSize();
+                        continue;
+                    }
+                    Directory imported = new Directory(node.getName(), directory);
+                    files.add(imported);
+                    size += Directory.EMPTY_NON_ROOT_DIRECTORY_SIZE;
+                    HashSet<String> names = new HashSet<>();
+                    for (HostTree.Node child : node.getChildren()) {
+                        if (!names.add(child.getName())) {
+                            throw new DuplicatedFilenameException(child.getName());
+                        }
+                        nodes.push(child);
+                        parents.push(imported);
+                    }
+                }
 
-        // Pre-calculate the required space.
-        if ((Document.EMPTY_DOCUMENT_SIZE + newContent.length() * 2L) > currentVDisk.__INTERNAL__getFreeSpace()) {
-            throw new VDiskOutOfSpaceException((Document.EMPTY_DOCUMENT_SIZE + newContent.length() * 2L), currentVDisk.__INTERNAL__getFreeSpace());
+                if (size > currentVDisk.__INTERNAL__getFreeSpace()) {
+                    throw new VDiskOutOfSpaceException(size, currentVDisk.__INTERNAL__getFreeSpace());
+                }
+                Directory top = (Directory) files.get(0);
+                if (parent.__INTERNAL__existsName(top.getName())) {
+                    throw new DuplicatedFilenameException(top.getName());
+                }
+
+                currentVDisk.__INTERNAL__keepChild(parent, top.getName());
+                for (File file : files) {
+                    ((Directory) file.__INTERNAL__getParent()).__INTERNAL__add(file);
+                    if (file instanceof Directory) {
+                        ((Directory) file).__INTERNAL__touch();
+                    }
+                }
+                parent.__INTERNAL__touch();
+                currentVDisk.__INTERNAL__markStored(top);
+                for (MutationListener listener : mutationListeners) {
+                    listener.onStore(top);
+                }
+                return top;
+            }
         }
+    }
 
-        ((Document)file).__INTERNAL__setContent(newContent);
+    /**
+     * Check if the currently mounted virtual disk can be changed, i.e., it is not a snapshot.
+     * @throws ReadOnlyVDiskException if a snapshot is mounted.
+     */
+    private void checkWritable() throws ReadOnlyVDiskException {
+        if (currentVDisk != null && currentVDisk.__INTERNAL__isReadOnly()) {
+            throw new ReadOnlyVDiskException();
+        }
     }
 
     /**
      * Check if the file exists in the currently mounted virtual disk, or if it is going to be added in the currently mounted virtual disk.
+     * <p>
+     * Every virtual disk owns its root directory, and every file keeps the root of its tree, so this is an identity comparison in {@code O(1)}, however deep the file is.
      * @throws WrongAddressSpaceException if the file is not associated with the currently mounted virtual disk.
      */
     private void checkAddressSpace(File file) throws WrongAddressSpaceException {
@@ -310,6 +1132,22 @@ public final class FileSystem {
         }
     }
 
+    /**
+     * Check if the file still exists in its parent directory, like {@code checkExistence()}, by an optimistic read in the concurrent mode.
+     * @param file the file to check.
+     * @throws FileNotExistsException if the file no longer exists in its parent directory.
+     */
+    private void checkExistenceOptimistically(File file) throws FileNotExistsException {
+        if (locks == null) {
+            checkExistence(file);
+        } else {
+            locks.read(file, (optimistic) -> {
+                checkExistence(file);
+                return null;
+            });
+        }
+    }
+
     /**
      * Check if the file still exists in its parent directory, i.e., if the file has been deleted.
      * @param file the file to check.
@@ -336,16 +1174,20 @@ public final class FileSystem {
      * @throws DuplicatedCriterionNameException if another criterion in the list shares the same name as the new one.
      */
     public void addCriterion(Criterion criterion) throws DuplicatedCriterionNameException {
-        String name = criterion.getName();
-        if (criteria.containsKey(name)) {
-            throw new DuplicatedCriterionNameException(criterion.getName());
-        }
+        synchronized (criteriaLock) {
+            String name = criterion.getName();
+            if (criteria.containsKey(name)) {
+                throw new DuplicatedCriterionNameException(criterion.getName());
+            }
 
-        for (Criterion dependency : criterion.getDependencies()) {
-            dependency.__INTERNAL__increaseReferenceCount();
-        }
+            for (Criterion dependency : criterion.getDependencies()) {
+                dependency.__INTERNAL__increaseReferenceCount();
+            }
 
-        criteria.put(name, criterion);
+            TreeMap<String, Criterion> changed = forChange(criteria);
+            changed.put(name, criterion);
+            criteria = changed;
+        }
     }
 
     /**
@@ -377,19 +1219,99 @@ public final class FileSystem {
      * @throws CannotDeleteCriterionException if another criteria depend on this criterion.
      */
     public void removeCriterion(Criterion criterion) throws CriterionNotExistsException, CannotDeleteCriterionException {
-        if (!criteria.containsValue(criterion)) {
-            throw new CriterionNotExistsException(criterion.getName());
+        synchronized (criteriaLock) {
+            if (!criteria.containsValue(criterion)) {
+                throw new CriterionNotExistsException(criterion.getName());
+            }
+
+            if (criterion.getReferenceCount() > 0) {
+                throw new CannotDeleteCriterionException();
+            }
+
+            for (Criterion dependency : criterion.getDependencies()) {
+                dependency.__INTERNAL__decreaseReferenceCount();
+            }
+
+            unwatchCriterion(criterion);
+            TreeMap<String, Criterion> changed = forChange(criteria);
+            changed.remove(criterion.getName());
+            criteria = changed;
         }
+    }
+
+    /**
+     * Watch a criterion, i.e., keep the files of the current virtual disk satisfying it in a materialized view, which is kept up to date by the mutations and is built when it is first used. The view is dropped when the criterion is deleted or the criteria are loaded.
+     * @param criterion the criterion to watch.
+     * @return the view of the criterion, which is the existing one if the criterion is already watched.
+     * @throws CriterionNotExistsException if the criterion is not in the list.
+     */
+    @SuppressWarnings("try")
+    public CriterionView watchCriterion(Criterion criterion) throws CriterionNotExistsException {
+        try (DirectoryLocks.Guard guard = lockShared()) {
+            synchronized (criteriaLock) {
+                if (criteria.get(criterion.getName()) != criterion) {
+                    throw new CriterionNotExistsException(criterion.getName());
+                }
 
-        if (criterion.getReferenceCount() > 0) {
-            throw new CannotDeleteCriterionException();
+                CriterionView view = views.get(criterion.getName());
+                if (view == null) {
+                    view = new CriterionView(criterion, mountedRoot());
+                    TreeMap<String, CriterionView> changed = forChange(views);
+                    changed.put(criterion.getName(), view);
+                    views = changed;
+                    mutationListeners.add(view);
+                }
+                return view;
+            }
         }
+    }
 
-        for (Criterion dependency : criterion.getDependencies()) {
-            dependency.__INTERNAL__decreaseReferenceCount();
+    /**
+     * Stop watching a criterion. Nothing happens if the criterion is not watched.
+     * @param criterion the criterion.
+     */
+    public void unwatchCriterion(Criterion criterion) {
+        synchronized (criteriaLock) {
+            CriterionView view = views.get(criterion.getName());
+            if (view != null && view.getCriterion() == criterion) {
+                TreeMap<String, CriterionView> changed = forChange(views);
+                changed.remove(criterion.getName());
+                views = changed;
+                mutationListeners.remove(view);
+            }
         }
+    }
 
-        criteria.remove(criterion.getName());
+    /**
+     * Get the materialized view of a criterion.
+     * @param criterion the criterion.
+     * @return the view, or {@code null} if the criterion is not watched.
+     */
+    public CriterionView getView(Criterion criterion) {
+        CriterionView view = views.get(criterion.getName());
+        return (view != null && view.getCriterion() == criterion) ? view : null;
+    }
+
+    /**
+     * Get the materialized views of all watched criteria.
+     * @return the views, in the order of the names of their criteria.
+     */
+    public Collection<CriterionView> getAllViews() {
+        return views.values();
+    }
+
+    private void unwatchAllCriteria() {
+        mutationListeners.removeAll(views.values());
+        views = new TreeMap<>();
+    }
+
+    /**
+     * Get the map to change, which is a copy in the concurrent mode, so the readers of the published map never see it changing.
+     * @param map the published map.
+     * @return the map itself, or a copy of it in the concurrent mode.
+     */
+    private <V> TreeMap<String, V> forChange(TreeMap<String, V> map) {
+        return (locks == null) ? map : new TreeMap<>(map);
     }
 
 
@@ -397,15 +1319,38 @@ public final class FileSystem {
 
     /**
      * Load the virtual disk from the local file system.
+     * <p>
+     * Both the binary images and the virtual disks saved by the Java serialization (by the earlier versions) can be loaded. The mutations left in the write-ahead log of a binary image, which were not saved before the application stopped, are replayed.
      * @param path the path of the local file system where the virtual disk will be loaded.
      * @throws LocalFileSystemException if any local file system errors are met.
+     * @see VDiskImageReader
      */
     public void loadVDisk(String path) throws LocalFileSystemException {
-        // ejectVDisk();
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(path))) {
-            mountVDisk((VDisk)ois.readObject());
-        } catch (ClassNotFoundException | IOException e) {
-            throw new LocalFileSystemException(e.getMessage());
+        loadVDisk(path, false);
+    }
+
+    /**
+     * Load the virtual disk from the local file system, optionally leaving the contents of the documents in the image until they are read.
+     * @param path the path of the local file system where the virtual disk will be loaded.
+     * @param lazy whether the contents of the documents are read lazily from a memory-mapped image.
+     * @throws LocalFileSystemException if any local file system errors are met.
+     * @see VDiskImageReader
+     */
+    @SuppressWarnings("try")
+    public void loadVDisk(String path, boolean lazy) throws LocalFileSystemException {
+        try (DirectoryLocks.Guard guard = lockExclusively()) {
+            // ejectVDisk();
+            try {
+                if (writeAheadLog != null && writeAheadLog.getPath().equals(WriteAheadLog.pathOf(Paths.get(path).toAbsolutePath().toString()))) {
+                    discardWriteAheadLog(); // Reloading the image abandons the unsaved mutations, so they are not replayed.
+                }
+                mount(VDiskImageReader.read(Paths.get(path), lazy));
+            } catch (IOException | InvalidPathException e) {
+                if (writeAheadLog == null) {
+                    openWriteAheadLog();
+                }
+                throw new LocalFileSystemException(e.getMessage());
+            }
         }
     }
 
@@ -416,27 +1361,40 @@ public final class FileSystem {
      */
     public void loadCriteria(String path) throws LocalFileSystemException {
         try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(path))) {
-            criteria = (TreeMap<String, Criterion>) ois.readObject();
+            TreeMap<String, Criterion> loaded = (TreeMap<String, Criterion>) ois.readObject();
+            synchronized (criteriaLock) {
+                criteria = loaded;
+                unwatchAllCriteria();
+            }
         } catch (ClassNotFoundException | IOException e) {
             throw new LocalFileSystemException(e.getMessage());
         }
     }
 
     /**
-     * Save the virtual disk to the local file system.
+     * Save the virtual disk to the local file system, as a binary image.
+     * <p>
+     * Saving to the image the virtual disk was last loaded from or saved to only appends the changes since then. The write-ahead log of the image starts over afterwards.
      * @param path the path of the local file system where the virtual disk will be saved.
      * @throws NoMountedDiskOrWorkingDirectoryException if no virtual disk is mounted.
      * @throws LocalFileSystemException if any local file system errors are met.
+     * @see VDiskImageWriter
      */
+    @SuppressWarnings("try")
     public void saveVDisk(String path) throws NoMountedDiskOrWorkingDirectoryException, LocalFileSystemException {
-        if (currentVDisk == null) {
-            throw new NoMountedDiskOrWorkingDirectoryException();
-        }
+        try (DirectoryLocks.Guard guard = lockExclusively()) {
+            if (currentVDisk == null) {
+                throw new NoMountedDiskOrWorkingDirectoryException();
+            }
 
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(path))) {
-            oos.writeObject(currentVDisk);
-        } catch (IOException e) {
-            throw new LocalFileSystemException(e.getMessage());
+            try {
+                VDiskImageWriter.save(currentVDisk, Paths.get(path));
+                if (liveVDisk == null) {
+                    resetWriteAheadLog(); // A mounted snapshot is saved as a new image, and the live log is kept.
+                }
+            } catch (IOException | InvalidPathException e) {
+                throw new LocalFileSystemException(e.getMessage());
+            }
         }
     }
 
@@ -447,7 +1405,9 @@ public final class FileSystem {
      */
     public void saveAllCriteria(String path) throws LocalFileSystemException {
         try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(path))) {
-            oos.writeObject(criteria);
+            synchronized (criteriaLock) {
+                oos.writeObject(criteria);
+            }
         } catch (IOException e) {
             throw new LocalFileSystemException(e.getMessage());
         }
@@ -0,0 +1,38 @@
+package hk.edu.polyu.comp.comp2021.cvfs.model.filesystem;
+
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Document;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.File;
+
+/**
+ * <h3>The {@code MutationListener} Interface</h3>
+ * This interface specifies the observers of the mutations of the mounted virtual disk. The file system notifies every registered listener right after a mutation succeeds, in the order the listeners are registered.
+ * <p>
+ * A listener shall not throw any exceptions and shall not mutate the virtual disk, since the mutation has already been done when it is notified.
+ * @see FileSystem#addMutationListener(MutationListener)
+ */
+public interface MutationListener {
+    /**
+     * Notified when a file, together with all files below it, has been stored into the virtual disk.
+     * @param file the file stored.
+     */
+    public void onStore(File file);
+
+    /**
+     * Notified when a file, together with all files below it, has been removed from the virtual disk.
+     * @param file the file removed. Its parent is still reachable by {@code __INTERNAL__getParent()}.
+     */
+    public void onRemove(File file);
+
+    /**
+     * Notified when a file has been renamed.
+     * @param file the file renamed.
+     * @param oldName the name before renaming.
+     */
+    public void onRename(File file, String oldName);
+
+    /**
+     * Notified when the content of a document has been modified.
+     * @param document the document modified.
+     */
+    public void onModify(Document document);
+}
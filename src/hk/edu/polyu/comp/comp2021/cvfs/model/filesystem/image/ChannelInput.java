@@ -0,0 +1,176 @@
+package hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.image;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <h3>The {@code ChannelInput} Class</h3>
+ * The reading counterpart of {@code ChannelOutput}. The buffer is of constant size, and long texts are decoded chunk by chunk.
+ * @see ChannelOutput
+ */
+final class ChannelInput {
+    private final FileChannel channel;
+
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(ChannelOutput.BUFFER_SIZE);
+
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    /**
+     * The size of the file, which is not expected to change while it is read.
+     */
+    private final long channelSize;
+
+    /**
+     * The position of the channel right after the bytes in the buffer.
+     */
+    private long channelPosition;
+
+
+    /**
+     * Construct a new input on a channel. Bytes are read from the current position of the channel.
+     * @param channel the channel to read.
+     */
+    ChannelInput(FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.channelSize = channel.size();
+        this.channelPosition = channel.position();
+        buffer.limit(0);
+    }
+
+    /**
+     * Get the position of the next byte to read, as an offset in the file.
+     * @return the offset of the next byte.
+     */
+    long position() {
+        return channelPosition - buffer.remaining();
+    }
+
+    byte getByte() throws IOException {
+        require(1);
+        return buffer.get();
+    }
+
+    short getShort() throws IOException {
+        require(2);
+        return buffer.getShort();
+    }
+
+    int getInt() throws IOException {
+        require(4);
+        return buffer.getInt();
+    }
+
+    long getLong() throws IOException {
+        require(8);
+        return buffer.getLong();
+    }
+
+    /**
+     * Get a short string written by {@code ChannelOutput.putName()}.
+     * @return the short string.
+     */
+    String getName() throws IOException {
+        int length = getShort() & 0xFFFF;
+        require(length);
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Get a text written by {@code ChannelOutput.putText()}.
+     * @param charLength the expected number of characters.
+     * @param byteLength the number of bytes to decode.
+     * @return the text.
+     * @throws StreamCorruptedException if the bytes do not decode into exactly {@code charLength} characters.
+     */
+    String getText(int charLength, long byteLength) throws IOException {
+        if (byteLength == 0) {
+            if (charLength != 0) {
+                throw new StreamCorruptedException("Text shorter than its recorded length.");
+            }
+            return "";
+        }
+        char[] chars = new char[charLength];
+        CharBuffer out = CharBuffer.wrap(chars);
+        long remaining = byteLength;
+
+        decoder.reset();
+        while (remaining > 0) {
+            if (!buffer.hasRemaining()) {
+                fill();
+            }
+            int take = (int) Math.min(buffer.remaining(), remaining);
+            int oldLimit = buffer.limit();
+            int before = buffer.position();
+
+            buffer.limit(before + take);
+            CoderResult result = decoder.decode(buffer, out, take == remaining);
+            remaining -= buffer.position() - before;
+            buffer.limit(oldLimit);
+
+            if (result.isOverflow()) {
+                throw new StreamCorruptedException("Text longer than its recorded length.");
+            }
+            if (buffer.position() == before) {
+                fill(); // An incomplete character is left at the end of the buffer.
+            }
+        }
+        if (decoder.flush(out).isOverflow() || out.hasRemaining()) {
+            throw new StreamCorruptedException("Text shorter or longer than its recorded length.");
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Skip a number of bytes.
+     * @param bytes the number of bytes to skip.
+     */
+    void skip(long bytes) throws IOException {
+        if (bytes <= buffer.remaining()) {
+            buffer.position(buffer.position() + (int) bytes);
+            return;
+        }
+        long target = position() + bytes;
+        if (target > channelSize) {
+            throw new EOFException();
+        }
+        buffer.limit(0);
+        channel.position(target);
+        channelPosition = target;
+    }
+
+    private void require(int bytes) throws IOException {
+        while (buffer.remaining() < bytes) {
+            fill();
+        }
+    }
+
+    /**
+     * Keep the unread bytes and read at least one more byte from the channel.
+     * @throws EOFException if the channel has no more bytes.
+     */
+    private void fill() throws IOException {
+        buffer.compact();
+        int read;
+        try {
+            read = channel.read(buffer);
+        } finally {
+            buffer.flip();
+        }
+        if (read <= 0) {
+            throw new EOFException();
+        }
+        channelPosition += read;
+    }
+}
@@ -0,0 +1,146 @@
+package hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.image;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <h3>The {@code ChannelOutput} Class</h3>
+ * A small buffered writer on top of a {@code FileChannel}. All primitives are big-endian, and the buffer is of constant size no matter how large a document is, because long texts are encoded into the buffer chunk by chunk.
+ */
+final class ChannelOutput {
+    /**
+     * The size of the I/O buffer. This is large enough for any record header and any file name.
+     */
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+
+    /**
+     * Construct a new output on a channel. Bytes are written from the current position of the channel.
+     * @param channel the channel to write.
+     */
+    ChannelOutput(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    void putByte(int value) throws IOException {
+        ensure(1);
+        buffer.put((byte) value);
+    }
+
+    void putShort(int value) throws IOException {
+        ensure(2);
+        buffer.putShort((short) value);
+    }
+
+    void putInt(int value) throws IOException {
+        ensure(4);
+        buffer.putInt(value);
+    }
+
+    void putLong(long value) throws IOException {
+        ensure(8);
+        buffer.putLong(value);
+    }
+
+    /**
+     * Put a short string (such as a file name or a type), prefixed by its length in bytes.
+     * @param name the short string.
+     */
+    void putName(String name) throws IOException {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        putShort(bytes.length);
+        ensure(bytes.length);
+        buffer.put(bytes);
+    }
+
+    /**
+     * Put a text of any length, without any prefix. The caller should have written the length, see {@code utf8Length()}.
+     * @param text the text to write.
+     */
+    void putText(String text) throws IOException {
+        CharBuffer in = CharBuffer.wrap(text);
+        encoder.reset();
+        while (true) {
+            CoderResult result = encoder.encode(in, buffer, true);
+            if (result.isOverflow()) {
+                flush();
+            } else {
+                break;
+            }
+        }
+        while (encoder.flush(buffer).isOverflow()) {
+            flush();
+        }
+    }
+
+    /**
+     * Put raw bytes of any length. Bytes that do not fit in the buffer are written into the channel directly.
+     * @param bytes the bytes to write, from their position to their limit.
+     */
+    void putBytes(ByteBuffer bytes) throws IOException {
+        if (bytes.remaining() <= buffer.remaining()) {
+            buffer.put(bytes);
+            return;
+        }
+        flush();
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+    }
+
+    /**
+     * Write all buffered bytes into the channel.
+     */
+    void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+
+    /**
+     * Get the encoded length of a text in UTF-8, without encoding it. Unpaired surrogates count as one byte, since the encoder replaces them with {@code ?}.
+     * @param text the text.
+     * @return the number of bytes in UTF-8.
+     */
+    static long utf8Length(CharSequence text) {
+        long length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && (i + 1 < text.length()) && Character.isLowSurrogate(text.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length += 1;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
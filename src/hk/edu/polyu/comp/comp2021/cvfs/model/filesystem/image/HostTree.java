@@ -0,0 +1,286 @@
+package hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.image;
+
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Directory;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Document;
+import hk.edu.polyu.comp.comp2021.cvfs.model.internalexceptions.VDiskOutOfSpaceException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * <h3>The {@code HostTree} Class</h3>
+ * A directory of the local file system read into memory, to be imported into a virtual disk by {@code FileSystem.importTree()}.
+ * <p>
+ * The directory is walked once by {@code Files.walkFileTree()}, and the contents of the documents are read afterwards in parallel, in the common {@code ForkJoinPool}. A local file {@code name.type} becomes a document if its name is a valid filename and its type is a valid type of the documents, and a local directory becomes a directory if its name is a valid filename. The other files and directories, and the symbolic links, are skipped and counted. The contents are decoded as UTF-8.
+ * <p>
+ * Nothing is checked against a virtual disk here, e.g., the duplicated filenames, which is left to the import, except that the walk adds up the least size the files can take by the sizes of the local files, and stops before any content is read if the tree cannot fit in the free space, see {@code read(Path, long)}.
+ */
+public final class HostTree {
+    /**
+     * The maximum length of a filename, like the one of the {@code newDoc} and {@code newDir} commands.
+     */
+    public static final int MAX_NAME_LENGTH = 10;
+
+    private final Node root;
+
+    private final int directoryCount;
+
+    private final int documentCount;
+
+    private final int skippedCount;
+
+
+    private HostTree(Node root, int directoryCount, int documentCount, int skippedCount) {
+        this.root = root;
+        this.directoryCount = directoryCount;
+        this.documentCount = documentCount;
+        this.skippedCount = skippedCount;
+    }
+
+    /**
+     * Read a directory of the local file system, with all files below it.
+     * @param path the path of the directory.
+     * @return the tree read.
+     * @throws IOException if any local file system errors are met, or the path is not a directory with a valid filename.
+     */
+    public static HostTree read(Path path) throws IOException {
+        try {
+            return read(path, Long.MAX_VALUE);
+        } catch (VDiskOutOfSpaceException e) {
+            throw new IllegalStateException(e); // Impossible, since no size is larger.
+        }
+    }
+
+    /**
+     * Read a directory of the local file system, with all files below it, if it can fit in some free space.
+     * <p>
+     * A UTF-8 sequence of {@code n} bytes decodes to at least {@code n / 3} chars, so a local file of {@code n} bytes becomes a document of at least {@code EMPTY_DOCUMENT_SIZE + 2 * ceil(n / 3)} bytes. These sizes are added up as the directory is walked, by the attributes of the local files, so a tree which cannot fit is rejected before the contents are read. A tree which passes may still not fit, which is checked by the import with the exact sizes.
+     * @param path the path of the directory.
+     * @param maxSize the free space.
+     * @return the tree read.
+     * @throws IOException if any local file system errors are met, or the path is not a directory with a valid filename.
+     * @throws VDiskOutOfSpaceException if the tree takes more than {@code maxSize} for sure.
+     */
+    public static HostTree read(Path path, long maxSize) throws IOException, VDiskOutOfSpaceException {
+        Path start = path.toAbsolutePath().normalize();
+        if (!Files.isDirectory(start)) {
+            throw new IOException("Not a directory: " + path);
+        }
+        String name = (start.getFileName() == null) ? "" : start.getFileName().toString();
+        if (!isValidName(name)) {
+            throw new IOException("Not a valid directory name: \"" + name + "\"");
+        }
+
+        Walker walker = new Walker(start, maxSize);
+        Files.walkFileTree(start, walker);
+        if (walker.leastSize > maxSize) {
+            throw new VDiskOutOfSpaceException(walker.leastSize, maxSize);
+        }
+
+        List<Path> paths = walker.documentPaths;
+        List<Node> documents = walker.documents;
+        try {
+            IntStream.range(0, documents.size()).parallel().forEach((i) -> {
+                try {
+                    documents.get(i).content = new String(Files.readAllBytes(paths.get(i)), StandardCharsets.UTF_8);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return new HostTree(walker.root, walker.directoryCount, documents.size(), walker.skippedCount);
+    }
+
+    private static boolean isValidName(String name) {
+        return !name.isEmpty() && name.length() <= MAX_NAME_LENGTH && name.matches("[a-zA-Z0-9]+");
+    }
+
+    /**
+     * Get the directory read, which is the root of the tree.
+     * @return the directory.
+     */
+    public Node getRoot() {
+        return root;
+    }
+
+    /**
+     * Get the number of the directories read, including the root of the tree.
+     * @return the number of the directories.
+     */
+    public int getDirectoryCount() {
+        return directoryCount;
+    }
+
+    /**
+     * Get the number of the documents read.
+     * @return the number of the documents.
+     */
+    public int getDocumentCount() {
+        return documentCount;
+    }
+
+    /**
+     * Get the number of the local files and directories skipped, see the class notes. The files below a skipped directory are not counted.
+     * @return the number of the files and directories skipped.
+     */
+    public int getSkippedCount() {
+        return skippedCount;
+    }
+
+    /**
+     * A directory or a document of the tree.
+     */
+    public static final class Node {
+        private final String name;
+
+        /**
+         * The type of the document, or {@code null} for a directory.
+         */
+        private final String type;
+
+        private String content;
+
+        private final List<Node> children;
+
+        private Node(String name, String type) {
+            this.name = name;
+            this.type = type;
+            this.children = (type == null) ? new ArrayList<>() : Collections.emptyList();
+        }
+
+        /**
+         * Get the name, without the type.
+         * @return the name.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Check if this is a directory.
+         * @return whether this is a directory.
+         */
+        public boolean isDirectory() {
+            return type == null;
+        }
+
+        /**
+         * Get the type of the document.
+         * @return the type, or {@code null} for a directory.
+         */
+        public String getType() {
+            return type;
+        }
+
+        /**
+         * Get the content of the document.
+         * @return the content, or {@code null} for a directory.
+         */
+        public String getContent() {
+            return content;
+        }
+
+        /**
+         * Get the files in the directory, in the order they were walked.
+         * @return the files, which are empty for a document.
+         */
+        public List<Node> getChildren() {
+            return Collections.unmodifiableList(children);
+        }
+    }
+
+    /**
+     * Builds the nodes as the directory is walked, and collects the documents to be read.
+     */
+    private static final class Walker extends SimpleFileVisitor<Path> {
+        private final Path start;
+
+        private final long maxSize;
+
+        /**
+         * The least size of the files walked, see {@code read(Path, long)}.
+         */
+        private long leastSize;
+
+        private final Deque<Node> directories = new ArrayDeque<>();
+
+        private final List<Node> documents = new ArrayList<>();
+
+        private final List<Path> documentPaths = new ArrayList<>();
+
+        private Node root;
+
+        private int directoryCount;
+
+        private int skippedCount;
+
+        Walker(Path start, long maxSize) {
+            this.start = start;
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+            String name = dir.getFileName().toString();
+            if (!dir.equals(start) && !isValidName(name)) {
+                skippedCount++;
+                return FileVisitResult.SKIP_SUBTREE;
+            }
+            Node node = new Node(name, null);
+            if (root == null) {
+                root = node;
+            } else {
+                directories.peek().children.add(node);
+            }
+            directories.push(node);
+            directoryCount++;
+            return add(Directory.EMPTY_NON_ROOT_DIRECTORY_SIZE);
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+            String filename = file.getFileName().toString();
+            int dot = filename.lastIndexOf('.');
+            if (!attrs.isRegularFile() || dot < 0 || !isValidName(filename.substring(0, dot)) || !Document.isValidType(filename.substring(dot + 1))) {
+                skippedCount++;
+                return FileVisitResult.CONTINUE;
+            }
+            Node node = new Node(filename.substring(0, dot), filename.substring(dot + 1));
+            directories.peek().children.add(node);
+            documents.add(node);
+            documentPaths.add(file);
+            return add(Document.EMPTY_DOCUMENT_SIZE + 2 * ((attrs.size() + 2) / 3));
+        }
+
+        /**
+         * Add the least size of a file, and stop the walk once the tree cannot fit.
+         */
+        private FileVisitResult add(long size) {
+            leastSize += size;
+            return (leastSize > maxSize) ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+            if (exc != null) {
+                throw exc;
+            }
+            directories.pop();
+            return FileVisitResult.CONTINUE;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.image;
+
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.LazyContent;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <h3>The {@code MappedContent} Class</h3>
+ * The content of a document lying in a {@code MappedImage}.
+ * <p>
+ * The shared mapping is never moved. Every read works on its own duplicate, so contents can be read by several threads at the same time.
+ * @see MappedImage
+ */
+final class MappedContent implements LazyContent {
+    private final ByteBuffer mapping;
+
+    private final int offset;
+
+    private final int charLength;
+
+    private final int byteLength;
+
+
+    MappedContent(ByteBuffer mapping, int offset, int charLength, int byteLength) {
+        this.mapping = mapping;
+        this.offset = offset;
+        this.charLength = charLength;
+        this.byteLength = byteLength;
+    }
+
+    @Override
+    public int length() {
+        return charLength;
+    }
+
+    int byteLength() {
+        return byteLength;
+    }
+
+    /**
+     * Get the encoded bytes of the content.
+     * @return a read-only view of the bytes, whose position and limit are independent of other views.
+     */
+    ByteBuffer bytes() {
+        ByteBuffer bytes = mapping.duplicate();
+        bytes.limit(offset + byteLength);
+        bytes.position(offset);
+        return bytes.slice();
+    }
+
+    @Override
+    public String load() {
+        try {
+            return StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                    .decode(bytes())
+                    .toString();
+        } catch (CharacterCodingException e) {
+            throw new IllegalStateException(e); // Impossible, since all errors are replaced.
+        }
+    }
+
+    /**
+     * Write the bytes of the content into an output directly, without decoding them.
+     * @param out the output.
+     */
+    void copyTo(ChannelOutput out) throws IOException {
+        out.putBytes(bytes());
+    }
+}
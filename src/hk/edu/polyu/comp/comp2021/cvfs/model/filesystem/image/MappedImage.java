@@ -0,0 +1,53 @@
+package hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.image;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * <h3>The {@code MappedImage} Class</h3>
+ * An image mapped into the memory, from which the contents of the documents are read lazily.
+ * <p>
+ * A single mapping cannot exceed 2 GiB, so the image is mapped in segments. The rare content crossing the boundary of two segments gets a mapping of its own. The mappings stay valid after the channel is closed, and they are released by the garbage collector when no document refers to them.
+ */
+final class MappedImage {
+    /**
+     * The size of a segment.
+     */
+    static final long SEGMENT_SIZE = 1L << 30;
+
+    private final FileChannel channel;
+
+    private final MappedByteBuffer[] segments;
+
+
+    /**
+     * Map the whole file of {@code channel}.
+     * @param channel the channel of the image, opened for reading.
+     */
+    MappedImage(FileChannel channel) throws IOException {
+        this.channel = channel;
+        long size = channel.size();
+        segments = new MappedByteBuffer[(int) ((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+        for (int i = 0; i < segments.length; i++) {
+            long start = i * SEGMENT_SIZE;
+            segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, size - start));
+        }
+    }
+
+    /**
+     * Get the content of a document lying in the image. Nothing is decoded here.
+     * @param offset the offset of the content in the file.
+     * @param charLength the length of the content in characters.
+     * @param byteLength the length of the content in bytes.
+     * @return the lazily loaded content.
+     */
+    MappedContent content(long offset, int charLength, int byteLength) throws IOException {
+        int segment = (int) (offset / SEGMENT_SIZE);
+        int start = (int) (offset % SEGMENT_SIZE);
+        if (start + (long) byteLength <= SEGMENT_SIZE) {
+            return new MappedContent(segments[segment], start, charLength, byteLength);
+        }
+        return new MappedContent(channel.map(FileChannel.MapMode.READ_ONLY, offset, byteLength), 0, charLength, byteLength);
+    }
+}
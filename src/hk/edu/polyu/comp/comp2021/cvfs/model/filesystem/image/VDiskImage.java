@@ -0,0 +1,101 @@
+package hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.image;
+
+/**
+ * <h3>The {@code VDiskImage} Class</h3>
+ * This class specifies the binary on-disk format of a virtual disk, which is shared by {@code VDiskImageWriter} and {@code VDiskImageReader}.
+ *
+ * <h4>Layout</h4>
+ * <blockquote><pre>
+ *     header:   magic (int) | version (short) | flags (short) | disk size (long)
+ *     records:  tag (byte) | payload length (int) | payload
+ * </pre></blockquote>
+ * The records form a depth-first stream of the tree below the root directory. A {@code DIRECTORY} record opens a directory, whose children follow until the matching {@code END_OF_DIRECTORY} record. The stream of the root directory is closed by its own {@code END_OF_DIRECTORY} record, and the image ends with an {@code END_OF_IMAGE} record.
+ * <p>
+ * Since every record is length-prefixed, a reader skips the records it does not understand, and also the trailing fields of a known record added by a later version.
+ *
+ * <h4>Delta Segments</h4>
+ * The part before {@code END_OF_IMAGE} is called the base. Since version 2, every file carries its identifier, and saving a virtual disk to the image it was loaded from or saved to appends a delta segment after the base instead of rewriting it:
+ * <blockquote><pre>
+ *     DELTA_BEGIN | (UPSERT_DIRECTORY | UPSERT_DOCUMENT | REMOVE)* | DELTA_COMMIT
+ * </pre></blockquote>
+ * A delta segment records the latest state of every file changed since the last save, in the order of their first changes, so a parent is always recorded before its new children. A segment without its {@code DELTA_COMMIT} record, which is left by an interrupted save, is ignored. When the delta segments grow too many or too large, the next save rewrites the whole image, which is called compaction.
+ *
+ * @see VDiskImageWriter
+ * @see VDiskImageReader
+ */
+public final class VDiskImage {
+    /**
+     * The magic number at the beginning of every image, which is {@code "CVFS"} in ASCII.
+     */
+    static final int MAGIC = 0x43564653;
+
+    /**
+     * The first two bytes of a stream written by {@code ObjectOutputStream}, which is how the virtual disks used to be saved.
+     */
+    static final int LEGACY_SERIALIZATION_MAGIC = 0xACED;
+
+    /**
+     * The current version of the format.
+     */
+    static final short VERSION = 2;
+
+    /**
+     * The first version in which the files carry their identifiers and delta segments may follow the base.
+     */
+    static final short VERSION_WITH_IDS = 2;
+
+    /* Record tags */
+
+    /**
+     * Payload: identifier (long, since version 2), name. Opens a directory.
+     */
+    static final byte DIRECTORY = 1;
+
+    /**
+     * Payload: identifier (long, since version 2), name, type, content length in chars (int), content length in bytes (int), content in UTF-8.
+     */
+    static final byte DOCUMENT = 2;
+
+    /**
+     * Payload: none. Closes the current directory.
+     */
+    static final byte END_OF_DIRECTORY = 3;
+
+    /**
+     * Payload: none. The last record of an image.
+     */
+    static final byte END_OF_IMAGE = 4;
+
+    /**
+     * Payload: none. Opens a delta segment.
+     */
+    static final byte DELTA_BEGIN = 5;
+
+    /**
+     * Payload: identifier (long), identifier of the parent (long), name. Creates or renames a directory.
+     */
+    static final byte UPSERT_DIRECTORY = 6;
+
+    /**
+     * Payload: identifier (long), identifier of the parent (long), then the same as {@code DOCUMENT}. Creates or replaces a document.
+     */
+    static final byte UPSERT_DOCUMENT = 7;
+
+    /**
+     * Payload: identifier (long). Removes a file and all files below it.
+     */
+    static final byte REMOVE = 8;
+
+    /**
+     * Payload: none. Commits a delta segment.
+     */
+    static final byte DELTA_COMMIT = 9;
+
+    /**
+     * The maximum number of delta segments before the image is compacted.
+     */
+    static final int MAX_DELTA_SEGMENTS = 16;
+
+
+    private VDiskImage() {}
+}
@@ -0,0 +1,478 @@
+package hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.image;
+
+import hk.edu.polyu.comp.comp2021.cvfs.model.ModelException;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Directory;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Document;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.File;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.LazyContent;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.vdisk.BackingImage;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.vdisk.VDisk;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <h3>The {@code VDiskImageReader} Class</h3>
+ * This class reads a virtual disk from an image, see {@code VDiskImage} for the format.
+ * <p>
+ * The format is picked from the magic number at the beginning of the file. Virtual disks saved by the earlier versions of CVFS, which are streams of the Java serialization, are still accepted.
+ * <p>
+ * A binary image can also be read lazily. The directories and the metadata of the documents are read as usual, but the contents are left in a memory-mapped region of the image, and are decoded only when they are read. The image shall not be modified by other programs while it is mapped, but it can still be replaced by saving the virtual disk again, since the saved image is moved onto the path instead of being written in place, and delta segments are only appended after the mapped region.
+ *
+ * @see VDiskImage
+ */
+public final class VDiskImageReader {
+    private VDiskImageReader() {}
+
+    /**
+     * Read a virtual disk from the file at {@code path}.
+     * @param path the path of the image.
+     * @return the virtual disk.
+     * @throws IOException if any local file system errors are met, or the file is not a virtual disk.
+     */
+    public static VDisk read(Path path) throws IOException {
+        return read(path, false);
+    }
+
+    /**
+     * Read a virtual disk from the file at {@code path}.
+     * <p>
+     * For a binary image of version 2 or later, the image is also set as the backing image of the virtual disk, so the later saves to it only append the changes.
+     * @param path the path of the image.
+     * @param lazy whether the contents of the documents are read lazily. This has no effect on the virtual disks saved by the Java serialization.
+     * @return the virtual disk.
+     * @throws IOException if any local file system errors are met, or the file is not a virtual disk.
+     */
+    public static VDisk read(Path path, boolean lazy) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            while (magic.hasRemaining() && channel.read(magic) >= 0) {
+                // Keep reading until 4 bytes are read or the end is reached.
+            }
+            magic.flip();
+            channel.position(0);
+
+            if (magic.remaining() == 4 && magic.getInt(0) == VDiskImage.MAGIC) {
+                return new ImageReader(channel, lazy ? new MappedImage(channel) : null).read(path);
+            }
+            if (magic.remaining() >= 2 && (magic.getShort(0) & 0xFFFF) == VDiskImage.LEGACY_SERIALIZATION_MAGIC) {
+                return readLegacy(channel);
+            }
+            throw new StreamCorruptedException("Not a virtual disk image");
+        }
+    }
+
+    private static VDisk readLegacy(FileChannel channel) throws IOException {
+        try {
+            ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            return (VDisk) ois.readObject();
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new StreamCorruptedException("Not a virtual disk: " + e.getMessage());
+        }
+    }
+
+    /**
+     * The state of reading a binary image.
+     */
+    private static final class ImageReader {
+        private final FileChannel channel;
+
+        private final ChannelInput in;
+
+        /**
+         * The mapped image if the contents are read lazily, or {@code null}.
+         */
+        private final MappedImage image;
+
+        /**
+         * The files in the virtual disk, keyed by their identifiers.
+         */
+        private final Map<Long, File> files = new HashMap<>();
+
+        private VDisk vDisk;
+
+        private short version;
+
+        ImageReader(FileChannel channel, MappedImage image) throws IOException {
+            this.channel = channel;
+            this.in = new ChannelInput(channel);
+            this.image = image;
+        }
+
+        VDisk read(Path path) throws IOException {
+            in.getInt(); // magic
+            version = in.getShort();
+            if (version > VDiskImage.VERSION) {
+                throw new StreamCorruptedException("Unsupported image version " + version);
+            }
+            in.getShort(); // flags
+
+            try {
+                vDisk = new VDisk(in.getLong());
+                readBase();
+                if (version < VDiskImage.VERSION_WITH_IDS) {
+                    return vDisk; // Rewritten as a whole at the next save.
+                }
+
+                long baseLength = in.position();
+                long length = baseLength;
+                int segments = 0;
+                while (length < channel.size() && readDeltaSegment()) {
+                    length = in.position();
+                    segments++;
+                }
+                BackingImage backingImage = new BackingImage(path.toAbsolutePath().toString(), baseLength, length, segments, Files.getLastModifiedTime(path).toMillis());
+                vDisk.__INTERNAL__setBackingImage(backingImage);
+                WriteAheadLog.replay(backingImage, this::applyLogRecord);
+                return vDisk;
+            } catch (ModelException e) {
+                throw new StreamCorruptedException(e.getMessage());
+            }
+        }
+
+        /**
+         * Read the base, which ends with the {@code END_OF_IMAGE} record.
+         */
+        private void readBase() throws IOException, ModelException {
+            Directory root = vDisk.__INTERNAL__getRootDirectory();
+            files.put(root.__INTERNAL__getId(), root);
+            Directory current = root;
+            boolean rootClosed = false;
+
+            while (true) {
+                byte tag = in.getByte();
+                long end = recordEnd();
+
+                if (rootClosed && tag != VDiskImage.END_OF_IMAGE) {
+                    throw new StreamCorruptedException("Record after the root directory is closed");
+                }
+
+                switch (tag) {
+                    case VDiskImage.DIRECTORY: {
+                        long id = readId();
+                        Directory directory = new Directory(in.getName(), current);
+                        attach(current, id, directory);
+                        current = directory;
+                        break;
+                    }
+                    case VDiskImage.DOCUMENT: {
+                        long id = readId();
+                        attach(current, id, readDocument(current, end));
+                        break;
+                    }
+                    case VDiskImage.END_OF_DIRECTORY:
+                        if (current == root) {
+                            rootClosed = true;
+                        } else {
+                            current = (Directory) current.__INTERNAL__getParent();
+                        }
+                        break;
+                    case VDiskImage.END_OF_IMAGE:
+                        if (!rootClosed) {
+                            throw new StreamCorruptedException("Image ends inside a directory");
+                        }
+                        skipTo(end);
+                        return;
+                    default:
+                        break; // Unknown records are skipped below.
+                }
+                skipTo(end);
+            }
+        }
+
+        /**
+         * Read and apply a delta segment.
+         * @return {@code false} if there is no complete segment here, which is left by an interrupted save.
+         */
+        private boolean readDeltaSegment() throws IOException, ModelException {
+            List<Delta> deltas = new ArrayList<>();
+            try {
+                if (in.getByte() != VDiskImage.DELTA_BEGIN) {
+                    return false;
+                }
+                skipTo(recordEnd());
+
+                while (true) {
+                    byte tag = in.getByte();
+                    long end = recordEnd();
+                    if (tag == VDiskImage.DELTA_COMMIT) {
+                        skipTo(end);
+                        break;
+                    }
+                    if (tag == VDiskImage.REMOVE) {
+                        deltas.add(new Delta(in.getLong(), 0, null, null, null));
+                    } else if (tag == VDiskImage.UPSERT_DIRECTORY) {
+                        deltas.add(new Delta(in.getLong(), in.getLong(), in.getName(), null, null));
+                    } else if (tag == VDiskImage.UPSERT_DOCUMENT) {
+                        long id = in.getLong();
+                        long parentId = in.getLong();
+                        String name = in.getName();
+                        String type = in.getName();
+                        deltas.add(new Delta(id, parentId, name, type, readContent(end)));
+                    }
+                    skipTo(end);
+                }
+            } catch (EOFException e) {
+                return false;
+            }
+
+            applyDeltas(deltas);
+            return true;
+        }
+
+        /**
+         * Apply the records of a committed delta segment.
+         * <p>
+         * The removals and the renames are applied first, so the names they release are free before the other records take them. Then the creations and the updates are applied in order. A record whose parent no longer exists is skipped, since the file was removed together with its parent later.
+         */
+        private void applyDeltas(List<Delta> deltas) throws IOException, ModelException {
+            for (Delta delta : deltas) {
+                File file = files.get(delta.id);
+                if (file == null || file.__INTERNAL__getParent() == null) {
+                    continue;
+                }
+                Directory parent = (Directory) file.__INTERNAL__getParent();
+                if (parent.__INTERNAL__findFile(file.getName()) != file) {
+                    continue; // Detached by an earlier segment.
+                }
+                if (delta.name == null) {
+                    parent.__INTERNAL__delete(file);
+                    forget(file);
+                } else if (file instanceof Document) {
+                    parent.__INTERNAL__delete(file); // Replaced by a new document below.
+                    files.remove(delta.id);
+                } else if (!file.getName().equals(delta.name)) {
+                    parent.__MODEL_INTERNAL__getFiles().remove(file.getName()); // Renamed below, the size is unchanged.
+                }
+            }
+
+            for (Delta delta : deltas) {
+                if (delta.name == null) {
+                    continue;
+                }
+                File parent = files.get(delta.parentId);
+                if (!(parent instanceof Directory)) {
+                    continue;
+                }
+                Directory directory = (Directory) parent;
+                File file = files.get(delta.id);
+
+                if (delta.type != null) {
+                    if (file != null) {
+                        throw new StreamCorruptedException("Identifier " + delta.id + " is not a document");
+                    }
+                    Document document = (delta.content instanceof String)
+                            ? new Document(delta.name, delta.type, (String) delta.content, directory)
+                            : new Document(delta.name, delta.type, (LazyContent) delta.content, directory);
+                    attach(directory, delta.id, document);
+                } else if (file == null) {
+                    attach(directory, delta.id, new Directory(delta.name, directory));
+                } else if (!(file instanceof Directory) || file.__INTERNAL__getParent() != directory) {
+                    throw new StreamCorruptedException("Identifier " + delta.id + " is not a directory in " + delta.parentId);
+                } else if (!file.getName().equals(delta.name)) {
+                    if (directory.__INTERNAL__existsName(delta.name)) {
+                        throw new StreamCorruptedException("Duplicated filename " + delta.name);
+                    }
+                    file.__INTERNAL__setName(delta.name);
+                    directory.__MODEL_INTERNAL__getFiles().put(delta.name, file);
+                }
+            }
+        }
+
+        /**
+         * Apply a record replayed from the write-ahead log, see {@code WriteAheadLog}.
+         * <p>
+         * Unlike the delta segments, the log records every mutation in the order they are done, so the records are applied one by one. The files they touch are recorded as changed, so the next save puts them into the image. A record that does not fit the tree is skipped, since the log may be ahead of nothing but the image it matches.
+         */
+        private void applyLogRecord(byte tag, ByteBuffer in) throws IOException, ModelException {
+            switch (tag) {
+                case VDiskImage.UPSERT_DIRECTORY:
+                case VDiskImage.UPSERT_DOCUMENT: {
+                    long id = in.getLong();
+                    File parent = files.get(in.getLong());
+                    String name = WriteAheadLog.getName(in);
+                    if (!(parent instanceof Directory) || !isAttached(parent)) {
+                        return;
+                    }
+                    Directory directory = (Directory) parent;
+                    File file = files.get(id);
+                    if (file != null && isAttached(file)) {
+                        return; // Already in the image.
+                    }
+                    if (directory.__INTERNAL__existsName(name)) {
+                        return;
+                    }
+                    File created = (tag == VDiskImage.UPSERT_DIRECTORY)
+                            ? new Directory(name, directory)
+                            : new Document(name, WriteAheadLog.getName(in), WriteAheadLog.getText(in), directory);
+                    attach(directory, id, created);
+                    vDisk.__INTERNAL__markStored(created);
+                    break;
+                }
+                case VDiskImage.REMOVE: {
+                    File file = files.get(in.getLong());
+                    if (file != null && isAttached(file) && file.__INTERNAL__getParent() != null) {
+                        ((Directory) file.__INTERNAL__getParent()).__INTERNAL__delete(file);
+                        forget(file);
+                        vDisk.__INTERNAL__markRemoved(file);
+                    }
+                    break;
+                }
+                case WriteAheadLog.RENAME: {
+                    File file = files.get(in.getLong());
+                    String name = WriteAheadLog.getName(in);
+                    if (file == null || !isAttached(file) || file.__INTERNAL__getParent() == null || file.getName().equals(name)) {
+                        return;
+                    }
+                    Directory parent = (Directory) file.__INTERNAL__getParent();
+                    if (!parent.__INTERNAL__existsName(name)) {
+                        parent.__INTERNAL__delete(file);
+                        file.__INTERNAL__setName(name);
+                        parent.__INTERNAL__add(file);
+                        vDisk.__INTERNAL__markChanged(file);
+                    }
+                    break;
+                }
+                case WriteAheadLog.MODIFY: {
+                    File file = files.get(in.getLong());
+                    String content = WriteAheadLog.getText(in);
+                    if (file instanceof Document && isAttached(file)) {
+                        ((Document) file).__INTERNAL__setContent(content);
+                        vDisk.__INTERNAL__markChanged(file);
+                    }
+                    break;
+                }
+                default:
+                    break; // Unknown records are skipped.
+            }
+        }
+
+        private static boolean isAttached(File file) {
+            Directory parent = (Directory) file.__INTERNAL__getParent();
+            return parent == null || parent.__INTERNAL__findFile(file.getName()) == file;
+        }
+
+        /**
+         * Forget a removed file and all files below it, so the later records do not find them.
+         */
+        private void forget(File file) {
+            Deque<File> stack = new ArrayDeque<>();
+            stack.push(file);
+            while (!stack.isEmpty()) {
+                File current = stack.pop();
+                files.remove(current.__INTERNAL__getId());
+                if (current instanceof Directory) {
+                    for (File child : ((Directory) current).__MODEL_INTERNAL__getFiles().values()) {
+                        stack.push(child);
+                    }
+                }
+            }
+        }
+
+        private Document readDocument(Directory parent, long end) throws IOException, ModelException {
+            String name = in.getName();
+            String type = in.getName();
+            Object content = readContent(end);
+            return (content instanceof String)
+                    ? new Document(name, type, (String) content, parent)
+                    : new Document(name, type, (LazyContent) content, parent);
+        }
+
+        /**
+         * Read the content of a document, which is a {@code String}, or a {@code LazyContent} if the image is read lazily.
+         */
+        private Object readContent(long end) throws IOException {
+            int charLength = in.getInt();
+            int byteLength = in.getInt();
+            if (charLength < 0 || byteLength < 0) {
+                throw new StreamCorruptedException("Negative content length");
+            }
+            if (image == null) {
+                return in.getText(charLength, byteLength);
+            }
+            if (in.position() + byteLength > end) {
+                throw new StreamCorruptedException("Record longer than its recorded length");
+            }
+            LazyContent content = image.content(in.position(), charLength, byteLength);
+            in.skip(byteLength);
+            return content;
+        }
+
+        private long readId() throws IOException {
+            return version >= VDiskImage.VERSION_WITH_IDS ? in.getLong() : 0;
+        }
+
+        /**
+         * Read the payload length of a record.
+         * @return the position right after the record.
+         */
+        private long recordEnd() throws IOException {
+            int payloadLength = in.getInt();
+            if (payloadLength < 0) {
+                throw new StreamCorruptedException("Negative record length");
+            }
+            return in.position() + payloadLength;
+        }
+
+        /**
+         * Skip the fields added by later versions, or the whole unknown record.
+         */
+        private void skipTo(long end) throws IOException {
+            if (in.position() > end) {
+                throw new StreamCorruptedException("Record longer than its recorded length");
+            }
+            in.skip(end - in.position());
+        }
+
+        /**
+         * Attach a file read from the image to its parent. The files without identifiers, which come from the images of version 1, get new ones.
+         */
+        private void attach(Directory parent, long id, File file) throws StreamCorruptedException {
+            if (parent.__INTERNAL__existsName(file.getName())) {
+                throw new StreamCorruptedException("Duplicated filename " + file.getName());
+            }
+            if (id == 0) {
+                id = vDisk.__INTERNAL__allocateId();
+            } else {
+                vDisk.__INTERNAL__registerId(id);
+            }
+            file.__INTERNAL__setId(id);
+            files.put(id, file);
+            parent.__INTERNAL__add(file);
+        }
+    }
+
+    /**
+     * A record of a delta segment. A removal has a {@code null} name, and a directory has a {@code null} type.
+     */
+    private static final class Delta {
+        final long id;
+        final long parentId;
+        final String name;
+        final String type;
+        final Object content;
+
+        Delta(long id, long parentId, String name, String type, Object content) {
+            this.id = id;
+            this.parentId = parentId;
+            this.name = name;
+            this.type = type;
+            this.content = content;
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.image;
+
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Directory;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Document;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.File;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.LazyContent;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.vdisk.BackingImage;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.vdisk.VDisk;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * <h3>The {@code VDiskImageWriter} Class</h3>
+ * This class writes a virtual disk into an image, see {@code VDiskImage} for the format.
+ * <p>
+ * The tree is walked with an explicit stack instead of recursion, so the depth of the tree is not limited by the call stack.
+ *
+ * @see VDiskImage
+ */
+public final class VDiskImageWriter {
+    /**
+     * The number of times the move onto a mapped image is tried again, see {@code write()}.
+     */
+    private static final int RELEASE_ATTEMPTS = 5;
+
+    private VDiskImageWriter() {}
+
+    /**
+     * Save the virtual disk into an image at {@code path}.
+     * <p>
+     * If {@code path} is the image the virtual disk was last loaded from or saved to, and the image has not been touched by others since then, only the changes are appended to it, which costs {@code O(changes)} instead of {@code O(disk size)}. Otherwise, or if the image needs compaction, the whole image is rewritten.
+     * @param vDisk the virtual disk to save.
+     * @param path the path of the image.
+     * @throws IOException if any local file system errors are met.
+     */
+    public static void save(VDisk vDisk, Path path) throws IOException {
+        BackingImage image = vDisk.__INTERNAL__getBackingImage();
+        if (image != null && canAppend(image, path)) {
+            append(vDisk, image);
+        } else {
+            write(vDisk, path);
+        }
+    }
+
+    /**
+     * Write the whole virtual disk into an image at {@code path}.
+     * <p>
+     * The image is written into a temporary file next to {@code path} first, and then moved onto {@code path}, so an existing image is never left half-written.
+     * <p>
+     * On some platforms, e.g., Windows, a file cannot be replaced while it is mapped into the memory, which is the case if the virtual disk was loaded lazily from {@code path}. If the move fails then, the contents still lying in the mapped image are read into the memory, so that nothing refers to the mappings any more, and the move is tried again after the garbage collector has released them, since Java 8 cannot release a mapping explicitly. The mappings still referred to by the snapshots of the virtual disk, or by another virtual disk loaded lazily from the same image, are not released, and the save fails with the error of the move.
+     * @param vDisk the virtual disk to write.
+     * @param path the path of the image.
+     * @throws IOException if any local file system errors are met.
+     */
+    public static void write(VDisk vDisk, Path path) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        long length;
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ChannelOutput out = new ChannelOutput(channel);
+            writeHeader(out, vDisk);
+            writeTree(out, vDisk);
+            writeRecordHeader(out, VDiskImage.END_OF_IMAGE, 0);
+            out.flush();
+            channel.force(false);
+            length = channel.size();
+        } catch (IOException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+
+        BackingImage image = vDisk.__INTERNAL__getBackingImage();
+        boolean mapped = image != null && image.getPath().equals(path.toAbsolutePath().toString());
+        for (int attempt = 0; ; attempt++) {
+            try {
+                move(temporary, path);
+                break;
+            } catch (FileSystemException e) {
+                if (!mapped || attempt == RELEASE_ATTEMPTS || (attempt == 0 && !releaseMappings(vDisk))) {
+                    Files.deleteIfExists(temporary);
+                    throw e;
+                }
+                System.gc();
+                try {
+                    Thread.sleep(10L << attempt);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    Files.deleteIfExists(temporary);
+                    throw e;
+                }
+            }
+        }
+        vDisk.__INTERNAL__setBackingImage(new BackingImage(path.toAbsolutePath().toString(), length, length, 0, Files.getLastModifiedTime(path).toMillis()));
+    }
+
+    private static void move(Path temporary, Path path) throws IOException {
+        try {
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Let the documents of the virtual disk forget the mapped images their contents were loaded from, reading the contents not read yet into the memory.
+     * @return whether any document referred to a mapped image.
+     */
+    static boolean releaseMappings(VDisk vDisk) {
+        boolean released = false;
+        Deque<Directory> directories = new ArrayDeque<>();
+        directories.push(vDisk.__INTERNAL__getRootDirectory());
+        while (!directories.isEmpty()) {
+            for (File file : directories.pop().__MODEL_INTERNAL__getFiles().values()) {
+                if (file instanceof Directory) {
+                    directories.push((Directory) file);
+                } else {
+                    released |= ((Document) file).__INTERNAL__loadContent();
+                }
+            }
+        }
+        return released;
+    }
+
+    /**
+     * Check if the changes can be appended to the backing image at {@code path}.
+     */
+    private static boolean canAppend(BackingImage image, Path path) throws IOException {
+        if (!image.getPath().equals(path.toAbsolutePath().toString()) || !Files.isRegularFile(path)) {
+            return false;
+        }
+        if (image.getDeltaSegments() >= VDiskImage.MAX_DELTA_SEGMENTS || image.getDeltaLength() > image.getBaseLength()) {
+            return false; // Compaction.
+        }
+        return Files.size(path) >= image.getLength() && Files.getLastModifiedTime(path).toMillis() == image.getLastModified();
+    }
+
+    /**
+     * Append a delta segment of the recorded changes to the backing image. Any bytes after the last committed segment, which are left by an interrupted save, are discarded first.
+     */
+    private static void append(VDisk vDisk, BackingImage image) throws IOException {
+        Map<Long, File> changes = vDisk.__INTERNAL__getChanges();
+        if (changes.isEmpty()) {
+            return;
+        }
+
+        Path path = Paths.get(image.getPath());
+        long length;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(image.getLength());
+            channel.position(image.getLength());
+            try {
+                ChannelOutput out = new ChannelOutput(channel);
+                writeRecordHeader(out, VDiskImage.DELTA_BEGIN, 0);
+                for (Map.Entry<Long, File> change : changes.entrySet()) {
+                    File file = change.getValue();
+                    if (file == null) {
+                        writeRecordHeader(out, VDiskImage.REMOVE, 8);
+                        out.putLong(change.getKey());
+                    } else if (file instanceof Directory) {
+                        writeDirectory(out, VDiskImage.UPSERT_DIRECTORY, (Directory) file);
+                    } else {
+                        writeDocument(out, VDiskImage.UPSERT_DOCUMENT, (Document) file);
+                    }
+                }
+                out.flush();
+                channel.force(false);
+
+                // The segment only counts after everything before the commit record is on the disk.
+                writeRecordHeader(out, VDiskImage.DELTA_COMMIT, 0);
+                out.flush();
+                channel.force(false);
+                length = channel.size();
+            } catch (IOException e) {
+                channel.truncate(image.getLength());
+                throw e;
+            }
+        }
+        vDisk.__INTERNAL__setBackingImage(new BackingImage(image.getPath(), image.getBaseLength(), length, image.getDeltaSegments() + 1, Files.getLastModifiedTime(path).toMillis()));
+    }
+
+    private static void writeHeader(ChannelOutput out, VDisk vDisk) throws IOException {
+        out.putInt(VDiskImage.MAGIC);
+        out.putShort(VDiskImage.VERSION);
+        out.putShort(0); // flags, reserved
+        out.putLong(vDisk.__INTERNAL__getDiskSize());
+    }
+
+    private static void writeTree(ChannelOutput out, VDisk vDisk) throws IOException {
+        Deque<Iterator<File>> stack = new ArrayDeque<>();
+        stack.push(vDisk.__INTERNAL__getRootDirectory().__MODEL_INTERNAL__getFiles().values().iterator());
+
+        while (!stack.isEmpty()) {
+            Iterator<File> children = stack.peek();
+            if (!children.hasNext()) {
+                stack.pop();
+                writeRecordHeader(out, VDiskImage.END_OF_DIRECTORY, 0);
+                continue;
+            }
+
+            File file = children.next();
+            if (file.__INTERNAL__getId() == 0) {
+                file.__INTERNAL__setId(vDisk.__INTERNAL__allocateId()); // Added without the file system.
+            }
+            if (file instanceof Directory) {
+                writeDirectory(out, VDiskImage.DIRECTORY, (Directory) file);
+                stack.push(((Directory) file).__MODEL_INTERNAL__getFiles().values().iterator());
+            } else {
+                writeDocument(out, VDiskImage.DOCUMENT, (Document) file);
+            }
+        }
+    }
+
+    /**
+     * Write a {@code DIRECTORY} or an {@code UPSERT_DIRECTORY} record.
+     */
+    private static void writeDirectory(ChannelOutput out, byte tag, Directory directory) throws IOException {
+        writeRecordHeader(out, tag, identifiersLength(tag) + nameLength(directory.getName()));
+        writeIdentifiers(out, tag, directory);
+        out.putName(directory.getName());
+    }
+
+    /**
+     * Write a {@code DOCUMENT} or an {@code UPSERT_DOCUMENT} record.
+     * <p>
+     * A content still lying in a mapped image is copied as raw bytes, so saving a lazily loaded virtual disk does not read all contents into the memory.
+     */
+    private static void writeDocument(ChannelOutput out, byte tag, Document document) throws IOException {
+        LazyContent lazyContent = document.__INTERNAL__getLazyContent();
+        MappedContent mappedContent = (lazyContent instanceof MappedContent) ? (MappedContent) lazyContent : null;
+        String content = (mappedContent == null) ? document.getContent() : null;
+
+        int charLength = (mappedContent == null) ? content.length() : mappedContent.length();
+        long contentBytes = (mappedContent == null) ? ChannelOutput.utf8Length(content) : mappedContent.byteLength();
+        long payloadLength = identifiersLength(tag) + nameLength(document.getName()) + nameLength(document.getType()) + 4 + 4 + contentBytes;
+        if (payloadLength > Integer.MAX_VALUE) {
+            throw new IOException("The document " + document.getFullname() + " is too large for the image");
+        }
+
+        writeRecordHeader(out, tag, (int) payloadLength);
+        writeIdentifiers(out, tag, document);
+        out.putName(document.getName());
+        out.putName(document.getType());
+        out.putInt(charLength);
+        out.putInt((int) contentBytes);
+        if (mappedContent == null) {
+            out.putText(content);
+        } else {
+            mappedContent.copyTo(out);
+        }
+    }
+
+    /**
+     * Write the identifier of the file. The records in the delta segments also carry the identifier of the parent, since their parents are not implied by their positions.
+     */
+    private static void writeIdentifiers(ChannelOutput out, byte tag, File file) throws IOException {
+        out.putLong(file.__INTERNAL__getId());
+        if (isUpsert(tag)) {
+            out.putLong(file.__INTERNAL__getParent().__INTERNAL__getId());
+        }
+    }
+
+    private static int identifiersLength(byte tag) {
+        return isUpsert(tag) ? 16 : 8;
+    }
+
+    private static boolean isUpsert(byte tag) {
+        return tag == VDiskImage.UPSERT_DIRECTORY || tag == VDiskImage.UPSERT_DOCUMENT;
+    }
+
+    private static void writeRecordHeader(ChannelOutput out, byte tag, int payloadLength) throws IOException {
+        out.putByte(tag);
+        out.putInt(payloadLength);
+    }
+
+    private static int nameLength(String name) {
+        return 2 + name.getBytes(StandardCharsets.UTF_8).length;
+    }
+}
@@ -0,0 +1,553 @@
+package hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.image;
+
+import hk.edu.polyu.comp.comp2021.cvfs.model.ModelException;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Directory;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Document;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.File;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.vdisk.BackingImage;
+import hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.MutationListener;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * <h3>The {@code WriteAheadLog} Class</h3>
+ * The write-ahead log of a virtual disk, which keeps the mutations done since the backing image was last loaded or saved, so they survive a crash of the application. The log lives next to the image, at {@code <image>.wal}, and is replayed on top of the image when the image is loaded again.
+ *
+ * <h4>Layout</h4>
+ * <blockquote><pre>
+ *     header:   magic (int) | version (short) | flags (short) | base length (long) | image length (long) | image last modified (long)
+ *     frames:   payload length (int) | CRC32 of the payload (int) | payload
+ * </pre></blockquote>
+ * Every frame holds one mutation as the records of {@code VDiskImage}: a store is written as the {@code UPSERT_DIRECTORY} and {@code UPSERT_DOCUMENT} records of all files stored, a removal as a {@code REMOVE} record, and a rename or a modification as a {@code RENAME} or {@code MODIFY} record.
+ * <p>
+ * The header records which state of the image the log starts from. Saving the virtual disk puts all logged mutations into the image and starts a new log, and a log whose header does not match the image, such as the one left by a crash in the middle of a save, is ignored. A torn or corrupted frame at the end, which is detected by its length or checksum, ends the log.
+ *
+ * <h4>Durability</h4>
+ * Every frame is handed to the operating system as soon as the mutation is done, so it survives a crash of the application. How often it is forced onto the storage device, so it also survives a crash of the operating system, is decided by the {@code SyncPolicy}.
+ */
+public final class WriteAheadLog implements MutationListener {
+    /**
+     * How often the log is forced onto the storage device.
+     */
+    public enum SyncPolicy {
+        /**
+         * After every mutation.
+         */
+        PER_OPERATION,
+
+        /**
+         * After every {@code n} mutations, which is known as group commit.
+         */
+        BATCH,
+
+        /**
+         * Every {@code n} milliseconds, if anything has been logged since the last time.
+         */
+        TIME
+    }
+
+    /**
+     * The magic number at the beginning of every log, which is {@code "CVWL"} in ASCII.
+     */
+    static final int MAGIC = 0x4356574C;
+
+    static final short VERSION = 1;
+
+    private static final int HEADER_LENGTH = 4 + 2 + 2 + 8 + 8 + 8;
+
+    private static final int FRAME_HEADER_LENGTH = 4 + 4;
+
+    /* Record tags, in addition to those of VDiskImage */
+
+    /**
+     * Payload: identifier (long), name.
+     */
+    static final byte RENAME = 10;
+
+    /**
+     * Payload: identifier (long), content length in chars (int), content length in bytes (int), content in UTF-8.
+     */
+    static final byte MODIFY = 11;
+
+    private final Path path;
+
+    private final FileChannel channel;
+
+    private SyncPolicy policy;
+
+    private int parameter;
+
+    /**
+     * The number of frames written since the log was last forced.
+     */
+    private int unsynced;
+
+    /**
+     * The timer of the {@code TIME} policy, or {@code null}.
+     */
+    private ScheduledExecutorService timer;
+
+    /**
+     * The error that stopped the logging, or {@code null}.
+     */
+    private IOException failure;
+
+
+    private WriteAheadLog(Path path, FileChannel channel) {
+        this.path = path;
+        this.channel = channel;
+    }
+
+    /**
+     * Get the path of the log of an image.
+     * @param imagePath the path of the image.
+     * @return the path of the log.
+     */
+    public static Path pathOf(String imagePath) {
+        return Paths.get(imagePath + ".wal");
+    }
+
+    /**
+     * Open the log of a backing image. An existing log matching the image is continued, and otherwise a new log is started.
+     * @param image the backing image.
+     * @param policy the sync policy.
+     * @param parameter the {@code n} of the {@code BATCH} and {@code TIME} policies, which must be positive for them.
+     * @return the log.
+     * @throws IOException if any local file system errors are met.
+     */
+    public static WriteAheadLog open(BackingImage image, SyncPolicy policy, int parameter) throws IOException {
+        Path path = pathOf(image.getPath());
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        WriteAheadLog log = new WriteAheadLog(path, channel);
+        try {
+            long end = scan(channel, image, null);
+            if (end < 0) {
+                log.writeHeader(image);
+            } else {
+                channel.truncate(end);
+                channel.position(end);
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        log.setPolicy(policy, parameter);
+        return log;
+    }
+
+    /**
+     * Start a new log, after all logged mutations have been saved into the image.
+     * @param image the backing image, which must be at the same path.
+     * @throws IOException if any local file system errors are met.
+     */
+    public synchronized void reset(BackingImage image) throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+        writeHeader(image);
+    }
+
+    /**
+     * Set how often the log is forced onto the storage device.
+     * @param policy the sync policy.
+     * @param parameter the {@code n} of the {@code BATCH} and {@code TIME} policies, which must be positive for them.
+     */
+    public synchronized void setPolicy(SyncPolicy policy, int parameter) {
+        this.policy = policy;
+        this.parameter = parameter;
+        if (timer != null) {
+            timer.shutdown();
+            timer = null;
+        }
+        if (policy == SyncPolicy.TIME) {
+            timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "CVFS-WAL-sync");
+                thread.setDaemon(true);
+                return thread;
+            });
+            timer.scheduleAtFixedRate(this::syncIfNeeded, parameter, parameter, TimeUnit.MILLISECONDS);
+        }
+        syncIfNeeded();
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public synchronized SyncPolicy getPolicy() {
+        return policy;
+    }
+
+    public synchronized int getParameter() {
+        return parameter;
+    }
+
+    /**
+     * Get the error that stopped the logging.
+     * @return the error, or {@code null} if the log is working.
+     */
+    public synchronized IOException getFailure() {
+        return failure;
+    }
+
+    /**
+     * Force everything logged onto the storage device and close the log.
+     */
+    public synchronized void close() {
+        if (timer != null) {
+            timer.shutdown();
+            timer = null;
+        }
+        try {
+            if (channel.isOpen()) {
+                channel.force(false);
+                channel.close();
+            }
+        } catch (IOException e) {
+            if (failure == null) {
+                failure = e;
+            }
+        }
+    }
+
+
+    /**
+     * Close the log and delete it, when the mutations in it are abandoned, such as when the application quits or another virtual disk is mounted without saving.
+     */
+    public synchronized void discard() {
+        close();
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            // An abandoned log is harmless, since it no longer matches the image after the next save.
+        }
+    }
+
+
+    /* Logging */
+
+    @Override
+    public void onStore(File file) {
+        Frame frame = new Frame();
+        Deque<File> stack = new ArrayDeque<>();
+        stack.push(file);
+        while (!stack.isEmpty()) {
+            File current = stack.pop();
+            if (current instanceof Directory) {
+                frame.beginRecord(VDiskImage.UPSERT_DIRECTORY);
+                frame.putLong(current.__INTERNAL__getId());
+                frame.putLong(current.__INTERNAL__getParent().__INTERNAL__getId());
+                frame.putName(current.getName());
+                frame.endRecord();
+                for (File child : ((Directory) current).__MODEL_INTERNAL__getFiles().descendingValues()) {
+                    stack.push(child);
+                }
+            } else {
+                Document document = (Document) current;
+                frame.beginRecord(VDiskImage.UPSERT_DOCUMENT);
+                frame.putLong(document.__INTERNAL__getId());
+                frame.putLong(document.__INTERNAL__getParent().__INTERNAL__getId());
+                frame.putName(document.getName());
+                frame.putName(document.getType());
+                frame.putText(document.getContent());
+                frame.endRecord();
+            }
+        }
+        append(frame);
+    }
+
+    @Override
+    public void onRemove(File file) {
+        Frame frame = new Frame();
+        frame.beginRecord(VDiskImage.REMOVE);
+        frame.putLong(file.__INTERNAL__getId());
+        frame.endRecord();
+        append(frame);
+    }
+
+    @Override
+    public void onRename(File file, String oldName) {
+        Frame frame = new Frame();
+        frame.beginRecord(RENAME);
+        frame.putLong(file.__INTERNAL__getId());
+        frame.putName(file.getName());
+        frame.endRecord();
+        append(frame);
+    }
+
+    @Override
+    public void onModify(Document document) {
+        Frame frame = new Frame();
+        frame.beginRecord(MODIFY);
+        frame.putLong(document.__INTERNAL__getId());
+        frame.putText(document.getContent());
+        frame.endRecord();
+        append(frame);
+    }
+
+    /**
+     * Append a frame to the log. Once an error is met, the logging stops, and the error is kept for {@code getFailure()}.
+     */
+    private synchronized void append(Frame frame) {
+        if (failure != null || !channel.isOpen()) {
+            return;
+        }
+        try {
+            ByteBuffer bytes = frame.toBuffer();
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            unsynced++;
+            if (policy == SyncPolicy.PER_OPERATION || (policy == SyncPolicy.BATCH && unsynced >= parameter)) {
+                sync();
+            }
+        } catch (IOException e) {
+            failure = e;
+            close();
+        }
+    }
+
+    private synchronized void syncIfNeeded() {
+        if (unsynced > 0 && failure == null && channel.isOpen()) {
+            try {
+                sync();
+            } catch (IOException e) {
+                failure = e;
+                close();
+            }
+        }
+    }
+
+    private void sync() throws IOException {
+        channel.force(false);
+        unsynced = 0;
+    }
+
+    private void writeHeader(BackingImage image) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        header.putInt(MAGIC);
+        header.putShort(VERSION);
+        header.putShort((short) 0); // flags, reserved
+        header.putLong(image.getBaseLength());
+        header.putLong(image.getLength());
+        header.putLong(image.getLastModified());
+        header.flip();
+
+        channel.truncate(0);
+        channel.position(0);
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        channel.force(false);
+        unsynced = 0;
+    }
+
+
+    /* Replaying */
+
+    /**
+     * The receiver of the records replayed from a log.
+     */
+    interface RecordHandler {
+        /**
+         * Apply a record.
+         * @param tag the tag of the record.
+         * @param payload the payload of the record, from its position to its limit.
+         */
+        void apply(byte tag, ByteBuffer payload) throws IOException, ModelException;
+    }
+
+    /**
+     * Replay the log of a backing image, if there is one matching the image.
+     * @param image the backing image, which has just been read.
+     * @param handler the receiver of the records, in the order they are logged.
+     */
+    static void replay(BackingImage image, RecordHandler handler) throws IOException {
+        Path path = pathOf(image.getPath());
+        if (!Files.isRegularFile(path)) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            scan(channel, image, handler);
+        }
+    }
+
+    /**
+     * Walk through the frames of a log.
+     * @param handler the receiver of the records, or {@code null} to only find the end.
+     * @return the end of the last intact frame, or {@code -1} if the log does not match the image.
+     */
+    private static long scan(FileChannel channel, BackingImage image, RecordHandler handler) throws IOException {
+        long size = channel.size();
+        if (size < HEADER_LENGTH) {
+            return -1;
+        }
+        ByteBuffer header = readFully(channel, 0, HEADER_LENGTH);
+        if (header.getInt() != MAGIC || header.getShort() > VERSION) {
+            return -1;
+        }
+        header.getShort(); // flags
+        if (header.getLong() != image.getBaseLength() || header.getLong() != image.getLength() || header.getLong() != image.getLastModified()) {
+            return -1;
+        }
+
+        long position = HEADER_LENGTH;
+        CRC32 crc = new CRC32();
+        while (position + FRAME_HEADER_LENGTH <= size) {
+            ByteBuffer frameHeader = readFully(channel, position, FRAME_HEADER_LENGTH);
+            int length = frameHeader.getInt();
+            int checksum = frameHeader.getInt();
+            if (length < 0 || position + FRAME_HEADER_LENGTH + length > size) {
+                break;
+            }
+            ByteBuffer payload = readFully(channel, position + FRAME_HEADER_LENGTH, length);
+            crc.reset();
+            crc.update(payload.array(), 0, length);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            if (handler != null) {
+                applyFrame(payload, handler);
+            }
+            position += FRAME_HEADER_LENGTH + length;
+        }
+        return position;
+    }
+
+    private static void applyFrame(ByteBuffer payload, RecordHandler handler) throws IOException {
+        while (payload.hasRemaining()) {
+            byte tag = payload.get();
+            int length = payload.getInt();
+            if (length < 0 || length > payload.remaining()) {
+                throw new StreamCorruptedException("Record longer than its frame");
+            }
+            ByteBuffer record = payload.slice();
+            record.limit(length);
+            payload.position(payload.position() + length);
+            try {
+                handler.apply(tag, record);
+            } catch (ModelException e) {
+                throw new StreamCorruptedException(e.getMessage());
+            }
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new StreamCorruptedException("Unexpected end of the log");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Get a name written by {@code Frame.putName()}.
+     */
+    static String getName(ByteBuffer in) {
+        byte[] bytes = new byte[in.getShort() & 0xFFFF];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Get a text written by {@code Frame.putText()}.
+     */
+    static String getText(ByteBuffer in) throws StreamCorruptedException {
+        int charLength = in.getInt();
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        String text = new String(bytes, StandardCharsets.UTF_8);
+        if (text.length() != charLength) {
+            throw new StreamCorruptedException("Text shorter or longer than its recorded length.");
+        }
+        return text;
+    }
+
+    /**
+     * A frame being built in the memory, so it is written by a single call and its checksum can be calculated. Every record is built in its own buffer first, since its length is only known at its end.
+     */
+    private static final class Frame {
+        private final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+
+        private final ByteArrayOutputStream record = new ByteArrayOutputStream();
+
+        private final DataOutputStream out = new DataOutputStream(record);
+
+        private byte tag;
+
+        void beginRecord(byte tag) {
+            this.tag = tag;
+            record.reset();
+        }
+
+        void endRecord() {
+            int length = record.size();
+            payload.write(tag);
+            payload.write(length >>> 24);
+            payload.write(length >>> 16);
+            payload.write(length >>> 8);
+            payload.write(length);
+            payload.write(record.toByteArray(), 0, length);
+        }
+
+        void putLong(long value) {
+            try {
+                out.writeLong(value);
+            } catch (IOException e) {
+                throw new IllegalStateException(e); // Impossible for a ByteArrayOutputStream.
+            }
+        }
+
+        void putName(String name) {
+            byte[] encoded = name.getBytes(StandardCharsets.UTF_8);
+            try {
+                out.writeShort(encoded.length);
+                out.write(encoded);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        void putText(String text) {
+            byte[] encoded = text.getBytes(StandardCharsets.UTF_8);
+            try {
+                out.writeInt(text.length());
+                out.writeInt(encoded.length);
+                out.write(encoded);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        ByteBuffer toBuffer() {
+            byte[] bytes = payload.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(bytes, 0, bytes.length);
+            ByteBuffer buffer = ByteBuffer.allocate(FRAME_HEADER_LENGTH + bytes.length);
+            buffer.putInt(bytes.length);
+            buffer.putInt((int) crc.getValue());
+            buffer.put(bytes);
+            buffer.flip();
+            return buffer;
+        }
+    }
+}
@@ -0,0 +1,7 @@
+/**
+ * <h3>The {@code model.filesystem.image} Package</h3>
+ * This package reads and writes the virtual disks from and to the local file system. A virtual disk is saved as a binary image, which is streamed record by record, so neither the size of the documents nor the depth of the tree is limited by the memory or the call stack.
+ *
+ * @see hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.image.VDiskImage
+ */
+package hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.image;
@@ -0,0 +1,149 @@
+package hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.index;
+
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Directory;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Document;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.File;
+import hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.MutationListener;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * <h3>The {@code AttributeIndex} Class</h3>
+ * The common part of the secondary indexes, which index the files of a virtual disk by one of their attributes for the {@code SearchPlanner}.
+ * <p>
+ * Like the {@code PathIndex}, an index is kept up to date as a mutation listener of the file system, so undo and redo keep it consistent too. Storing or removing a file indexes or unindexes all files below it, which costs {@code O(files below)}, and the index is only marked as stale when a virtual disk is mounted, and built by the next lookup.
+ */
+public abstract class AttributeIndex implements MutationListener {
+    /**
+     * The approximate size of an entry of an {@code IdentityHashMap}, which takes two slots of its table at a load factor of at most two thirds.
+     */
+    static final long IDENTITY_ENTRY_SIZE = 3 * 4 * 2;
+
+    /**
+     * The root directory of the indexed virtual disk.
+     */
+    private Directory root;
+
+    /**
+     * Whether the index has to be built before the next lookup.
+     */
+    private boolean stale;
+
+    /**
+     * Index another virtual disk, which is built by the next lookup.
+     * @param root the root directory of the virtual disk.
+     */
+    public void reset(Directory root) {
+        this.root = root;
+        clear();
+        stale = true;
+    }
+
+    /**
+     * Check if the index has been built.
+     * @return whether the index will be built by the next lookup.
+     */
+    public boolean isStale() {
+        return stale;
+    }
+
+    /**
+     * Get the number of indexed files.
+     * @return the number of indexed files, or {@code 0} if the index has not been built yet.
+     */
+    public abstract int size();
+
+    /**
+     * Estimate the memory taken by the index. The files themselves are not counted, since they are shared with the virtual disk.
+     * @return the approximate number of bytes, assuming compressed references.
+     */
+    public abstract long estimateMemory();
+
+    @Override
+    public void onStore(File file) {
+        if (!stale) {
+            walk(file, true);
+        }
+    }
+
+    @Override
+    public void onRemove(File file) {
+        if (!stale) {
+            walk(file, false);
+        }
+    }
+
+    @Override
+    public void onRename(File file, String oldName) {
+        // Neither the types nor the sizes are changed.
+    }
+
+    @Override
+    public void onModify(Document document) {
+        if (!stale) {
+            modify(document);
+        }
+    }
+
+    /**
+     * Build the index if it is stale. Every lookup calls this first.
+     */
+    void build() {
+        if (stale && root != null) {
+            stale = false;
+            walk(root, true);
+        }
+    }
+
+    /**
+     * Remove all files from the index.
+     */
+    abstract void clear();
+
+    /**
+     * Index a file.
+     */
+    abstract void add(File file);
+
+    /**
+     * Unindex a file.
+     */
+    abstract void remove(File file);
+
+    /**
+     * Reindex a document whose content has been modified.
+     */
+    abstract void modify(Document document);
+
+    /**
+     * Create an empty set of files compared by their identities, like the sets the indexes keep.
+     */
+    static <T extends File> Set<T> newFileSet() {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    /**
+     * Visit a file and all files below it, with an explicit stack so a deep tree does not overflow the call stack.
+     */
+    private void walk(File file, boolean add) {
+        Deque<File> stack = new ArrayDeque<>();
+        stack.push(file);
+        while (!stack.isEmpty()) {
+            File current = stack.pop();
+            if (add) {
+                add(current);
+            } else {
+                remove(current);
+            }
+            if (current instanceof Directory) {
+                for (File child : ((Directory) current).__MODEL_INTERNAL__getFiles().values()) {
+                    stack.push(child);
+                }
+            }
+        }
+    }
+}
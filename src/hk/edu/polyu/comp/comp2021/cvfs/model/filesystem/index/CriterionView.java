@@ -0,0 +1,260 @@
+package hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.index;
+
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.Criterion;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.CriterionCompiler;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.compositecriterion.ExpressionCriterion;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.compositecriterion.LogicAndCriterion;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.compositecriterion.LogicOrCriterion;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.compositecriterion.NegationCriterion;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.simplecriterion.IsDocument;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.simplecriterion.NameCriterion;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.simplecriterion.TypeCriterion;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Directory;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Document;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.File;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * <h3>The {@code CriterionView} Class</h3>
+ * A materialized view of a criterion: the files of a virtual disk satisfying it, below the root directory, like an {@code rSearch} from the root, together with their count and total size. The view is kept up to date by the mutations like the secondary indexes, so the count and the total size are read in {@code O(1)}, and the files are listed in {@code O(k)}.
+ * <p>
+ * A mutation changes the size of every directory above it by the same amount, which the view takes from the size of the root directory, the only one which is always exact. So the total size is kept without reading the lazy sizes of the directories, and a mutation costs {@code O(depth)} for the files stored, removed, renamed or modified. Only if the criterion depends on the sizes, the directories above the mutation are checked again, which also brings their lazy sizes up to date.
+ * <p>
+ * The mutations reach the view under the monitor of the root directory, see the concurrent mode of {@code FileSystem}, so the lookups take the same monitor.
+ */
+public final class CriterionView extends AttributeIndex {
+    private final Criterion criterion;
+
+    private final Predicate<File> predicate;
+
+    /**
+     * Whether the criterion may change its answer for a directory when a file below it changes.
+     */
+    private final boolean sizeDependent;
+
+    private final Set<File> files = newFileSet();
+
+    /**
+     * The number of directories in {@code files}, which have to be visited when their sizes change.
+     */
+    private int directories;
+
+    private long totalSize;
+
+    private volatile Directory root;
+
+    /**
+     * The size of the root directory after the last mutation the view has seen.
+     */
+    private long rootSize;
+
+    /**
+     * Constructs the view of a criterion over a virtual disk, which is built by the first lookup.
+     * @param criterion the criterion.
+     * @param root the root directory of the virtual disk, or {@code null} if no virtual disk is mounted.
+     */
+    public CriterionView(Criterion criterion, Directory root) {
+        this.criterion = criterion;
+        this.predicate = CriterionCompiler.compile(criterion);
+        this.sizeDependent = dependsOnSize(criterion);
+        reset(root);
+    }
+
+    /**
+     * Get the criterion of the view.
+     * @return the criterion.
+     */
+    public Criterion getCriterion() {
+        return criterion;
+    }
+
+    /**
+     * Get the files satisfying the criterion.
+     * @return the files, in no particular order, as a copy which cannot be changed.
+     */
+    public Set<File> getFiles() {
+        synchronized (monitor()) {
+            build();
+            Set<File> copy = newFileSet();
+            copy.addAll(files);
+            return Collections.unmodifiableSet(copy);
+        }
+    }
+
+    /**
+     * Get the number of the files satisfying the criterion.
+     * @return the number of the files.
+     */
+    public int getCount() {
+        synchronized (monitor()) {
+            build();
+            return files.size();
+        }
+    }
+
+    /**
+     * Get the total size of the files satisfying the criterion, where a directory counts with all files in it, like the report of {@code rSearch}.
+     * @return the total size.
+     */
+    public long getTotalSize() {
+        synchronized (monitor()) {
+            build();
+            return totalSize;
+        }
+    }
+
+    private Object monitor() {
+        Directory root = this.root;
+        return (root != null) ? root : this;
+    }
+
+    @Override
+    public void reset(Directory root) {
+        this.root = root;
+        super.reset(root);
+    }
+
+    @Override
+    public int size() {
+        return files.size();
+    }
+
+    @Override
+    public long estimateMemory() {
+        return files.size() * IDENTITY_ENTRY_SIZE;
+    }
+
+    @Override
+    public void onStore(File file) {
+        super.onStore(file);
+        if (!isStale()) {
+            propagate((Directory) file.__INTERNAL__getParent(), takeDelta());
+        }
+    }
+
+    @Override
+    public void onRemove(File file) {
+        super.onRemove(file);
+        if (!isStale()) {
+            propagate((Directory) file.__INTERNAL__getParent(), takeDelta());
+        }
+    }
+
+    @Override
+    public void onRename(File file, String oldName) {
+        if (!isStale()) {
+            check(file);
+        }
+    }
+
+    @Override
+    void build() {
+        if (isStale() && root != null) {
+            super.build();
+            rootSize = root.getSize();
+        }
+    }
+
+    @Override
+    void clear() {
+        files.clear();
+        directories = 0;
+        totalSize = 0;
+    }
+
+    @Override
+    void add(File file) {
+        check(file);
+    }
+
+    @Override
+    void remove(File file) {
+        if (files.remove(file)) {
+            forget(file);
+        }
+    }
+
+    @Override
+    void modify(Document document) {
+        long delta = takeDelta();
+        if (files.contains(document)) {
+            totalSize += delta;
+        }
+        check(document);
+        propagate((Directory) document.__INTERNAL__getParent(), delta);
+    }
+
+    /**
+     * Check a file against the criterion again, and add it to or remove it from the view.
+     */
+    private void check(File file) {
+        if (file != root && predicate.test(file)) {
+            if (files.add(file)) {
+                totalSize += file.getSize();
+                if (file instanceof Directory) {
+                    directories++;
+                }
+            }
+        } else if (files.remove(file)) {
+            forget(file);
+        }
+    }
+
+    private void forget(File file) {
+        totalSize -= file.getSize();
+        if (file instanceof Directory) {
+            directories--;
+        }
+    }
+
+    /**
+     * Take the size change of the last mutation from the size of the root directory.
+     */
+    private long takeDelta() {
+        long size = root.getSize();
+        long delta = size - rootSize;
+        rootSize = size;
+        return delta;
+    }
+
+    /**
+     * Apply a size change to the directories from a directory up to the root directory, which is not in the view.
+     */
+    private void propagate(Directory directory, long delta) {
+        if (delta == 0 || (directories == 0 && !sizeDependent)) {
+            return;
+        }
+        for (Directory current = directory; current != root; current = (Directory) current.__INTERNAL__getParent()) {
+            if (files.contains(current)) {
+                totalSize += delta;
+            }
+            if (sizeDependent) {
+                check(current);
+            }
+        }
+    }
+
+    /**
+     * Check if the answer of a criterion for a directory may depend on its size. A criterion the view does not know is assumed to.
+     */
+    private static boolean dependsOnSize(Criterion criterion) {
+        if (criterion instanceof NameCriterion || criterion instanceof TypeCriterion || criterion instanceof IsDocument) {
+            return false;
+        }
+        if (criterion instanceof ExpressionCriterion) {
+            return dependsOnSize(((ExpressionCriterion) criterion).getRoot());
+        }
+        if (criterion instanceof NegationCriterion || criterion instanceof LogicAndCriterion || criterion instanceof LogicOrCriterion) {
+            for (Criterion dependency : criterion.getDependencies()) {
+                if (dependsOnSize(dependency)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,154 @@
+package hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.index;
+
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Directory;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Document;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.File;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Set;
+
+/**
+ * <h3>The {@code NameIndex} Class</h3>
+ * A trigram index of the names of the files of a virtual disk, which answers {@code name contains} criteria without a scan.
+ * <p>
+ * Every file is kept under each run of three characters of its name. A file whose name contains a target contains all trigrams of the target, so the intersection of their files is a superset of the answer, which the caller verifies. A target of fewer than {@code GRAM} characters has no trigrams, and is not answered.
+ * <p>
+ * Unlike the types and sizes, the names change by renaming, which only reindexes the renamed file, since the names of the files below a directory do not change with it.
+ */
+public final class NameIndex extends AttributeIndex {
+    /**
+     * The length of the grams.
+     */
+    public static final int GRAM = 3;
+
+    private final HashMap<Long, Set<File>> files = new HashMap<>();
+
+    private int size;
+
+    /**
+     * The number of entries in all sets, for the memory estimate.
+     */
+    private long entries;
+
+    /**
+     * Constructs the index of a virtual disk, which is built by the first lookup.
+     * @param root the root directory of the virtual disk, or {@code null} if no virtual disk is mounted.
+     */
+    public NameIndex(Directory root) {
+        reset(root);
+    }
+
+    /**
+     * Find the files whose names may contain a target, i.e., contain all its trigrams.
+     * @param target the target, of at least {@code GRAM} characters.
+     * @return a superset of the files whose names contain the target, as a view which cannot be changed.
+     */
+    public Set<File> get(String target) {
+        build();
+        // Start from the rarest trigram, so the intersection never grows beyond it.
+        Set<File> rarest = null;
+        for (int i = 0; i + GRAM <= target.length(); i++) {
+            Set<File> set = files.get(gram(target, i));
+            if (set == null) {
+                return Collections.emptySet();
+            }
+            if (rarest == null || set.size() < rarest.size()) {
+                rarest = set;
+            }
+        }
+        if (target.length() == GRAM) {
+            return Collections.unmodifiableSet(rarest);
+        }
+
+        Set<File> result = newFileSet();
+        for (File file : rarest) {
+            if (containsAllGrams(file, target)) {
+                result.add(file);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public long estimateMemory() {
+        return entries * IDENTITY_ENTRY_SIZE + files.size() * (32 + 16 + 64L);
+    }
+
+    @Override
+    public void onRename(File file, String oldName) {
+        if (!isStale()) {
+            remove(file, oldName);
+            add(file, file.getName());
+        }
+    }
+
+    @Override
+    void clear() {
+        files.clear();
+        size = 0;
+        entries = 0;
+    }
+
+    @Override
+    void add(File file) {
+        add(file, file.getName());
+    }
+
+    @Override
+    void remove(File file) {
+        remove(file, file.getName());
+    }
+
+    @Override
+    void modify(Document document) {
+        // Names are not changed.
+    }
+
+    private void add(File file, String name) {
+        size++;
+        for (int i = 0; i + GRAM <= name.length(); i++) {
+            if (files.computeIfAbsent(gram(name, i), key -> newFileSet()).add(file)) {
+                entries++;
+            }
+        }
+    }
+
+    private void remove(File file, String name) {
+        size--;
+        for (int i = 0; i + GRAM <= name.length(); i++) {
+            long gram = gram(name, i);
+            Set<File> set = files.get(gram);
+            if (set != null && set.remove(file)) {
+                entries--;
+                if (set.isEmpty()) {
+                    files.remove(gram);
+                }
+            }
+        }
+    }
+
+    /**
+     * Check if a file is kept under all trigrams of a target.
+     */
+    private boolean containsAllGrams(File file, String target) {
+        for (int i = 0; i + GRAM <= target.length(); i++) {
+            if (!files.get(gram(target, i)).contains(file)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Pack the trigram at an index of a string into a {@code long}.
+     */
+    private static long gram(String string, int index) {
+        return ((long) string.charAt(index) << 32) | ((long) string.charAt(index + 1) << 16) | string.charAt(index + 2);
+    }
+}
@@ -0,0 +1,172 @@
+package hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.index;
+
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Directory;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Document;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.File;
+import hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.MutationListener;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+
+/**
+ * <h3>The {@code PathIndex} Class</h3>
+ * An index of all files of a virtual disk keyed by their absolute paths, e.g., {@code $:a:b:c.txt}, so an absolute path is resolved by a single hash lookup instead of one lookup per component.
+ * <p>
+ * The index is kept up to date as a mutation listener of the file system. Storing or removing a file indexes or unindexes all files below it, and renaming a directory moves all paths below it, so these cost {@code O(files below)}. Since undo and redo go through the same mutations, they keep the index consistent too.
+ * <p>
+ * The index is built lazily: it is only marked as stale when a virtual disk is mounted, and built by the next lookup, which costs {@code O(files)} once.
+ */
+public final class PathIndex implements MutationListener {
+    /**
+     * The approximate size of a {@code HashMap} entry and its key string, without the characters, with compressed references.
+     */
+    private static final long ENTRY_OVERHEAD = 32 + 24 + 16;
+
+    /**
+     * The approximate size of a slot of the hash table of a {@code HashMap}.
+     */
+    private static final long SLOT_SIZE = 4;
+
+    private final HashMap<String, File> paths = new HashMap<>();
+
+    /**
+     * The total length of the indexed paths, for the memory estimate.
+     */
+    private long pathLength;
+
+    /**
+     * The root directory of the indexed virtual disk.
+     */
+    private Directory root;
+
+    /**
+     * Whether the index has to be built before the next lookup.
+     */
+    private boolean stale;
+
+    /**
+     * Constructs the index of a virtual disk, which is built by the first lookup.
+     * @param root the root directory of the virtual disk.
+     */
+    public PathIndex(Directory root) {
+        reset(root);
+    }
+
+    /**
+     * Index another virtual disk, which is built by the next lookup.
+     * @param root the root directory of the virtual disk.
+     */
+    public void reset(Directory root) {
+        this.root = root;
+        paths.clear();
+        pathLength = 0;
+        stale = true;
+    }
+
+    /**
+     * Find a file by its absolute path.
+     * @param path the absolute path, where a document is named with its type, e.g., {@code $:a:b:c.txt}.
+     * @return the file, or {@code null} if there is no such file.
+     */
+    public File get(String path) {
+        if (stale && root != null) {
+            stale = false;
+            add(root, root.getPath());
+        }
+        return paths.get(path);
+    }
+
+    /**
+     * Get the number of indexed files.
+     * @return the number of indexed files, or {@code 0} if the index has not been built yet.
+     */
+    public int size() {
+        return paths.size();
+    }
+
+    /**
+     * Estimate the memory taken by the index, which is the entries, the paths and the hash table. The files themselves are not counted, since they are shared with the virtual disk.
+     * @return the approximate number of bytes, assuming compressed references and one byte per character of a path.
+     */
+    public long estimateMemory() {
+        long slots = Integer.highestOneBit(Math.max(1, (int) (paths.size() / 0.75f)) * 2 - 1);
+        return paths.size() * ENTRY_OVERHEAD + pathLength + slots * SLOT_SIZE;
+    }
+
+    /**
+     * Check if the index has been built.
+     * @return whether the index will be built by the next lookup.
+     */
+    public boolean isStale() {
+        return stale;
+    }
+
+    @Override
+    public void onStore(File file) {
+        if (!stale) {
+            add(file, file.getPath());
+        }
+    }
+
+    @Override
+    public void onRemove(File file) {
+        if (!stale) {
+            remove(file, file.getPath());
+        }
+    }
+
+    @Override
+    public void onRename(File file, String oldName) {
+        if (!stale) {
+            String parentPath = file.__INTERNAL__getParent().getPath();
+            String oldFullname = (file instanceof Document) ? oldName + "." + ((Document) file).getType() : oldName;
+            remove(file, parentPath + ":" + oldFullname);
+            add(file, file.getPath());
+        }
+    }
+
+    @Override
+    public void onModify(Document document) {
+        // Paths are not changed.
+    }
+
+    /**
+     * Index a file and all files below it.
+     */
+    private void add(File file, String path) {
+        walk(file, path, true);
+    }
+
+    /**
+     * Unindex a file and all files below it.
+     */
+    private void remove(File file, String path) {
+        walk(file, path, false);
+    }
+
+    /**
+     * Visit a file and all files below it with their paths, with an explicit stack so a deep tree does not overflow the call stack.
+     */
+    private void walk(File file, String path, boolean add) {
+        Deque<Object[]> stack = new ArrayDeque<>();
+        stack.push(new Object[]{file, path});
+        while (!stack.isEmpty()) {
+            Object[] pair = stack.pop();
+            File current = (File) pair[0];
+            String currentPath = (String) pair[1];
+            if (add) {
+                if (paths.put(currentPath, current) == null) {
+                    pathLength += currentPath.length();
+                }
+            } else if (paths.remove(currentPath) != null) {
+                pathLength -= currentPath.length();
+            }
+            if (current instanceof Directory) {
+                for (File child : ((Directory) current).__MODEL_INTERNAL__getFiles().values()) {
+                    stack.push(new Object[]{child, currentPath + ":" + child.getFullname()});
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.index;
+
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.Criterion;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.compositecriterion.ExpressionCriterion;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.compositecriterion.LogicAndCriterion;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.compositecriterion.LogicOrCriterion;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.compositecriterion.NegationCriterion;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.simplecriterion.IsDocument;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.simplecriterion.NameCriterion;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.simplecriterion.SizeCriterion;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.simplecriterion.TypeCriterion;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Directory;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Document;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.File;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * <h3>The {@code SearchPlanner} Class</h3>
+ * Plans a search by the secondary indexes, so the files which may satisfy a criterion are found without a scan.
+ *
+ * <h4>Plans</h4>
+ * <ul>
+ *     <li>{@code type equals} is answered by the {@code TypeIndex}, and a {@code size} comparison or range by the range of the {@code SizeIndex} it is resolved into, see {@code SizeCriterion.getMinSize()}, together with all directories.</li>
+ *     <li>{@code name contains} is answered by the trigrams of the {@code NameIndex}, if the target has at least {@code NameIndex.GRAM} characters.</li>
+ *     <li>A conjunction is answered by the intersection of the answers of its operands, where an operand without an answer is skipped, and a disjunction by their union, if all operands have answers.</li>
+ *     <li>A negation is pushed down to the simple criteria by De Morgan's laws, where a negated size range is the two ranges around it, and {@code !isDocument} is all directories.</li>
+ *     <li>Anything else, e.g., a short {@code name} target, has no answer.</li>
+ * </ul>
+ * An answer is a superset of the files satisfying the criterion, so the caller still checks every candidate, and the results are the same as the ones of a scan.
+ */
+public final class SearchPlanner {
+    /**
+     * A recursive search is only planned if the candidates are at most this fraction of the indexed files, since ordering a candidate costs {@code O(depth)}, while a scan costs {@code O(1)} per file.
+     */
+    private static final int MAX_CANDIDATE_FRACTION = 8;
+
+    private final TypeIndex typeIndex;
+
+    private final SizeIndex sizeIndex;
+
+    private final NameIndex nameIndex;
+
+    /**
+     * Construct a planner over the indexes.
+     * @param typeIndex the type index, or {@code null} if it is turned off.
+     * @param sizeIndex the size index, or {@code null} if it is turned off.
+     * @param nameIndex the name index, or {@code null} if it is turned off.
+     */
+    public SearchPlanner(TypeIndex typeIndex, SizeIndex sizeIndex, NameIndex nameIndex) {
+        this.typeIndex = typeIndex;
+        this.sizeIndex = sizeIndex;
+        this.nameIndex = nameIndex;
+    }
+
+    /**
+     * Find the candidates of a criterion by the indexes.
+     * @param criterion the criterion.
+     * @return a superset of the files satisfying the criterion, or {@code null} if the indexes cannot narrow the search.
+     */
+    public Set<? extends File> plan(Criterion criterion) {
+        return plan(criterion, false);
+    }
+
+    /**
+     * Find the candidates of a criterion in a directory, or in its subtree, in the order a scan visits them.
+     * @param criterion the criterion.
+     * @param directory the directory.
+     * @param recursive whether the files below the subdirectories are included, as in {@code rSearch}.
+     * @return the candidates, in the order of their names, and in the pre-order of the tree if the search is recursive, or {@code null} if the indexes cannot narrow the search enough to beat a scan.
+     */
+    public List<File> plan(Criterion criterion, Directory directory, boolean recursive) {
+        Set<? extends File> candidates = plan(criterion);
+        if (candidates == null) {
+            return null;
+        }
+        long indexed = 0;
+        for (AttributeIndex index : new AttributeIndex[]{typeIndex, sizeIndex, nameIndex}) {
+            if (index != null) {
+                indexed = Math.max(indexed, index.size());
+            }
+        }
+        if (recursive ? ((long) candidates.size() * MAX_CANDIDATE_FRACTION > indexed) : (candidates.size() >= directory.__MODEL_INTERNAL__getFiles().size())) {
+            return null;
+        }
+
+        List<File> files = new ArrayList<>();
+        List<String[]> keys = new ArrayList<>();
+        for (File file : candidates) {
+            String[] key = recursive ? keyBelow(file, directory) : ((file.__INTERNAL__getParent() == directory) ? new String[]{file.getName()} : null);
+            if (key != null) {
+                files.add(file);
+                keys.add(key);
+            }
+        }
+
+        Integer[] order = new Integer[files.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparing(keys::get, SearchPlanner::compareKeys));
+        List<File> result = new ArrayList<>(order.length);
+        for (int i : order) {
+            result.add(files.get(i));
+        }
+        return result;
+    }
+
+    private Set<? extends File> plan(Criterion criterion, boolean negated) {
+        if (criterion instanceof TypeCriterion) {
+            return (typeIndex == null || negated) ? null : typeIndex.get(((TypeCriterion) criterion).getTypename());
+        }
+        if (criterion instanceof SizeCriterion) {
+            return (sizeIndex == null) ? null : planSize((SizeCriterion) criterion, negated);
+        }
+        if (criterion instanceof NameCriterion) {
+            String target = ((NameCriterion) criterion).getTarget();
+            return (nameIndex == null || negated || target.length() < NameIndex.GRAM) ? null : nameIndex.get(target);
+        }
+        if (criterion instanceof IsDocument) {
+            return (sizeIndex == null || !negated) ? null : sizeIndex.getDirectories();
+        }
+
+        if (criterion instanceof ExpressionCriterion) {
+            return plan(((ExpressionCriterion) criterion).getRoot(), negated);
+        }
+
+        Criterion[] operands = criterion.getDependencies();
+        if (criterion instanceof NegationCriterion) {
+            return plan(operands[0], !negated);
+        }
+        if (criterion instanceof LogicAndCriterion || criterion instanceof LogicOrCriterion) {
+            boolean and = (criterion instanceof LogicAndCriterion) != negated; // De Morgan's laws.
+            Set<? extends File> first = plan(operands[0], negated);
+            Set<? extends File> second = plan(operands[1], negated);
+            return and ? intersect(first, second) : union(first, second);
+        }
+        return null;
+    }
+
+    /**
+     * Find the candidates of a size criterion, which are the documents in its range, or out of it if the criterion is negated once, and all directories.
+     */
+    private Set<File> planSize(SizeCriterion criterion, boolean negated) {
+        long min = criterion.getMinSize();
+        long max = criterion.getMaxSize();
+        Set<File> result = AttributeIndex.newFileSet();
+        if (negated != criterion.isNegated()) {
+            if (min > max) {
+                return null; // Always true.
+            }
+            if (min != Long.MIN_VALUE) {
+                addRange(result, Long.MIN_VALUE, min - 1);
+            }
+            if (max != Long.MAX_VALUE) {
+                addRange(result, max + 1, Long.MAX_VALUE);
+            }
+        } else {
+            if (min > max) {
+                return result; // Always false.
+            }
+            addRange(result, min, max);
+        }
+        result.addAll(sizeIndex.getDirectories());
+        return result;
+    }
+
+    private void addRange(Set<File> result, long min, long max) {
+        for (Set<Document> bucket : sizeIndex.get(min, max)) {
+            result.addAll(bucket);
+        }
+    }
+
+    /**
+     * Intersect two sets of candidates, where {@code null} is all files.
+     */
+    private static Set<? extends File> intersect(Set<? extends File> first, Set<? extends File> second) {
+        if (first == null || second == null) {
+            return (first == null) ? second : first;
+        }
+        Set<? extends File> smaller = (first.size() <= second.size()) ? first : second;
+        Set<? extends File> larger = (smaller == first) ? second : first;
+        Set<File> result = AttributeIndex.newFileSet();
+        for (File file : smaller) {
+            if (larger.contains(file)) {
+                result.add(file);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Unite two sets of candidates, where {@code null} is all files.
+     */
+    private static Set<? extends File> union(Set<? extends File> first, Set<? extends File> second) {
+        if (first == null || second == null) {
+            return null;
+        }
+        if (first.isEmpty() || second.isEmpty()) {
+            return first.isEmpty() ? second : first;
+        }
+        Set<File> result = AttributeIndex.newFileSet();
+        result.addAll(first);
+        result.addAll(second);
+        return result;
+    }
+
+    /**
+     * Get the names of the files from below a directory down to a file, which order the files as a scan visits them.
+     * @return the names, or {@code null} if the file is not below the directory, including the directory itself.
+     */
+    private static String[] keyBelow(File file, Directory directory) {
+        if (file == directory) {
+            return null;
+        }
+        int depth = 0;
+        File current = file;
+        while (current != directory) {
+            if (current == null) {
+                return null;
+            }
+            depth++;
+            current = current.__INTERNAL__getParent();
+        }
+        String[] key = new String[depth];
+        for (current = file; current != directory; current = current.__INTERNAL__getParent()) {
+            key[--depth] = current.getName();
+        }
+        return key;
+    }
+
+    /**
+     * Compare two keys in the pre-order of the tree, where the files of a directory are in the order of their names, and a directory comes before the files below it.
+     */
+    private static int compareKeys(String[] first, String[] second) {
+        int n = Math.min(first.length, second.length);
+        for (int i = 0; i < n; i++) {
+            int c = first[i].compareTo(second[i]);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return Integer.compare(first.length, second.length);
+    }
+}
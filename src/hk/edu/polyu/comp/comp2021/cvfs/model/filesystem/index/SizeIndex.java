@@ -0,0 +1,123 @@
+package hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.index;
+
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Directory;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Document;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.File;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * <h3>The {@code SizeIndex} Class</h3>
+ * An index of the documents of a virtual disk ordered by their sizes, which answers the ranges of sizes of {@code size} criteria without a scan.
+ * <p>
+ * The documents are kept in buckets of equal sizes in a {@code TreeMap}, so a range is found in {@code O(log n)} and every document in it is visited once, and storing, removing or modifying a document costs {@code O(log n)}. Since the content of a document is already changed when the index is notified, the index remembers the size each document is kept under.
+ * <p>
+ * The sizes of the directories are aggregated lazily, see {@code Directory}, and keeping them in order would cost {@code O(depth)} for every change, so the directories are only kept in a set, and a range includes all of them, for the caller to check.
+ */
+public final class SizeIndex extends AttributeIndex {
+    /**
+     * The approximate size of an entry of a {@code TreeMap} and its {@code Long} key.
+     */
+    private static final long TREE_ENTRY_SIZE = 40 + 16;
+
+    private final TreeMap<Long, Set<Document>> documents = new TreeMap<>();
+
+    /**
+     * The size every document is kept under.
+     */
+    private final IdentityHashMap<Document, Long> sizes = new IdentityHashMap<>();
+
+    private final Set<Directory> directories = newFileSet();
+
+    /**
+     * Constructs the index of a virtual disk, which is built by the first lookup.
+     * @param root the root directory of the virtual disk, or {@code null} if no virtual disk is mounted.
+     */
+    public SizeIndex(Directory root) {
+        reset(root);
+    }
+
+    /**
+     * Find the documents with the sizes in a range.
+     * @param min the least size, inclusive.
+     * @param max the greatest size, inclusive.
+     * @return the buckets of the documents, in the order of their sizes, as a view which cannot be changed.
+     */
+    public Iterable<Set<Document>> get(long min, long max) {
+        build();
+        if (min > max) {
+            return Collections.emptySet();
+        }
+        return Collections.unmodifiableCollection(documents.subMap(min, true, max, true).values());
+    }
+
+    /**
+     * Get all directories, which any range of sizes may include.
+     * @return the directories, as a view which cannot be changed.
+     */
+    public Set<Directory> getDirectories() {
+        build();
+        return Collections.unmodifiableSet(directories);
+    }
+
+    @Override
+    public int size() {
+        return sizes.size() + directories.size();
+    }
+
+    @Override
+    public long estimateMemory() {
+        return sizes.size() * (2 * IDENTITY_ENTRY_SIZE + 16) + documents.size() * (TREE_ENTRY_SIZE + 64) + directories.size() * IDENTITY_ENTRY_SIZE;
+    }
+
+    @Override
+    void clear() {
+        documents.clear();
+        sizes.clear();
+        directories.clear();
+    }
+
+    @Override
+    void add(File file) {
+        if (file instanceof Directory) {
+            directories.add((Directory) file);
+        } else if (!sizes.containsKey(file)) {
+            long size = file.getSize();
+            sizes.put((Document) file, size);
+            documents.computeIfAbsent(size, key -> newFileSet()).add((Document) file);
+        }
+    }
+
+    @Override
+    void remove(File file) {
+        if (file instanceof Directory) {
+            directories.remove(file);
+            return;
+        }
+        Long size = sizes.remove(file);
+        if (size != null) {
+            removeFromBucket((Document) file, size);
+        }
+    }
+
+    @Override
+    void modify(Document document) {
+        Long size = sizes.get(document);
+        if (size != null && size != document.getSize()) {
+            removeFromBucket(document, size);
+            sizes.remove(document);
+            add(document);
+        }
+    }
+
+    private void removeFromBucket(Document document, long size) {
+        Set<Document> bucket = documents.get(size);
+        bucket.remove(document);
+        if (bucket.isEmpty()) {
+            documents.remove(size);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.index;
+
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Directory;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Document;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.File;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Set;
+
+/**
+ * <h3>The {@code TypeIndex} Class</h3>
+ * An index of the documents of a virtual disk by their types, which answers {@code type equals} criteria without a scan. The type of a document never changes, so only storing and removing files change the index.
+ */
+public final class TypeIndex extends AttributeIndex {
+    private final HashMap<String, Set<Document>> documents = new HashMap<>();
+
+    private int size;
+
+    /**
+     * Constructs the index of a virtual disk, which is built by the first lookup.
+     * @param root the root directory of the virtual disk, or {@code null} if no virtual disk is mounted.
+     */
+    public TypeIndex(Directory root) {
+        reset(root);
+    }
+
+    /**
+     * Find the documents of a type.
+     * @param type the type.
+     * @return the documents, as a view which cannot be changed.
+     */
+    public Set<Document> get(String type) {
+        build();
+        Set<Document> result = documents.get(type);
+        return (result == null) ? Collections.emptySet() : Collections.unmodifiableSet(result);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public long estimateMemory() {
+        return size * IDENTITY_ENTRY_SIZE + documents.size() * 128L;
+    }
+
+    @Override
+    void clear() {
+        documents.clear();
+        size = 0;
+    }
+
+    @Override
+    void add(File file) {
+        if (file instanceof Document && documents.computeIfAbsent(((Document) file).getType(), type -> newFileSet()).add((Document) file)) {
+            size++;
+        }
+    }
+
+    @Override
+    void remove(File file) {
+        if (file instanceof Document) {
+            Set<Document> set = documents.get(((Document) file).getType());
+            if (set != null && set.remove(file)) {
+                size--;
+            }
+        }
+    }
+
+    @Override
+    void modify(Document document) {
+        // Types are not changed.
+    }
+}
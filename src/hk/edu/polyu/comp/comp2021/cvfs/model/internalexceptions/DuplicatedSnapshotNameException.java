@@ -0,0 +1,17 @@
+package hk.edu.polyu.comp.comp2021.cvfs.model.internalexceptions;
+
+import hk.edu.polyu.comp.comp2021.cvfs.model.ModelException;
+
+/**
+ * <h3>The {@code DuplicatedSnapshotNameException} Exception</h3>
+ * Thrown to indicate that the virtual disk has another snapshot with the same name.
+ */
+public class DuplicatedSnapshotNameException extends ModelException {
+    /**
+     * Construct a new exception.
+     * @param name the duplicated name of the snapshot.
+     */
+    public DuplicatedSnapshotNameException(String name) {
+        super("Duplicated snapshot name " + "\"" + name + "\"" + ".");
+    }
+}
@@ -0,0 +1,16 @@
+package hk.edu.polyu.comp.comp2021.cvfs.model.internalexceptions;
+
+import hk.edu.polyu.comp.comp2021.cvfs.model.ModelException;
+
+/**
+ * <h3>The {@code NoMountedSnapshotException} Exception</h3>
+ * Thrown to indicate that the command requires a mounted snapshot, while the live virtual disk is mounted.
+ */
+public class NoMountedSnapshotException extends ModelException {
+    /**
+     * Construct a new exception.
+     */
+    public NoMountedSnapshotException() {
+        super("No mounted snapshot.");
+    }
+}
@@ -0,0 +1,14 @@
+package hk.edu.polyu.comp.comp2021.cvfs.model.internalexceptions;
+
+/**
+ * <h3>The {@code ReadOnlyVDiskException} Exception</h3>
+ * Thrown to indicate that the mounted virtual disk is a snapshot, which cannot be changed. From a simulation perspective, this is a write to a read-only address space.
+ */
+public class ReadOnlyVDiskException extends WrongAddressSpaceException {
+    /**
+     * Construct a new exception.
+     */
+    public ReadOnlyVDiskException() {
+        super("The mounted virtual disk is a read-only snapshot. Use unmountSnapshot to return to the live disk.");
+    }
+}
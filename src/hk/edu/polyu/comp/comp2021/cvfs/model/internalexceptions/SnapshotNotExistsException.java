@@ -0,0 +1,17 @@
+package hk.edu.polyu.comp.comp2021.cvfs.model.internalexceptions;
+
+import hk.edu.polyu.comp.comp2021.cvfs.model.ModelException;
+
+/**
+ * <h3>The {@code SnapshotNotExistsException} Exception</h3>
+ * Thrown to indicate that the virtual disk has no snapshot with the name.
+ */
+public class SnapshotNotExistsException extends ModelException {
+    /**
+     * Construct a new exception.
+     * @param name the name of the unexisted snapshot.
+     */
+    public SnapshotNotExistsException(String name) {
+        super("Snapshot not exists: " + "\"" + name + "\"" + ".");
+    }
+}
@@ -13,4 +13,12 @@ public class WrongAddressSpaceException extends ModelException {
     public WrongAddressSpaceException() {
         super("Fatal error: The directory does not belongs to the virtual disk!");
     }
+
+    /**
+     * Construct a new exception with a specific message, for the subclasses.
+     * @param message the exception message.
+     */
+    protected WrongAddressSpaceException(String message) {
+        super(message);
+    }
 }
@@ -11,6 +11,11 @@ import hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.FileSystem;
  * @see Operation
  */
 public final class OperationFactory {
+    /**
+     * The cache of the outputs of {@code search} and {@code rSearch}, shared by all operations created by this factory.
+     */
+    private final SearchCache searchCache = new SearchCache();
+
     /**
      * Create an {@code Operation} object from the parsed user command.
      * @param fs the reference to the file system.
@@ -54,22 +59,42 @@ public final class OperationFactory {
                 return new NewNegation(fs, command);
             case "newBinaryCri": // [REQ11]
                 return new NewBinaryCri(fs, command);
+            case "newExprCri":
+                return new NewExprCri(fs, command);
             case "deleteCri":
                 return new RemoveCri(fs, command);
             case "printAllCriteria": // [REQ12]
                 return new PrintAllCriteria(fs, command);
             case "search": // [REQ13]
-                return new Search(fs, command);
+                return new Search(fs, searchCache, command);
             case "rSearch": // [REQ14]
-                return new RSearch(fs, command);
+                return new RSearch(fs, searchCache, command);
             case "save": // [REQ15]
                 return new Save(fs, command);
             case "load": // [REQ16]
                 return new Load(fs, operationRecord, command);
+            case "import":
+                return new Import(fs, command);
             case "saveCri": // [BON1]
                 return new SaveCri(fs, command);
             case "loadCri": // [BON1]
                 return new LoadCri(fs, operationRecord, command);
+            case "newSnapshot":
+                return new NewSnapshot(fs, command);
+            case "listSnapshots":
+                return new ListSnapshots(fs, command);
+            case "mountSnapshot":
+                return new MountSnapshot(fs, command);
+            case "unmountSnapshot":
+                return new UnmountSnapshot(fs, command);
+            case "dropSnapshot":
+                return new DropSnapshot(fs, command);
+            case "wal":
+                return new WriteAheadLogSetting(fs, command);
+            case "index":
+                return new IndexSetting(fs, command);
+            case "watch":
+                return new Watch(fs, command);
             case "undo": // [BON2]
                 return operationRecord.popForUndo().getInverseOperation();
             case "redo": // [BON2]
@@ -0,0 +1,212 @@
+package hk.edu.polyu.comp.comp2021.cvfs.service.operationservice;
+
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.Criterion;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Directory;
+import hk.edu.polyu.comp.comp2021.cvfs.service.operationservice.operations.OutputSink;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <h3>The {@code SearchCache} Class</h3>
+ * A bounded LRU cache of the outputs of {@code search} and {@code rSearch}, keyed by the criterion and the working directory, both by their identities, so a repeated search of an unchanged directory is answered in {@code O(result)}.
+ * <p>
+ * An output is valid as long as the generation of the working directory is the same, see {@code FileSystem.getGeneration()}, which changes whenever a file at or below it is stored, removed, renamed or modified, including by undo and redo. The path of the working directory is checked too, since renaming a directory above changes the paths in the output of {@code rSearch}, but not the generations below.
+ * <p>
+ * At most {@code CAPACITY} outputs are kept, and an output longer than {@code MAX_CHARACTERS} is not kept at all, so the cache takes bounded memory.
+ * <p>
+ * The cache may be shared by the sessions of a {@code Server}, so it is synchronized, but a kept output is emitted outside of the lock, since it is never changed.
+ */
+public final class SearchCache {
+    /**
+     * The number of outputs kept.
+     */
+    public static final int CAPACITY = 64;
+
+    /**
+     * The length of the longest output kept.
+     */
+    public static final int MAX_CHARACTERS = 1 << 20;
+
+    private final LinkedHashMap<Key, Output> entries = new LinkedHashMap<Key, Output>(16, 0.75f, true) {
+        // @Serial
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Output> eldest) {
+            return size() > CAPACITY;
+        }
+    };
+
+    private long hits = 0;
+
+    private long misses = 0;
+
+    /**
+     * Emit the kept output of a search, if it is still valid.
+     * @param criterion the criterion of the search.
+     * @param directory the working directory.
+     * @param recursive whether the search is an {@code rSearch}.
+     * @param generation the current generation of the working directory.
+     * @param path the current path of the working directory.
+     * @param sink the sink to emit the output to.
+     * @return whether the output has been emitted, or the search has to run.
+     */
+    public boolean replay(Criterion criterion, Directory directory, boolean recursive, long generation, String path, OutputSink sink) {
+        Key key = new Key(criterion, directory, recursive);
+        Output entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry == null || entry.generation != generation || !entry.path.equals(path)) {
+                if (entry != null) {
+                    entries.remove(key);
+                }
+                misses++;
+                return false;
+            }
+            hits++;
+        }
+        for (String line : entry.lines) {
+            sink.println(line);
+        }
+        return true;
+    }
+
+    /**
+     * Wrap the sink of a search, so the output is kept when the search finishes.
+     * @param criterion the criterion of the search.
+     * @param directory the working directory.
+     * @param recursive whether the search is an {@code rSearch}.
+     * @param generation the generation of the working directory before the search.
+     * @param path the path of the working directory.
+     * @param sink the sink of the search.
+     * @return the recorder, which passes every line on to {@code sink}.
+     */
+    public Recorder record(Criterion criterion, Directory directory, boolean recursive, long generation, String path, OutputSink sink) {
+        return new Recorder(new Key(criterion, directory, recursive), generation, path, sink);
+    }
+
+    /**
+     * Get the number of searches answered by the cache.
+     * @return the number of hits.
+     */
+    public long getHits() {
+        synchronized (entries) {
+            return hits;
+        }
+    }
+
+    /**
+     * Get the number of searches which had to run.
+     * @return the number of misses.
+     */
+    public long getMisses() {
+        synchronized (entries) {
+            return misses;
+        }
+    }
+
+    /**
+     * Forget all outputs.
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * An {@code OutputSink} which keeps the lines it passes on, until the output grows too long.
+     */
+    public final class Recorder implements OutputSink {
+        private final Key key;
+
+        private final long generation;
+
+        private final String path;
+
+        private final OutputSink sink;
+
+        private ArrayList<String> lines = new ArrayList<>();
+
+        private long characters = 0;
+
+        private Recorder(Key key, long generation, String path, OutputSink sink) {
+            this.key = key;
+            this.generation = generation;
+            this.path = path;
+            this.sink = sink;
+        }
+
+        @Override
+        public void println(CharSequence line) {
+            sink.println(line);
+            if (lines != null) {
+                characters += line.length() + 1;
+                if (characters > MAX_CHARACTERS) {
+                    lines = null;
+                } else {
+                    lines.add(line.toString());
+                }
+            }
+        }
+
+        /**
+         * Keep the output, since the search has finished successfully.
+         */
+        public void commit() {
+            if (lines != null) {
+                lines.trimToSize();
+                synchronized (entries) {
+                    entries.put(key, new Output(generation, path, lines));
+                }
+            }
+        }
+    }
+
+    /**
+     * The key of an output, which compares the criterion and the working directory by their identities.
+     */
+    private static final class Key {
+        private final Criterion criterion;
+
+        private final Directory directory;
+
+        private final boolean recursive;
+
+        Key(Criterion criterion, Directory directory, boolean recursive) {
+            this.criterion = criterion;
+            this.directory = directory;
+            this.recursive = recursive;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return criterion == key.criterion && directory == key.directory && recursive == key.recursive;
+        }
+
+        @Override
+        public int hashCode() {
+            return (System.identityHashCode(criterion) * 31 + System.identityHashCode(directory)) * 2 + (recursive ? 1 : 0);
+        }
+    }
+
+    private static final class Output {
+        private final long generation;
+
+        private final String path;
+
+        private final ArrayList<String> lines;
+
+        Output(long generation, String path, ArrayList<String> lines) {
+            this.generation = generation;
+            this.path = path;
+            this.lines = lines;
+        }
+    }
+}
@@ -65,6 +65,14 @@ public final class ChangeDir implements UndoableOperation {
                 originalDirectory = fs.getWorkingDirectory();
             }
 
+            if (newDirectory == null && isPlainAbsolutePath(newDirectoryPath)) {
+                File target = fs.findFileByPath(newDirectoryPath);
+                if (!(target instanceof Directory)) {
+                    throw new InvalidCommandException(target.getFullname() + " is not a directory.");
+                }
+                newDirectory = (Directory) target;
+            }
+
             if (newDirectory == null) {
                 Directory directoryNavigator = originalDirectory;
                 String[] pathComponents = newDirectoryPath.split(":");
@@ -108,6 +116,21 @@ public final class ChangeDir implements UndoableOperation {
         }
     }
 
+    /**
+     * Check if a path is absolute and has no {@code .} or {@code ..} components, so it can be resolved by the file system at once.
+     */
+    private static boolean isPlainAbsolutePath(String path) {
+        if (!path.startsWith("$")) {
+            return false;
+        }
+        for (String component : path.split(":")) {
+            if (component.equals(".") || component.equals("..")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public void commandValidityCheck(String[] command) throws InvalidCommandException {
         if (command.length != 2) {
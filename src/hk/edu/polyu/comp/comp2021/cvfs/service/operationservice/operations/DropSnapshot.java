@@ -0,0 +1,51 @@
+package hk.edu.polyu.comp.comp2021.cvfs.service.operationservice.operations;
+
+import hk.edu.polyu.comp.comp2021.cvfs.model.ModelException;
+import hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.FileSystem;
+import hk.edu.polyu.comp.comp2021.cvfs.service.operationservice.InvalidCommandException;
+
+/**
+ * <h3>The {@code DropSnapshot} Operation Class</h3>
+ * This class encapsulates the operation of the {@code dropSnapshot} command, which drops a snapshot of the live virtual disk.
+ */
+public final class DropSnapshot implements Operation {
+    private final FileSystem fs;
+
+    private final String name;
+
+
+    /**
+     * Construct a new {@code DropSnapshot} Operation.
+     * <p>
+     * User command: {@code dropSnapshot <name>}
+     *
+     * @param fs the reference to the file system.
+     * @param command the parsed user command.
+     * @throws InvalidCommandException if the parameter(s) in the command are invalid.
+     */
+    public DropSnapshot(FileSystem fs, String[] command) throws InvalidCommandException {
+        commandValidityCheck(command);
+        this.fs = fs;
+        this.name = command[1];
+    }
+
+    @Override
+    public String exec() throws OperationCannotExecuteException {
+        try {
+            fs.dropSnapshot(name);
+            return "Snapshot " + name + " has been dropped.";
+        } catch (ModelException e) {
+            throw new OperationCannotExecuteException(e.getMessage());
+        }
+    }
+
+    @Override
+    public void commandValidityCheck(String[] command) throws InvalidCommandException {
+        if (command.length != 2) {
+            throw new InvalidCommandException("Wrong number of parameters: " + (command.length - 1) + ".");
+        }
+        if (!command[1].matches("[a-zA-Z0-9]+")) {
+            throw new InvalidCommandException("Invalid snapshot name: " + command[1] + ". It should only contain letters and digits.");
+        }
+    }
+}
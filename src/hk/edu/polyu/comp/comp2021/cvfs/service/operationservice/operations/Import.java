@@ -0,0 +1,88 @@
+package hk.edu.polyu.comp.comp2021.cvfs.service.operationservice.operations;
+
+import hk.edu.polyu.comp.comp2021.cvfs.model.ModelException;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Directory;
+import hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.FileSystem;
+import hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.image.HostTree;
+import hk.edu.polyu.comp.comp2021.cvfs.service.operationservice.InvalidCommandException;
+
+import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+
+/**
+ * <h3>The {@code Import} Operation Class</h3>
+ * This class encapsulates the operation of the {@code import} command, which imports a directory of the local file system, with all files below it, into the working directory.
+ * <p>
+ * The local directory is read first, see {@code HostTree}, which gives up early if it cannot fit in the free space, and then stored as one change, so the undo operation of this is one {@code Remove} of the imported directory.
+ * @see FileSystem#importTree(HostTree, Directory)
+ */
+public final class Import implements UndoableOperation {
+    private final FileSystem fs;
+
+    /**
+     * The path of the directory in the local file system.
+     */
+    private final String path;
+
+    private Directory directory;
+
+
+    /**
+     * Construct a new {@code Import} Operation.
+     * <p>
+     * User command: {@code import <hostPath>}
+     *
+     * @param fs the reference to the file system.
+     * @param command the parsed user command.
+     * @throws InvalidCommandException if the parameter(s) in the command are invalid.
+     */
+    public Import(FileSystem fs, String[] command) throws InvalidCommandException {
+        commandValidityCheck(command);
+        this.fs = fs;
+        this.path = command[1];
+    }
+
+    @Override
+    public String exec() throws OperationCannotExecuteException {
+        try {
+            HostTree tree = HostTree.read(Paths.get(path), fs.getFreeSpace());
+            directory = fs.importTree(tree, fs.getWorkingDirectory());
+            return "The directory " + path + " has been imported as " + directory.getFullname() + " into " + fs.getParent(directory).getFullname()
+                    + ", with " + tree.getDirectoryCount() + " directories and " + tree.getDocumentCount() + " documents"
+                    + (tree.getSkippedCount() == 0 ? "." : ", skipping " + tree.getSkippedCount() + " unsupported files.");
+        } catch (IOException | InvalidPathException e) {
+            throw new OperationCannotExecuteException("Cannot read the directory: " + e.getMessage());
+        } catch (ModelException e) {
+            throw new OperationCannotExecuteException(e.getMessage());
+        }
+    }
+
+    @Override
+    public void commandValidityCheck(String[] command) throws InvalidCommandException {
+        if (command.length != 2) {
+            throw new InvalidCommandException("Wrong number of parameters: " + (command.length - 1) + ".");
+        }
+    }
+
+    /**
+     * {@code Import} is not the undo operation of any operation, hence the {@code isUndoOperation()} shall always return false.
+     */
+    @Override
+    public boolean isUndoOperation() {
+        return false;
+    }
+
+    /**
+     * {@code Import} is not the redo operation of any operation, hence the {@code isRedoOperation()} shall always return false.
+     */
+    @Override
+    public boolean isRedoOperation() {
+        return false;
+    }
+
+    @Override
+    public Operation getInverseOperation() {
+        return new Remove(fs, directory, OperationType.UNDO);
+    }
+}
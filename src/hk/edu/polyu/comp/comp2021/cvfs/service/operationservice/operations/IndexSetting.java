@@ -0,0 +1,97 @@
+package hk.edu.polyu.comp.comp2021.cvfs.service.operationservice.operations;
+
+import hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.FileSystem;
+import hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.index.AttributeIndex;
+import hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.index.PathIndex;
+import hk.edu.polyu.comp.comp2021.cvfs.service.operationservice.InvalidCommandException;
+
+/**
+ * <h3>The {@code IndexSetting} Operation Class</h3>
+ * This class encapsulates the operation of the {@code index} command, which shows the indexes of the file system and their memory overhead, or turns one of them on or off.
+ */
+public final class IndexSetting implements Operation {
+    private final FileSystem fs;
+
+    /**
+     * The index to turn on or off, or {@code null} if the command only shows the indexes.
+     */
+    private final String index;
+
+    private final boolean enabled;
+
+    /**
+     * Construct a new {@code IndexSetting} Operation.
+     * <p>
+     * User command: {@code index [path|type|size|name on|off]}
+     * <p>
+     * The {@code path} index resolves absolute paths, e.g., in {@code changeDir}, by a single lookup. The {@code type} and {@code size} indexes let {@code search} and {@code rSearch} find the files satisfying {@code type equals} and {@code size} criteria, and their combinations, without a scan, and so does the {@code name} index for {@code name contains} criteria with at least three characters. Without parameters, the indexes are shown.
+     *
+     * @param fs the reference to the file system.
+     * @param command the parsed user command.
+     * @throws InvalidCommandException if the parameter(s) in the command are invalid.
+     */
+    public IndexSetting(FileSystem fs, String[] command) throws InvalidCommandException {
+        commandValidityCheck(command);
+        this.fs = fs;
+        index = (command.length == 1) ? null : command[1];
+        enabled = (command.length == 3) && command[2].equals("on");
+    }
+
+    @Override
+    public String exec() {
+        if (index != null) {
+            switch (index) {
+                case "path":
+                    fs.setPathIndexEnabled(enabled);
+                    break;
+                case "type":
+                    fs.setTypeIndexEnabled(enabled);
+                    break;
+                case "name":
+                    fs.setNameIndexEnabled(enabled);
+                    break;
+                default:
+                    fs.setSizeIndexEnabled(enabled);
+                    break;
+            }
+        }
+        return describe() + "\n" + describe("type", fs.getTypeIndex()) + "\n" + describe("size", fs.getSizeIndex()) + "\n" + describe("name", fs.getNameIndex());
+    }
+
+    private String describe() {
+        PathIndex pathIndex = fs.getPathIndex();
+        if (pathIndex == null) {
+            return "The path index is off.";
+        }
+        if (pathIndex.isStale()) {
+            return "The path index is on, and is built by the next lookup.";
+        }
+        return "The path index is on: " + pathIndex.size() + " files, about " + pathIndex.estimateMemory() + " bytes.";
+    }
+
+    private static String describe(String name, AttributeIndex index) {
+        if (index == null) {
+            return "The " + name + " index is off.";
+        }
+        if (index.isStale()) {
+            return "The " + name + " index is on, and is built by the next lookup.";
+        }
+        return "The " + name + " index is on: " + index.size() + " files, about " + index.estimateMemory() + " bytes.";
+    }
+
+    @Override
+    public void commandValidityCheck(String[] command) throws InvalidCommandException {
+        if (command.length == 1) {
+            return;
+        }
+        if (command.length != 3) {
+            throw new InvalidCommandException("Wrong number of parameters: " + (command.length - 1) + ".");
+        }
+        if (!command[1].equals("path") && !command[1].equals("type") && !command[1].equals("size") && !command[1].equals("name")) {
+            throw new InvalidCommandException("Unknown index: " + command[1] + ".");
+        }
+        if (!command[2].equals("on") && !command[2].equals("off")) {
+            throw new InvalidCommandException("Expected on or off: " + command[2] + ".");
+        }
+    }
+}
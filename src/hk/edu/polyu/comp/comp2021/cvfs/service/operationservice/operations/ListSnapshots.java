@@ -0,0 +1,66 @@
+package hk.edu.polyu.comp.comp2021.cvfs.service.operationservice.operations;
+
+import hk.edu.polyu.comp.comp2021.cvfs.model.ModelException;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.vdisk.Snapshot;
+import hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.FileSystem;
+import hk.edu.polyu.comp.comp2021.cvfs.service.operationservice.InvalidCommandException;
+
+import java.text.SimpleDateFormat;
+import java.util.Collection;
+import java.util.Date;
+
+/**
+ * <h3>The {@code ListSnapshots} Operation Class</h3>
+ * This class encapsulates the operation of the {@code listSnapshots} command, which lists the snapshots of the live virtual disk.
+ */
+public final class ListSnapshots implements Operation {
+    private final FileSystem fs;
+
+
+    /**
+     * Construct a new {@code ListSnapshots} Operation.
+     * <p>
+     * User command: {@code listSnapshots}
+     *
+     * @param fs the reference to the file system.
+     * @param command the parsed user command.
+     * @throws InvalidCommandException if the parameter(s) in the command are invalid.
+     */
+    public ListSnapshots(FileSystem fs, String[] command) throws InvalidCommandException {
+        commandValidityCheck(command);
+        this.fs = fs;
+    }
+
+    @Override
+    public String exec() throws OperationCannotExecuteException {
+        try {
+            Collection<Snapshot> snapshots = fs.getAllSnapshots();
+            if (snapshots.isEmpty()) {
+                return "There are no snapshots of the virtual disk.";
+            }
+
+            SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+            Snapshot mounted = fs.getMountedSnapshot();
+            StringBuilder result = new StringBuilder();
+            result.append("There are ").append(snapshots.size()).append(" snapshots of the virtual disk: \n");
+            for (Snapshot snapshot : snapshots) {
+                result.append(snapshot.getName())
+                        .append(", taken at ").append(format.format(new Date(snapshot.getCreatedAt())))
+                        .append(", size ").append(snapshot.getSize())
+                        .append(snapshot == mounted ? " (mounted)" : "")
+                        .append("\n");
+            }
+            result.deleteCharAt(result.length() - 1);
+            return result.toString();
+        } catch (ModelException e) {
+            throw new OperationCannotExecuteException(e.getMessage());
+        }
+    }
+
+    @Override
+    public void commandValidityCheck(String[] command) throws InvalidCommandException {
+        if (command.length != 1) {
+            throw new InvalidCommandException("Wrong number of parameters: " + (command.length - 1) + ".");
+        }
+    }
+}
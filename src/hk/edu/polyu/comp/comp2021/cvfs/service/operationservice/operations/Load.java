@@ -16,10 +16,14 @@ public final class Load implements Operation {
 
     private final String path;
 
+    private final boolean lazy;
+
     /**
      * Construct a new {@code ChangeDir} Operation.
      * <p>
-     * User command: {@code load <path>}
+     * User command: {@code load <path> [--lazy]}
+     * <p>
+     * With {@code --lazy}, the contents of the documents are not read until they are viewed.
      *
      * @param fs the reference to the file system.
      * @param command the parsed user command.
@@ -32,6 +36,7 @@ public final class Load implements Operation {
             this.fs = fs;
             this.operationRecord = operationRecord;
             path = command[1];
+            lazy = (command.length == 3);
         } catch (InvalidCommandException e) {
             throw new InvalidCommandException(e.getMessage());
         }
@@ -41,8 +46,8 @@ public final class Load implements Operation {
     public String exec() throws OperationCannotExecuteException {
         try {
             operationRecord.clearFileRelated();
-            fs.loadVDisk(path);
-            return "The virtual disk has been successfully loaded from: " + path + " and mounted.";
+            fs.loadVDisk(path, lazy);
+            return "The virtual disk has been successfully loaded from: " + path + " and mounted" + (lazy ? " lazily." : ".");
         } catch (ModelException e) {
             throw new OperationCannotExecuteException(e.getMessage());
         }
@@ -50,8 +55,11 @@ public final class Load implements Operation {
 
     @Override
     public void commandValidityCheck(String[] command) throws InvalidCommandException {
-        if (command.length != 2) {
+        if (command.length != 2 && command.length != 3) {
             throw new InvalidCommandException("Wrong number of parameters: " + (command.length - 1));
         }
+        if (command.length == 3 && !command[2].equals("--lazy")) {
+            throw new InvalidCommandException("Unknown option: " + command[2]);
+        }
     }
 }
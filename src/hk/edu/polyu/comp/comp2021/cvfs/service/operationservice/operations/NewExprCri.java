@@ -0,0 +1,77 @@
+package hk.edu.polyu.comp.comp2021.cvfs.service.operationservice.operations;
+
+import hk.edu.polyu.comp.comp2021.cvfs.model.ModelException;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.Criterion;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.CriterionFactory;
+import hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.FileSystem;
+import hk.edu.polyu.comp.comp2021.cvfs.service.operationservice.InvalidCommandException;
+
+import java.util.Arrays;
+
+/**
+ * <h3>The {@code NewExprCri} Operation Class</h3>
+ * This class encapsulates the operation of the {@code newExprCri} command, which creates a criterion from a boolean expression, see {@code CriterionFactory.createExpressionCriterion()}.
+ */
+public final class NewExprCri implements FileUnrelatedUndoableOperation {
+    private final FileSystem fs;
+
+    private final String criName;
+
+    private final String expression;
+
+    /**
+     * The created criterion of this operation.
+     */
+    private Criterion criterion;
+
+
+    /**
+     * Construct a new {@code NewExprCri} Operation.
+     * <p>
+     * User command: {@code newExprCri <criName> <expression>}, e.g., {@code newExprCri aa name contains "a" && !(type equals "txt" || size > 100)}
+     *
+     * @param fs the reference to the file system.
+     * @param command the parsed user command.
+     * @throws InvalidCommandException if the parameter(s) in the command are invalid.
+     */
+    public NewExprCri(FileSystem fs, String[] command) throws InvalidCommandException {
+        commandValidityCheck(command);
+        this.fs = fs;
+        this.criName = command[1];
+        this.expression = String.join(" ", Arrays.copyOfRange(command, 2, command.length));
+    }
+
+    @Override
+    public String exec() throws OperationCannotExecuteException {
+        try {
+            CriterionFactory criterionFactory = new CriterionFactory();
+            criterion = criterionFactory.createExpressionCriterion(criName, expression, fs.getAllCriteria());
+            fs.addCriterion(criterion);
+            return "The new criterion has been created successfully: " + criterion.toString() + ".";
+        } catch (ModelException e) {
+            throw new OperationCannotExecuteException(e.getMessage());
+        }
+    }
+
+    @Override
+    public void commandValidityCheck(String[] command) throws InvalidCommandException {
+        if (command.length < 3) {
+            throw new InvalidCommandException("Wrong number of parameters: " + (command.length - 1) + ".");
+        }
+    }
+
+    @Override
+    public boolean isUndoOperation() {
+        return false;
+    }
+
+    @Override
+    public boolean isRedoOperation() {
+        return false;
+    }
+
+    @Override
+    public Operation getInverseOperation() {
+        return new RemoveCri(fs, criterion, OperationType.UNDO);
+    }
+}
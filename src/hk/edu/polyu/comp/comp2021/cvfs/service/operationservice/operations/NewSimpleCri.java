@@ -6,6 +6,8 @@ import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.CriterionFactory
 import hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.FileSystem;
 import hk.edu.polyu.comp.comp2021.cvfs.service.operationservice.InvalidCommandException;
 
+import java.util.Arrays;
+
 /**
  * <h3>The {@code NewSimpleCri} Operation Class</h3>
  * This class encapsulates the operation of the {@code newSimpleCri} command, see {@code [REQ9]}.
@@ -19,7 +21,10 @@ public final class NewSimpleCri implements FileUnrelatedUndoableOperation {
 
     private final String op;
 
-    private final String val;
+    /**
+     * The value, or the two values of {@code size between}.
+     */
+    private final String[] values;
 
     /**
      * The created criterion of this operation.
@@ -30,7 +35,7 @@ public final class NewSimpleCri implements FileUnrelatedUndoableOperation {
     /**
      * Construct a new {@code NewSimpleCri} Operation.
      * <p>
-     * User command: {@code newSimpleCri <criName> <attrName> <op> <val>}
+     * User command: {@code newSimpleCri <criName> <attrName> <op> <val>}, or {@code newSimpleCri <criName> size between <min> <max>}
      *
      * @param fs the reference to the file system.
      * @param command the parsed user command.
@@ -43,14 +48,14 @@ public final class NewSimpleCri implements FileUnrelatedUndoableOperation {
         this.criName = command[1];
         this.attrName = command[2];
         this.op = command[3];
-        this.val = command[4];
+        this.values = Arrays.copyOfRange(command, 4, command.length);
     }
 
     @Override
     public String exec() throws OperationCannotExecuteException {
         try {
             CriterionFactory criterionFactory = new CriterionFactory();
-            criterion = criterionFactory.createSimpleCriterion(criName, attrName, op, val);
+            criterion = criterionFactory.createSimpleCriterion(criName, attrName, op, values);
             fs.addCriterion(criterion);
             return "The new criterion has been created successfully: " + criterion.toString() + ".";
         } catch (ModelException e) {
@@ -60,7 +65,7 @@ public final class NewSimpleCri implements FileUnrelatedUndoableOperation {
 
     @Override
     public void commandValidityCheck(String[] command) throws InvalidCommandException {
-        if (command.length != 5) {
+        if (command.length != 5 && command.length != 6) {
             throw new InvalidCommandException("Wrong number of parameters: " + (command.length - 1) + ".");
         }
     }
@@ -23,6 +23,17 @@ public interface Operation {
      */
     public String exec() throws OperationCannotExecuteException;
 
+    /**
+     * Execute the corresponding operation, and emit the information line by line as it is produced.
+     * <p>
+     * The operations with a long result, e.g., {@code rList}, override this method, so the result is shown from its first line, and is never held as a whole. The other operations emit the result of {@code exec()}.
+     * @param sink the destination of the information.
+     * @throws OperationCannotExecuteException if the operation cannot be executed. The lines emitted before it stay emitted.
+     */
+    public default void exec(OutputSink sink) throws OperationCannotExecuteException {
+        sink.println(exec());
+    }
+
     /**
      * Validate if the command is valid for creating the operation.
      * @param command the parsed user command.
@@ -0,0 +1,16 @@
+package hk.edu.polyu.comp.comp2021.cvfs.service.operationservice.operations;
+
+/**
+ * <h3>The {@code OutputSink} Interface</h3>
+ * The destination of the information of an operation, which takes it line by line as the operation produces it, see {@code Operation.exec(OutputSink)}.
+ */
+@FunctionalInterface
+public interface OutputSink {
+    /**
+     * Emit a line of information.
+     * <p>
+     * The line may be a buffer which the operation changes after this method returns, so the sink must use it at once, and must not keep it.
+     * @param line the line, without the line separator.
+     */
+    public void println(CharSequence line);
+}
@@ -7,8 +7,7 @@ import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.File;
 import hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.FileSystem;
 import hk.edu.polyu.comp.comp2021.cvfs.service.operationservice.InvalidCommandException;
 
-import java.util.*;
-import java.util.List;
+import java.util.Collection;
 
 /**
  * <h3>The {@code RList} Operation Class</h3>
@@ -17,8 +16,6 @@ import java.util.List;
 public final class RList implements Operation {
     private final FileSystem fs;
 
-    private int fileCount = 0;
-
 
     /**
      * Construct a new {@code RList} Operation.
@@ -36,6 +33,13 @@ public final class RList implements Operation {
 
     @Override
     public String exec() throws OperationCannotExecuteException {
+        StringOutputSink sink = new StringOutputSink();
+        exec(sink);
+        return sink.toString();
+    }
+
+    @Override
+    public void exec(OutputSink sink) throws OperationCannotExecuteException {
         try {
             Directory workingDirectory = fs.getWorkingDirectory();
 
@@ -43,19 +47,14 @@ public final class RList implements Operation {
             long size = workingDirectory.isRootDirectory() ? workingDirectory.getSize() : (workingDirectory.getSize() - Directory.EMPTY_NON_ROOT_DIRECTORY_SIZE);
 
             if (fs.getAllFiles(workingDirectory).isEmpty()) {
-                return "There are no files in the working directory.";
+                sink.println("There are no files in the working directory.");
+                return;
             }
 
-            StringBuilder result = new StringBuilder();
-            result.append(workingDirectory.getPath()).
-                    append("\n").
-                    append(getDirectoryTreeStructure(workingDirectory, ""));
-            result.deleteCharAt(result.length() - 1);
-
-            result.append("\n").
-                    append("Report: ").append(fileCount).append(" files, with total size ").append(size).append(".");
+            sink.println(workingDirectory.getPath());
+            int fileCount = printDirectoryTreeStructure(workingDirectory, new StringBuilder(), new StringBuilder(), sink);
 
-            return result.toString();
+            sink.println("Report: " + fileCount + " files, with total size " + size + ".");
         } catch (ModelException e) {
             throw new OperationCannotExecuteException(e.getMessage());
         }
@@ -69,65 +68,66 @@ public final class RList implements Operation {
     }
 
     /**
-     * The method prints the file tree structure recursively.
+     * The method prints the file tree structure recursively, line by line, so no more than a line is held at a time.
      * @param directory the directory currently being processed.
-     * @param prefix the prefix to add before getting all tree structure of this directory.
-     * @return the multiline string of the tree structure of this directory.
+     * @param prefix the prefix to add before getting all tree structure of this directory, which is shared by the whole tree: the prefix of a subdirectory is appended to it while the subdirectory is processed, and removed afterward.
+     * @param line the buffer of a line, shared by the whole tree.
+     * @param sink the sink to print to.
+     * @return the number of files in the tree structure of this directory.
      * @implNote assert that the directory is not {@code null}.
      */
-    private String getDirectoryTreeStructure(Directory directory, String prefix) throws OperationCannotExecuteException {
+    private int printDirectoryTreeStructure(Directory directory, StringBuilder prefix, StringBuilder line, OutputSink sink) throws OperationCannotExecuteException {
         try {
-            StringBuilder result = new StringBuilder();
+            Collection<File> files = fs.getAllFiles(directory).values();
+            int fileCount = files.size();
 
-            List<String> documentList = new ArrayList<>();
-            List<Directory> subdirectoryList = new ArrayList<>();
-
-            // Get all documents.
-            for (File file : fs.getAllFiles(directory).values()) {
+            int documentCount = 0;
+            for (File file : files) {
                 if (file instanceof Document) {
-                    documentList.add(file.getFullname() + " (" + file.getSize() + ")");
-                    fileCount++;
-                }
-            }
-
-            // Get all subdirectories.
-            for (File file : fs.getAllFiles(directory).values()) {
-                if (file instanceof Directory) {
-                    subdirectoryList.add((Directory) file);
-                    fileCount++;
+                    documentCount++;
                 }
             }
+            int subdirectoryCount = files.size() - documentCount;
 
             // Print out all documents.
-            for (int i = 0; i < documentList.size(); i++) {
-                result.append(prefix).
-                        append(((i < documentList.size() - 1) || (!subdirectoryList.isEmpty()))
-                                ? "├──"  // is not the last of this level
-                                : "└──"). // is the last of this level
-                        append(documentList.get(i)).
-                        append("\n");
+            int i = 0;
+            for (File file : files) {
+                if (file instanceof Document) {
+                    printFile(file, prefix,
+                            ((i < documentCount - 1) || (subdirectoryCount > 0))
+                                    ? "├──"  // is not the last of this level
+                                    : "└──", // is the last of this level
+                            line, sink);
+                    i++;
+                }
             }
 
             // Print out all directories (recursion).
-            for (int i = 0; i < subdirectoryList.size(); i++) {
-                Directory subdirectory = subdirectoryList.get(i);
-
-                result.append(prefix).
-                        append((i < subdirectoryList.size() - 1)
-                                ? "├──"  // is not the last of this level
-                                : "└──"). // is the last of this level
-                        append(subdirectory.getFullname()).
-                        append(" (").append(subdirectory.getSize()).append(")\n");
-
-                result.append(getDirectoryTreeStructure(subdirectory,
-                        (i < subdirectoryList.size() - 1)
-                                ? (prefix + "│\t") // is not the last of this level
-                                : (prefix + "\t"))); // is the last of this level
+            int length = prefix.length();
+            i = 0;
+            for (File file : files) {
+                if (file instanceof Directory) {
+                    boolean last = (i == subdirectoryCount - 1);
+                    printFile(file, prefix, last ? "└──" : "├──", line, sink);
+
+                    prefix.append(last ? "\t" : "│\t");
+                    fileCount += printDirectoryTreeStructure((Directory) file, prefix, line, sink);
+                    prefix.setLength(length);
+                    i++;
+                }
             }
 
-            return result.toString();
+            return fileCount;
         } catch (ModelException e) {
             throw new OperationCannotExecuteException("Some directories are invalid with unknown reasons.");
         }
     }
+
+    private static void printFile(File file, CharSequence prefix, String branch, StringBuilder line, OutputSink sink) {
+        line.setLength(0);
+        line.append(prefix).append(branch).
+                append(file.getFullname()).
+                append(" (").append(file.getSize()).append(')');
+        sink.println(line);
+    }
 }
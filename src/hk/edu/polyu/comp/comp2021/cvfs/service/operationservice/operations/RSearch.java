@@ -2,92 +2,297 @@ package hk.edu.polyu.comp.comp2021.cvfs.service.operationservice.operations;
 
 import hk.edu.polyu.comp.comp2021.cvfs.model.ModelException;
 import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.Criterion;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.CriterionCompiler;
 import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Directory;
 import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.File;
 import hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.FileSystem;
+import hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.index.SearchPlanner;
 import hk.edu.polyu.comp.comp2021.cvfs.service.operationservice.InvalidCommandException;
+import hk.edu.polyu.comp.comp2021.cvfs.service.operationservice.SearchCache;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Predicate;
 
 /**
  * <h3>The {@code RSearch} Operation Class</h3>
  * This class encapsulates the operation of the {@code RSearch} command, see {@code [REQ14]}.
+ * <p>
+ * If the type or size index is turned on, and the {@code SearchPlanner} narrows the search down enough, only the candidates it finds are checked, see {@code index}.
+ * <p>
+ * A repeated search of an unchanged subtree is answered by the {@code SearchCache}, if the operation is given one.
+ * <p>
+ * In the parallel mode, the search is split by subtrees in a {@code ForkJoinPool}: a subdirectory of at least {@code SPLIT_SIZE} bytes is searched by a task of its own, and a smaller one by the task of its parent. Every task collects the satisfying files in its own buffers, which are emitted in the order of the tree as the tasks finish, so the output is the same as the one of the sequential search. Unlike the sequential search, which emits every file at once, the parallel search holds the files found ahead of the output.
  */
 public final class RSearch implements Operation {
+    /**
+     * The least size of a subdirectory searched by a task of its own. Every file takes at least {@code Document.EMPTY_DOCUMENT_SIZE} bytes, so a smaller subdirectory has at most a few thousand files, and is not worth a task.
+     */
+    static final long SPLIT_SIZE = 1 << 16;
+
     private final FileSystem fs;
 
     private final String criName;
 
-    private int fileCount = 0;
+    /**
+     * The cache of the outputs of the searches, or {@code null} if the search always runs.
+     */
+    private final SearchCache cache;
 
-    private long totalSize = 0;
+    private final boolean parallel;
 
 
     /**
      * Construct a new {@code RSearch} Operation.
      * <p>
-     * User command: {@code rSearch <criName>}
+     * User command: {@code rSearch <criName> [parallel]}
      *
      * @param fs the reference to the file system.
      * @param command the parsed user command.
      * @throws InvalidCommandException if the parameter(s) in the command are invalid.
      */
     public RSearch(FileSystem fs, String[] command) throws InvalidCommandException {
+        this(fs, null, command);
+    }
+
+    /**
+     * Construct a new {@code RSearch} Operation, which answers a repeated search by a cache.
+     * <p>
+     * User command: {@code rSearch <criName> [parallel]}
+     *
+     * @param fs the reference to the file system.
+     * @param cache the cache of the outputs of the searches, or {@code null} if the search always runs.
+     * @param command the parsed user command.
+     * @throws InvalidCommandException if the parameter(s) in the command are invalid.
+     */
+    public RSearch(FileSystem fs, SearchCache cache, String[] command) throws InvalidCommandException {
         commandValidityCheck(command);
         this.fs = fs;
+        this.cache = cache;
         this.criName = command[1];
+        this.parallel = (command.length == 3);
     }
 
     @Override
     public String exec() throws OperationCannotExecuteException {
+        StringOutputSink sink = new StringOutputSink();
+        exec(sink);
+        return sink.toString();
+    }
+
+    @Override
+    public void exec(OutputSink sink) throws OperationCannotExecuteException {
         try {
             Directory workingDirectory = fs.getWorkingDirectory();
             Criterion criterion = fs.findCriterion(criName);
-
-            if (fs.getAllFiles(workingDirectory).isEmpty()) {
-                return "There are no files in the working directory.";
+            if (cache == null) {
+                search(workingDirectory, criterion, sink);
+                return;
             }
 
-            StringBuilder result = new StringBuilder();
-            result.append("These file(s) satisfy the criterion: ").append(criterion).append(":\n").
-                    append(recursiveSearch(workingDirectory, criterion));
-            result.deleteCharAt(result.length() - 1);
-            result.append("\n").
-                    append("Report: ").append(fileCount).append(" files, with total size ").append(totalSize).append(".");
-
-            return result.toString();
+            long generation = fs.getGeneration(workingDirectory);
+            String path = workingDirectory.getPath();
+            if (!cache.replay(criterion, workingDirectory, true, generation, path, sink)) {
+                SearchCache.Recorder recorder = cache.record(criterion, workingDirectory, true, generation, path, sink);
+                search(workingDirectory, criterion, recorder);
+                recorder.commit();
+            }
         } catch (ModelException e) {
             throw new OperationCannotExecuteException(e.getMessage());
         }
     }
 
+    /**
+     * Search the files below the working directory.
+     */
+    private void search(Directory workingDirectory, Criterion criterion, OutputSink sink) throws ModelException, OperationCannotExecuteException {
+        if (fs.getAllFiles(workingDirectory).isEmpty()) {
+            sink.println("There are no files in the working directory.");
+            return;
+        }
+
+        sink.println("These file(s) satisfy the criterion: " + criterion + ":");
+        SearchPlanner planner = fs.getSearchPlanner();
+        Collection<File> candidates = (planner == null) ? null : planner.plan(criterion, workingDirectory, true);
+        Hits hits;
+        if (candidates != null) {
+            // Only check the candidates found by the indexes, which are already in the order of the tree.
+            hits = new Hits(sink);
+            Predicate<File> predicate = CriterionCompiler.compile(criterion);
+            for (File file : candidates) {
+                if (predicate.test(file)) {
+                    hits.add(file.getPath(), file.getSize());
+                }
+            }
+        } else if (parallel) {
+            // Bring the lazy sizes of all directories below up to date, so the tasks only read them. Every thread has its own adaptive predicate, which it does not share.
+            workingDirectory.getSize();
+            ThreadLocal<Predicate<File>> predicates = ThreadLocal.withInitial(() -> CriterionCompiler.compileAdaptive(criterion));
+            hits = ForkJoinPool.commonPool().invoke(new SearchTask(workingDirectory, workingDirectory.getPath(), predicates));
+            hits.drain(sink, new StringBuilder());
+        } else {
+            hits = new Hits(sink);
+            recursiveSearch(workingDirectory, new StringBuilder(workingDirectory.getPath()), CriterionCompiler.compileAdaptive(criterion), hits, null);
+        }
+        if (hits.invalid) {
+            throw new OperationCannotExecuteException("Some directories are invalid with unknown reasons.");
+        }
+
+        sink.println("Report: " + hits.count + " files, with total size " + hits.size + ".");
+    }
+
     @Override
     public void commandValidityCheck(String[] command) throws InvalidCommandException {
-        if (command.length != 2) {
+        if (command.length != 2 && command.length != 3) {
             throw new InvalidCommandException("Wrong number of parameters: " + (command.length - 1) + ".");
         }
+        if (command.length == 3 && !command[2].equals("parallel")) {
+            throw new InvalidCommandException("Unknown mode: " + command[2] + ".");
+        }
     }
 
-    private String recursiveSearch(Directory directory, Criterion criterion) throws OperationCannotExecuteException {
+    /**
+     * Search the files below a directory recursively.
+     * @param directory the directory currently being searched.
+     * @param path the path of the directory, which is shared by the whole search: the name of every file is appended to it while the file is visited, and removed afterward, so the path of a file is not built again from its ancestors.
+     * @param criterion the compiled criterion.
+     * @param hits the hits the satisfying files are added to.
+     * @param predicates the predicates of the threads in the parallel mode, or {@code null} if the search does not fork.
+     */
+    private void recursiveSearch(Directory directory, StringBuilder path, Predicate<File> criterion, Hits hits, ThreadLocal<Predicate<File>> predicates) {
+        Collection<File> files;
         try {
-            StringBuilder result = new StringBuilder();
-            Collection<File> files = fs.getAllFiles(directory).values();
-
-            for (File file : files) {
-                if (criterion.check(file)) {
-                    result.append(file.getPath()).
-                            append(" (").append(file.getSize()).append(")\n");
-                    fileCount++;
-                    totalSize += file.getSize();
+            files = fs.getAllFiles(directory).values();
+        } catch (ModelException e) {
+            hits.invalid = true;
+            return;
+        }
+        int length = path.length();
+
+        for (File file : files) {
+            path.append(':').append(file.getFullname());
+            if (criterion.test(file)) {
+                hits.add(path, file.getSize());
+            }
+
+            if (file instanceof Directory) {
+                if (predicates != null && file.getSize() >= SPLIT_SIZE) {
+                    hits.fork(new SearchTask((Directory) file, path.toString(), predicates));
+                } else {
+                    recursiveSearch((Directory) file, path, criterion, hits, predicates);
                 }
+            }
+            path.setLength(length);
+        }
+    }
+
+    /**
+     * The files found in a subtree, which are emitted at once in the sequential mode, or kept in the order of the tree in the parallel mode.
+     */
+    private static final class Hits {
+        /**
+         * The sink the files are emitted to at once, or {@code null} if they are kept in the buffers.
+         */
+        private final OutputSink sink;
+
+        private final StringBuilder line = new StringBuilder();
+
+        /**
+         * The buffers of the satisfying files, where a forked task stands for the files in its subtree until the task is joined.
+         */
+        private final ArrayList<Object> parts = new ArrayList<>();
+
+        private StringBuilder buffer = new StringBuilder();
+
+        private int count = 0;
+
+        private long size = 0;
+
+        /**
+         * Whether some directory could not be searched.
+         */
+        private boolean invalid = false;
+
+        Hits(OutputSink sink) {
+            this.sink = sink;
+        }
 
-                if (file instanceof Directory) {
-                    result.append(recursiveSearch((Directory) file, criterion));
+        void add(CharSequence path, long fileSize) {
+            if (sink != null) {
+                line.setLength(0);
+                line.append(path).append(" (").append(fileSize).append(')');
+                sink.println(line);
+            } else {
+                buffer.append(path).append(" (").append(fileSize).append(")\n");
+            }
+            count++;
+            size += fileSize;
+        }
+
+        void fork(SearchTask task) {
+            parts.add(buffer);
+            parts.add(task.fork());
+            buffer = new StringBuilder();
+        }
+
+        /**
+         * Emit the kept files in the order of the tree, waiting for every forked task when its turn comes, so the first lines are emitted while the later subtrees are still being searched. The counts of the tasks are added to this one.
+         * @param sink the sink to emit to.
+         * @param line the buffer of a line, shared by the whole output.
+         */
+        void drain(OutputSink sink, StringBuilder line) {
+            parts.add(buffer);
+            buffer = null;
+            for (Object part : parts) {
+                if (part instanceof SearchTask) {
+                    Hits hits = ((SearchTask) part).join();
+                    hits.drain(sink, line);
+                    count += hits.count;
+                    size += hits.size;
+                    invalid |= hits.invalid;
+                } else {
+                    StringBuilder chunk = (StringBuilder) part;
+                    int start = 0;
+                    for (int end = 0; end < chunk.length(); end++) {
+                        if (chunk.charAt(end) == '\n') {
+                            line.setLength(0);
+                            line.append(chunk, start, end);
+                            sink.println(line);
+                            start = end + 1;
+                        }
+                    }
                 }
             }
-            return result.toString();
-        } catch (ModelException e) {
-            throw new OperationCannotExecuteException("Some directories are invalid with unknown reasons.");
+            parts.clear();
+        }
+    }
+
+    /**
+     * The search of a subtree in the parallel mode.
+     */
+    private final class SearchTask extends RecursiveTask<Hits> {
+        // @Serial
+        private static final long serialVersionUID = 1L;
+
+        private final Directory directory;
+
+        private final String path;
+
+        private final ThreadLocal<Predicate<File>> predicates;
+
+        SearchTask(Directory directory, String path, ThreadLocal<Predicate<File>> predicates) {
+            this.directory = directory;
+            this.path = path;
+            this.predicates = predicates;
+        }
+
+        @Override
+        protected Hits compute() {
+            Hits hits = new Hits(null);
+            recursiveSearch(directory, new StringBuilder(path), predicates.get(), hits, predicates);
+            return hits;
         }
     }
 }
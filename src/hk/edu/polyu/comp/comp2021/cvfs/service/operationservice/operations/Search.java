@@ -2,24 +2,32 @@ package hk.edu.polyu.comp.comp2021.cvfs.service.operationservice.operations;
 
 import hk.edu.polyu.comp.comp2021.cvfs.model.ModelException;
 import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.Criterion;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.CriterionCompiler;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Directory;
 import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.File;
 import hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.FileSystem;
+import hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.index.SearchPlanner;
 import hk.edu.polyu.comp.comp2021.cvfs.service.operationservice.InvalidCommandException;
+import hk.edu.polyu.comp.comp2021.cvfs.service.operationservice.SearchCache;
 
 import java.util.Collection;
+import java.util.function.Predicate;
 
 /**
  * <h3>The {@code Search} Operation Class</h3>
  * This class encapsulates the operation of the {@code search} command, see {@code [REQ13]}.
+ * <p>
+ * A repeated search of an unchanged working directory is answered by the {@code SearchCache}, if the operation is given one.
  */
 public final class Search implements Operation {
     private final FileSystem fs;
 
     private final String criName;
 
-    private int fileCount = 0;
-
-    private long totalSize = 0;
+    /**
+     * The cache of the outputs of the searches, or {@code null} if the search always runs.
+     */
+    private final SearchCache cache;
 
 
     /**
@@ -32,40 +40,86 @@ public final class Search implements Operation {
      * @throws InvalidCommandException if the parameter(s) in the command are invalid.
      */
     public Search(FileSystem fs, String[] command) throws InvalidCommandException {
+        this(fs, null, command);
+    }
+
+    /**
+     * Construct a new {@code Search} Operation, which answers a repeated search by a cache.
+     * <p>
+     * User command: {@code search <criName>}
+     *
+     * @param fs the reference to the file system.
+     * @param cache the cache of the outputs of the searches, or {@code null} if the search always runs.
+     * @param command the parsed user command.
+     * @throws InvalidCommandException if the parameter(s) in the command are invalid.
+     */
+    public Search(FileSystem fs, SearchCache cache, String[] command) throws InvalidCommandException {
         commandValidityCheck(command);
         this.fs = fs;
+        this.cache = cache;
         this.criName = command[1];
     }
 
     @Override
     public String exec() throws OperationCannotExecuteException {
+        StringOutputSink sink = new StringOutputSink();
+        exec(sink);
+        return sink.toString();
+    }
+
+    @Override
+    public void exec(OutputSink sink) throws OperationCannotExecuteException {
         try {
-            StringBuilder result = new StringBuilder();
-            Collection<File> files = fs.getAllFiles(fs.getWorkingDirectory()).values();
+            Directory workingDirectory = fs.getWorkingDirectory();
             Criterion criterion = fs.findCriterion(criName);
-
-            if (!files.isEmpty()) {
-                result.append("These file(s) satisfy the criterion: ").append(criterion).append(":\n");
-                for (File file : files) {
-                    if (criterion.check(file)) {
-                        result.append(file.getFullname()).append(" (").append(file.getSize()).append(")\n");
-                        fileCount++;
-                        totalSize += file.getSize();
-                    }
-                }
-                result.deleteCharAt(result.length() - 1);
-                result.append("\n").
-                        append("Report: ").append(fileCount).append(" files, with total size ").append(totalSize).append(".");
-            } else {
-                result.append("There are no files in the working directory.");
+            if (cache == null) {
+                search(workingDirectory, criterion, sink);
+                return;
             }
 
-            return result.toString();
+            long generation = fs.getGeneration(workingDirectory);
+            String path = workingDirectory.getPath();
+            if (!cache.replay(criterion, workingDirectory, false, generation, path, sink)) {
+                SearchCache.Recorder recorder = cache.record(criterion, workingDirectory, false, generation, path, sink);
+                search(workingDirectory, criterion, recorder);
+                recorder.commit();
+            }
         } catch (ModelException e) {
             throw new OperationCannotExecuteException(e.getMessage());
         }
     }
 
+    /**
+     * Search the files in the working directory.
+     */
+    private void search(Directory workingDirectory, Criterion criterion, OutputSink sink) throws ModelException {
+        Collection<File> files = fs.getAllFiles(workingDirectory).values();
+        Predicate<File> predicate = CriterionCompiler.compile(criterion);
+
+        // Only check the candidates found by the indexes, if they are fewer than the files.
+        SearchPlanner planner = fs.getSearchPlanner();
+        Collection<File> candidates = (planner == null) ? null : planner.plan(criterion, workingDirectory, false);
+
+        if (!files.isEmpty()) {
+            int fileCount = 0;
+            long totalSize = 0;
+            StringBuilder line = new StringBuilder();
+            sink.println("These file(s) satisfy the criterion: " + criterion + ":");
+            for (File file : (candidates == null) ? files : candidates) {
+                if (predicate.test(file)) {
+                    line.setLength(0);
+                    line.append(file.getFullname()).append(" (").append(file.getSize()).append(')');
+                    sink.println(line);
+                    fileCount++;
+                    totalSize += file.getSize();
+                }
+            }
+            sink.println("Report: " + fileCount + " files, with total size " + totalSize + ".");
+        } else {
+            sink.println("There are no files in the working directory.");
+        }
+    }
+
     @Override
     public void commandValidityCheck(String[] command) throws InvalidCommandException {
         if (command.length != 2) {
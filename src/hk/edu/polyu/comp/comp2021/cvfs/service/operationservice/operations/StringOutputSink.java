@@ -0,0 +1,32 @@
+package hk.edu.polyu.comp.comp2021.cvfs.service.operationservice.operations;
+
+/**
+ * <h3>The {@code StringOutputSink} Class</h3>
+ * An {@code OutputSink} which collects the lines into a single string, for the callers of {@code Operation.exec()}.
+ */
+public final class StringOutputSink implements OutputSink {
+    private final StringBuilder result = new StringBuilder();
+
+    /**
+     * Whether a line has been emitted, which may be empty, so the next one is separated from it.
+     */
+    private boolean started;
+
+    @Override
+    public void println(CharSequence line) {
+        if (started) {
+            result.append('\n');
+        }
+        started = true;
+        result.append(line);
+    }
+
+    /**
+     * Get the lines emitted so far, separated by {@code '\n'}.
+     * @return the lines.
+     */
+    @Override
+    public String toString() {
+        return result.toString();
+    }
+}
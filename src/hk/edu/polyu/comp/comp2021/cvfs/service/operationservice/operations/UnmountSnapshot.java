@@ -0,0 +1,45 @@
+package hk.edu.polyu.comp.comp2021.cvfs.service.operationservice.operations;
+
+import hk.edu.polyu.comp.comp2021.cvfs.model.ModelException;
+import hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.FileSystem;
+import hk.edu.polyu.comp.comp2021.cvfs.service.operationservice.InvalidCommandException;
+
+/**
+ * <h3>The {@code UnmountSnapshot} Operation Class</h3>
+ * This class encapsulates the operation of the {@code unmountSnapshot} command, which mounts the live virtual disk again.
+ */
+public final class UnmountSnapshot implements Operation {
+    private final FileSystem fs;
+
+
+    /**
+     * Construct a new {@code UnmountSnapshot} Operation.
+     * <p>
+     * User command: {@code unmountSnapshot}
+     *
+     * @param fs the reference to the file system.
+     * @param command the parsed user command.
+     * @throws InvalidCommandException if the parameter(s) in the command are invalid.
+     */
+    public UnmountSnapshot(FileSystem fs, String[] command) throws InvalidCommandException {
+        commandValidityCheck(command);
+        this.fs = fs;
+    }
+
+    @Override
+    public String exec() throws OperationCannotExecuteException {
+        try {
+            fs.unmountSnapshot();
+            return "The live virtual disk has been mounted again.";
+        } catch (ModelException e) {
+            throw new OperationCannotExecuteException(e.getMessage());
+        }
+    }
+
+    @Override
+    public void commandValidityCheck(String[] command) throws InvalidCommandException {
+        if (command.length != 1) {
+            throw new InvalidCommandException("Wrong number of parameters: " + (command.length - 1) + ".");
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package hk.edu.polyu.comp.comp2021.cvfs.service.operationservice.operations;
+
+import hk.edu.polyu.comp.comp2021.cvfs.model.ModelException;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.Criterion;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.File;
+import hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.FileSystem;
+import hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.index.CriterionView;
+import hk.edu.polyu.comp.comp2021.cvfs.service.operationservice.InvalidCommandException;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * <h3>The {@code Watch} Operation Class</h3>
+ * This class encapsulates the operation of the {@code watch} command, which keeps the files of the virtual disk satisfying a criterion in a materialized view, see {@code CriterionView}, and shows it.
+ */
+public final class Watch implements Operation {
+    private final FileSystem fs;
+
+    /**
+     * The name of the criterion, or {@code null} if the command only shows the watched criteria.
+     */
+    private final String criName;
+
+    /**
+     * {@code "on"} or {@code "off"}, or {@code null} if the command lists the files of the view.
+     */
+    private final String mode;
+
+    /**
+     * Construct a new {@code Watch} Operation.
+     * <p>
+     * User command: {@code watch [<criName> [on|off]]}
+     * <p>
+     * {@code watch <criName> on} starts watching the criterion, and {@code watch <criName> off} stops. {@code watch <criName>} lists the files on the virtual disk satisfying a watched criterion, like an {@code rSearch} from the root directory, without a search. Without parameters, the count and the total size of the files of every watched criterion are shown.
+     *
+     * @param fs the reference to the file system.
+     * @param command the parsed user command.
+     * @throws InvalidCommandException if the parameter(s) in the command are invalid.
+     */
+    public Watch(FileSystem fs, String[] command) throws InvalidCommandException {
+        commandValidityCheck(command);
+        this.fs = fs;
+        criName = (command.length == 1) ? null : command[1];
+        mode = (command.length == 3) ? command[2] : null;
+    }
+
+    @Override
+    public String exec() throws OperationCannotExecuteException {
+        StringOutputSink sink = new StringOutputSink();
+        exec(sink);
+        return sink.toString();
+    }
+
+    @Override
+    public void exec(OutputSink sink) throws OperationCannotExecuteException {
+        if (criName == null) {
+            Collection<CriterionView> views = fs.getAllViews();
+            if (views.isEmpty()) {
+                sink.println("No criteria are watched.");
+            }
+            for (CriterionView view : views) {
+                sink.println(describe(view));
+            }
+            return;
+        }
+
+        try {
+            Criterion criterion = fs.findCriterion(criName);
+            if ("on".equals(mode)) {
+                sink.println(describe(fs.watchCriterion(criterion)));
+            } else if ("off".equals(mode)) {
+                fs.unwatchCriterion(criterion);
+                sink.println("The criterion " + criName + " is not watched.");
+            } else {
+                list(fs.getView(criterion), sink);
+            }
+        } catch (ModelException e) {
+            throw new OperationCannotExecuteException(e.getMessage());
+        }
+    }
+
+    private static String describe(CriterionView view) {
+        return "The criterion " + view.getCriterion().getName() + " is watched: " + view.getCount() + " files, with total size " + view.getTotalSize() + ".";
+    }
+
+    /**
+     * List the files of a view in the order of their paths.
+     */
+    private void list(CriterionView view, OutputSink sink) throws OperationCannotExecuteException {
+        if (view == null) {
+            throw new OperationCannotExecuteException("The criterion " + criName + " is not watched.");
+        }
+
+        TreeMap<String, File> files = new TreeMap<>();
+        for (File file : view.getFiles()) {
+            files.put(file.getPath(), file);
+        }
+        sink.println("These file(s) on the virtual disk satisfy the criterion: " + view.getCriterion() + ":");
+        StringBuilder line = new StringBuilder();
+        for (Map.Entry<String, File> entry : files.entrySet()) {
+            line.setLength(0);
+            line.append(entry.getKey()).append(" (").append(entry.getValue().getSize()).append(')');
+            sink.println(line);
+        }
+        sink.println("Report: " + view.getCount() + " files, with total size " + view.getTotalSize() + ".");
+    }
+
+    @Override
+    public void commandValidityCheck(String[] command) throws InvalidCommandException {
+        if (command.length > 3) {
+            throw new InvalidCommandException("Wrong number of parameters: " + (command.length - 1) + ".");
+        }
+        if (command.length == 3 && !command[2].equals("on") && !command[2].equals("off")) {
+            throw new InvalidCommandException("Expected on or off: " + command[2] + ".");
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package hk.edu.polyu.comp.comp2021.cvfs.service.operationservice.operations;
+
+import hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.FileSystem;
+import hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.image.WriteAheadLog;
+import hk.edu.polyu.comp.comp2021.cvfs.service.operationservice.InvalidCommandException;
+
+/**
+ * <h3>The {@code WriteAheadLogSetting} Operation Class</h3>
+ * This class encapsulates the operation of the {@code wal} command, which shows or changes how the write-ahead log of the virtual disk is synced.
+ */
+public final class WriteAheadLogSetting implements Operation {
+    private final FileSystem fs;
+
+    /**
+     * Whether the command only shows the current setting.
+     */
+    private final boolean query;
+
+    private final WriteAheadLog.SyncPolicy policy;
+
+    private final int parameter;
+
+    /**
+     * Construct a new {@code WriteAheadLogSetting} Operation.
+     * <p>
+     * User command: {@code wal [off|op|batch <n>|time <ms>]}
+     * <p>
+     * {@code op} forces the log onto the storage device after every mutation, {@code batch} after every {@code n} mutations, and {@code time} every {@code ms} milliseconds. Without parameters, the current setting is shown.
+     *
+     * @param fs the reference to the file system.
+     * @param command the parsed user command.
+     * @throws InvalidCommandException if the parameter(s) in the command are invalid.
+     */
+    public WriteAheadLogSetting(FileSystem fs, String[] command) throws InvalidCommandException {
+        commandValidityCheck(command);
+        this.fs = fs;
+        query = (command.length == 1);
+        if (query || command[1].equals("off")) {
+            policy = null;
+            parameter = 0;
+        } else if (command[1].equals("op")) {
+            policy = WriteAheadLog.SyncPolicy.PER_OPERATION;
+            parameter = 0;
+        } else {
+            policy = command[1].equals("batch") ? WriteAheadLog.SyncPolicy.BATCH : WriteAheadLog.SyncPolicy.TIME;
+            parameter = Integer.parseInt(command[2]);
+        }
+    }
+
+    @Override
+    public String exec() {
+        if (!query) {
+            fs.setWriteAheadLogPolicy(policy, parameter);
+        }
+        return describe();
+    }
+
+    private String describe() {
+        WriteAheadLog.SyncPolicy current = fs.getWriteAheadLogPolicy();
+        if (current == null) {
+            return "The write-ahead log is off.";
+        }
+
+        String description;
+        switch (current) {
+            case PER_OPERATION:
+                description = "synced after every mutation";
+                break;
+            case BATCH:
+                description = "synced after every " + fs.getWriteAheadLogParameter() + " mutations";
+                break;
+            default:
+                description = "synced every " + fs.getWriteAheadLogParameter() + " ms";
+                break;
+        }
+
+        WriteAheadLog log = fs.getWriteAheadLog();
+        if (fs.getWriteAheadLogFailure() != null) {
+            return "The write-ahead log is " + description + ", but it has stopped: " + fs.getWriteAheadLogFailure().getMessage();
+        }
+        if (log == null) {
+            return "The write-ahead log is " + description + ", and starts once the virtual disk is saved or loaded.";
+        }
+        return "The write-ahead log is " + description + ", at: " + log.getPath() + ".";
+    }
+
+    @Override
+    public void commandValidityCheck(String[] command) throws InvalidCommandException {
+        if (command.length == 1) {
+            return;
+        }
+        switch (command[1]) {
+            case "off":
+            case "op":
+                if (command.length != 2) {
+                    throw new InvalidCommandException("Wrong number of parameters: " + (command.length - 1) + ".");
+                }
+                return;
+            case "batch":
+            case "time":
+                if (command.length != 3) {
+                    throw new InvalidCommandException("Wrong number of parameters: " + (command.length - 1) + ".");
+                }
+                try {
+                    if (Integer.parseInt(command[2]) <= 0) {
+                        throw new InvalidCommandException("The number must be positive: " + command[2] + ".");
+                    }
+                } catch (NumberFormatException e) {
+                    throw new InvalidCommandException("Not a number: " + command[2] + ".");
+                }
+                return;
+            default:
+                throw new InvalidCommandException("Unknown policy: " + command[1] + ".");
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package hk.edu.polyu.comp.comp2021.cvfs.benchmark;
+
+import hk.edu.polyu.comp.comp2021.cvfs.model.ModelException;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Directory;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Document;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.vdisk.VDisk;
+import hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.FileSystem;
+
+/**
+ * <h3>The {@code AddressSpaceBenchmark} Class</h3>
+ * Measures the latency of the mutations of a document at several depths, which check the address space of the document every time.
+ * <p>
+ * This is not a unit test. Run it with {@code java ... AddressSpaceBenchmark}. The latencies should stay flat as the depth grows, since neither the address space check nor the size accounting walks up the tree.
+ */
+public final class AddressSpaceBenchmark {
+    private static final int[] DEPTHS = {1, 10, 100, 1000, 10000};
+
+    private static final int MUTATIONS = 200_000;
+
+    private AddressSpaceBenchmark() {}
+
+    public static void main(String[] args) throws ModelException {
+        System.out.printf("%8s | %16s %16s%n", "depth", "modify ns/op", "rename ns/op");
+        for (int depth : DEPTHS) {
+            FileSystem fs = new FileSystem();
+            fs.mountVDisk(new VDisk(Long.MAX_VALUE / 2));
+            Directory directory = fs.getRootDirectory();
+            for (int i = 0; i < depth; i++) {
+                Directory child = new Directory("d" + i, directory);
+                fs.storeFile(child);
+                directory = child;
+            }
+            Document document = new Document("doc", "txt", "", directory);
+            fs.storeFile(document);
+
+            String[] contents = {"a", "bb"};
+            String[] names = {"docA", "docB"};
+            long modify = Long.MAX_VALUE;
+            long rename = Long.MAX_VALUE;
+            for (int round = 0; round < 5; round++) {
+                long start = System.nanoTime();
+                for (int i = 0; i < MUTATIONS; i++) {
+                    fs.modifyDocument(document, contents[i & 1]);
+                }
+                modify = Math.min(modify, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                for (int i = 0; i < MUTATIONS; i++) {
+                    fs.renameFile(document, names[i & 1]);
+                }
+                rename = Math.min(rename, System.nanoTime() - start);
+            }
+            System.out.printf("%8d | %16.1f %16.1f%n", depth, (double) modify / MUTATIONS, (double) rename / MUTATIONS);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package hk.edu.polyu.comp.comp2021.cvfs.benchmark;
+
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.ChildIndex;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Directory;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.File;
+import hk.edu.polyu.comp.comp2021.cvfs.model.internalexceptions.CannotInitializeFileException;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+/**
+ * <h3>The {@code ChildIndexBenchmark} Class</h3>
+ * Compares the heap footprint and the lookup latency of {@code ChildIndex} against {@code TreeMap}, for directories of several sizes.
+ * <p>
+ * This is not a unit test. Run it with {@code java -Xmx2g ... ChildIndexBenchmark}. The footprint is measured by the used heap after building many directories, so it includes the map objects and their arrays or entries, but not the shared names and files.
+ */
+public final class ChildIndexBenchmark {
+    private static final int[] SIZES = {4, 16, 64, 1000, 50000};
+
+    private static final int LOOKUPS = 2_000_000;
+
+    private static volatile Object sink;
+
+    private ChildIndexBenchmark() {}
+
+    public static void main(String[] args) throws CannotInitializeFileException {
+        System.out.printf("%8s | %14s %14s | %14s %14s%n", "children", "TreeMap B/file", "Index B/file", "TreeMap ns/get", "Index ns/get");
+        for (int size : SIZES) {
+            ArrayList<String> names = new ArrayList<>();
+            ArrayList<File> files = new ArrayList<>();
+            Directory parent = new Directory(true);
+            for (int i = 0; i < size; i++) {
+                String name = "file" + Integer.toHexString(i * 0x9E3779B1);
+                names.add(name);
+                files.add(new Directory(name, parent));
+            }
+
+            double treeBytes = footprint(size, names, files, TreeMap::new);
+            double indexBytes = footprint(size, names, files, ChildIndex::new);
+            double treeNanos = lookup(fill(new TreeMap<>(), names, files), names);
+            double indexNanos = lookup(fill(new ChildIndex(), names, files), names);
+            System.out.printf("%8d | %14.1f %14.1f | %14.1f %14.1f%n", size, treeBytes, indexBytes, treeNanos, indexNanos);
+        }
+    }
+
+    private static Map<String, File> fill(Map<String, File> map, ArrayList<String> names, ArrayList<File> files) {
+        for (int i = 0; i < names.size(); i++) {
+            map.put(names.get(i), files.get(i));
+        }
+        return map;
+    }
+
+    /**
+     * Measure the bytes per file of many maps of the same files.
+     */
+    private static double footprint(int size, ArrayList<String> names, ArrayList<File> files, Supplier<Map<String, File>> factory) {
+        int copies = Math.max(1, 2_000_000 / size);
+        Object[] maps = new Object[copies];
+        long before = usedHeap();
+        for (int i = 0; i < copies; i++) {
+            maps[i] = fill(factory.get(), names, files);
+        }
+        long after = usedHeap();
+        sink = maps;
+        return (double) (after - before) / ((long) copies * size);
+    }
+
+    /**
+     * Measure the nanoseconds per lookup of random names, after a warm-up.
+     */
+    private static double lookup(Map<String, File> map, ArrayList<String> names) {
+        Random random = new Random(42);
+        String[] keys = new String[4096];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = new String(names.get(random.nextInt(names.size()))); // Not the same instance as the key.
+        }
+
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            int found = 0;
+            for (int i = 0; i < LOOKUPS; i++) {
+                if (map.get(keys[i & (keys.length - 1)]) != null) {
+                    found++;
+                }
+            }
+            best = Math.min(best, System.nanoTime() - start);
+            sink = found;
+        }
+        return (double) best / LOOKUPS;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,99 @@
+package hk.edu.polyu.comp.comp2021.cvfs.benchmark;
+
+import hk.edu.polyu.comp.comp2021.cvfs.model.ModelException;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Directory;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Document;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.File;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.vdisk.VDisk;
+import hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.FileSystem;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <h3>The {@code ConcurrencyBenchmark} Class</h3>
+ * Measures the throughput of a file system shared by several threads, for a read-only workload (listing and finding files), the same with one more thread changing documents all the time, and a mixed one (one operation in four changes a document), against the same workloads on one thread without the concurrent mode.
+ * <p>
+ * This is not a unit test. Run it with {@code java ... ConcurrencyBenchmark} on a machine with several cores. The threads work on different directories most of the time, so the throughput should grow with the threads until the cores run out. The reads are optimistic, so they should scale as well while the writer runs, and the mixed workload is bounded by the commits, which are serialized per virtual disk.
+ */
+public final class ConcurrencyBenchmark {
+    private static final int[] THREADS = {1, 2, 4, 8};
+
+    private static final int DIRECTORIES = 64;
+
+    private static final int FILES = 32;
+
+    private static final long DURATION = 1_000_000_000L;
+
+    private static volatile Object sink;
+
+    private ConcurrencyBenchmark() {}
+
+    public static void main(String[] args) throws ModelException, InterruptedException {
+        System.out.printf("%8s | %16s %16s %16s%n", "threads", "read ops/ms", "+writer ops/ms", "mixed ops/ms");
+        FileSystem fs = build(false);
+        System.out.printf("%8s | %16.1f %16s %16.1f%n", "default", run(fs, 1, 0, false), "-", run(fs, 1, 4, false));
+        fs = build(true);
+        for (int threads : THREADS) {
+            System.out.printf("%8d | %16.1f %16.1f %16.1f%n", threads, run(fs, threads, 0, false), run(fs, threads, 0, true), run(fs, threads, 4, false));
+        }
+    }
+
+    private static FileSystem build(boolean concurrent) throws ModelException {
+        FileSystem fs = new FileSystem();
+        fs.setConcurrent(concurrent);
+        fs.mountVDisk(new VDisk(Long.MAX_VALUE / 2));
+        for (int i = 0; i < DIRECTORIES; i++) {
+            Directory directory = new Directory("d" + i, fs.getRootDirectory());
+            fs.storeFile(directory);
+            for (int j = 0; j < FILES; j++) {
+                fs.storeFile(new Document("f" + j, "txt", "content", directory));
+            }
+        }
+        return fs;
+    }
+
+    /**
+     * Run a workload for {@code DURATION} on some threads.
+     * @param changeEvery one operation in this many changes a document, or {@code 0} for none.
+     * @param writer whether one more thread, which is not counted, changes documents all the time.
+     * @return the operations per millisecond of all threads.
+     */
+    private static double run(FileSystem fs, int threads, int changeEvery, boolean writer) throws InterruptedException {
+        AtomicLong operations = new AtomicLong();
+        Thread[] workers = new Thread[writer ? threads + 1 : threads];
+        long deadline = System.nanoTime() + DURATION;
+        for (int i = 0; i < workers.length; i++) {
+            int seed = i;
+            boolean writes = (i == threads);
+            workers[i] = new Thread(() -> {
+                Random random = new Random(seed);
+                long count = 0;
+                try {
+                    Directory root = fs.getRootDirectory();
+                    while (System.nanoTime() < deadline) {
+                        for (int k = 0; k < 256; k++, count++) {
+                            Directory directory = (Directory) fs.findFile(root, "d" + random.nextInt(DIRECTORIES));
+                            File file = fs.findFile(directory, "f" + random.nextInt(FILES));
+                            if (writes || (changeEvery > 0 && count % changeEvery == 0)) {
+                                fs.modifyDocument(file, (count & 1) == 0 ? "content" : "contents");
+                            } else {
+                                sink = fs.getAllFiles(directory);
+                            }
+                        }
+                    }
+                } catch (ModelException e) {
+                    throw new IllegalStateException(e);
+                }
+                if (!writes) {
+                    operations.addAndGet(count);
+                }
+            });
+            workers[i].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return operations.get() / (DURATION / 1e6);
+    }
+}
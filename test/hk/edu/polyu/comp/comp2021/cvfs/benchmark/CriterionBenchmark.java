@@ -0,0 +1,102 @@
+package hk.edu.polyu.comp.comp2021.cvfs.benchmark;
+
+import hk.edu.polyu.comp.comp2021.cvfs.model.ModelException;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.Criterion;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.CriterionCompiler;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.CriterionFactory;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Directory;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Document;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.File;
+
+import java.util.Random;
+import java.util.function.Predicate;
+
+/**
+ * <h3>The {@code CriterionBenchmark} Class</h3>
+ * Compares the latency of evaluating criteria by {@code Criterion.check()} against the predicates compiled by {@code CriterionCompiler}, in the static order and in the adaptive order, over ten thousand files, which stay in the CPU caches, and over a million files, which do not.
+ * <p>
+ * This is not a unit test. Run it with {@code java -Xmx2g ... CriterionBenchmark [index]}, where the optional index runs only one of the criteria, so the type profiles of the other criteria do not affect the JIT compiler, like a forked JMH run. Every measurement is the best of several rounds after a warm-up.
+ */
+public final class CriterionBenchmark {
+    private static final int[] FILES = {10_000, 1_000_000};
+
+    /**
+     * The number of evaluations of each round.
+     */
+    private static final int EVALUATIONS = 10_000_000;
+
+    private static final int ROUNDS = 10;
+
+    private static final String[] TYPES = {"txt", "java", "html", "css"};
+
+    private static volatile int sink;
+
+    private CriterionBenchmark() {}
+
+    public static void main(String[] args) throws ModelException {
+        CriterionFactory factory = new CriterionFactory();
+        Criterion name = factory.createSimpleCriterion("na", "name", "contains", "\"zz\"");
+        Criterion type = factory.createSimpleCriterion("ty", "type", "equals", "\"java\"");
+        Criterion size = factory.createSimpleCriterion("si", "size", ">=", "40");
+        Criterion never = factory.createSimpleCriterion("ne", "size", "<", "0");
+        Criterion[] criteria = {
+                size,
+                factory.createBinaryCriterion("nt", name, "&&", type),
+                factory.createBinaryCriterion("tn", type, "&&", name),
+                factory.createBinaryCriterion("nx", factory.createNegationCriterion("nn", name), "||", factory.createNegationCriterion("ns", size)),
+                factory.createBinaryCriterion("nv", factory.createBinaryCriterion("an", name, "&&", size), "&&", never),
+                factory.createBinaryCriterion("dp", factory.createBinaryCriterion("or", name, "||", type), "&&", factory.createBinaryCriterion("ad", size, "&&", factory.createNegationCriterion("nt", type))),
+                factory.createSimpleCriterion("bt", "size", "between", "40", "44"),
+                factory.createBinaryCriterion("ba", size, "&&", factory.createSimpleCriterion("le", "size", "<=", "44"))
+        };
+
+        System.out.printf("%-16s %9s | %16s %16s %16s%n", "criterion", "files", "check() ns/file", "compiled ns/file", "adaptive ns/file");
+        for (int count : FILES) {
+            File[] files = createFiles(count);
+            for (int i = 0; i < criteria.length; i++) {
+                if (args.length > 0 && Integer.parseInt(args[0]) != i) {
+                    continue;
+                }
+                Criterion criterion = criteria[i];
+                Predicate<File> compiled = CriterionCompiler.compile(criterion);
+                double interpreted = measure(files, criterion::check);
+                double fast = measure(files, compiled);
+                double adaptive = measure(files, CriterionCompiler.compileAdaptive(criterion));
+                System.out.printf("%-16s %9d | %16.2f %16.2f %16.2f%n", criterion.toString().substring(4), count, interpreted, fast, adaptive);
+            }
+        }
+    }
+
+    /**
+     * Create the files with random names, where every tenth file is a directory, and the documents have random types and sizes.
+     */
+    private static File[] createFiles(int count) throws ModelException {
+        Random random = new Random(42);
+        String[] contents = {"", "a", "ab", "abc"};
+        Directory root = new Directory(true);
+        File[] files = new File[count];
+        for (int i = 0; i < count; i++) {
+            String name = "f" + Integer.toString(random.nextInt(1 << 30), 36);
+            files[i] = (i % 10 == 0) ? new Directory(name, root) : new Document(name, TYPES[random.nextInt(TYPES.length)], contents[random.nextInt(contents.length)], root);
+        }
+        return files;
+    }
+
+    private static double measure(File[] files, Predicate<File> predicate) {
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            int hits = 0;
+            for (int evaluated = 0; evaluated < EVALUATIONS; evaluated += files.length) {
+                for (File file : files) {
+                    if (predicate.test(file)) {
+                        hits++;
+                    }
+                }
+            }
+            best = Math.min(best, System.nanoTime() - start);
+            sink = hits;
+        }
+        return (double) best / EVALUATIONS;
+    }
+}
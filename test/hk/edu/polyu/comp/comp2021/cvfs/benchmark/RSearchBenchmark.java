@@ -0,0 +1,69 @@
+package hk.edu.polyu.comp.comp2021.cvfs.benchmark;
+
+import hk.edu.polyu.comp.comp2021.cvfs.model.ModelException;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.CriterionFactory;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Directory;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Document;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.vdisk.VDisk;
+import hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.FileSystem;
+import hk.edu.polyu.comp.comp2021.cvfs.service.operationservice.InvalidCommandException;
+import hk.edu.polyu.comp.comp2021.cvfs.service.operationservice.operations.OperationCannotExecuteException;
+import hk.edu.polyu.comp.comp2021.cvfs.service.operationservice.operations.RSearch;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * <h3>The {@code RSearchBenchmark} Class</h3>
+ * Measures the latency of {@code rSearch} over a wide tree of a million files, sequentially and in the parallel mode, and checks that both give the same output.
+ * <p>
+ * This is not a unit test. Run it with {@code java -Xmx2g ... RSearchBenchmark}. The parallelism is the one of the common {@code ForkJoinPool}, which follows the number of cores, and can be set by {@code -Djava.util.concurrent.ForkJoinPool.common.parallelism=n}.
+ */
+public final class RSearchBenchmark {
+    private static final int DIRECTORIES = 1000;
+
+    private static final int DOCUMENTS = 1000;
+
+    private static final int ROUNDS = 10;
+
+    private static final String[] TYPES = {"txt", "java", "html", "css"};
+
+    private RSearchBenchmark() {}
+
+    public static void main(String[] args) throws ModelException, InvalidCommandException, OperationCannotExecuteException {
+        FileSystem fs = new FileSystem();
+        fs.mountVDisk(new VDisk(Long.MAX_VALUE / 2));
+        Random random = new Random(42);
+        for (int i = 0; i < DIRECTORIES; i++) {
+            Directory directory = new Directory("d" + i, fs.getRootDirectory());
+            fs.storeFile(directory);
+            for (int j = 0; j < DOCUMENTS; j++) {
+                String name = "f" + Integer.toString(random.nextInt(1 << 30), 36);
+                if (!directory.__INTERNAL__existsName(name)) {
+                    fs.storeFile(new Document(name, TYPES[random.nextInt(TYPES.length)], "content", directory));
+                }
+            }
+        }
+        CriterionFactory factory = new CriterionFactory();
+        fs.addCriterion(factory.createBinaryCriterion("nt", factory.createSimpleCriterion("na", "name", "contains", "\"zz\""), "&&", factory.createSimpleCriterion("ty", "type", "equals", "\"java\"")));
+
+        RSearch sequential = new RSearch(fs, new String[]{"rSearch", "nt"});
+        RSearch parallel = new RSearch(fs, new String[]{"rSearch", "nt", "parallel"});
+        if (!sequential.exec().equals(parallel.exec())) {
+            throw new AssertionError("The parallel output differs from the sequential one.");
+        }
+
+        System.out.printf("%12s | %16s %16s%n", "parallelism", "sequential ms", "parallel ms");
+        System.out.printf("%12d | %16.1f %16.1f%n", ForkJoinPool.getCommonPoolParallelism(), measure(sequential), measure(parallel));
+    }
+
+    private static double measure(RSearch search) throws OperationCannotExecuteException {
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            search.exec();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best / 1e6;
+    }
+}
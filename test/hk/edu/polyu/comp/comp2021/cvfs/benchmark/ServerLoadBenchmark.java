@@ -0,0 +1,203 @@
+package hk.edu.polyu.comp.comp2021.cvfs.benchmark;
+
+import hk.edu.polyu.comp.comp2021.cvfs.controller.Server;
+import hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.FileSystem;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CyclicBarrier;
+
+/**
+ * <h3>The {@code ServerLoadBenchmark} Class</h3>
+ * A load generator of the {@code Server}: many sessions, one client thread each, send commands as fast as they are answered, and the commands per second and the latencies of the commands are reported.
+ * <p>
+ * This is not a unit test. Run it with {@code java ... ServerLoadBenchmark [sessions] [seconds] [port]}, which defaults to 200 sessions for 10 seconds against a server started in the same process. With a port, it loads the server of {@code Application --server <port>}, which should have no virtual disk mounted. Every session works in a directory of its own, so the sessions lock different directories, and only share the commits to the virtual disk.
+ */
+public final class ServerLoadBenchmark {
+    private static final String PROMPT_END = ">> ";
+
+    private ServerLoadBenchmark() {}
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int sessions = (args.length >= 1) ? Integer.parseInt(args[0]) : 200;
+        long duration = ((args.length >= 2) ? Long.parseLong(args[1]) : 10) * 1_000_000_000L;
+        Server server = null;
+        int port;
+        if (args.length >= 3) {
+            port = Integer.parseInt(args[2]);
+        } else {
+            server = new Server(new FileSystem(), 0);
+            port = server.getPort();
+            Server started = server;
+            Thread acceptor = new Thread(() -> {
+                try {
+                    started.serve();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            });
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        try (Client setup = new Client(port)) {
+            setup.send("newDisk 1000000000");
+        }
+
+        long[][] latencies = new long[sessions][];
+        int[] counts = new int[sessions];
+        CyclicBarrier barrier = new CyclicBarrier(sessions + 1);
+        Thread[] clients = new Thread[sessions];
+        for (int i = 0; i < sessions; i++) {
+            int session = i;
+            clients[i] = new Thread(() -> {
+                long[] samples = new long[1 << 16];
+                int count = 0;
+                try (Client client = new Client(port)) {
+                    client.send("newDir s" + session);
+                    client.send("changeDir s" + session);
+                    Random random = new Random(session);
+                    barrier.await();
+                    long deadline = System.nanoTime() + duration;
+                    for (int round = 0; System.nanoTime() < deadline; round++) {
+                        String command = command(random, round);
+                        long start = System.nanoTime();
+                        client.send(command);
+                        if (count == samples.length) {
+                            samples = Arrays.copyOf(samples, count * 2);
+                        }
+                        samples[count++] = System.nanoTime() - start;
+                    }
+                    client.send("quit");
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+                latencies[session] = samples;
+                counts[session] = count;
+            });
+            clients[i].start();
+        }
+        try {
+            barrier.await();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        for (Thread client : clients) {
+            client.join();
+        }
+        if (server != null) {
+            server.close();
+        }
+
+        int total = 0;
+        for (int count : counts) {
+            total += count;
+        }
+        long[] all = new long[total];
+        int offset = 0;
+        for (int i = 0; i < sessions; i++) {
+            System.arraycopy(latencies[i], 0, all, offset, counts[i]);
+            offset += counts[i];
+        }
+        Arrays.sort(all);
+        System.out.printf("%8s | %12s | %10s %10s %10s %10s%n", "sessions", "commands/s", "p50 us", "p99 us", "p99.9 us", "max us");
+        System.out.printf("%8d | %12.0f | %10.1f %10.1f %10.1f %10.1f%n", sessions, total / (duration / 1e9),
+                percentile(all, 0.5), percentile(all, 0.99), percentile(all, 0.999), percentile(all, 1.0));
+    }
+
+    /**
+     * The command of a round: a document is created, modified, viewed, listed and deleted in the directory of the session, with a search now and then.
+     */
+    private static String command(Random random, int round) {
+        String name = "f" + random.nextInt(16);
+        switch (round % 10) {
+            case 0:
+            case 5:
+                return "newDoc " + name + " txt \"content of round " + round + "\"";
+            case 1:
+            case 6:
+                return "modify " + name + " \"modified in round " + round + "\"";
+            case 2:
+                return "view " + name;
+            case 3:
+            case 7:
+                return "list";
+            case 4:
+                return "rList";
+            case 8:
+                return "delete " + name;
+            default:
+                return "search IsDocument";
+        }
+    }
+
+    private static double percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(fraction * sorted.length) - 1);
+        return sorted[Math.max(0, index)] / 1e3;
+    }
+
+    /**
+     * A session of the server, which sends a command and reads the answer up to the next prompt.
+     */
+    private static final class Client implements AutoCloseable {
+        private final Socket socket;
+
+        private final Reader in;
+
+        private final Writer out;
+
+        private final StringBuilder answer = new StringBuilder();
+
+        Client(int port) throws IOException {
+            socket = new Socket(InetAddress.getLoopbackAddress(), port);
+            socket.setTcpNoDelay(true);
+            in = new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8);
+            out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+            readAnswer();
+        }
+
+        /**
+         * Send a command, and wait for its answer.
+         * @return the answer, without the prompt.
+         */
+        String send(String command) throws IOException {
+            out.write(command);
+            out.write('\n');
+            out.flush();
+            return command.equals("quit") ? "" : readAnswer();
+        }
+
+        private String readAnswer() throws IOException {
+            answer.setLength(0);
+            char[] buffer = new char[8192];
+            while (true) {
+                int length = in.read(buffer);
+                if (length < 0) {
+                    throw new IOException("The session has ended.");
+                }
+                answer.append(buffer, 0, length);
+                int end = answer.length() - PROMPT_END.length();
+                // The prompt is the last line, which is not ended, and is written in one flush.
+                if (end >= 0 && answer.indexOf(PROMPT_END, end) == end && answer.lastIndexOf("admin@CVFS") > answer.lastIndexOf("\n")) {
+                    return answer.substring(0, answer.lastIndexOf("\n") + 1);
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package hk.edu.polyu.comp.comp2021.cvfs.cli;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ConsoleTest {
+    @Test
+    public void testParse() {
+        assertArrayEquals(new String[]{"a", "b"}, Console.parse("a b"));
+        assertArrayEquals(new String[]{"a", "b"}, Console.parse("  a \t  b\r\n"));
+        assertArrayEquals(new String[]{"\"a  b\""}, Console.parse("\"a  b\""));
+        assertArrayEquals(new String[]{"a  b"}, Console.parse("`a  b`"));
+        assertArrayEquals(new String[]{"a", "b", "c d"}, Console.parse("a  b `c d`"));
+        assertArrayEquals(new String[0], Console.parse("   "));
+    }
+
+    @Test
+    public void testFastSplitMatchesRegex() {
+        char[] alphabet = {'a', 'b', 'Z', '0', '.', ' ', ' ', '\t', '\r', '\n', '\f', 0x0B};
+        Random random = new Random(2021);
+        for (int round = 0; round < 10000; round++) {
+            StringBuilder command = new StringBuilder();
+            int length = random.nextInt(20);
+            for (int i = 0; i < length; i++) {
+                command.append(alphabet[random.nextInt(alphabet.length)]);
+            }
+            String raw = command.toString();
+
+            // A trailing empty backtick pair sends the same command through the regex, and only adds an empty segment.
+            ArrayList<String> regex = new ArrayList<>(Arrays.asList(Console.parse(raw + " ``")));
+            assertEquals("", regex.remove(regex.size() - 1));
+            assertEquals(raw, regex, Arrays.asList(Console.parse(raw)));
+
+            ArrayList<String> expected = new ArrayList<>();
+            for (String token : raw.split("\\s+")) {
+                if (!token.isEmpty()) {
+                    expected.add(token);
+                }
+            }
+            assertEquals(raw, expected, Arrays.asList(Console.parse(raw)));
+        }
+    }
+}
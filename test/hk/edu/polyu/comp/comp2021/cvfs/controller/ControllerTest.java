@@ -0,0 +1,130 @@
+package hk.edu.polyu.comp.comp2021.cvfs.controller;
+
+import hk.edu.polyu.comp.comp2021.cvfs.Application;
+import hk.edu.polyu.comp.comp2021.cvfs.cli.Console;
+import hk.edu.polyu.comp.comp2021.cvfs.model.ModelException;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Document;
+import hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.FileSystem;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+public class ControllerTest {
+    private static final String SCRIPT = "# Provisioning\n"
+            + "newDisk 10000\n"
+            + "\n"
+            + "   # An indented comment\n"
+            + "newDoc a txt \"first\"\n"
+            + "newDoc a txt \"again\"\n"
+            + "newDir d\n"
+            + "unknownCommand\n"
+            + "list\n";
+
+    /**
+     * A batch run and what it printed.
+     */
+    private static final class Run {
+        final FileSystem fs = new FileSystem();
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        int failed;
+
+        String output() throws UnsupportedEncodingException {
+            return bytes.toString("UTF-8");
+        }
+    }
+
+    private static Run runBatch(String script, boolean failFast) throws UnsupportedEncodingException {
+        Run run = new Run();
+        PrintStream out = new PrintStream(run.bytes, false, "UTF-8");
+        Console console = new Console(new ByteArrayInputStream(new byte[0]), out);
+        run.failed = new Controller(run.fs, console).runBatch(new BufferedReader(new StringReader(script)), failFast);
+        return run;
+    }
+
+    @Test
+    public void testBatch() {
+        try {
+            Run run = runBatch(SCRIPT, false);
+            String output = run.output();
+
+            assertEquals(2, run.failed);
+            assertFalse(output.contains(">>")); // No prompts.
+            assertTrue(output.contains("Line 6: "));
+            assertTrue(output.contains("Line 8: "));
+            assertFalse(output.contains("Line 5: "));
+            assertTrue(output.contains("Batch finished: 6 commands, 4 succeeded, 2 failed, in "));
+            assertTrue(output.contains("a.txt"));
+            assertTrue(((Document) run.fs.findFile(run.fs.getRootDirectory(), "a")).getContent().contains("first"));
+            assertTrue(run.fs.getAllFiles(run.fs.getRootDirectory()).containsKey("d"));
+        } catch (ModelException | UnsupportedEncodingException ignored) {}
+    }
+
+    @Test
+    public void testBatchFailFast() {
+        try {
+            Run run = runBatch(SCRIPT, true);
+            String output = run.output();
+
+            assertEquals(1, run.failed);
+            assertTrue(output.contains("Line 6: "));
+            assertFalse(output.contains("Line 8: "));
+            assertTrue(output.contains("Batch finished: 3 commands, 2 succeeded, 1 failed, in "));
+            assertTrue(output.contains("Stopped at line 6 by --fail-fast."));
+            assertTrue(run.fs.getAllFiles(run.fs.getRootDirectory()).containsKey("a"));
+            assertFalse(run.fs.getAllFiles(run.fs.getRootDirectory()).containsKey("d"));
+        } catch (ModelException | UnsupportedEncodingException ignored) {}
+    }
+
+    @Test
+    public void testBatchQuit() {
+        try {
+            Run run = runBatch("newDisk 10000\nnewDir d\nquit\nnewDir e\n", false);
+            String output = run.output();
+
+            assertEquals(0, run.failed);
+            assertTrue(output.contains("Batch finished: 2 commands, 2 succeeded, 0 failed, in "));
+            assertTrue(output.contains("Quit at line 3."));
+            assertFalse(output.contains(" e "));
+            assertFalse(run.fs.getAllFiles(run.fs.getRootDirectory()).containsKey("e"));
+        } catch (ModelException | UnsupportedEncodingException ignored) {}
+    }
+
+    @Test
+    public void testBatchEmpty() {
+        try {
+            Run run = runBatch("\n# Nothing to run\n\n", false);
+            assertEquals(0, run.failed);
+            assertTrue(run.output().contains("Batch finished: 0 commands, 0 succeeded, 0 failed, in "));
+        } catch (UnsupportedEncodingException ignored) {}
+    }
+
+    @Test
+    public void testBatchExitStatus() {
+        try {
+            Path directory = Files.createTempDirectory("cvfs");
+            Path succeeding = directory.resolve("ok.txt");
+            Files.write(succeeding, "newDisk 10000\nnewDir d\n".getBytes(StandardCharsets.UTF_8));
+            Path failing = directory.resolve("failing.txt");
+            Files.write(failing, SCRIPT.getBytes(StandardCharsets.UTF_8));
+            PrintStream out = new PrintStream(new ByteArrayOutputStream(), false, "UTF-8");
+
+            assertEquals(0, Application.runBatch(new FileSystem(), succeeding.toString(), false, out));
+            assertEquals(1, Application.runBatch(new FileSystem(), failing.toString(), false, out));
+            assertEquals(1, Application.runBatch(new FileSystem(), failing.toString(), true, out));
+            assertEquals(1, Application.runBatch(new FileSystem(), directory.resolve("missing.txt").toString(), false, out));
+        } catch (IOException ignored) {}
+    }
+}
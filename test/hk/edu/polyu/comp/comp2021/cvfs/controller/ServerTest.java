@@ -0,0 +1,155 @@
+package hk.edu.polyu.comp.comp2021.cvfs.controller;
+
+import hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.FileSystem;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ServerTest {
+    private static final String PROMPT_END = ">> ";
+
+    /**
+     * A session of the server, which sends a command and reads the answer up to the next prompt, or fails if the server does not answer in time.
+     */
+    private static final class Client implements AutoCloseable {
+        private final Socket socket;
+
+        private final Reader in;
+
+        private final Writer out;
+
+        private final StringBuilder answer = new StringBuilder();
+
+        Client(int port) throws IOException {
+            socket = new Socket(InetAddress.getLoopbackAddress(), port);
+            socket.setSoTimeout(20000);
+            in = new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8);
+            out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+            readAnswer();
+        }
+
+        /**
+         * Send a command, and wait for its answer.
+         * @return the answer, without the prompt.
+         */
+        String send(String command) throws IOException {
+            out.write(command);
+            out.write('\n');
+            out.flush();
+            try {
+                return readAnswer();
+            } catch (SocketTimeoutException e) {
+                throw new AssertionError("No answer to: " + command, e);
+            }
+        }
+
+        private String readAnswer() throws IOException {
+            answer.setLength(0);
+            char[] buffer = new char[8192];
+            while (true) {
+                int length = in.read(buffer);
+                if (length < 0) {
+                    throw new IOException("The session has ended.");
+                }
+                answer.append(buffer, 0, length);
+                int end = answer.length() - PROMPT_END.length();
+                // The prompt is the last line, which is not ended, and is written in one flush.
+                if (end >= 0 && answer.indexOf(PROMPT_END, end) == end && answer.lastIndexOf("admin@CVFS") > answer.lastIndexOf("\n")) {
+                    return answer.substring(0, answer.lastIndexOf("\n") + 1);
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    private static Server start() throws IOException {
+        Server server = new Server(new FileSystem(), 0);
+        Thread acceptor = new Thread(() -> {
+            try {
+                server.serve();
+            } catch (IOException ignored) {}
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return server;
+    }
+
+    @Test(timeout = 120000)
+    public void testReplacingTheDiskWhileAnotherSessionRuns() {
+        try (Server server = start();
+             Client loader = new Client(server.getPort());
+             Client other = new Client(server.getPort())) {
+            String image = Files.createTempDirectory("cvfs").resolve("disk.img").toString();
+            loader.send("newDisk 10000");
+            loader.send("newDoc a txt \"saved\"");
+            loader.send("save " + image);
+            assertTrue(other.send("list").contains("a.txt"));
+
+            assertTrue(other.send("newDir d").contains("d has been created"));
+            other.send("changeDir d");
+            loader.send("load " + image);
+            // The directory of the other session is gone with the old disk, so it starts over from the new root directory.
+            String listed = other.send("list");
+            assertTrue(listed.contains("a.txt"));
+            assertFalse(listed.contains("\nd ("));
+
+            loader.send("newSnapshot snap");
+            loader.send("mountSnapshot snap");
+            assertTrue(other.send("list").contains("a.txt"));
+            loader.send("unmountSnapshot");
+            other.send("newDoc b txt \"live\"");
+            assertTrue(other.send("list").contains("b.txt"));
+
+            // Both sessions keep answering while one replaces the disk over and over.
+            AtomicBoolean done = new AtomicBoolean();
+            AtomicInteger listings = new AtomicInteger();
+            Queue<Throwable> errors = new ConcurrentLinkedQueue<>();
+            Thread lister = new Thread(() -> {
+                try {
+                    while (!done.get()) {
+                        if (!other.send("list").contains("a.txt")) {
+                            throw new AssertionError("The listing lost a.txt.");
+                        }
+                        listings.incrementAndGet();
+                    }
+                } catch (Throwable e) {
+                    errors.add(e);
+                }
+            });
+            lister.start();
+            for (int round = 0; round < 20; round++) {
+                loader.send("load " + image + ((round % 2 == 0) ? "" : " --lazy"));
+                loader.send("newSnapshot s" + round);
+                loader.send("mountSnapshot s" + round);
+                loader.send("unmountSnapshot");
+            }
+            done.set(true);
+            lister.join();
+            if (!errors.isEmpty()) {
+                throw new AssertionError(errors.peek());
+            }
+            assertTrue(listings.get() > 0);
+            assertTrue(loader.send("list").contains("a.txt"));
+            assertTrue(other.send("list").contains("a.txt"));
+        } catch (IOException | InterruptedException ignored) {}
+    }
+}
@@ -3,10 +3,17 @@ package hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion;
 import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.simplecriterion.IsDocument;
 import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.simplecriterion.SizeCriterion;
 import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Directory;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Document;
 import hk.edu.polyu.comp.comp2021.cvfs.model.internalexceptions.CannotInitializeFileException;
 import hk.edu.polyu.comp.comp2021.cvfs.model.internalexceptions.InvalidCriterionParameterException;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
 import static org.junit.Assert.*;
 
 public class CriterionAllTest {
@@ -208,6 +215,55 @@ public class CriterionAllTest {
         } catch (InvalidCriterionParameterException | CannotInitializeFileException ignored) {}
     }
 
+    @Test
+    public void testBetweenSizeCriterion() {
+        try {
+            Criterion criterion = criterionFactory.createSimpleCriterion("cc", "size", "between", "40", "44");
+            assertEquals("cc: size between 40 44", criterion.toString());
+
+            Directory root = new Directory(true);
+            Document empty = new Document("a", "txt", "", root);
+            Document small = new Document("b", "txt", "ab", root);
+            Document large = new Document("c", "txt", "abc", root);
+            assertTrue(criterion.check(empty));
+            assertTrue(criterion.check(small));
+            assertFalse(criterion.check(large));
+
+            // The range is resolved again when the criterion is loaded.
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(criterion);
+            }
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+                Criterion loaded = (Criterion) in.readObject();
+                assertEquals(criterion.toString(), loaded.toString());
+                assertTrue(loaded.check(small));
+                assertFalse(loaded.check(large));
+            }
+        } catch (InvalidCriterionParameterException | CannotInitializeFileException | IOException | ClassNotFoundException ignored) {}
+    }
+
+    @Test
+    public void testInvalidBetweenSizeCriterion1() {
+        try {
+            assertNull(criterionFactory.createSimpleCriterion("cc", "size", "between", "60").toString());
+        } catch (InvalidCriterionParameterException ignored) {}
+    }
+
+    @Test
+    public void testInvalidBetweenSizeCriterion2() {
+        try {
+            assertNull(criterionFactory.createSimpleCriterion("cc", "size", "between", "60", "40").toString());
+        } catch (InvalidCriterionParameterException ignored) {}
+    }
+
+    @Test
+    public void testInvalidBetweenSizeCriterion3() {
+        try {
+            assertNull(criterionFactory.createSimpleCriterion("cc", "size", ">", "60", "80").toString());
+        } catch (InvalidCriterionParameterException ignored) {}
+    }
+
     @Test
     public void testInvalidSizeCriterion1() {
         try {
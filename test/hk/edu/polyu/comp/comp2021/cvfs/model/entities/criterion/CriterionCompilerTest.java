@@ -0,0 +1,118 @@
+package hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion;
+
+import hk.edu.polyu.comp.comp2021.cvfs.model.ModelException;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Directory;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Document;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.File;
+import org.junit.Test;
+
+// import java.io.Serial;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.function.Predicate;
+
+import static org.junit.Assert.*;
+
+public class CriterionCompilerTest {
+    private static final String[] NAMES = {"Main", "main", "Test", "ai", "x"};
+
+    private static final String[] TYPES = {"txt", "java", "html", "css", "exe"};
+
+    private static final String[] OPERATORS = {">", "<", ">=", "<=", "==", "!=", "?t?"};
+
+    private static final long[] SIZES = {-1, 0, 40, 48, 80, 1000};
+
+    @Test
+    public void testAgainstInterpreter() {
+        try {
+            RandomCriteria criteria = new RandomCriteria(new Random(2021), NAMES, TYPES, OPERATORS, SIZES, true);
+
+            ArrayList<File> files = new ArrayList<>();
+            Directory root = new Directory(true);
+            files.add(root);
+            for (String name : NAMES) {
+                Directory directory = new Directory(name, root);
+                root.__INTERNAL__add(directory);
+                files.add(directory);
+                for (int i = 0; i < 4; i++) {
+                    Document document = new Document(name + i, TYPES[i], "abcd".substring(i), directory);
+                    directory.__INTERNAL__add(document);
+                    files.add(document);
+                }
+            }
+
+            for (int round = 0; round < 2000; round++) {
+                Criterion criterion = criteria.next(4);
+                Predicate<File> compiled = CriterionCompiler.compile(criterion);
+                Predicate<File> adaptive = CriterionCompiler.compileAdaptive(criterion);
+                for (int pass = 0; pass < 100; pass++) { // Long enough for several reorderings.
+                    for (File file : files) {
+                        assertEquals(criterion.check(file), compiled.test(file));
+                        assertEquals(criterion.check(file), adaptive.test(file));
+                    }
+                }
+            }
+        } catch (ModelException ignored) {}
+    }
+
+    @Test
+    public void testAdaptiveReordering() {
+        try {
+            CountingCriterion unselective = new CountingCriterion(true);
+            CountingCriterion selective = new CountingCriterion(false);
+            Criterion criterion = new CriterionFactory().createBinaryCriterion("aa", unselective, "&&", selective);
+            Predicate<File> adaptive = CriterionCompiler.compileAdaptive(criterion);
+
+            Directory root = new Directory(true);
+            for (int i = 0; i < CriterionCompiler.ADAPT_PERIOD * 100; i++) {
+                assertFalse(adaptive.test(root));
+            }
+            // The operand that never decides is moved after the one that always does.
+            assertEquals(CriterionCompiler.ADAPT_PERIOD * 100, selective.count);
+            assertTrue(unselective.count <= CriterionCompiler.ADAPT_PERIOD * 2);
+        } catch (ModelException ignored) {}
+    }
+
+    /**
+     * A criterion the compiler does not know, which counts its evaluations.
+     */
+    private static final class CountingCriterion implements Criterion {
+        // @Serial
+        private static final long serialVersionUID = 1L;
+
+        private final boolean value;
+
+        private int count;
+
+        CountingCriterion(boolean value) {
+            this.value = value;
+        }
+
+        @Override
+        public boolean check(File file) {
+            count++;
+            return value;
+        }
+
+        @Override
+        public String getName() {
+            return "cc";
+        }
+
+        @Override
+        public int getReferenceCount() {
+            return 0;
+        }
+
+        @Override
+        public void __INTERNAL__increaseReferenceCount() {}
+
+        @Override
+        public void __INTERNAL__decreaseReferenceCount() {}
+
+        @Override
+        public Criterion[] getDependencies() {
+            return new Criterion[0];
+        }
+    }
+}
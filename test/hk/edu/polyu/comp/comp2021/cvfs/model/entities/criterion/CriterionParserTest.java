@@ -0,0 +1,209 @@
+package hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion;
+
+import hk.edu.polyu.comp.comp2021.cvfs.model.ModelException;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.compositecriterion.ExpressionCriterion;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.simplecriterion.IsDocument;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Directory;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Document;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.File;
+import hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.FileSystem;
+import hk.edu.polyu.comp.comp2021.cvfs.model.internalexceptions.CannotDeleteCriterionException;
+import hk.edu.polyu.comp.comp2021.cvfs.model.internalexceptions.CriterionNotExistsException;
+import hk.edu.polyu.comp.comp2021.cvfs.model.internalexceptions.InvalidCriterionParameterException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+public class CriterionParserTest {
+    private static final String[] NAMES = {"Main", "main", "Test", "ai", "x"};
+
+    private static final String[] TYPES = {"txt", "java", "html", "css", "exe"};
+
+    private static final String[] OPERATORS = {">", "<", ">=", "<=", "==", "!="};
+
+    private static final long[] SIZES = {-1, 0, 40, 48, 80, 1000};
+
+    CriterionFactory criterionFactory = new CriterionFactory();
+
+    @Test
+    public void testAgainstComposedCriteria() {
+        try {
+            Random random = new Random(20);
+            ArrayList<File> files = new ArrayList<>();
+            Directory root = new Directory(true);
+            files.add(root);
+            for (String name : NAMES) {
+                Directory directory = new Directory(name, root);
+                root.__INTERNAL__add(directory);
+                files.add(directory);
+                for (int i = 0; i < 4; i++) {
+                    Document document = new Document(name + i, TYPES[i], "abcd".substring(i), directory);
+                    directory.__INTERNAL__add(document);
+                    files.add(document);
+                }
+            }
+
+            TreeMap<String, Criterion> criteria = new TreeMap<>();
+            criteria.put("IsDocument", new IsDocument());
+            for (int round = 0; round < 2000; round++) {
+                StringBuilder expression = new StringBuilder();
+                Criterion composed = randomCriterion(random, 4, expression);
+                ExpressionCriterion parsed = (ExpressionCriterion) criterionFactory.createExpressionCriterion("ee", expression.toString(), criteria);
+                // The normalized expression means the same, and is normalized to itself.
+                String normalized = parsed.toString().substring("ee: ".length());
+                ExpressionCriterion reparsed = (ExpressionCriterion) criterionFactory.createExpressionCriterion("ee", normalized, criteria);
+                assertEquals(parsed.toString(), reparsed.toString());
+                assertEquals(parsed.getSize(), reparsed.getSize());
+                for (File file : files) {
+                    assertEquals(composed.check(file), parsed.check(file));
+                    assertEquals(composed.check(file), reparsed.check(file));
+                    assertEquals(composed.check(file), CriterionCompiler.compile(parsed).test(file));
+                }
+            }
+        } catch (ModelException ignored) {}
+    }
+
+    @Test
+    public void testSharedSubexpressions() {
+        try {
+            TreeMap<String, Criterion> criteria = new TreeMap<>();
+            ExpressionCriterion criterion = (ExpressionCriterion) criterionFactory.createExpressionCriterion("ee",
+                    "(name contains \"a\" && size > 10) || !(size > 10 && name contains \"a\")", criteria);
+            assertEquals("ee", criterion.getName());
+            assertEquals("ee: name contains \"a\" && size > 10 || !(name contains \"a\" && size > 10)", criterion.toString());
+            // name, size, &&, ! and ||, where the && under the ! is the first one, in the other order.
+            assertEquals(5, criterion.getSize());
+            Criterion[] operands = criterion.getRoot().getDependencies();
+            assertSame(operands[0], operands[1].getDependencies()[0]);
+            assertEquals(0, criterion.getDependencies().length);
+
+            criterion = (ExpressionCriterion) criterionFactory.createExpressionCriterion("ee", "!!(type equals \"txt\") && (type equals \"txt\")", criteria);
+            assertEquals("ee: type equals \"txt\"", criterion.toString());
+            assertEquals(1, criterion.getSize());
+        } catch (ModelException ignored) {}
+    }
+
+    @Test
+    public void testReferencedCriteria() {
+        try {
+            FileSystem fs = new FileSystem();
+            Criterion aa = criterionFactory.createSimpleCriterion("aa", "name", "contains", "\"Main\"");
+            fs.addCriterion(aa);
+            Criterion criterion = criterionFactory.createExpressionCriterion("ee", "aa && !IsDocument || aa && size between 1 9", fs.getAllCriteria());
+            assertEquals("ee: aa && !IsDocument || aa && size between 1 9", criterion.toString());
+            assertEquals(2, criterion.getDependencies().length);
+            assertSame(aa, criterion.getDependencies()[0]);
+
+            fs.addCriterion(criterion);
+            assertEquals(1, aa.getReferenceCount());
+            try {
+                fs.removeCriterion(aa);
+                fail();
+            } catch (CannotDeleteCriterionException ignored) {}
+            fs.removeCriterion(criterion);
+            assertEquals(0, aa.getReferenceCount());
+        } catch (ModelException ignored) {}
+    }
+
+    @Test
+    public void testInvalidExpressionCriterion1() {
+        try {
+            Criterion criterion = criterionFactory.createExpressionCriterion("ee", "name contains \"a\" &&", new TreeMap<>());
+            assertEquals("ee: name contains \"a\"", criterion.toString());
+        } catch (InvalidCriterionParameterException | CriterionNotExistsException ignored) {}
+    }
+
+    @Test
+    public void testInvalidExpressionCriterion2() {
+        try {
+            Criterion criterion = criterionFactory.createExpressionCriterion("ee", "(size > 10", new TreeMap<>());
+            assertEquals("ee: size > 10", criterion.toString());
+        } catch (InvalidCriterionParameterException | CriterionNotExistsException ignored) {}
+    }
+
+    @Test
+    public void testInvalidExpressionCriterion3() {
+        try {
+            Criterion criterion = criterionFactory.createExpressionCriterion("ee", "type equals \"\" || size ?t? 1", new TreeMap<>());
+            assertEquals("ee: type equals \"\"", criterion.toString());
+        } catch (InvalidCriterionParameterException | CriterionNotExistsException ignored) {}
+    }
+
+    @Test
+    public void testInvalidExpressionCriterion4() {
+        try {
+            Criterion criterion = criterionFactory.createExpressionCriterion("ee", "size between 9 1", new TreeMap<>());
+            assertEquals("ee: size between 9 1", criterion.toString());
+        } catch (InvalidCriterionParameterException | CriterionNotExistsException ignored) {}
+    }
+
+    @Test
+    public void testInvalidExpressionCriterion5() {
+        try {
+            Criterion criterion = criterionFactory.createExpressionCriterion("ee", "bb || IsDocument", new TreeMap<>());
+            assertEquals("ee: bb || IsDocument", criterion.toString());
+        } catch (InvalidCriterionParameterException | CriterionNotExistsException ignored) {}
+    }
+
+    @Test
+    public void testInvalidExpressionCriterion6() {
+        try {
+            Criterion criterion = criterionFactory.createExpressionCriterion("eee", "size > 1", new TreeMap<>());
+            assertEquals("eee: size > 1", criterion.toString());
+        } catch (InvalidCriterionParameterException | CriterionNotExistsException ignored) {}
+    }
+
+    /**
+     * Generate a random criterion with the factory, and the same criterion as an expression.
+     */
+    private Criterion randomCriterion(Random random, int depth, StringBuilder expression) throws ModelException {
+        int kind = random.nextInt(depth > 0 ? 7 : 4);
+        switch (kind) {
+            case 0: {
+                String name = NAMES[random.nextInt(NAMES.length)];
+                expression.append("name contains \"").append(name).append('"');
+                return criterionFactory.createSimpleCriterion("aa", "name", "contains", "\"" + name + "\"");
+            }
+            case 1: {
+                String type = TYPES[random.nextInt(TYPES.length)];
+                expression.append("type equals \"").append(type).append('"');
+                return criterionFactory.createSimpleCriterion("aa", "type", "equals", "\"" + type + "\"");
+            }
+            case 2: {
+                if (random.nextInt(4) == 0) {
+                    long first = SIZES[random.nextInt(SIZES.length)];
+                    long second = SIZES[random.nextInt(SIZES.length)];
+                    expression.append("size between ").append(Math.min(first, second)).append(' ').append(Math.max(first, second));
+                    return criterionFactory.createSimpleCriterion("aa", "size", "between", Long.toString(Math.min(first, second)), Long.toString(Math.max(first, second)));
+                }
+                String op = OPERATORS[random.nextInt(OPERATORS.length)];
+                long size = SIZES[random.nextInt(SIZES.length)];
+                expression.append("size ").append(op).append(' ').append(size);
+                return criterionFactory.createSimpleCriterion("aa", "size", op, Long.toString(size));
+            }
+            case 3:
+                expression.append("IsDocument");
+                return new IsDocument();
+            case 4: {
+                expression.append("!(");
+                Criterion operand = randomCriterion(random, depth - 1, expression);
+                expression.append(')');
+                return criterionFactory.createNegationCriterion("aa", operand);
+            }
+            default: {
+                // The same subexpression is often written twice, to be shared.
+                StringBuilder first = new StringBuilder();
+                Criterion shared = randomCriterion(random, depth - 1, first);
+                StringBuilder second = new StringBuilder();
+                Criterion other = random.nextBoolean() ? shared : randomCriterion(random, depth - 1, second);
+                String logicOp = (kind == 5) ? "&&" : "||";
+                expression.append('(').append(first).append(") ").append(logicOp).append(" (").append((other == shared) ? first : second).append(')');
+                return criterionFactory.createBinaryCriterion("aa", shared, logicOp, other);
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion;
+
+import hk.edu.polyu.comp.comp2021.cvfs.model.ModelException;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.simplecriterion.IsDocument;
+
+import java.util.Random;
+
+/**
+ * Generates random criteria of all kinds for the tests checking a criterion against another way of evaluating it.
+ */
+public final class RandomCriteria {
+    private final CriterionFactory factory = new CriterionFactory();
+
+    private final Random random;
+
+    /**
+     * The operands of the {@code name contains} criteria.
+     */
+    private final String[] names;
+
+    private final String[] types;
+
+    private final String[] operators;
+
+    private final long[] sizes;
+
+    /**
+     * Whether a binary criterion may use the same criterion as both operands.
+     */
+    private final boolean sharedOperands;
+
+    /**
+     * Construct a new generator.
+     * @param random the source of randomness.
+     * @param names the operands of the {@code name contains} criteria.
+     * @param types the operands of the {@code type equals} criteria.
+     * @param operators the operators of the size criteria other than {@code between}.
+     * @param sizes the operands of the size criteria.
+     * @param sharedOperands whether a binary criterion may use the same criterion as both operands.
+     */
+    public RandomCriteria(Random random, String[] names, String[] types, String[] operators, long[] sizes, boolean sharedOperands) {
+        this.random = random;
+        this.names = names;
+        this.types = types;
+        this.operators = operators;
+        this.sizes = sizes;
+        this.sharedOperands = sharedOperands;
+    }
+
+    /**
+     * Generate a random criterion.
+     * @param depth the largest number of negation and binary criteria above a simple criterion.
+     * @return the criterion.
+     */
+    public Criterion next(int depth) throws ModelException {
+        int kind = random.nextInt(depth > 0 ? 7 : 4);
+        switch (kind) {
+            case 0:
+                return factory.createSimpleCriterion("aa", "name", "contains", "\"" + names[random.nextInt(names.length)] + "\"");
+            case 1:
+                return factory.createSimpleCriterion("aa", "type", "equals", "\"" + types[random.nextInt(types.length)] + "\"");
+            case 2:
+                if (random.nextInt(4) == 0) {
+                    long first = sizes[random.nextInt(sizes.length)];
+                    long second = sizes[random.nextInt(sizes.length)];
+                    return factory.createSimpleCriterion("aa", "size", "between", Long.toString(Math.min(first, second)), Long.toString(Math.max(first, second)));
+                }
+                return factory.createSimpleCriterion("aa", "size", operators[random.nextInt(operators.length)], Long.toString(sizes[random.nextInt(sizes.length)]));
+            case 3:
+                return new IsDocument();
+            case 4:
+                return factory.createNegationCriterion("aa", next(depth - 1));
+            default:
+                Criterion first = next(depth - 1);
+                Criterion second = (sharedOperands && random.nextBoolean()) ? first : next(depth - 1);
+                return factory.createBinaryCriterion("aa", first, (kind == 5) ? "&&" : "||", second);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package hk.edu.polyu.comp.comp2021.cvfs.model.entities.file;
+
+import hk.edu.polyu.comp.comp2021.cvfs.model.internalexceptions.CannotInitializeFileException;
+import org.junit.Test;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+public class ChildIndexTest {
+    @Test
+    public void testAgainstTreeMap() {
+        try {
+            Directory parent = new Directory(true);
+            ChildIndex index = new ChildIndex();
+            TreeMap<String, File> expected = new TreeMap<>();
+            Random random = new Random(2021);
+
+            // Grows over the threshold and shrinks back a few times.
+            for (int round = 0; round < 6; round++) {
+                int target = (round % 2 == 0) ? ChildIndex.HASH_THRESHOLD * 3 : 3;
+                for (int step = 0; step < 2000; step++) {
+                    String name = "f" + random.nextInt(ChildIndex.HASH_THRESHOLD * 4);
+                    if (expected.size() < target ? random.nextInt(4) > 0 : random.nextInt(4) == 0) {
+                        Directory file = new Directory(name, parent);
+                        assertSame(expected.put(name, file), index.put(name, file));
+                    } else {
+                        assertSame(expected.remove(name), index.remove(name));
+                    }
+                    assertEquals(expected.size(), index.size());
+                    assertSame(expected.get(name), index.get(name));
+                }
+                assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(index.keySet()));
+                assertEquals(new ArrayList<>(expected.values()), new ArrayList<>(index.values()));
+
+                ArrayList<File> descending = new ArrayList<>();
+                for (File file : index.descendingValues()) {
+                    descending.add(file);
+                }
+                ArrayList<File> reversed = new ArrayList<>(expected.values());
+                Collections.reverse(reversed);
+                assertEquals(reversed, descending);
+            }
+        } catch (CannotInitializeFileException ignored) {}
+    }
+
+    @Test
+    public void testFailFast() {
+        try {
+            Directory parent = new Directory(true);
+            ChildIndex index = new ChildIndex();
+            for (int i = 0; i < ChildIndex.HASH_THRESHOLD * 2; i++) {
+                index.put("f" + i, new Directory("f" + i, parent));
+            }
+            for (String name : index.keySet()) {
+                index.remove(name);
+            }
+            fail(); // impossible here
+        } catch (ConcurrentModificationException e) {
+            assertNotNull(e);
+        } catch (CannotInitializeFileException ignored) {}
+    }
+
+    @Test
+    public void testShrinkForgetsOrder() {
+        try {
+            Directory parent = new Directory(true);
+            ChildIndex index = new ChildIndex();
+            for (int i = 0; i < ChildIndex.HASH_THRESHOLD * 2; i++) {
+                index.put("f" + i, new Directory("f" + i, parent));
+            }
+            WeakReference<File> removed = new WeakReference<>(index.get("f" + (ChildIndex.HASH_THRESHOLD * 2 - 3))); // Removed after the shrink.
+
+            // Back to the arrays, which must not keep the order of the hash table, nor the files removed since.
+            for (int i = 0; i < ChildIndex.HASH_THRESHOLD * 2 - 2; i++) {
+                index.remove("f" + i);
+            }
+            assertEquals(2, index.size());
+            for (int attempt = 0; attempt < 20 && removed.get() != null; attempt++) {
+                System.gc();
+                Thread.sleep(10);
+            }
+            assertNull(removed.get());
+        } catch (CannotInitializeFileException | InterruptedException ignored) {}
+    }
+}
@@ -117,4 +117,62 @@ public class DirectoryTest {
             assertNull(directory);
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testLazySizes() {
+        try {
+            Directory root = new Directory(true);
+            Directory[] chain = new Directory[2000];
+            Directory current = root;
+            for (int i = 0; i < chain.length; i++) {
+                chain[i] = new Directory("d" + i, current);
+                current.__INTERNAL__add(chain[i]);
+                current = chain[i];
+            }
+            assertEquals(40L * chain.length, root.getSize());
+            assertEquals(40L * (chain.length - 500), chain[500].getSize());
+
+            Document deep = new Document("deep", "txt", "0123456789", chain[1999]);
+            chain[1999].__INTERNAL__add(deep);
+            chain[1000].__INTERNAL__add(new Document("mid", "txt", "", chain[1000]));
+            assertEquals(40L * chain.length + 60 + 40, root.getSize());
+            assertEquals(40L * (chain.length - 1500) + 60, chain[1500].getSize());
+
+            deep.__INTERNAL__setContent("");
+            chain[0].__INTERNAL__delete(chain[1]);
+            assertEquals(40, root.getSize());
+            assertEquals(40L * (chain.length - 1000) + 40 + 40, chain[1000].getSize()); // Detached, but still consistent.
+            assertEquals(40, chain[0].getSize());
+        } catch (CannotInitializeFileException ignored) {}
+    }
+
+    @Test
+    public void testPathAfterRename() {
+        try {
+            Directory root = new Directory(true);
+            Directory a = new Directory("a", root);
+            root.__INTERNAL__add(a);
+            Directory b = new Directory("b", a);
+            a.__INTERNAL__add(b);
+            Document document = new Document("doc", "txt", "", b);
+            b.__INTERNAL__add(document);
+            assertEquals("$:a:b:doc.txt", document.getPath());
+
+            a.__INTERNAL__setName("x");
+            assertEquals("$:x:b", b.getPath());
+            document.__INTERNAL__setName("y");
+            assertEquals("$:x:b:y.txt", document.getPath());
+
+            // Deeper than the cache can hold.
+            Directory current = b;
+            for (int i = 0; i < PathCache.CAPACITY * 2; i++) {
+                Directory child = new Directory("c", current);
+                current.__INTERNAL__add(child);
+                current = child;
+            }
+            b.__INTERNAL__setName("z");
+            assertTrue(current.getPath().startsWith("$:x:z:c:c:"));
+            assertEquals(("$:x:z").length() + PathCache.CAPACITY * 2 * 2, current.getPath().length());
+        } catch (CannotInitializeFileException ignored) {}
+    }
+}
@@ -0,0 +1,415 @@
+package hk.edu.polyu.comp.comp2021.cvfs.model.filesystem;
+
+import hk.edu.polyu.comp.comp2021.cvfs.model.ModelException;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.Criterion;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Directory;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Document;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.File;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.vdisk.VDisk;
+import hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.index.CriterionView;
+import hk.edu.polyu.comp.comp2021.cvfs.model.internalexceptions.DuplicatedFilenameException;
+import hk.edu.polyu.comp.comp2021.cvfs.model.internalexceptions.FileNotExistsException;
+import hk.edu.polyu.comp.comp2021.cvfs.model.internalexceptions.VDiskOutOfSpaceException;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class FileSystemConcurrencyTest {
+    private static final int THREADS = 8;
+
+    private static final String[] TYPES = {"txt", "java", "html", "css"};
+
+    /**
+     * The work of a thread, which may throw the exceptions of the model.
+     */
+    private interface Work {
+        void run(int thread) throws Exception;
+    }
+
+    @Test
+    public void testMixedOperations() {
+        try {
+            FileSystem fs = new FileSystem();
+            fs.setConcurrent(true);
+            fs.mountVDisk(new VDisk(10_000_000));
+            fs.setPathIndexEnabled(true);
+            Criterion isDocument = fs.findCriterion("IsDocument");
+            CriterionView view = fs.watchCriterion(isDocument);
+            Directory root = fs.getRootDirectory();
+            Directory[] directories = new Directory[4];
+            for (int i = 0; i < directories.length; i++) {
+                directories[i] = new Directory("d" + i, root);
+                fs.storeFile(directories[i]);
+                Directory inner = new Directory("e" + i, directories[i]);
+                fs.storeFile(inner);
+            }
+
+            runThreads((thread) -> {
+                Random random = new Random(thread);
+                for (int round = 0; round < 2000; round++) {
+                    Directory directory = directories[random.nextInt(directories.length)];
+                    if (random.nextBoolean()) {
+                        directory = (Directory) fs.findFile(directory, "e" + directory.getName().substring(1));
+                    }
+                    String name = "t" + thread + "n" + random.nextInt(20);
+                    try {
+                        switch (random.nextInt(6)) {
+                            case 0:
+                            case 1:
+                                fs.storeFile(new Document(name, TYPES[random.nextInt(TYPES.length)], "x" + round, directory));
+                                break;
+                            case 2:
+                                fs.removeFile(fs.findFile(directory, name));
+                                break;
+                            case 3:
+                                fs.renameFile(fs.findFile(directory, name), "t" + thread + "n" + random.nextInt(20));
+                                break;
+                            case 4:
+                                fs.modifyDocument(fs.findFile(directory, name), "content" + round);
+                                break;
+                            default:
+                                for (File file : fs.getAllFiles(directory).values()) {
+                                    assertSame(directory, fs.getParent(file));
+                                }
+                                fs.findFileByPath(directory.getPath());
+                                view.getCount();
+                        }
+                    } catch (DuplicatedFilenameException | FileNotExistsException ignored) {}
+                }
+            });
+
+            assertEquals(recount(fs, root), root.getSize());
+            for (Directory directory : directories) {
+                assertEquals(recount(fs, directory), directory.getSize());
+            }
+            ArrayList<File> documents = new ArrayList<>();
+            collect(fs, root, documents);
+            assertEquals(documents.size(), view.getCount());
+            assertTrue(view.getFiles().containsAll(documents));
+            for (File document : documents) {
+                assertSame(document, fs.findFileByPath(document.getPath()));
+            }
+        } catch (ModelException | InterruptedException ignored) {}
+    }
+
+    @Test
+    public void testRacedDuplicateNames() {
+        try {
+            FileSystem fs = new FileSystem();
+            fs.setConcurrent(true);
+            fs.mountVDisk(new VDisk(10_000_000));
+            Directory root = fs.getRootDirectory();
+            AtomicInteger stored = new AtomicInteger();
+            CyclicBarrier barrier = new CyclicBarrier(THREADS);
+
+            runThreads((thread) -> {
+                for (int round = 0; round < 200; round++) {
+                    if (round % 50 == 0) {
+                        barrier.await();
+                    }
+                    try {
+                        fs.storeFile(new Document("f" + round, "txt", "by" + thread, root));
+                        stored.incrementAndGet();
+                    } catch (DuplicatedFilenameException ignored) {}
+                }
+            });
+
+            assertEquals(200, stored.get());
+            assertEquals(200, fs.getAllFiles(root).size());
+            assertEquals(recount(fs, root), root.getSize());
+        } catch (ModelException | InterruptedException ignored) {}
+    }
+
+    @Test
+    public void testFreeSpaceReservation() {
+        try {
+            FileSystem fs = new FileSystem();
+            fs.setConcurrent(true);
+            long diskSize = 20_000;
+            fs.mountVDisk(new VDisk(diskSize));
+            Directory root = fs.getRootDirectory();
+            Directory[] directories = new Directory[THREADS];
+            for (int i = 0; i < THREADS; i++) {
+                directories[i] = new Directory("d" + i, root);
+                fs.storeFile(directories[i]);
+            }
+            AtomicLong used = new AtomicLong(root.getSize());
+
+            runThreads((thread) -> {
+                Random random = new Random(thread);
+                for (int round = 0; round < 500; round++) {
+                    Document document = new Document("f" + round, "txt", repeat(random.nextInt(40)), directories[random.nextInt(THREADS)]);
+                    try {
+                        fs.storeFile(document);
+                        used.addAndGet(document.getSize());
+                    } catch (VDiskOutOfSpaceException | DuplicatedFilenameException ignored) {}
+                    assertTrue(root.getSize() <= diskSize);
+                }
+            });
+
+            assertEquals(used.get(), root.getSize());
+            assertTrue(root.getSize() <= diskSize);
+            assertEquals(recount(fs, root), root.getSize());
+        } catch (ModelException | InterruptedException ignored) {}
+    }
+
+    @Test
+    public void testOptimisticReads() {
+        try {
+            FileSystem fs = new FileSystem();
+            fs.setConcurrent(true);
+            fs.mountVDisk(new VDisk(10_000_000));
+            Directory root = fs.getRootDirectory();
+            Directory directory = new Directory("big", root);
+            fs.storeFile(directory);
+            Set<String> expected = ConcurrentHashMap.newKeySet();
+            for (int i = 0; i < 200; i++) {
+                fs.storeFile(new Document("base" + i, "txt", "", directory));
+                expected.add("base" + i);
+            }
+
+            // Two threads store and remove files in a hashed directory, while the others read it.
+            runThreads((thread) -> {
+                Random random = new Random(thread);
+                for (int round = 0; round < 3000; round++) {
+                    if (thread < 2) {
+                        String name = "w" + thread + "n" + random.nextInt(100);
+                        try {
+                            if (random.nextBoolean()) {
+                                fs.storeFile(new Document(name, "txt", "", directory));
+                                expected.add(name);
+                            } else {
+                                File file = fs.findFile(directory, name);
+                                expected.remove(name);
+                                fs.removeFile(file);
+                            }
+                        } catch (DuplicatedFilenameException | FileNotExistsException ignored) {}
+                    } else {
+                        String previous = null;
+                        int count = 0;
+                        for (Map.Entry<String, File> entry : fs.getAllFiles(directory).entrySet()) {
+                            assertTrue(previous == null || previous.compareTo(entry.getKey()) < 0);
+                            assertEquals(entry.getKey(), entry.getValue().getName());
+                            previous = entry.getKey();
+                            count++;
+                        }
+                        assertTrue(count >= 200);
+                        String name = "base" + random.nextInt(200);
+                        assertEquals(name, fs.findFile(directory, name).getName());
+                        assertSame(directory, fs.getParent(fs.findFile(directory, name)));
+                    }
+                }
+            });
+
+            assertEquals(new TreeSet<>(expected), fs.getAllFiles(directory).keySet());
+            assertEquals(recount(fs, root), root.getSize());
+        } catch (ModelException | InterruptedException ignored) {}
+    }
+
+    @Test(timeout = 60000)
+    public void testOptimisticLookupsAcrossLayouts() {
+        try {
+            FileSystem fs = new FileSystem();
+            fs.setConcurrent(true);
+            fs.mountVDisk(new VDisk(10_000_000));
+            Directory directory = new Directory("grow", fs.getRootDirectory());
+            fs.storeFile(directory);
+            fs.storeFile(new Document("kept", "txt", "", directory));
+            AtomicBoolean done = new AtomicBoolean();
+
+            // One thread grows the directory over the hash threshold and shrinks it back, while the others look up names which are never there.
+            runThreads((thread) -> {
+                if (thread == 0) {
+                    try {
+                        for (int round = 0; round < 100; round++) {
+                            for (int i = 0; i < 80; i++) {
+                                fs.storeFile(new Document("f" + i, "txt", "", directory));
+                            }
+                            for (int i = 0; i < 80; i++) {
+                                fs.removeFile(fs.findFile(directory, "f" + i));
+                            }
+                        }
+                    } finally {
+                        done.set(true);
+                    }
+                } else {
+                    Random random = new Random(thread);
+                    while (!done.get()) {
+                        try {
+                            fs.findFile(directory, "missing" + random.nextInt(1000));
+                            fail();
+                        } catch (FileNotExistsException ignored) {}
+                        assertEquals("kept", fs.findFile(directory, "kept").getName());
+                    }
+                }
+            });
+
+            assertEquals(1, fs.getAllFiles(directory).size());
+        } catch (ModelException | InterruptedException ignored) {}
+    }
+
+    @Test
+    public void testSessionWorkingDirectories() {
+        try {
+            FileSystem fs = new FileSystem();
+            fs.setConcurrent(true);
+            fs.mountVDisk(new VDisk(10_000_000));
+            Directory root = fs.getRootDirectory();
+            Directory[] directories = new Directory[THREADS];
+            for (int i = 0; i < THREADS; i++) {
+                directories[i] = new Directory("d" + i, root);
+                fs.storeFile(directories[i]);
+            }
+            CyclicBarrier barrier = new CyclicBarrier(THREADS);
+
+            runThreads((thread) -> {
+                fs.openSession();
+                assertSame(root, fs.getWorkingDirectory());
+                fs.setNewWorkingDirectory(directories[thread]);
+                barrier.await();
+                assertSame(directories[thread], fs.getWorkingDirectory());
+                barrier.await();
+                if (thread == 0) {
+                    fs.removeFile(directories[1]);
+                }
+                barrier.await();
+                if (thread == 1) {
+                    // Removed by another session, so the session starts over from the root directory.
+                    try {
+                        fs.getWorkingDirectory();
+                        fail();
+                    } catch (FileNotExistsException ignored) {}
+                    assertSame(root, fs.getWorkingDirectory());
+                } else {
+                    assertSame(directories[thread], fs.getWorkingDirectory());
+                }
+                barrier.await();
+                if (thread == 0) {
+                    fs.mountVDisk(new VDisk(1000));
+                }
+                barrier.await();
+                assertSame(fs.getRootDirectory(), fs.getWorkingDirectory());
+                fs.closeSession();
+            });
+
+            assertSame(fs.getRootDirectory(), fs.getWorkingDirectory());
+        } catch (ModelException | InterruptedException ignored) {}
+    }
+
+    @Test(timeout = 60000)
+    public void testExclusiveOperations() {
+        try {
+            FileSystem fs = new FileSystem();
+            fs.setConcurrent(true);
+            fs.mountVDisk(new VDisk(100000));
+            fs.storeFile(new Document("kept", "txt", "kept", fs.getRootDirectory()));
+            String path = Files.createTempDirectory("cvfs").resolve("disk.img").toString();
+            fs.saveVDisk(path);
+
+            // Every operation which replaces what is mounted, one after another on one thread, and then again while other threads read.
+            for (int round = 0; round < 2; round++) {
+                fs.loadVDisk(path);
+                fs.loadVDisk(path, true);
+                fs.mountVDisk(new VDisk(100000));
+                fs.loadVDisk(path);
+                fs.takeSnapshot("s" + round);
+                fs.mountSnapshot("s" + round);
+                fs.unmountSnapshot();
+                fs.dropSnapshot("s" + round);
+                fs.setPathIndexEnabled(round == 0);
+                fs.saveVDisk(path);
+                assertEquals("kept", fs.findFile(fs.getRootDirectory(), "kept").getName());
+            }
+
+            AtomicBoolean done = new AtomicBoolean();
+            runThreads((thread) -> {
+                if (thread == 0) {
+                    for (int i = 0; i < 20; i++) {
+                        fs.loadVDisk(path, i % 2 == 0);
+                        fs.takeSnapshot("s");
+                        fs.mountSnapshot("s");
+                        fs.unmountSnapshot();
+                        fs.dropSnapshot("s");
+                    }
+                    done.set(true);
+                } else {
+                    while (!done.get()) {
+                        assertEquals("kept", fs.findFile(fs.getRootDirectory(), "kept").getName());
+                    }
+                }
+            });
+        } catch (ModelException | IOException | InterruptedException ignored) {}
+    }
+
+    /**
+     * Run the work on {@code THREADS} threads, and fail with the first error of them.
+     */
+    private static void runThreads(Work work) throws InterruptedException {
+        Queue<Throwable> errors = new ConcurrentLinkedQueue<>();
+        Thread[] threads = new Thread[THREADS];
+        for (int i = 0; i < THREADS; i++) {
+            int thread = i;
+            threads[i] = new Thread(() -> {
+                try {
+                    work.run(thread);
+                } catch (Throwable e) {
+                    errors.add(e);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (!errors.isEmpty()) {
+            throw new AssertionError(errors.peek());
+        }
+    }
+
+    /**
+     * Count the size of a file again from the documents below it.
+     */
+    private static long recount(FileSystem fs, File file) throws ModelException {
+        if (file instanceof Document) {
+            return file.getSize();
+        }
+        long size = ((Directory) file).isRootDirectory() ? 0 : Directory.EMPTY_NON_ROOT_DIRECTORY_SIZE;
+        for (File child : fs.getAllFiles((Directory) file).values()) {
+            size += recount(fs, child);
+        }
+        return size;
+    }
+
+    private static void collect(FileSystem fs, Directory directory, ArrayList<File> documents) throws ModelException {
+        for (Map.Entry<String, File> entry : fs.getAllFiles(directory).entrySet()) {
+            if (entry.getValue() instanceof Directory) {
+                collect(fs, (Directory) entry.getValue(), documents);
+            } else {
+                documents.add(entry.getValue());
+            }
+        }
+    }
+
+    private static String repeat(int length) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            builder.append('a');
+        }
+        return builder.toString();
+    }
+}
@@ -1,5 +1,6 @@
 package hk.edu.polyu.comp.comp2021.cvfs.model.filesystem;
 
+import hk.edu.polyu.comp.comp2021.cvfs.model.ModelException;
 import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.compositecriterion.NegationCriterion;
 import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.simplecriterion.IsDocument;
 import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.simplecriterion.SizeCriterion;
@@ -74,6 +75,71 @@ public class FileSystemTest {
         } catch (FileNotExistsException | WrongAddressSpaceException ignored) {}
     }
 
+    @Test
+    public void testWrongAddressSpaceOfDeepFile() {
+        try {
+            FileSystem fs = new FileSystem();
+            VDisk other = new VDisk(100000);
+            Directory directory = other.__INTERNAL__getRootDirectory();
+            for (int i = 0; i < 100; i++) {
+                directory = new Directory("d" + i, directory);
+            }
+            Document document = new Document("doc", "txt", "content", directory);
+            assertSame(other.__INTERNAL__getRootDirectory(), document.__INTERNAL__getRoot());
+
+            fs.mountVDisk(new VDisk(100000));
+            fs.storeFile(document);
+            fail(); // impossible here
+        } catch (WrongAddressSpaceException e) {
+            assertNotNull(e.getMessage());
+        } catch (ModelException ignored) {}
+    }
+
+    @Test
+    public void testGeneration() {
+        try {
+            FileSystem fs = new FileSystem();
+            fs.mountVDisk(new VDisk(100000));
+            Directory root = fs.getRootDirectory();
+            Directory a = new Directory("a", root);
+            fs.storeFile(a);
+            Directory b = new Directory("b", a);
+            fs.storeFile(b);
+            Directory c = new Directory("c", root);
+            fs.storeFile(c);
+            Document doc = new Document("doc", "txt", "content", b);
+            fs.storeFile(doc);
+
+            long rootGeneration = fs.getGeneration(root);
+            long aGeneration = fs.getGeneration(a);
+            long cGeneration = fs.getGeneration(c);
+            assertEquals(rootGeneration, fs.getGeneration(root));
+
+            // A change below a directory changes its generation, but not the ones beside.
+            fs.modifyDocument(doc, "new content");
+            assertNotEquals(aGeneration, fs.getGeneration(a));
+            assertNotEquals(rootGeneration, fs.getGeneration(root));
+            assertEquals(cGeneration, fs.getGeneration(c));
+
+            for (int i = 0; i < 3; i++) {
+                long bGeneration = fs.getGeneration(b);
+                switch (i) {
+                    case 0:
+                        fs.renameFile(doc, "renamed");
+                        break;
+                    case 1:
+                        fs.removeFile(doc);
+                        break;
+                    default:
+                        fs.storeFile(doc);
+                        break;
+                }
+                assertNotEquals(bGeneration, fs.getGeneration(b));
+            }
+            assertEquals(cGeneration, fs.getGeneration(c));
+        } catch (ModelException ignored) {}
+    }
+
     @Test
     public void testGetParent() {
         try {
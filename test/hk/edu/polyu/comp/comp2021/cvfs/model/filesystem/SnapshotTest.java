@@ -0,0 +1,111 @@
+package hk.edu.polyu.comp.comp2021.cvfs.model.filesystem;
+
+import hk.edu.polyu.comp.comp2021.cvfs.model.ModelException;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Directory;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Document;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.vdisk.VDisk;
+import hk.edu.polyu.comp.comp2021.cvfs.model.internalexceptions.*;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SnapshotTest {
+    @Test
+    public void testSnapshotIsolation() {
+        try {
+            FileSystem fs = new FileSystem();
+            fs.mountVDisk(new VDisk(100000));
+            Directory root = fs.getRootDirectory();
+            Directory dir = new Directory("dir", root);
+            fs.storeFile(dir);
+            Document a = new Document("a", "txt", "old", dir);
+            fs.storeFile(a);
+            fs.storeFile(new Document("b", "txt", "bbb", dir));
+            long size = root.getSize();
+            fs.takeSnapshot("s1");
+
+            fs.modifyDocument(a, "new content");
+            fs.renameFile(a, "c");
+            fs.removeFile(fs.findFile(dir, "b"));
+            fs.storeFile(new Document("b", "java", "replaced", dir));
+            fs.storeFile(new Directory("added", root));
+            fs.takeSnapshot("s2");
+            fs.renameFile(dir, "renamed");
+
+            fs.mountSnapshot("s1");
+            Directory view = (Directory) fs.findFile(fs.getRootDirectory(), "dir");
+            assertEquals("old", ((Document) fs.findFile(view, "a")).getContent());
+            assertEquals("txt", ((Document) fs.findFile(view, "b")).getType());
+            assertFalse(view.__INTERNAL__existsName("c"));
+            assertFalse(fs.getRootDirectory().__INTERNAL__existsName("added"));
+            assertEquals(size, fs.getRootDirectory().getSize());
+
+            fs.mountSnapshot("s2");
+            view = (Directory) fs.findFile(fs.getRootDirectory(), "dir");
+            assertEquals("new content", ((Document) fs.findFile(view, "c")).getContent());
+            assertEquals("replaced", ((Document) fs.findFile(view, "b")).getContent());
+            assertTrue(fs.getRootDirectory().__INTERNAL__existsName("added"));
+
+            fs.unmountSnapshot();
+            assertSame(root, fs.getRootDirectory());
+            assertTrue(root.__INTERNAL__existsName("renamed"));
+        } catch (ModelException ignored) {}
+    }
+
+    @Test
+    public void testSnapshotIsReadOnly() {
+        try {
+            FileSystem fs = new FileSystem();
+            fs.mountVDisk(new VDisk(100000));
+            fs.storeFile(new Document("doc", "txt", "content", fs.getRootDirectory()));
+            fs.takeSnapshot("s");
+            fs.mountSnapshot("s");
+            fs.modifyDocument(fs.findFile(fs.getRootDirectory(), "doc"), "changed");
+            fail(); // impossible here
+        } catch (ReadOnlyVDiskException e) {
+            assertNotNull(e.getMessage());
+        } catch (ModelException ignored) {}
+    }
+
+    @Test
+    public void testDropSnapshot() {
+        try {
+            FileSystem fs = new FileSystem();
+            fs.mountVDisk(new VDisk(100000));
+            Document doc = new Document("doc", "txt", "v0", fs.getRootDirectory());
+            fs.storeFile(doc);
+            fs.takeSnapshot("s1");
+            fs.modifyDocument(doc, "v1");
+            fs.takeSnapshot("s2");
+            fs.modifyDocument(doc, "v2");
+            fs.takeSnapshot("s3");
+            fs.modifyDocument(doc, "v3");
+
+            fs.dropSnapshot("s2");
+            assertEquals(2, fs.getAllSnapshots().size());
+            fs.mountSnapshot("s1");
+            assertEquals("v0", ((Document) fs.findFile(fs.getRootDirectory(), "doc")).getContent());
+            fs.mountSnapshot("s3");
+            assertEquals("v2", ((Document) fs.findFile(fs.getRootDirectory(), "doc")).getContent());
+            fs.unmountSnapshot();
+
+            fs.takeSnapshot("s2");
+            fs.modifyDocument(doc, "v4");
+            fs.mountSnapshot("s2");
+            assertEquals("v3", ((Document) fs.findFile(fs.getRootDirectory(), "doc")).getContent());
+        } catch (ModelException ignored) {}
+    }
+
+    @Test
+    public void testDuplicatedSnapshot() {
+        try {
+            FileSystem fs = new FileSystem();
+            fs.mountVDisk(new VDisk(100000));
+            fs.takeSnapshot("s");
+            fs.takeSnapshot("s");
+            fail(); // impossible here
+        } catch (DuplicatedSnapshotNameException e) {
+            assertNotNull(e.getMessage());
+        } catch (ModelException ignored) {}
+    }
+}
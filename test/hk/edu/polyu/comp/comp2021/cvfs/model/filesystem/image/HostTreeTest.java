@@ -0,0 +1,144 @@
+package hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.image;
+
+import hk.edu.polyu.comp.comp2021.cvfs.model.ModelException;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Directory;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Document;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.vdisk.VDisk;
+import hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.FileSystem;
+import hk.edu.polyu.comp.comp2021.cvfs.model.internalexceptions.*;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+public class HostTreeTest {
+    /**
+     * Create {@code tree} in a new temporary directory: two documents, a directory with a document, and some files which cannot be imported.
+     */
+    private static Path createTree() throws IOException {
+        Path tree = Files.createTempDirectory("cvfs").resolve("tree");
+        Files.createDirectories(tree.resolve("src"));
+        Files.createDirectories(tree.resolve("bad-name"));
+        Files.write(tree.resolve("readme.txt"), "hello".getBytes(StandardCharsets.UTF_8));
+        Files.write(tree.resolve("style.css"), "body {}".getBytes(StandardCharsets.UTF_8));
+        Files.write(tree.resolve("src").resolve("Main.java"), "class Main {} // 你好".getBytes(StandardCharsets.UTF_8));
+        Files.write(tree.resolve("notes.md"), "skipped".getBytes(StandardCharsets.UTF_8));
+        Files.write(tree.resolve("verylongname.txt"), "skipped".getBytes(StandardCharsets.UTF_8));
+        return tree;
+    }
+
+    @Test
+    public void testRead() {
+        try {
+            HostTree tree = HostTree.read(createTree());
+            assertEquals("tree", tree.getRoot().getName());
+            assertTrue(tree.getRoot().isDirectory());
+            assertEquals(2, tree.getDirectoryCount());
+            assertEquals(3, tree.getDocumentCount());
+            assertEquals(3, tree.getSkippedCount());
+
+            try {
+                HostTree.read(createTree().resolve("readme.txt"));
+                fail();
+            } catch (IOException ignored) {}
+            try {
+                HostTree.read(createTree().resolve("bad-name"));
+                fail();
+            } catch (IOException ignored) {}
+        } catch (IOException ignored) {}
+    }
+
+    @Test
+    public void testReadMaxSize() {
+        try {
+            // The least sizes: two directories, and documents of 5, 7 and 23 bytes of UTF-8.
+            long leastSize = 2 * Directory.EMPTY_NON_ROOT_DIRECTORY_SIZE
+                    + (Document.EMPTY_DOCUMENT_SIZE + 2 * 2) + (Document.EMPTY_DOCUMENT_SIZE + 3 * 2) + (Document.EMPTY_DOCUMENT_SIZE + 8 * 2);
+            assertEquals(3, HostTree.read(createTree(), leastSize).getDocumentCount());
+            try {
+                HostTree.read(createTree(), leastSize - 1);
+                fail();
+            } catch (VDiskOutOfSpaceException ignored) {}
+            try {
+                HostTree.read(createTree(), 0);
+                fail();
+            } catch (VDiskOutOfSpaceException ignored) {}
+
+            // A tree which passes the walk may still not fit, which the import checks with the exact sizes.
+            FileSystem fs = new FileSystem();
+            fs.mountVDisk(new VDisk(leastSize));
+            assertEquals(leastSize, fs.getFreeSpace());
+            try {
+                fs.importTree(HostTree.read(createTree(), fs.getFreeSpace()), fs.getRootDirectory());
+                fail();
+            } catch (VDiskOutOfSpaceException ignored) {}
+            assertEquals(leastSize, fs.getFreeSpace());
+        } catch (ModelException | IOException ignored) {}
+    }
+
+    @Test
+    public void testImportTree() {
+        try {
+            FileSystem fs = new FileSystem();
+            fs.mountVDisk(new VDisk(100000));
+            Directory root = fs.getRootDirectory();
+            Directory imported = fs.importTree(HostTree.read(createTree()), root);
+
+            assertSame(imported, fs.findFile(root, "tree"));
+            assertEquals("hello", ((Document) fs.findFile(imported, "readme")).getContent());
+            assertEquals("css", ((Document) fs.findFile(imported, "style")).getType());
+            Directory src = (Directory) fs.findFile(imported, "src");
+            assertEquals("class Main {} // 你好", ((Document) fs.findFile(src, "Main")).getContent());
+            assertEquals(3, fs.getAllFiles(imported).size());
+            long expected = 2 * Directory.EMPTY_NON_ROOT_DIRECTORY_SIZE
+                    + (Document.EMPTY_DOCUMENT_SIZE + 5 * 2) + (Document.EMPTY_DOCUMENT_SIZE + 7 * 2) + (Document.EMPTY_DOCUMENT_SIZE + 19 * 2);
+            assertEquals(expected, imported.getSize());
+            assertEquals(expected, root.getSize());
+            assertSame(src, fs.findFileByPath("$:tree:src"));
+
+            // Importing again clashes with the imported directory.
+            try {
+                fs.importTree(HostTree.read(createTree()), root);
+                fail();
+            } catch (DuplicatedFilenameException ignored) {}
+            assertEquals(expected, root.getSize());
+
+            // The import is undone by removing the directory, and redone by storing it again.
+            fs.removeFile(imported);
+            assertEquals(0, root.getSize());
+            fs.storeFile(imported);
+            assertEquals(expected, root.getSize());
+            assertSame(src, fs.findFile(imported, "src"));
+        } catch (ModelException | IOException ignored) {}
+    }
+
+    @Test
+    public void testImportTreeAllOrNothing() {
+        try {
+            FileSystem fs = new FileSystem();
+            fs.mountVDisk(new VDisk(200));
+            Directory root = fs.getRootDirectory();
+            try {
+                fs.importTree(HostTree.read(createTree()), root);
+                fail();
+            } catch (VDiskOutOfSpaceException ignored) {}
+            assertEquals(0, root.getSize());
+            assertTrue(fs.getAllFiles(root).isEmpty());
+
+            fs.mountVDisk(new VDisk(100000));
+            root = fs.getRootDirectory();
+            Path tree = createTree();
+            Files.write(tree.resolve("src").resolve("Main.txt"), "same name".getBytes(StandardCharsets.UTF_8));
+            try {
+                fs.importTree(HostTree.read(tree), root);
+                fail();
+            } catch (DuplicatedFilenameException ignored) {}
+            assertEquals(0, root.getSize());
+            assertTrue(fs.getAllFiles(root).isEmpty());
+        } catch (ModelException | IOException ignored) {}
+    }
+}
@@ -0,0 +1,266 @@
+package hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.image;
+
+import hk.edu.polyu.comp.comp2021.cvfs.model.ModelException;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Directory;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Document;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.vdisk.VDisk;
+import hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.FileSystem;
+import hk.edu.polyu.comp.comp2021.cvfs.model.internalexceptions.*;
+import org.junit.Test;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.StreamCorruptedException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.Assert.*;
+
+public class VDiskImageTest {
+    @Test
+    public void testRoundTrip() {
+        try {
+            VDisk vDisk = new VDisk(100000);
+            Directory root = vDisk.__INTERNAL__getRootDirectory();
+            Directory dir = new Directory("dir", root);
+            root.__INTERNAL__add(dir);
+            root.__INTERNAL__add(new Document("doc", "txt", "hello", root));
+            dir.__INTERNAL__add(new Document("unicode", "java", "你好 😀 café", dir));
+            dir.__INTERNAL__add(new Directory("empty", dir));
+
+            VDiskImageWriter.write(vDisk, Paths.get("UnitTestVDiskImage.ser"));
+            VDisk loaded = VDiskImageReader.read(Paths.get("UnitTestVDiskImage.ser"));
+            Directory loadedRoot = loaded.__INTERNAL__getRootDirectory();
+            Directory loadedDir = (Directory) loadedRoot.__INTERNAL__findFile("dir");
+
+            assertEquals(vDisk.__INTERNAL__getFreeSpace(), loaded.__INTERNAL__getFreeSpace());
+            assertEquals(root.getSize(), loadedRoot.getSize());
+            assertEquals("hello", ((Document) loadedRoot.__INTERNAL__findFile("doc")).getContent());
+            assertEquals("你好 😀 café", ((Document) loadedDir.__INTERNAL__findFile("unicode")).getContent());
+            assertEquals("$:dir:empty", loadedDir.__INTERNAL__findFile("empty").getPath());
+        } catch (CannotInitializeVDiskException | CannotInitializeFileException | IOException ignored) {}
+    }
+
+    @Test
+    public void testLargeDocument() {
+        try {
+            StringBuilder content = new StringBuilder();
+            for (int i = 0; i < 100000; i++) {
+                content.append(i % 7 == 0 ? 'é' : 'a');
+            }
+            VDisk vDisk = new VDisk(1000000);
+            Directory root = vDisk.__INTERNAL__getRootDirectory();
+            root.__INTERNAL__add(new Document("large", "txt", content.toString(), root));
+
+            VDiskImageWriter.write(vDisk, Paths.get("UnitTestVDiskImage.ser"));
+            VDisk loaded = VDiskImageReader.read(Paths.get("UnitTestVDiskImage.ser"));
+            assertEquals(content.toString(), ((Document) loaded.__INTERNAL__getRootDirectory().__INTERNAL__findFile("large")).getContent());
+        } catch (CannotInitializeVDiskException | CannotInitializeFileException | IOException ignored) {}
+    }
+
+    @Test
+    public void testDeepTree() {
+        try {
+            VDisk vDisk = new VDisk(Long.MAX_VALUE);
+            Directory current = vDisk.__INTERNAL__getRootDirectory();
+            for (int i = 0; i < 1000; i++) {
+                Directory child = new Directory("d" + i, current);
+                current.__INTERNAL__add(child);
+                current = child;
+            }
+
+            VDiskImageWriter.write(vDisk, Paths.get("UnitTestVDiskImage.ser"));
+            VDisk loaded = VDiskImageReader.read(Paths.get("UnitTestVDiskImage.ser"));
+            assertEquals(vDisk.__INTERNAL__getRootDirectory().getSize(), loaded.__INTERNAL__getRootDirectory().getSize());
+        } catch (CannotInitializeVDiskException | CannotInitializeFileException | IOException ignored) {}
+    }
+
+    @Test
+    public void testLegacyVDisk() {
+        try {
+            VDisk vDisk = new VDisk(1000);
+            Directory root = vDisk.__INTERNAL__getRootDirectory();
+            root.__INTERNAL__add(new Document("doc", "txt", "legacy", root));
+            try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream("UnitTestVDiskLegacy.ser"))) {
+                oos.writeObject(vDisk);
+            }
+
+            VDisk loaded = VDiskImageReader.read(Paths.get("UnitTestVDiskLegacy.ser"));
+            assertEquals("legacy", ((Document) loaded.__INTERNAL__getRootDirectory().__INTERNAL__findFile("doc")).getContent());
+        } catch (CannotInitializeVDiskException | CannotInitializeFileException | IOException ignored) {}
+    }
+
+    @Test
+    public void testNotAnImage() {
+        try {
+            Files.write(Paths.get("UnitTestVDiskImage.ser"), "not a virtual disk".getBytes());
+            VDiskImageReader.read(Paths.get("UnitTestVDiskImage.ser"));
+            fail(); // impossible here
+        } catch (StreamCorruptedException e) {
+            assertNotNull(e.getMessage());
+        } catch (IOException ignored) {}
+    }
+
+    @Test
+    public void testLazyRead() {
+        try {
+            VDisk vDisk = new VDisk(100000);
+            Directory root = vDisk.__INTERNAL__getRootDirectory();
+            Directory dir = new Directory("dir", root);
+            root.__INTERNAL__add(dir);
+            dir.__INTERNAL__add(new Document("unicode", "txt", "你好 😀 café", dir));
+            VDiskImageWriter.write(vDisk, Paths.get("UnitTestVDiskImage.ser"));
+
+            VDisk loaded = VDiskImageReader.read(Paths.get("UnitTestVDiskImage.ser"), true);
+            Document document = (Document) ((Directory) loaded.__INTERNAL__getRootDirectory().__INTERNAL__findFile("dir")).__INTERNAL__findFile("unicode");
+            assertNotNull(document.__INTERNAL__getLazyContent());
+            assertEquals(root.getSize(), loaded.__INTERNAL__getRootDirectory().getSize());
+
+            // Saving again copies the content without reading it.
+            VDiskImageWriter.write(loaded, Paths.get("UnitTestVDiskImage.ser"));
+            assertNotNull(document.__INTERNAL__getLazyContent());
+            assertEquals("你好 😀 café", document.getContent());
+            assertNull(document.__INTERNAL__getLazyContent());
+
+            VDisk reloaded = VDiskImageReader.read(Paths.get("UnitTestVDiskImage.ser"), true);
+            assertEquals(root.getSize(), reloaded.__INTERNAL__getRootDirectory().getSize());
+            assertEquals("你好 😀 café", ((Document) ((Directory) reloaded.__INTERNAL__getRootDirectory().__INTERNAL__findFile("dir")).__INTERNAL__findFile("unicode")).getContent());
+        } catch (CannotInitializeVDiskException | CannotInitializeFileException | IOException ignored) {}
+    }
+
+    @Test
+    public void testReleaseMappings() {
+        try {
+            VDisk vDisk = new VDisk(100000);
+            Directory root = vDisk.__INTERNAL__getRootDirectory();
+            Directory dir = new Directory("dir", root);
+            root.__INTERNAL__add(dir);
+            dir.__INTERNAL__add(new Document("unread", "txt", "unread", dir));
+            dir.__INTERNAL__add(new Document("read", "txt", "read", dir));
+            VDiskImageWriter.write(vDisk, Paths.get("UnitTestVDiskImage.ser"));
+
+            VDisk loaded = VDiskImageReader.read(Paths.get("UnitTestVDiskImage.ser"), true);
+            Directory loadedDir = (Directory) loaded.__INTERNAL__getRootDirectory().__INTERNAL__findFile("dir");
+            Document unread = (Document) loadedDir.__INTERNAL__findFile("unread");
+            Document read = (Document) loadedDir.__INTERNAL__findFile("read");
+            assertEquals("read", read.getContent());
+
+            // The content read already still refers to the mapped image until it is released too.
+            assertTrue(VDiskImageWriter.releaseMappings(loaded));
+            assertNull(unread.__INTERNAL__getLazyContent());
+            assertFalse(unread.__INTERNAL__loadContent());
+            assertFalse(read.__INTERNAL__loadContent());
+            assertFalse(VDiskImageWriter.releaseMappings(loaded));
+            assertEquals("unread", unread.getContent());
+            assertEquals("read", read.getContent());
+
+            VDiskImageWriter.write(loaded, Paths.get("UnitTestVDiskImage.ser"));
+            VDisk reloaded = VDiskImageReader.read(Paths.get("UnitTestVDiskImage.ser"));
+            assertEquals(root.getSize(), reloaded.__INTERNAL__getRootDirectory().getSize());
+            assertEquals("unread", ((Document) ((Directory) reloaded.__INTERNAL__getRootDirectory().__INTERNAL__findFile("dir")).__INTERNAL__findFile("unread")).getContent());
+        } catch (CannotInitializeVDiskException | CannotInitializeFileException | IOException ignored) {}
+    }
+
+    @Test
+    public void testDeltaSave() {
+        try {
+            FileSystem fs = new FileSystem();
+            fs.mountVDisk(new VDisk(100000));
+            Directory root = fs.getRootDirectory();
+            Directory dir = new Directory("dir", root);
+            fs.storeFile(dir);
+            Document a = new Document("a", "txt", "aaa", dir);
+            Document b = new Document("b", "txt", "bbb", dir);
+            fs.storeFile(a);
+            fs.storeFile(b);
+            fs.storeFile(new Document("gone", "txt", "gone", root));
+            fs.saveVDisk("UnitTestVDiskDelta.ser");
+            long baseLength = Files.size(Paths.get("UnitTestVDiskDelta.ser"));
+
+            // Swap the names of two documents, and replace a removed file by a new one with the same name.
+            fs.renameFile(a, "tmp");
+            fs.renameFile(b, "a");
+            fs.renameFile(a, "b");
+            fs.modifyDocument(a, "modified");
+            fs.removeFile(fs.findFile(root, "gone"));
+            fs.storeFile(new Directory("gone", root));
+            fs.saveVDisk("UnitTestVDiskDelta.ser");
+            assertTrue(Files.size(Paths.get("UnitTestVDiskDelta.ser")) > baseLength);
+
+            fs.loadVDisk("UnitTestVDiskDelta.ser");
+            Directory loadedDir = (Directory) fs.findFile(fs.getRootDirectory(), "dir");
+            assertEquals("modified", ((Document) fs.findFile(loadedDir, "b")).getContent());
+            assertEquals("bbb", ((Document) fs.findFile(loadedDir, "a")).getContent());
+            assertTrue(fs.findFile(fs.getRootDirectory(), "gone") instanceof Directory);
+            assertEquals(root.getSize(), fs.getRootDirectory().getSize());
+        } catch (ModelException | IOException ignored) {}
+    }
+
+    @Test
+    public void testDeltaSaveRemoveAndPutBack() {
+        try {
+            FileSystem fs = new FileSystem();
+            fs.mountVDisk(new VDisk(100000));
+            Directory root = fs.getRootDirectory();
+            Directory dir = new Directory("dir", root);
+            fs.storeFile(dir);
+            fs.storeFile(new Document("doc", "txt", "content", dir));
+            fs.saveVDisk("UnitTestVDiskDelta.ser");
+
+            fs.removeFile(dir);
+            fs.saveVDisk("UnitTestVDiskDelta.ser");
+            fs.storeFile(dir);
+            fs.saveVDisk("UnitTestVDiskDelta.ser");
+
+            fs.loadVDisk("UnitTestVDiskDelta.ser");
+            Directory loadedDir = (Directory) fs.findFile(fs.getRootDirectory(), "dir");
+            assertEquals("content", ((Document) fs.findFile(loadedDir, "doc")).getContent());
+            assertEquals(root.getSize(), fs.getRootDirectory().getSize());
+        } catch (ModelException ignored) {}
+    }
+
+    @Test
+    public void testInterruptedDeltaSave() {
+        try {
+            FileSystem fs = new FileSystem();
+            fs.mountVDisk(new VDisk(100000));
+            fs.storeFile(new Document("doc", "txt", "content", fs.getRootDirectory()));
+            fs.saveVDisk("UnitTestVDiskDelta.ser");
+            long length = Files.size(Paths.get("UnitTestVDiskDelta.ser"));
+
+            // A delta segment without its commit record.
+            Files.write(Paths.get("UnitTestVDiskDelta.ser"), new byte[]{VDiskImage.DELTA_BEGIN, 0, 0, 0, 0, VDiskImage.REMOVE, 0, 0}, StandardOpenOption.APPEND);
+            fs.loadVDisk("UnitTestVDiskDelta.ser");
+            assertEquals("content", ((Document) fs.findFile(fs.getRootDirectory(), "doc")).getContent());
+
+            fs.storeFile(new Document("new", "txt", "", fs.getRootDirectory()));
+            fs.saveVDisk("UnitTestVDiskDelta.ser");
+            fs.loadVDisk("UnitTestVDiskDelta.ser");
+            assertNotNull(fs.findFile(fs.getRootDirectory(), "new"));
+            assertTrue(Files.size(Paths.get("UnitTestVDiskDelta.ser")) > length);
+        } catch (ModelException | IOException ignored) {}
+    }
+
+    @Test
+    public void testCompaction() {
+        try {
+            FileSystem fs = new FileSystem();
+            fs.mountVDisk(new VDisk(100000));
+            Document doc = new Document("doc", "txt", "", fs.getRootDirectory());
+            fs.storeFile(doc);
+            fs.saveVDisk("UnitTestVDiskDelta.ser");
+            long baseLength = Files.size(Paths.get("UnitTestVDiskDelta.ser"));
+
+            for (int i = 0; i < 100; i++) {
+                fs.modifyDocument(doc, "content " + i);
+                fs.saveVDisk("UnitTestVDiskDelta.ser");
+            }
+            assertTrue(Files.size(Paths.get("UnitTestVDiskDelta.ser")) < baseLength * 4); // Far less than 100 segments.
+
+            fs.loadVDisk("UnitTestVDiskDelta.ser");
+            assertEquals("content 99", ((Document) fs.findFile(fs.getRootDirectory(), "doc")).getContent());
+        } catch (ModelException | IOException ignored) {}
+    }
+}
@@ -0,0 +1,147 @@
+package hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.image;
+
+import hk.edu.polyu.comp.comp2021.cvfs.model.ModelException;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Directory;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Document;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.vdisk.VDisk;
+import hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.FileSystem;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.Assert.*;
+
+public class WriteAheadLogTest {
+    /**
+     * Prepare a saved virtual disk with a directory and a document in it.
+     */
+    private static FileSystem prepare() throws ModelException {
+        FileSystem fs = new FileSystem();
+        fs.mountVDisk(new VDisk(100000));
+        Directory dir = new Directory("dir", fs.getRootDirectory());
+        fs.storeFile(dir);
+        fs.storeFile(new Document("doc", "txt", "saved", dir));
+        fs.saveVDisk("UnitTestVDiskWal.ser");
+        return fs;
+    }
+
+    @Test
+    public void testReplayAfterCrash() {
+        try {
+            FileSystem fs = prepare();
+            fs.setWriteAheadLogPolicy(WriteAheadLog.SyncPolicy.PER_OPERATION, 0);
+            Directory root = fs.getRootDirectory();
+            Directory dir = (Directory) fs.findFile(root, "dir");
+            Directory added = new Directory("added", dir);
+            fs.storeFile(added);
+            fs.storeFile(new Document("inner", "java", "你好", added));
+            fs.modifyDocument(fs.findFile(dir, "doc"), "unsaved");
+            fs.renameFile(dir, "renamed");
+            fs.storeFile(new Document("gone", "txt", "", root));
+            fs.removeFile(fs.findFile(root, "gone"));
+            long size = root.getSize();
+
+            // The application stops without saving or quitting.
+            FileSystem recovered = new FileSystem();
+            recovered.loadVDisk("UnitTestVDiskWal.ser");
+            Directory recoveredDir = (Directory) recovered.findFile(recovered.getRootDirectory(), "renamed");
+            assertEquals("unsaved", ((Document) recovered.findFile(recoveredDir, "doc")).getContent());
+            assertEquals("你好", ((Document) recovered.findFile((Directory) recovered.findFile(recoveredDir, "added"), "inner")).getContent());
+            assertFalse(recovered.getRootDirectory().__INTERNAL__existsName("gone"));
+            assertEquals(size, recovered.getRootDirectory().getSize());
+
+            // The replayed mutations are saved like the others.
+            recovered.saveVDisk("UnitTestVDiskWal.ser");
+            recovered.releaseResource();
+            FileSystem reloaded = new FileSystem();
+            reloaded.loadVDisk("UnitTestVDiskWal.ser");
+            assertEquals(size, reloaded.getRootDirectory().getSize());
+            reloaded.releaseResource();
+            fs.releaseResource();
+        } catch (ModelException ignored) {}
+    }
+
+    @Test
+    public void testTornTail() {
+        try {
+            FileSystem fs = prepare();
+            fs.setWriteAheadLogPolicy(WriteAheadLog.SyncPolicy.BATCH, 2);
+            Directory dir = (Directory) fs.findFile(fs.getRootDirectory(), "dir");
+            fs.modifyDocument(fs.findFile(dir, "doc"), "first");
+            fs.modifyDocument(fs.findFile(dir, "doc"), "second");
+
+            // Cut the last frame in the middle.
+            Path log = WriteAheadLog.pathOf(Paths.get("UnitTestVDiskWal.ser").toAbsolutePath().toString());
+            try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+                channel.truncate(channel.size() - 3);
+            }
+
+            FileSystem recovered = new FileSystem();
+            recovered.loadVDisk("UnitTestVDiskWal.ser");
+            Directory recoveredDir = (Directory) recovered.findFile(recovered.getRootDirectory(), "dir");
+            assertEquals("first", ((Document) recovered.findFile(recoveredDir, "doc")).getContent());
+            recovered.releaseResource();
+            fs.releaseResource();
+        } catch (ModelException | IOException ignored) {}
+    }
+
+    @Test
+    public void testSaveStartsNewLog() {
+        try {
+            FileSystem fs = prepare();
+            Directory dir = (Directory) fs.findFile(fs.getRootDirectory(), "dir");
+            fs.modifyDocument(fs.findFile(dir, "doc"), "saved again");
+            fs.saveVDisk("UnitTestVDiskWal.ser");
+            fs.renameFile(fs.findFile(dir, "doc"), "unsaved");
+
+            FileSystem recovered = new FileSystem();
+            recovered.loadVDisk("UnitTestVDiskWal.ser");
+            Directory recoveredDir = (Directory) recovered.findFile(recovered.getRootDirectory(), "dir");
+            assertEquals("saved again", ((Document) recovered.findFile(recoveredDir, "unsaved")).getContent());
+            recovered.releaseResource();
+            fs.releaseResource();
+        } catch (ModelException ignored) {}
+    }
+
+    @Test
+    public void testQuitDiscardsLog() {
+        try {
+            FileSystem fs = prepare();
+            Directory dir = (Directory) fs.findFile(fs.getRootDirectory(), "dir");
+            fs.modifyDocument(fs.findFile(dir, "doc"), "abandoned");
+            Path log = fs.getWriteAheadLog().getPath();
+            fs.releaseResource();
+            assertFalse(Files.exists(log));
+
+            fs = new FileSystem();
+            fs.loadVDisk("UnitTestVDiskWal.ser");
+            assertEquals("saved", ((Document) fs.findFile((Directory) fs.findFile(fs.getRootDirectory(), "dir"), "doc")).getContent());
+            fs.releaseResource();
+        } catch (ModelException ignored) {}
+    }
+
+    @Test
+    public void testStaleLogIgnored() {
+        try {
+            FileSystem fs = prepare();
+            Directory dir = (Directory) fs.findFile(fs.getRootDirectory(), "dir");
+            fs.removeFile(dir);
+
+            // The image is rewritten by others, so the log no longer matches it.
+            VDisk other = new VDisk(100000);
+            other.__INTERNAL__getRootDirectory().__INTERNAL__add(new Directory("dir", other.__INTERNAL__getRootDirectory()));
+            VDiskImageWriter.write(other, Paths.get("UnitTestVDiskWal.ser"));
+
+            FileSystem recovered = new FileSystem();
+            recovered.loadVDisk("UnitTestVDiskWal.ser");
+            assertTrue(recovered.findFile(recovered.getRootDirectory(), "dir") instanceof Directory);
+            recovered.releaseResource();
+            fs.releaseResource();
+        } catch (ModelException | IOException ignored) {}
+    }
+}
@@ -0,0 +1,152 @@
+package hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.index;
+
+import hk.edu.polyu.comp.comp2021.cvfs.model.ModelException;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.Criterion;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.CriterionFactory;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Directory;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Document;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.File;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.vdisk.VDisk;
+import hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.FileSystem;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CriterionViewTest {
+    private static final String[] TYPES = {"txt", "java", "css"};
+
+    @Test
+    public void testAgainstScan() {
+        try {
+            FileSystem fs = new FileSystem();
+            fs.mountVDisk(new VDisk(1L << 30));
+            CriterionFactory factory = new CriterionFactory();
+            Criterion name = factory.createSimpleCriterion("na", "name", "contains", "\"1\"");
+            Criterion size = factory.createSimpleCriterion("si", "size", ">", "200");
+            Criterion type = factory.createSimpleCriterion("ty", "type", "equals", "\"java\"");
+            Criterion[] criteria = {
+                    name,
+                    size,
+                    factory.createBinaryCriterion("ns", name, "||", factory.createNegationCriterion("ny", type)),
+                    factory.createBinaryCriterion("ts", size, "&&", factory.createNegationCriterion("nn", name))
+            };
+            for (Criterion criterion : criteria) {
+                fs.addCriterion(criterion);
+            }
+            // One view is built at once, the others by the first lookup after some mutations.
+            CriterionView eager = fs.watchCriterion(name);
+            assertEquals(0, eager.getCount());
+
+            Random random = new Random(18);
+            ArrayList<Directory> directories = new ArrayList<>();
+            ArrayList<File> removed = new ArrayList<>();
+            directories.add(fs.getRootDirectory());
+            for (int round = 0; round < 3000; round++) {
+                if (round == 100) {
+                    for (Criterion criterion : criteria) {
+                        fs.watchCriterion(criterion);
+                    }
+                }
+                mutate(fs, random, directories, removed);
+                if (round % 50 == 0 || round > 2900) {
+                    for (CriterionView view : fs.getAllViews()) {
+                        assertMatchesScan(fs, view);
+                    }
+                }
+            }
+
+            // Mounting a snapshot rebuilds the views.
+            fs.takeSnapshot("s");
+            fs.storeFile(new Document("late1", "java", "content", fs.getRootDirectory()));
+            int count = fs.getView(name).getCount();
+            fs.mountSnapshot("s");
+            assertEquals(count - 1, fs.getView(name).getCount());
+            assertMatchesScan(fs, fs.getView(size));
+            fs.unmountSnapshot();
+            assertEquals(count, fs.getView(name).getCount());
+
+            // A deleted criterion is no longer watched.
+            fs.unwatchCriterion(name);
+            assertNull(fs.getView(name));
+            fs.removeCriterion(criteria[3]);
+            assertNull(fs.getView(criteria[3]));
+            assertEquals(2, fs.getAllViews().size());
+        } catch (ModelException ignored) {}
+    }
+
+    private static void mutate(FileSystem fs, Random random, ArrayList<Directory> directories, ArrayList<File> removed) throws ModelException {
+        Directory parent = directories.get(random.nextInt(directories.size()));
+        String fileName = "f" + random.nextInt(100);
+        int kind = random.nextInt(10);
+        if (kind < 2 && !removed.isEmpty() && random.nextBoolean()) {
+            // Storing a removed file again, like undo does.
+            File file = removed.remove(removed.size() - 1);
+            if (!((Directory) file.__INTERNAL__getParent()).__INTERNAL__existsName(file.getName()) && isAttached(fs, (Directory) file.__INTERNAL__getParent())) {
+                fs.storeFile(file);
+            }
+            return;
+        }
+        if (!isAttached(fs, parent)) {
+            return;
+        }
+        if (parent.__INTERNAL__existsName(fileName)) {
+            File file = parent.__INTERNAL__findFile(fileName);
+            if (kind < 3 && file != fs.getWorkingDirectory()) {
+                fs.removeFile(file);
+                removed.add(file);
+            } else if (kind < 6) {
+                String newName = "g" + random.nextInt(100);
+                if (!parent.__INTERNAL__existsName(newName)) {
+                    fs.renameFile(file, newName);
+                }
+            } else if (file instanceof Document) {
+                fs.modifyDocument(file, random.nextBoolean() ? "" : new String(new char[random.nextInt(200)]).replace('\0', 'x'));
+            }
+        } else if (kind < 3) {
+            Directory directory = new Directory(fileName, parent);
+            fs.storeFile(directory);
+            directories.add(directory);
+        } else {
+            fs.storeFile(new Document(fileName, TYPES[random.nextInt(TYPES.length)], new String(new char[random.nextInt(100)]).replace('\0', 'y'), parent));
+        }
+    }
+
+    private static boolean isAttached(FileSystem fs, Directory directory) throws ModelException {
+        File root = fs.getRootDirectory();
+        for (File file = directory; file != null; file = file.__INTERNAL__getParent()) {
+            if (file == root) {
+                return true;
+            }
+            File parent = file.__INTERNAL__getParent();
+            if (parent == null || ((Directory) parent).__INTERNAL__findFile(file.getName()) != file) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private static void assertMatchesScan(FileSystem fs, CriterionView view) throws ModelException {
+        HashSet<File> expected = new HashSet<>();
+        long totalSize = 0;
+        Deque<File> stack = new ArrayDeque<>(fs.getRootDirectory().__MODEL_INTERNAL__getFiles().values());
+        while (!stack.isEmpty()) {
+            File file = stack.pop();
+            if (view.getCriterion().check(file)) {
+                expected.add(file);
+                totalSize += file.getSize();
+            }
+            if (file instanceof Directory) {
+                stack.addAll(((Directory) file).__MODEL_INTERNAL__getFiles().values());
+            }
+        }
+        assertEquals(expected, new HashSet<>(view.getFiles()));
+        assertEquals(expected.size(), view.getCount());
+        assertEquals(totalSize, view.getTotalSize());
+    }
+}
@@ -0,0 +1,83 @@
+package hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.index;
+
+import hk.edu.polyu.comp.comp2021.cvfs.model.ModelException;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Directory;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Document;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.vdisk.VDisk;
+import hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.FileSystem;
+import hk.edu.polyu.comp.comp2021.cvfs.model.internalexceptions.FileNotExistsException;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PathIndexTest {
+    @Test
+    public void testMutations() {
+        try {
+            FileSystem fs = new FileSystem();
+            fs.setPathIndexEnabled(true);
+            fs.mountVDisk(new VDisk(100000));
+            Directory a = new Directory("a", fs.getRootDirectory());
+            fs.storeFile(a);
+            Directory b = new Directory("b", a);
+            fs.storeFile(b);
+            Document doc = new Document("doc", "txt", "content", b);
+            fs.storeFile(doc);
+            assertSame(doc, fs.findFileByPath("$:a:b:doc.txt"));
+            assertEquals(4, fs.getPathIndex().size());
+
+            fs.renameFile(a, "x");
+            assertSame(doc, fs.findFileByPath("$:x:b:doc.txt"));
+            assertFalse(exists(fs, "$:a:b"));
+
+            // Removing and storing the same directory again, like undo and redo do.
+            fs.removeFile(b);
+            assertFalse(exists(fs, "$:x:b:doc.txt"));
+            fs.storeFile(b);
+            assertSame(doc, fs.findFileByPath("$:x:b:doc.txt"));
+            fs.renameFile(a, "a");
+            assertSame(b, fs.findFileByPath("$:a:b"));
+            assertEquals(4, fs.getPathIndex().size());
+            assertTrue(fs.getPathIndex().estimateMemory() > 0);
+
+            // The same answers without the index.
+            fs.setPathIndexEnabled(false);
+            assertSame(doc, fs.findFileByPath("$:a:b:doc.txt"));
+            assertSame(fs.getRootDirectory(), fs.findFileByPath("$"));
+            assertFalse(exists(fs, "$:a:b:doc.java"));
+            assertFalse(exists(fs, "$:a:b:doc.txt:c"));
+        } catch (ModelException ignored) {}
+    }
+
+    @Test
+    public void testRemount() {
+        try {
+            FileSystem fs = new FileSystem();
+            fs.setPathIndexEnabled(true);
+            fs.mountVDisk(new VDisk(100000));
+            fs.storeFile(new Directory("a", fs.getRootDirectory()));
+            assertTrue(exists(fs, "$:a"));
+            fs.takeSnapshot("s");
+            fs.storeFile(new Directory("b", fs.getRootDirectory()));
+
+            fs.mountSnapshot("s");
+            assertTrue(exists(fs, "$:a"));
+            assertFalse(exists(fs, "$:b"));
+            assertSame(fs.getRootDirectory(), fs.findFileByPath("$:a").__INTERNAL__getParent());
+            fs.unmountSnapshot();
+            assertTrue(exists(fs, "$:b"));
+
+            fs.mountVDisk(new VDisk(100000));
+            assertFalse(exists(fs, "$:a"));
+        } catch (ModelException ignored) {}
+    }
+
+    private static boolean exists(FileSystem fs, String path) throws ModelException {
+        try {
+            fs.findFileByPath(path);
+            return true;
+        } catch (FileNotExistsException e) {
+            return false;
+        }
+    }
+}
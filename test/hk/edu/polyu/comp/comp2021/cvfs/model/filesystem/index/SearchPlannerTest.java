@@ -0,0 +1,124 @@
+package hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.index;
+
+import hk.edu.polyu.comp.comp2021.cvfs.model.ModelException;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.Criterion;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.RandomCriteria;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Directory;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Document;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.File;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.vdisk.VDisk;
+import hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.FileSystem;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SearchPlannerTest {
+    private static final String[] TYPES = {"txt", "java", "html", "css"};
+
+    private static final String[] OPERATORS = {">", "<", ">=", "<=", "==", "!="};
+
+    private static final long[] SIZES = {-1, 40, 42, 48, 80, 200};
+
+    private static final String[] TARGETS = {"1", "f1", "f12", "d12", "123", "f100", "ame", "dirx"};
+
+    @Test
+    public void testAgainstScan() {
+        try {
+            FileSystem fs = new FileSystem();
+            fs.setTypeIndexEnabled(true);
+            fs.setSizeIndexEnabled(true);
+            fs.setNameIndexEnabled(true);
+            fs.mountVDisk(new VDisk(1000000));
+            Random random = new Random(2021);
+            List<Directory> directories = new ArrayList<>();
+            List<Document> documents = new ArrayList<>();
+            directories.add(fs.getRootDirectory());
+            for (int i = 0; i < 1000; i++) {
+                Directory parent = directories.get(random.nextInt(directories.size()));
+                if (random.nextInt(25) == 0) {
+                    Directory directory = new Directory("d" + i, parent);
+                    fs.storeFile(directory);
+                    directories.add(directory);
+                } else {
+                    Document document = new Document("f" + i, TYPES[random.nextInt(TYPES.length)], "abcd".substring(random.nextInt(5)), parent);
+                    fs.storeFile(document);
+                    documents.add(document);
+                }
+            }
+            check(fs, directories, random);
+
+            // The indexes follow the mutations.
+            for (int i = 0; i < 50; i++) {
+                fs.modifyDocument(documents.get(random.nextInt(documents.size())), "abcdefghij".substring(random.nextInt(10)));
+            }
+            fs.renameFile(documents.get(0), "renamed");
+            fs.renameFile(directories.get(2), "dirx");
+            fs.removeFile(directories.get(1));
+            Directory root = fs.getRootDirectory();
+            directories.removeIf(directory -> !isStored(directory, root));
+            check(fs, directories, random);
+
+            fs.takeSnapshot("s");
+            fs.removeFile(documents.get(2));
+            fs.mountSnapshot("s");
+            assertTrue(fs.getTypeIndex().isStale());
+            List<Directory> snapshotRoots = new ArrayList<>();
+            snapshotRoots.add(fs.getRootDirectory());
+            check(fs, snapshotRoots, random);
+        } catch (ModelException ignored) {}
+    }
+
+    /**
+     * Check that the planned candidates which satisfy random criteria are the ones a scan finds, in the same order.
+     */
+    private static void check(FileSystem fs, List<Directory> directories, Random random) throws ModelException {
+        RandomCriteria criteria = new RandomCriteria(random, TARGETS, TYPES, OPERATORS, SIZES, false);
+        SearchPlanner planner = fs.getSearchPlanner();
+        int planned = 0;
+        for (int round = 0; round < 500; round++) {
+            Criterion criterion = criteria.next(3);
+            Directory directory = directories.get((round % 4 == 0) ? 0 : random.nextInt(directories.size())); // Often the root, whose size is indexed too.
+            boolean recursive = random.nextBoolean();
+            List<File> candidates = planner.plan(criterion, directory, recursive);
+            if (candidates == null) {
+                continue;
+            }
+            planned++;
+            List<File> expected = new ArrayList<>();
+            scan(directory, criterion, recursive, expected);
+            List<File> actual = new ArrayList<>();
+            for (File file : candidates) {
+                if (criterion.check(file)) {
+                    actual.add(file);
+                }
+            }
+            assertEquals(criterion.toString(), expected, actual);
+        }
+        assertTrue(planned > 0);
+    }
+
+    private static void scan(Directory directory, Criterion criterion, boolean recursive, List<File> result) {
+        for (File file : directory.__MODEL_INTERNAL__getFiles().values()) {
+            if (criterion.check(file)) {
+                result.add(file);
+            }
+            if (recursive && file instanceof Directory) {
+                scan((Directory) file, criterion, true, result);
+            }
+        }
+    }
+
+    private static boolean isStored(File file, Directory root) {
+        for (File current = file; current != root; current = current.__INTERNAL__getParent()) {
+            Directory parent = (Directory) current.__INTERNAL__getParent();
+            if (parent == null || parent.__MODEL_INTERNAL__getFiles().get(current.getName()) != current) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
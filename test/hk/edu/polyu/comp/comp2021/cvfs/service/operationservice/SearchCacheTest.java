@@ -0,0 +1,123 @@
+package hk.edu.polyu.comp.comp2021.cvfs.service.operationservice;
+
+import hk.edu.polyu.comp.comp2021.cvfs.globalexceptions.CVFS_Exception;
+import hk.edu.polyu.comp.comp2021.cvfs.model.ModelException;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.Criterion;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Directory;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Document;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.vdisk.VDisk;
+import hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.FileSystem;
+import hk.edu.polyu.comp.comp2021.cvfs.service.operationservice.operations.RSearch;
+import hk.edu.polyu.comp.comp2021.cvfs.service.operationservice.operations.Search;
+import hk.edu.polyu.comp.comp2021.cvfs.service.operationservice.operations.StringOutputSink;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class SearchCacheTest {
+    private static String rSearch(FileSystem fs, SearchCache cache) throws CVFS_Exception {
+        return new RSearch(fs, cache, new String[]{"rSearch", "IsDocument"}).exec();
+    }
+
+    @Test
+    public void testInvalidation() {
+        try {
+            FileSystem fs = new FileSystem();
+            fs.mountVDisk(new VDisk(100000));
+            Directory outer = new Directory("outer", fs.getRootDirectory());
+            fs.storeFile(outer);
+            Directory work = new Directory("work", outer);
+            fs.storeFile(work);
+            Directory inner = new Directory("inner", work);
+            fs.storeFile(inner);
+            Document kept = new Document("kept", "txt", "kept", inner);
+            fs.storeFile(kept);
+            Document removed = new Document("removed", "txt", "removed", inner);
+            fs.storeFile(removed);
+            fs.setNewWorkingDirectory(work);
+            SearchCache cache = new SearchCache();
+
+            // A repeated search is a hit with the same output.
+            String output = rSearch(fs, cache);
+            assertEquals(0, cache.getHits());
+            assertEquals(1, cache.getMisses());
+            assertEquals(output, rSearch(fs, cache));
+            assertEquals(1, cache.getHits());
+            assertEquals(output, new RSearch(fs, new String[]{"rSearch", "IsDocument"}).exec());
+
+            // A search of the same directory is kept apart from an rSearch.
+            new Search(fs, cache, new String[]{"search", "IsDocument"}).exec();
+            assertEquals(2, cache.getMisses());
+            assertEquals(output, rSearch(fs, cache));
+            assertEquals(2, cache.getHits());
+
+            // Modifying a document below.
+            fs.modifyDocument(kept, "modified content");
+            output = rSearch(fs, cache);
+            assertEquals(3, cache.getMisses());
+            assertTrue(output.contains("$:outer:work:inner:kept.txt (" + kept.getSize() + ")"));
+            assertEquals(output, rSearch(fs, cache));
+            assertEquals(3, cache.getHits());
+
+            // Renaming a directory above, which changes the paths but not the generation of the working directory.
+            long generation = fs.getGeneration(work);
+            fs.renameFile(outer, "renamed");
+            assertEquals(generation, fs.getGeneration(work));
+            output = rSearch(fs, cache);
+            assertEquals(4, cache.getMisses());
+            assertTrue(output.contains("$:renamed:work:inner:kept.txt"));
+            assertFalse(output.contains("$:outer"));
+
+            // Deleting a document inside the searched subtree.
+            fs.removeFile(removed);
+            output = rSearch(fs, cache);
+            assertEquals(5, cache.getMisses());
+            assertFalse(output.contains("removed.txt"));
+            assertEquals(output, new RSearch(fs, new String[]{"rSearch", "IsDocument"}).exec());
+            assertEquals(3, cache.getHits());
+
+            cache.clear();
+            rSearch(fs, cache);
+            assertEquals(6, cache.getMisses());
+        } catch (CVFS_Exception ignored) {}
+    }
+
+    @Test
+    public void testMaxCharacters() {
+        try {
+            FileSystem fs = new FileSystem();
+            fs.mountVDisk(new VDisk(100000));
+            Directory root = fs.getRootDirectory();
+            Criterion criterion = fs.findCriterion("IsDocument");
+            SearchCache cache = new SearchCache();
+
+            // An output of exactly MAX_CHARACTERS, counting a separator per line, is kept.
+            String line = String.join("", Collections.nCopies(SearchCache.MAX_CHARACTERS / 2 - 1, "x"));
+            StringOutputSink sink = new StringOutputSink();
+            SearchCache.Recorder recorder = cache.record(criterion, root, true, 0, "$", sink);
+            recorder.println(line);
+            recorder.println(line);
+            recorder.commit();
+            assertEquals(line + "\n" + line, sink.toString());
+            ArrayList<String> lines = new ArrayList<>();
+            assertTrue(cache.replay(criterion, root, true, 0, "$", (l) -> lines.add(l.toString())));
+            assertEquals(2, lines.size());
+
+            // A longer one is passed on, but not kept.
+            sink = new StringOutputSink();
+            recorder = cache.record(criterion, root, false, 0, "$", sink);
+            recorder.println(line);
+            recorder.println(line + "x");
+            recorder.commit();
+            assertEquals(line + "\n" + line + "x", sink.toString());
+            assertFalse(cache.replay(criterion, root, false, 0, "$", (l) -> fail()));
+
+            // Another generation or path is a miss, which drops the kept output.
+            assertFalse(cache.replay(criterion, root, true, 1, "$", (l) -> fail()));
+            assertFalse(cache.replay(criterion, root, true, 0, "$", (l) -> fail()));
+        } catch (ModelException ignored) {}
+    }
+}
@@ -0,0 +1,85 @@
+package hk.edu.polyu.comp.comp2021.cvfs.service.operationservice.operations;
+
+import hk.edu.polyu.comp.comp2021.cvfs.globalexceptions.CVFS_Exception;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.CriterionFactory;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Directory;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Document;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.vdisk.VDisk;
+import hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.FileSystem;
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+public class OutputSinkTest {
+    /**
+     * Check that an operation gives the same output to a sink, line by line, as {@code exec()} gives as a whole.
+     * @return the output.
+     */
+    private static String assertSameOutput(FileSystem fs, String... command) throws CVFS_Exception {
+        String whole = createOperation(fs, command).exec();
+        ArrayList<String> lines = new ArrayList<>();
+        createOperation(fs, command).exec((line) -> lines.add(line.toString()));
+        assertEquals(whole, String.join("\n", lines));
+        return whole;
+    }
+
+    private static Operation createOperation(FileSystem fs, String... command) throws CVFS_Exception {
+        switch (command[0]) {
+            case "rList":
+                return new RList(fs, command);
+            case "search":
+                return new Search(fs, command);
+            default:
+                return new RSearch(fs, command);
+        }
+    }
+
+    @Test
+    public void testSameOutput() {
+        try {
+            FileSystem fs = new FileSystem();
+            fs.mountVDisk(new VDisk(100000));
+            Directory root = fs.getRootDirectory();
+            Directory a = new Directory("a", root);
+            fs.storeFile(a);
+            Directory empty = new Directory("empty", root);
+            fs.storeFile(empty);
+            fs.storeFile(new Document("top", "txt", "content", root));
+            for (int i = 0; i < 5; i++) {
+                fs.storeFile(new Document("f" + i, (i % 2 == 0) ? "txt" : "java", "x" + i, a));
+            }
+            fs.addCriterion(new CriterionFactory().createSimpleCriterion("nh", "type", "equals", "\"css\""));
+
+            for (String[] command : new String[][]{
+                    {"rList"},
+                    {"search", "IsDocument"},
+                    {"search", "nh"},
+                    {"rSearch", "IsDocument"},
+                    {"rSearch", "nh"},
+                    {"rSearch", "IsDocument", "parallel"}}) {
+                assertTrue(assertSameOutput(fs, command).contains("Report: "));
+            }
+            assertTrue(assertSameOutput(fs, "rList").contains("f4.txt"));
+
+            // Empty results.
+            fs.setNewWorkingDirectory(empty);
+            for (String[] command : new String[][]{{"rList"}, {"search", "IsDocument"}, {"rSearch", "IsDocument"}, {"rSearch", "IsDocument", "parallel"}}) {
+                assertSameOutput(fs, command);
+            }
+        } catch (CVFS_Exception ignored) {}
+    }
+
+    @Test
+    public void testStringOutputSink() {
+        StringOutputSink sink = new StringOutputSink();
+        assertEquals("", sink.toString());
+        sink.println("");
+        assertEquals("", sink.toString());
+        sink.println("a");
+        sink.println(new StringBuilder("b"));
+        sink.println("");
+        assertEquals("\na\nb\n", sink.toString());
+    }
+}
@@ -0,0 +1,95 @@
+package hk.edu.polyu.comp.comp2021.cvfs.service.operationservice.operations;
+
+import hk.edu.polyu.comp.comp2021.cvfs.globalexceptions.CVFS_Exception;
+import hk.edu.polyu.comp.comp2021.cvfs.model.ModelException;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.Criterion;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.criterion.CriterionFactory;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Directory;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.Document;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.file.File;
+import hk.edu.polyu.comp.comp2021.cvfs.model.entities.vdisk.VDisk;
+import hk.edu.polyu.comp.comp2021.cvfs.model.filesystem.FileSystem;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RSearchTest {
+    /**
+     * The content of a document which is large enough for a few of them to fill a subtree of {@code SPLIT_SIZE}.
+     */
+    private static final String CONTENT = new String(new char[5000]).replace('\0', 'x');
+
+    /**
+     * Scan the files below a directory in the order of the tree, as the sequential search does.
+     */
+    private static void scan(FileSystem fs, Directory directory, Criterion criterion, List<String> lines) throws ModelException {
+        for (File file : fs.getAllFiles(directory).values()) {
+            if (criterion.check(file)) {
+                lines.add(file.getPath() + " (" + file.getSize() + ")");
+            }
+            if (file instanceof Directory) {
+                scan(fs, (Directory) file, criterion, lines);
+            }
+        }
+    }
+
+    /**
+     * Create a directory with some documents of both types, with a subdirectory below it if {@code depth} is positive.
+     */
+    private static void createTree(FileSystem fs, Directory directory, int documents, int depth) throws ModelException {
+        for (int i = 0; i < documents; i++) {
+            fs.storeFile(new Document("d" + i, (i % 3 == 0) ? "java" : "txt", (i % 2 == 0) ? CONTENT : "small", directory));
+            if (i == documents / 2 && depth > 0) {
+                Directory sub = new Directory("sub" + depth, directory);
+                fs.storeFile(sub);
+                createTree(fs, sub, documents, depth - 1);
+            }
+        }
+    }
+
+    @Test
+    public void testParallelMatchesSequential() {
+        try {
+            FileSystem fs = new FileSystem();
+            fs.mountVDisk(new VDisk(10000000));
+            Directory root = fs.getRootDirectory();
+            for (int i = 0; i < 6; i++) {
+                fs.storeFile(new Document("top" + i, "txt", "top", root));
+                Directory directory = new Directory("dir" + i, root);
+                fs.storeFile(directory);
+                // Subtrees both larger and smaller than SPLIT_SIZE, so some are searched by tasks of their own and some by the tasks of their parents.
+                createTree(fs, directory, (i % 2 == 0) ? 30 : 4, i % 3);
+            }
+            assertTrue(root.getSize() > 4 * RSearch.SPLIT_SIZE);
+            assertTrue(fs.findFileByPath("$:dir0").getSize() >= RSearch.SPLIT_SIZE);
+            assertTrue(fs.findFileByPath("$:dir2:sub2").getSize() >= RSearch.SPLIT_SIZE);
+            assertTrue(fs.findFileByPath("$:dir1").getSize() < RSearch.SPLIT_SIZE);
+
+            CriterionFactory factory = new CriterionFactory();
+            fs.addCriterion(factory.createSimpleCriterion("tx", "type", "equals", "\"txt\""));
+            fs.addCriterion(factory.createSimpleCriterion("lg", "size", ">", "1000"));
+            fs.addCriterion(factory.createSimpleCriterion("no", "type", "equals", "\"css\""));
+            for (String name : new String[]{"IsDocument", "tx", "lg", "no"}) {
+                Criterion criterion = fs.findCriterion(name);
+                List<String> expected = new ArrayList<>();
+                expected.add("These file(s) satisfy the criterion: " + criterion + ":");
+                scan(fs, root, criterion, expected);
+                long size = 0;
+                for (int i = 1; i < expected.size(); i++) {
+                    String line = expected.get(i);
+                    size += Long.parseLong(line.substring(line.lastIndexOf('(') + 1, line.length() - 1));
+                }
+                expected.add("Report: " + (expected.size() - 1) + " files, with total size " + size + ".");
+
+                String sequential = new RSearch(fs, new String[]{"rSearch", name}).exec();
+                String parallel = new RSearch(fs, new String[]{"rSearch", name, "parallel"}).exec();
+                assertEquals(name, expected, Arrays.asList(sequential.split("\n")));
+                assertEquals(name, expected, Arrays.asList(parallel.split("\n")));
+            }
+        } catch (CVFS_Exception ignored) {}
+    }
+}